@@ -0,0 +1,102 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.dom.memtree;
+
+import org.exist.dom.QName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.w3c.dom.Node;
+import org.xml.sax.helpers.AttributesImpl;
+
+import javax.xml.XMLConstants;
+
+/**
+ * Builds an in-memory document of records, each with attributes and text
+ * content, similar to those constructed from the results of an SQL or CSV import,
+ * and then reads the values of the attributes and text nodes of the document.
+ *
+ * Run with the JMH option {@code -prof gc} to see the memory allocated for each document.
+ */
+public class MemTreeBuilderBenchmark {
+
+    private static final QName RECORDS = new QName("records", XMLConstants.NULL_NS_URI);
+    private static final QName RECORD = new QName("record", XMLConstants.NULL_NS_URI);
+    private static final QName NAME = new QName("name", XMLConstants.NULL_NS_URI);
+    private static final QName VALUE = new QName("value", XMLConstants.NULL_NS_URI);
+
+    @State(Scope.Benchmark)
+    public static class RecordsState {
+        @Param({"1000", "100000"})
+        private int records;
+
+        private DocumentImpl doc;
+
+        @Setup
+        public void setup() {
+            doc = build(records);
+        }
+    }
+
+    @Benchmark
+    public DocumentImpl build(final RecordsState recordsState) {
+        return build(recordsState.records);
+    }
+
+    @Benchmark
+    public long read(final RecordsState recordsState) {
+        long length = 0;
+        for (Node record = recordsState.doc.getDocumentElement().getFirstChild(); record != null; record = record.getNextSibling()) {
+            length += ((ElementImpl) record).getAttribute("id").length();
+            for (Node child = record.getFirstChild(); child != null; child = child.getNextSibling()) {
+                length += child.getTextContent().length();
+            }
+        }
+        return length;
+    }
+
+    private static DocumentImpl build(final int records) {
+        final MemTreeBuilder builder = new MemTreeBuilder();
+        builder.startDocument();
+        builder.startElement(RECORDS, null);
+        for (int i = 0; i < records; i++) {
+            final AttributesImpl attribs = new AttributesImpl();
+            attribs.addAttribute("", "id", "id", "CDATA", "r" + i);
+            builder.startElement(RECORD, attribs);
+
+            builder.startElement(NAME, null);
+            builder.characters("record number " + i);
+            builder.endElement();
+
+            builder.startElement(VALUE, null);
+            builder.characters(Integer.toString(i * 31));
+            builder.endElement();
+
+            builder.endElement();
+        }
+        builder.endElement();
+        builder.endDocument();
+        return builder.getDocument();
+    }
+}
@@ -0,0 +1,416 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.backup;
+
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.BrokerPoolService;
+import org.exist.storage.BrokerPoolServiceException;
+import org.exist.util.Configuration;
+import org.exist.xmldb.XmldbURI;
+
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Durable log of the Collections and Resources which were modified or
+ * removed since the last backup made by {@link SystemExport}.
+ *
+ * The log is fed by the {@link org.exist.storage.NativeBroker} whenever a
+ * Collection or Resource entry is written to or removed from collections.dbx,
+ * and allows an incremental backup to only visit the changed Collections and
+ * Resources instead of scanning the entire database.
+ *
+ * The log is an append-only text file in the data directory, each line being
+ * one of:
+ * <ul>
+ *     <li>{@code B <path>} the backup the following changes are relative to</li>
+ *     <li>{@code c <uri>} a Collection was stored or removed</li>
+ *     <li>{@code r <uri>} a Resource was stored or removed</li>
+ *     <li>{@code t <uri>} a Collection and all of its descendants were moved to this location</li>
+ *     <li>{@code O} too many changes were recorded, the log is no longer usable</li>
+ *     <li>{@code X} the log is no longer usable, e.g. after a database recovery</li>
+ * </ul>
+ *
+ * Changes are deduplicated. Once more than {@link #MAX_ENTRIES} distinct
+ * changes have been recorded, recording stops and the next backup has to
+ * be a full backup, which then resets the log.
+ */
+@ThreadSafe
+public class BackupChangeLog implements BrokerPoolService {
+
+    private static final Logger LOG = LogManager.getLogger(BackupChangeLog.class);
+
+    public static final String FILE_NAME = "backup.changes";
+
+    /**
+     * Maximum number of distinct changes recorded between two backups
+     */
+    public static final int MAX_ENTRIES = 100_000;
+
+    private static final char BASE = 'B';
+    private static final char COLLECTION = 'c';
+    private static final char RESOURCE = 'r';
+    private static final char TREE = 't';
+    private static final char OVERFLOW = 'O';
+    private static final char INVALID = 'X';
+
+    private static final String TEMP_COLLECTION_PREFIX = XmldbURI.TEMP_COLLECTION + "/";
+
+    private Path file;
+    private @Nullable Writer writer;
+
+    private @Nullable Path base;
+    private boolean valid = false;
+    private boolean overflow = false;
+    private Set<String> entries = new LinkedHashSet<>();
+
+    // changes recorded since a backup was started, these become the
+    // entries of the log if the backup completes
+    private @Nullable Changes pendingBackup;
+    private Set<String> pending;
+    private boolean pendingValid;
+    private boolean pendingOverflow;
+
+    @Override
+    public void configure(final Configuration configuration) throws BrokerPoolServiceException {
+        final Path dataDir = (Path) configuration.getProperty(BrokerPool.PROPERTY_DATA_DIR);
+        if (dataDir == null) {
+            throw new BrokerPoolServiceException("Could not determine " + BrokerPool.PROPERTY_DATA_DIR + " from the configuration");
+        }
+        this.file = dataDir.resolve(FILE_NAME);
+    }
+
+    @Override
+    public synchronized void prepare(final BrokerPool brokerPool) throws BrokerPoolServiceException {
+        if (Files.exists(file)) {
+            try (final BufferedReader reader = Files.newBufferedReader(file, UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    switch (line.charAt(0)) {
+                        case BASE:
+                            base = line.length() > 2 ? Paths.get(line.substring(2)) : null;
+                            valid = base != null;
+                            overflow = false;
+                            entries.clear();
+                            break;
+
+                        case OVERFLOW:
+                            overflow = true;
+                            entries.clear();
+                            break;
+
+                        case INVALID:
+                            valid = false;
+                            break;
+
+                        case COLLECTION:
+                        case RESOURCE:
+                        case TREE:
+                            // ignore an incomplete last line
+                            if (line.length() > 2 && !overflow) {
+                                entries.add(line);
+                            }
+                            break;
+
+                        default:
+                            LOG.warn("Ignoring unknown entry in {}: {}", file, line);
+                    }
+                }
+            } catch (final IOException e) {
+                LOG.error("Unable to read the backup change log {}, the next backup will not use it: {}", file, e.getMessage(), e);
+                valid = false;
+            }
+        }
+
+        try {
+            this.writer = Files.newBufferedWriter(file, UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+        } catch (final IOException e) {
+            throw new BrokerPoolServiceException("Unable to open the backup change log: " + file, e);
+        }
+    }
+
+    /**
+     * Record that a Collection was stored or removed.
+     *
+     * @param collectionUri the URI of the Collection
+     */
+    public void collectionChanged(final XmldbURI collectionUri) {
+        record(COLLECTION, collectionUri);
+    }
+
+    /**
+     * Record that a Resource was stored or removed.
+     *
+     * @param resourceUri the URI of the Resource
+     */
+    public void resourceChanged(final XmldbURI resourceUri) {
+        record(RESOURCE, resourceUri);
+    }
+
+    /**
+     * Record that a Collection and all of its descendants
+     * (Collections and Resources) were moved to a new location.
+     *
+     * @param collectionUri the new URI of the Collection
+     */
+    public void treeChanged(final XmldbURI collectionUri) {
+        record(TREE, collectionUri);
+    }
+
+    private void record(final char type, final XmldbURI uri) {
+        final String path = uri.toString();
+        if (path.equals(XmldbURI.TEMP_COLLECTION) || path.startsWith(TEMP_COLLECTION_PREFIX)) {
+            return;
+        }
+        final String line = type + " " + path;
+
+        synchronized (this) {
+            if (writer == null) {
+                return;
+            }
+
+            boolean added = false;
+            if (!overflow) {
+                added = entries.add(line);
+                if (added && entries.size() > MAX_ENTRIES) {
+                    LOG.warn("More than {} changes since the last backup, the next backup has to be a full backup", MAX_ENTRIES);
+                    overflow = true;
+                    entries.clear();
+                    append(String.valueOf(OVERFLOW));
+                }
+            }
+
+            if (pending != null && !pendingOverflow) {
+                added |= pending.add(line);
+                if (pending.size() > MAX_ENTRIES) {
+                    pendingOverflow = true;
+                    pending.clear();
+                }
+            }
+
+            if (added && !overflow) {
+                append(line);
+            }
+        }
+    }
+
+    /**
+     * Mark the log as unusable, for example because changes may have been
+     * applied to the database without being recorded. The next backup
+     * will have to be a full backup.
+     *
+     * @param reason the reason to report
+     */
+    public synchronized void invalidate(final String reason) {
+        LOG.info("Backup change log invalidated, the next backup has to be a full backup: {}", reason);
+        valid = false;
+        pendingValid = false;
+        append(String.valueOf(INVALID));
+    }
+
+    /**
+     * Called when a backup starts.
+     *
+     * From here on, changes are also recorded for the backup being created.
+     * Finish the backup by calling either {@link #commitBackup(Changes, Path)}
+     * or {@link #abortBackup(Changes)}.
+     *
+     * @return the changes since the last backup, or null if another
+     *     backup is already running.
+     */
+    public synchronized @Nullable Changes beginBackup() {
+        if (pendingBackup != null) {
+            return null;
+        }
+
+        this.pending = new LinkedHashSet<>();
+        this.pendingValid = true;
+        this.pendingOverflow = false;
+        this.pendingBackup = new Changes(valid && !overflow && writer != null ? base : null, entries);
+        return pendingBackup;
+    }
+
+    /**
+     * Called when a backup completed successfully. The log is reset to the
+     * changes which happened whilst the backup was running.
+     *
+     * @param changes the changes returned by {@link #beginBackup()}
+     * @param backup the backup which was created
+     */
+    public synchronized void commitBackup(final Changes changes, final Path backup) {
+        if (changes != pendingBackup) {
+            return;
+        }
+
+        this.base = backup.toAbsolutePath().normalize();
+        this.valid = pendingValid;
+        this.overflow = pendingOverflow;
+        this.entries = pending;
+        this.pendingBackup = null;
+        this.pending = null;
+
+        // rewrite the log
+        final Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+        try {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+
+            try (final Writer tmpWriter = Files.newBufferedWriter(tmp, UTF_8)) {
+                tmpWriter.write(BASE + " " + base + "\n");
+                if (overflow) {
+                    tmpWriter.write(OVERFLOW + "\n");
+                }
+                if (!valid) {
+                    tmpWriter.write(INVALID + "\n");
+                }
+                for (final String entry : entries) {
+                    tmpWriter.write(entry);
+                    tmpWriter.write('\n');
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            writer = Files.newBufferedWriter(file, UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+        } catch (final IOException e) {
+            LOG.error("Unable to write the backup change log {}, the next backup has to be a full backup: {}", file, e.getMessage(), e);
+            this.valid = false;
+        }
+    }
+
+    /**
+     * Called when a backup failed. The changes since the last
+     * successful backup are kept.
+     *
+     * @param changes the changes returned by {@link #beginBackup()}
+     */
+    public synchronized void abortBackup(final Changes changes) {
+        if (changes != pendingBackup) {
+            return;
+        }
+        this.pendingBackup = null;
+        this.pending = null;
+    }
+
+    private void append(final String line) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write(line);
+            writer.write('\n');
+            writer.flush();
+        } catch (final IOException e) {
+            LOG.error("Unable to write to the backup change log {}, the next backup has to be a full backup: {}", file, e.getMessage(), e);
+            valid = false;
+            pendingValid = false;
+            closeWriter();
+        }
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        closeWriter();
+    }
+
+    private void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (final IOException e) {
+                LOG.error("Unable to close the backup change log {}: {}", file, e.getMessage(), e);
+            }
+            writer = null;
+        }
+    }
+
+    /**
+     * The changes recorded since a backup.
+     */
+    public static class Changes {
+        private final @Nullable Path base;
+        private final Set<XmldbURI> collections = new TreeSet<>();
+        private final Set<XmldbURI> resources = new TreeSet<>();
+        private final Set<XmldbURI> trees = new TreeSet<>();
+
+        private Changes(@Nullable final Path base, final Set<String> entries) {
+            this.base = base;
+            if (base != null) {
+                for (final String entry : entries) {
+                    final XmldbURI uri = XmldbURI.createInternal(entry.substring(2));
+                    switch (entry.charAt(0)) {
+                        case COLLECTION:
+                            collections.add(uri);
+                            break;
+                        case RESOURCE:
+                            resources.add(uri);
+                            break;
+                        case TREE:
+                            trees.add(uri);
+                            break;
+                    }
+                }
+            }
+        }
+
+        /**
+         * @param backup a previous backup
+         *
+         * @return true if these are the changes since the given backup
+         */
+        public boolean isRelativeTo(final Path backup) {
+            return base != null && base.equals(backup.toAbsolutePath().normalize());
+        }
+
+        public Set<XmldbURI> getCollections() {
+            return Collections.unmodifiableSet(collections);
+        }
+
+        public Set<XmldbURI> getResources() {
+            return Collections.unmodifiableSet(resources);
+        }
+
+        public Set<XmldbURI> getTrees() {
+            return Collections.unmodifiableSet(trees);
+        }
+    }
+}
@@ -23,8 +23,10 @@ package org.exist.backup;
 
 import org.exist.EXistException;
 import org.exist.backup.restore.AppRestoreUtils;
+import org.exist.backup.restore.ParallelRestore;
 import org.exist.backup.restore.RestoreHandler;
 import org.exist.backup.restore.listener.RestoreListener;
+import org.exist.backup.restore.listener.SynchronizedRestoreListener;
 import org.exist.security.Account;
 import org.exist.security.PermissionDeniedException;
 import org.exist.security.SecurityManager;
@@ -58,7 +60,30 @@ public class Restore {
 
     public void restore(final DBBroker broker, @Nullable final Txn transaction, final String newAdminPass, final Path f,
                         final RestoreListener listener, final boolean overwriteApps) throws EXistException, IOException, SAXException, PermissionDeniedException {
-        
+        restore(broker, transaction, newAdminPass, f, listener, overwriteApps, 1);
+    }
+
+    /**
+     * Restores a backup.
+     *
+     * When more than one thread is requested, the sub-collections of each backup
+     * descriptor are restored concurrently, each by its own broker, see {@link ParallelRestore}.
+     * The descriptors of an incremental backup are still restored one after the other.
+     * As each thread commits its own transactions, the restore is only concurrent
+     * when no transaction is given and the broker is not within a transaction.
+     *
+     * @param broker the database broker
+     * @param transaction the transaction to use for the entire restore,
+     *                    or null to use a transaction for each collection/resource
+     * @param newAdminPass the new password for the admin user, or null
+     * @param f the backup to restore
+     * @param listener the listener to report restore events to
+     * @param overwriteApps true if newer versions of installed apps should be overwritten
+     * @param threads the number of threads to restore with
+     */
+    public void restore(final DBBroker broker, @Nullable final Txn transaction, final String newAdminPass, final Path f,
+                        final RestoreListener listener, final boolean overwriteApps, final int threads) throws EXistException, IOException, SAXException, PermissionDeniedException {
+
         //set the admin password
         if (newAdminPass != null) {
             setAdminCredentials(broker, newAdminPass);
@@ -76,30 +101,38 @@ public class Restore {
         }
 
         // continue restore
+        // the restore threads commit their own transactions, so they cannot take part in the caller's transaction
+        final boolean concurrent = threads > 1 && transaction == null && broker.getCurrentTransaction() == null;
+        final RestoreListener restoreListener = concurrent ? new SynchronizedRestoreListener(listener) : listener;
         final XMLReaderPool parserPool = broker.getBrokerPool().getParserPool();
         XMLReader reader = null;
-        try {
+        try (final ParallelRestore parallelRestore = concurrent ? new ParallelRestore(broker.getBrokerPool(), broker.getCurrentSubject(), threads) : null) {
             reader = parserPool.borrowXMLReader();
-            listener.started(totalNrOfFiles);
+            restoreListener.started(totalNrOfFiles);
 
             while(!descriptors.isEmpty()) {
                 final BackupDescriptor descriptor = descriptors.pop();
                 if (appsToSkip.contains(descriptor.getSymbolicPath())) {
-                    listener.skipResources("Skipping app path " + descriptor.getSymbolicPath() + ". Newer version " +
+                    restoreListener.skipResources("Skipping app path " + descriptor.getSymbolicPath() + ". Newer version " +
                             "is already installed.", descriptor.getNumberOfFiles());
                 } else {
                     final EXistInputSource is = descriptor.getInputSource();
                     is.setEncoding(UTF_8.displayName());
 
-                    final RestoreHandler handler = new RestoreHandler(broker, transaction, descriptor, listener, appsToSkip);
+                    final RestoreHandler handler = new RestoreHandler(broker, transaction, descriptor, restoreListener, appsToSkip, parallelRestore);
 
                     reader.setContentHandler(handler);
                     reader.parse(is);
+
+                    // the next descriptor may depend upon this one, e.g. an incremental backup
+                    if (parallelRestore != null) {
+                        parallelRestore.awaitCompletion(broker);
+                    }
                 }
             }
 
         } finally {
-            listener.finished();
+            restoreListener.finished();
 
             if (reader != null) {
                 parserPool.returnXMLReader(reader);
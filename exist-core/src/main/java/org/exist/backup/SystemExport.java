@@ -45,6 +45,7 @@ import org.exist.storage.btree.BTreeCallback;
 import org.exist.storage.btree.Value;
 import org.exist.storage.index.CollectionStore;
 import org.exist.storage.io.VariableByteInput;
+import org.exist.storage.lock.Lock.LockMode;
 import org.exist.storage.serializers.ChainOfReceiversFactory;
 import org.exist.storage.serializers.EXistOutputKeys;
 import org.exist.storage.txn.Txn;
@@ -91,6 +92,9 @@ import static java.nio.charset.StandardCharsets.UTF_8;
  * <li>Documents which are intact but belong to a destroyed collection will be stored into a special collection /db/__lost_and_found__.</li>
  * <li>Damaged documents are detected by ConsistencyCheck and are removed from the backup.</li>
  * <li>The format of the exported data is compatible with backups generated via the standard backup tool (Java admin client).</li>
+ * <li>Incremental exports only visit the collections and documents which were changed since the previous export, as recorded
+ * by the {@link BackupChangeLog}. If the change log cannot be used, all collections and documents are scanned and compared
+ * against the date of the previous export instead.</li>
  * </ul>
  *
  * The class should be used in combination with {@link ConsistencyCheck}. The error lists returned by ConsistencyCheck can be passed to {@link
@@ -174,6 +178,9 @@ public class SystemExport {
     public Path export(final String targetDir, boolean incremental, final int maxInc, final boolean zip, final List<ErrorReport> errorList) {
         Path backupFile = null;
 
+        final BackupChangeLog changeLog = broker.getBrokerPool().getBackupChangeLog();
+        final BackupChangeLog.Changes changes = changeLog.beginBackup();
+        boolean completed = false;
         try {
             final BackupDirectory directory = new BackupDirectory(targetDir);
             BackupDescriptor prevBackup = null;
@@ -211,6 +218,29 @@ public class SystemExport {
                     }
                 }
             }
+
+            boolean changeTracked = false;
+            if (incremental && prevBackup != null) {
+                final Path prevBackupFile = prevBackup.getParentDir().resolve(prevBackup.getName());
+                if (changes != null && changes.isRelativeTo(prevBackupFile)) {
+                    changeTracked = true;
+                } else {
+                    final Properties prevProp = prevBackup.getProperties();
+                    if (prevProp != null && "yes".equals(prevProp.getProperty(BackupDescriptor.CHANGE_TRACKED_PROP_NAME))) {
+                        // the previous backup only contains the changed collections, so the deletions since then
+                        // cannot be determined by comparing with it
+                        LOG.info("No changes recorded since the previous backup {}. Creating a full backup.", prevBackup.getSymbolicPath());
+                        seqNr = 1;
+                        incremental = false;
+                        prevBackup = null;
+                        properties.remove(BackupDescriptor.PREVIOUS_PROP_NAME);
+                    }
+                }
+            }
+            if (changeTracked) {
+                properties.setProperty(BackupDescriptor.CHANGE_TRACKED_PROP_NAME, "yes");
+            }
+
             properties.setProperty(BackupDescriptor.NUMBER_IN_SEQUENCE_PROP_NAME, Integer.toString(seqNr));
             properties.setProperty(BackupDescriptor.INCREMENTAL_PROP_NAME, incremental ? "yes" : "no");
 
@@ -235,12 +265,21 @@ public class SystemExport {
 //            output.addToRoot(RepoBackup.REPO_ARCHIVE, repoBackup);
 //            FileUtils.forceDelete(repoBackup);
 
-                final Date date = (prevBackup == null) ? null : prevBackup.getDate();
-                final CollectionCallback cb = new CollectionCallback(output, date, prevBackup, errorList, true);
-                broker.getCollectionsFailsafe(transaction, cb);
+                if (changeTracked) {
+                    exportChanges(output, changes, errorList);
+                } else {
+                    final Date date = (prevBackup == null) ? null : prevBackup.getDate();
+                    final CollectionCallback cb = new CollectionCallback(output, date, prevBackup, errorList, true);
+                    broker.getCollectionsFailsafe(transaction, cb);
 
-                exportOrphans(output, cb.getDocs(), errorList);
+                    exportOrphans(output, cb.getDocs(), errorList);
+                }
+            }
+
+            if (changes != null) {
+                changeLog.commitBackup(changes, backupFile);
             }
+            completed = true;
 
             return backupFile;
 
@@ -252,9 +291,210 @@ public class SystemExport {
                 FileUtils.deleteQuietly(backupFile);
             }
             return null;
+        } finally {
+            if (changes != null && !completed) {
+                changeLog.abortBackup(changes);
+            }
+        }
+    }
+
+
+    /**
+     * Export only the collections and documents which were changed since the previous backup. The ancestors of the changed
+     * collections are exported with their metadata only, so that the changed collections can be reached from /db when restoring.
+     * Collections which were moved, or removed and created again, are exported completely.
+     *
+     * @param output    the backup writer
+     * @param changes   the changes since the previous backup
+     * @param errorList a list of {@link ErrorReport} objects as returned by methods in {@link ConsistencyCheck}
+     */
+    private void exportChanges(final BackupWriter output, final BackupChangeLog.Changes changes, final List<ErrorReport> errorList) throws IOException, TerminatedException {
+        final SortedMap<XmldbURI, ChangedCollection> changed = new TreeMap<>();
+
+        for (final XmldbURI tree : changes.getTrees()) {
+            changedCollection(changed, tree).tree = true;
+            addChangedChild(changed, tree);
+        }
+        for (final XmldbURI collectionUri : changes.getCollections()) {
+            changedCollection(changed, collectionUri);
+            addChangedChild(changed, collectionUri);
+        }
+        for (final XmldbURI resourceUri : changes.getResources()) {
+            if (resourceUri.numSegments() > 1) {
+                changedCollection(changed, resourceUri.removeLastSegment()).resources.add(resourceUri.lastSegment());
+            }
+        }
+
+        // make sure each changed collection can be reached from the root collection
+        for (final XmldbURI collectionUri : new ArrayList<>(changed.keySet())) {
+            XmldbURI uri = collectionUri;
+            while (uri.numSegments() > 1) {
+                final XmldbURI parentUri = uri.removeLastSegment();
+                final ChangedCollection parent = changedCollection(changed, parentUri);
+                if (!parent.subCollections.add(uri.lastSegment())) {
+                    break;
+                }
+                uri = parentUri;
+            }
+        }
+
+        final List<XmldbURI> exportedTrees = new ArrayList<>();
+        for (final Map.Entry<XmldbURI, ChangedCollection> entry : changed.entrySet()) {
+            final XmldbURI collectionUri = entry.getKey();
+            if (collectionUri.startsWith(XmldbURI.TEMP_COLLECTION_URI) || isInTree(collectionUri, exportedTrees)) {
+                continue;
+            }
+
+            if (callback != null) {
+                callback.startCollection(collectionUri.toString());
+            }
+
+            try (final Collection collection = broker.openCollection(collectionUri, LockMode.READ_LOCK)) {
+                if (collection == null) {
+                    // removed, the parent collection records the deletion
+                    continue;
+                }
+
+                if (entry.getValue().tree) {
+                    exportedTrees.add(collectionUri);
+                    exportTree(collection, output, errorList);
+                } else {
+                    exportChanged(collection, entry.getValue(), changed, output, errorList);
+                }
+            } catch (final TerminatedException e) {
+                reportError("Terminating system export upon request", e);
+                throw e;
+            } catch (final PermissionDeniedException | LockException | SAXException e) {
+                reportError("Caught exception while exporting changed collection: " + collectionUri, e);
+            }
+        }
+    }
+
+    private static boolean isInTree(final XmldbURI collectionUri, final List<XmldbURI> trees) {
+        for (final XmldbURI tree : trees) {
+            if (collectionUri.startsWith(tree)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ChangedCollection changedCollection(final Map<XmldbURI, ChangedCollection> changed, final XmldbURI collectionUri) {
+        return changed.computeIfAbsent(collectionUri, k -> new ChangedCollection());
+    }
+
+    private static void addChangedChild(final Map<XmldbURI, ChangedCollection> changed, final XmldbURI collectionUri) {
+        if (collectionUri.numSegments() > 1) {
+            changedCollection(changed, collectionUri.removeLastSegment()).changedSubCollections.add(collectionUri.lastSegment());
+        }
+    }
+
+    /**
+     * Export a collection and all of its descendants completely.
+     */
+    private void exportTree(final Collection collection, final BackupWriter output, final List<ErrorReport> errorList) throws IOException, SAXException, TerminatedException, PermissionDeniedException, LockException {
+        export(bh, collection, output, null, null, errorList, new DefaultDocumentSet());
+
+        for (final Iterator<XmldbURI> i = collection.collectionIteratorNoLock(broker); i.hasNext(); ) {
+            final XmldbURI childUri = collection.getURI().append(i.next());
+            if (isDamagedChild(childUri, errorList)) {
+                continue;
+            }
+            try (final Collection child = broker.openCollection(childUri, LockMode.READ_LOCK)) {
+                if (child != null) {
+                    exportTree(child, output, errorList);
+                }
+            }
         }
     }
 
+    /**
+     * Export the metadata of a changed collection, its changed documents and the deletions of its documents and
+     * sub-collections. Sub-collections which are exported completely replace any existing collection of the same
+     * name when restoring.
+     */
+    private void exportChanged(final Collection current, final ChangedCollection changed, final Map<XmldbURI, ChangedCollection> allChanged, final BackupWriter output, final List<ErrorReport> errorList) throws IOException, SAXException, TerminatedException, PermissionDeniedException, LockException {
+        if ((monitor != null) && !monitor.proceed()) {
+            throw (new TerminatedException("system export terminated by db"));
+        }
+
+        output.newCollection(Backup.encode(URIUtils.urlDecodeUtf8(current.getURI())));
+
+        final SAXSerializer serializer = (SAXSerializer) SerializerPool.getInstance().borrowObject(SAXSerializer.class);
+        try {
+            final Writer contents = output.newContents();
+
+            // serializer writes to __contents__.xml
+            serializer.setOutput(contents, contentsOutputProps);
+
+            startCollection(current, serializer);
+
+            final int docsCount = changed.resources.size();
+            int count = 0;
+            final List<XmldbURI> deletedResources = new ArrayList<>();
+            for (final XmldbURI name : changed.resources) {
+                final DocumentImpl doc = current.getDocument(broker, name);
+                if (doc == null) {
+                    deletedResources.add(name);
+                    continue;
+                }
+
+                if (isDamaged(doc, errorList)) {
+                    reportError("Skipping damaged document " + doc.getFileURI(), null);
+                    continue;
+                }
+
+                if (doc.getFileURI().equalsInternal(CONTENTS_URI) || doc.getFileURI().equalsInternal(LOST_URI)) {
+                    continue; // skip __contents__.xml documents
+                }
+                exportDocument(bh, output, null, null, serializer, docsCount, count++, doc);
+            }
+
+            for (final XmldbURI childName : changed.subCollections) {
+                final XmldbURI childUri = current.getURI().append(childName);
+                if (childUri.equalsInternal(TEMP_COLLECTION) || isDamagedChild(childUri, errorList)) {
+                    continue;
+                }
+                if (current.hasChildCollectionNoLock(broker, childName)) {
+                    final ChangedCollection child = allChanged.get(childUri);
+                    if (child != null && child.tree) {
+                        writeDeleted(serializer, childName.toString(), "collection");
+                    }
+                    writeSubCollection(serializer, childName);
+                }
+            }
+
+            for (final XmldbURI name : deletedResources) {
+                writeDeleted(serializer, name.toString(), "resource");
+            }
+            for (final XmldbURI childName : changed.changedSubCollections) {
+                if (!current.hasChildCollectionNoLock(broker, childName)) {
+                    writeDeleted(serializer, childName.toString(), "collection");
+                }
+            }
+
+            endCollection(serializer);
+            output.closeContents();
+        } finally {
+            SerializerPool.getInstance().returnObject(serializer);
+            output.closeCollection();
+        }
+    }
+
+    /**
+     * The changes to a single collection since the previous backup.
+     */
+    private static class ChangedCollection {
+        /** the collection was moved or replaced, so all of its contents have to be exported */
+        boolean tree = false;
+        /** names of the documents which were stored or removed */
+        final Set<XmldbURI> resources = new TreeSet<>();
+        /** names of the sub-collections which were stored or removed */
+        final Set<XmldbURI> changedSubCollections = new TreeSet<>();
+        /** names of the sub-collections which have to be exported */
+        final Set<XmldbURI> subCollections = new TreeSet<>();
+    }
+
 
     private void reportError(final String message, final Throwable e) {
         if (callback != null) {
@@ -389,30 +629,7 @@ public class SystemExport {
             // serializer writes to __contents__.xml
             serializer.setOutput(contents, contentsOutputProps);
 
-            final Permission perm = current.getPermissionsNoLock();
-
-            serializer.startDocument();
-            serializer.startPrefixMapping("", Namespaces.EXIST_NS);
-            final XmldbURI uri = current.getURI();
-            final AttributesImpl attr = new AttributesImpl();
-            attr.addAttribute(Namespaces.EXIST_NS, "name", "name", "CDATA", uri.toString());
-            attr.addAttribute(Namespaces.EXIST_NS, "version", "version", "CDATA", String.valueOf(currVersion));
-            Backup.writeUnixStylePermissionAttributes(attr, perm);
-            try {
-                attr.addAttribute(Namespaces.EXIST_NS, "created", "created", "CDATA", new DateTimeValue(new Date(current.getCreated())).getStringValue());
-            } catch (final XPathException e) {
-                e.printStackTrace();
-            }
-
-            bh.backup(current, attr);
-
-            serializer.startElement(Namespaces.EXIST_NS, "collection", "collection", attr);
-
-            if (perm instanceof ACLPermission) {
-                Backup.writeACLPermission(serializer, (ACLPermission) perm);
-            }
-
-            bh.backup(current, serializer);
+            startCollection(current, serializer);
 
             final int docsCount = current.getDocumentCountNoLock(broker);
             int count = 0;
@@ -443,11 +660,7 @@ public class SystemExport {
                     reportError("Skipping damaged child collection " + childUri, null);
                     continue;
                 }
-                attr.clear();
-                attr.addAttribute(Namespaces.EXIST_NS, "name", "name", "CDATA", childUri.toString());
-                attr.addAttribute(Namespaces.EXIST_NS, "filename", "filename", "CDATA", Backup.encode(URIUtils.urlDecodeUtf8(childUri.toString())));
-                serializer.startElement(Namespaces.EXIST_NS, "subcollection", "subcollection", attr);
-                serializer.endElement(Namespaces.EXIST_NS, "subcollection", "subcollection");
+                writeSubCollection(serializer, childUri);
             }
 
             if (prevBackup != null) {
@@ -464,10 +677,7 @@ public class SystemExport {
                 }
             }
 
-            // close <collection>
-            serializer.endElement(Namespaces.EXIST_NS, "collection", "collection");
-            serializer.endPrefixMapping("");
-            serializer.endDocument();
+            endCollection(serializer);
             output.closeContents();
         } finally {
             SerializerPool.getInstance().returnObject(serializer);
@@ -478,6 +688,63 @@ public class SystemExport {
     }
 
 
+    /**
+     * Start the __contents__.xml of a collection, writing the collection metadata.
+     */
+    private void startCollection(final Collection current, final SAXSerializer serializer) throws SAXException {
+        final Permission perm = current.getPermissionsNoLock();
+
+        serializer.startDocument();
+        serializer.startPrefixMapping("", Namespaces.EXIST_NS);
+        final XmldbURI uri = current.getURI();
+        final AttributesImpl attr = new AttributesImpl();
+        attr.addAttribute(Namespaces.EXIST_NS, "name", "name", "CDATA", uri.toString());
+        attr.addAttribute(Namespaces.EXIST_NS, "version", "version", "CDATA", String.valueOf(currVersion));
+        Backup.writeUnixStylePermissionAttributes(attr, perm);
+        try {
+            attr.addAttribute(Namespaces.EXIST_NS, "created", "created", "CDATA", new DateTimeValue(new Date(current.getCreated())).getStringValue());
+        } catch (final XPathException e) {
+            e.printStackTrace();
+        }
+
+        bh.backup(current, attr);
+
+        serializer.startElement(Namespaces.EXIST_NS, "collection", "collection", attr);
+
+        if (perm instanceof ACLPermission) {
+            Backup.writeACLPermission(serializer, (ACLPermission) perm);
+        }
+
+        bh.backup(current, serializer);
+    }
+
+
+    private static void endCollection(final SAXSerializer serializer) throws SAXException {
+        // close <collection>
+        serializer.endElement(Namespaces.EXIST_NS, "collection", "collection");
+        serializer.endPrefixMapping("");
+        serializer.endDocument();
+    }
+
+
+    private static void writeSubCollection(final SAXSerializer serializer, final XmldbURI childName) throws SAXException {
+        final AttributesImpl attr = new AttributesImpl();
+        attr.addAttribute(Namespaces.EXIST_NS, "name", "name", "CDATA", childName.toString());
+        attr.addAttribute(Namespaces.EXIST_NS, "filename", "filename", "CDATA", Backup.encode(URIUtils.urlDecodeUtf8(childName.toString())));
+        serializer.startElement(Namespaces.EXIST_NS, "subcollection", "subcollection", attr);
+        serializer.endElement(Namespaces.EXIST_NS, "subcollection", "subcollection");
+    }
+
+
+    private static void writeDeleted(final SAXSerializer serializer, final String name, final String type) throws SAXException {
+        final AttributesImpl attr = new AttributesImpl();
+        attr.addAttribute(Namespaces.EXIST_NS, "name", "name", "CDATA", name);
+        attr.addAttribute(Namespaces.EXIST_NS, "type", "type", "CDATA", type);
+        serializer.startElement(Namespaces.EXIST_NS, "deleted", "deleted", attr);
+        serializer.endElement(Namespaces.EXIST_NS, "deleted", "deleted");
+    }
+
+
     private void exportDocument(final BackupHandler bh, final BackupWriter output, final Date date, final BackupDescriptor prevBackup, final SAXSerializer serializer, final int docsCount, final int count, final DocumentImpl doc) throws IOException, SAXException, TerminatedException {
         if (callback != null) {
             callback.startDocument(doc.getFileURI().toString(), count, docsCount);
@@ -868,21 +1135,13 @@ public class SystemExport {
                         }
 
                         if (!collection.hasChildCollection(broker, XmldbURI.create(name))) {
-                            final AttributesImpl attr = new AttributesImpl();
-                            attr.addAttribute(Namespaces.EXIST_NS, "name", "name", "CDATA", name);
-                            attr.addAttribute(Namespaces.EXIST_NS, "type", "type", "CDATA", "collection");
-                            serializer.startElement(Namespaces.EXIST_NS, "deleted", "deleted", attr);
-                            serializer.endElement(Namespaces.EXIST_NS, "deleted", "deleted");
+                            writeDeleted(serializer, name, "collection");
                         }
                     } else if ("resource".equals(localName)) {
                         final String name = attributes.getValue("name");
 
                         if (!collection.hasDocument(broker, XmldbURI.create(name))) {
-                            final AttributesImpl attr = new AttributesImpl();
-                            attr.addAttribute(Namespaces.EXIST_NS, "name", "name", "CDATA", name);
-                            attr.addAttribute(Namespaces.EXIST_NS, "type", "type", "CDATA", "resource");
-                            serializer.startElement(Namespaces.EXIST_NS, "deleted", "deleted", attr);
-                            serializer.endElement(Namespaces.EXIST_NS, "deleted", "deleted");
+                            writeDeleted(serializer, name, "resource");
                         }
                     }
                 } catch (final LockException | PermissionDeniedException e) {
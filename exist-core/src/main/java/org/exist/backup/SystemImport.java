@@ -24,8 +24,10 @@ package org.exist.backup;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.Database;
+import org.exist.backup.restore.ParallelRestore;
 import org.exist.backup.restore.SystemImportHandler;
 import org.exist.backup.restore.listener.RestoreListener;
+import org.exist.backup.restore.listener.SynchronizedRestoreListener;
 import org.exist.config.ConfigurationException;
 import org.exist.security.AuthenticationException;
 import org.exist.security.PermissionDeniedException;
@@ -64,10 +66,28 @@ public class SystemImport {
 	}
 
     public void restore(final String username, final Object credentials, @Nullable final String newCredentials, final Path f, final RestoreListener listener) throws IOException, SAXException, AuthenticationException, ConfigurationException, PermissionDeniedException, TransactionException {
-        
+        restore(username, credentials, newCredentials, f, listener, 1);
+    }
+
+    /**
+     * Restores a backup.
+     *
+     * When more than one thread is requested, the sub-collections of each backup
+     * descriptor are restored concurrently, each by its own broker, see {@link ParallelRestore}.
+     * Each collection and resource is then restored in its own transaction, rather
+     * than the entire restore in one transaction.
+     *
+     * @param username the user to restore as
+     * @param credentials the credentials of the user
+     * @param newCredentials new credentials for the user, or null
+     * @param f the backup to restore
+     * @param listener the listener to report restore events to
+     * @param threads the number of threads to restore with
+     */
+    public void restore(final String username, final Object credentials, @Nullable final String newCredentials, final Path f, final RestoreListener listener, final int threads) throws IOException, SAXException, AuthenticationException, ConfigurationException, PermissionDeniedException, TransactionException {
+
         //login
-        try(final DBBroker broker = db.authenticate(username, credentials);
-                final Txn transaction = broker.continueOrBeginTransaction()) {
+        try(final DBBroker broker = db.authenticate(username, credentials)) {
 
             //set the new password
             if (newCredentials != null) {
@@ -77,32 +97,44 @@ public class SystemImport {
 	        //get the backup descriptors, can be more than one if it was an incremental backup
 	        final Deque<BackupDescriptor> descriptors = getBackupDescriptors(f);
 
+            // the restore threads commit their own transactions, so the collection tree has to be
+            // committed as it is created, rather than as part of a transaction of this thread
+            final boolean concurrent = threads > 1;
+            final RestoreListener restoreListener = concurrent ? new SynchronizedRestoreListener(listener) : listener;
             final XMLReaderPool parserPool = broker.getBrokerPool().getParserPool();
 	        XMLReader reader = null;
-	        try {
+	        try (final Txn transaction = concurrent ? null : broker.continueOrBeginTransaction();
+	                final ParallelRestore parallelRestore = concurrent ? new ParallelRestore(broker.getBrokerPool(), broker.getCurrentSubject(), threads) : null) {
                 reader = parserPool.borrowXMLReader();
 
-                listener.started(0);
+                restoreListener.started(0);
 	
 	            while(!descriptors.isEmpty()) {
 	                final BackupDescriptor descriptor = descriptors.pop();
 	                final EXistInputSource is = descriptor.getInputSource();
 	                is.setEncoding( "UTF-8" );
 	
-	                final SystemImportHandler handler = new SystemImportHandler(broker, transaction, descriptor, listener);
+	                final SystemImportHandler handler = new SystemImportHandler(broker, transaction, descriptor, restoreListener, parallelRestore);
 	                
 	                reader.setContentHandler(handler);
 	                reader.parse(is);
+
+                    // the next descriptor may depend upon this one, e.g. an incremental backup
+                    if (parallelRestore != null) {
+                        parallelRestore.awaitCompletion(broker);
+                    }
+	            }
+
+	            if (transaction != null) {
+	                transaction.commit();
 	            }
 	        } finally {
-	            listener.finished();
+	            restoreListener.finished();
 
                 if (reader != null) {
                     parserPool.returnXMLReader(reader);
                 }
 	        }
-
-	        transaction.commit();
         }
     }
     
@@ -0,0 +1,252 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.backup.restore;
+
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.backup.BackupDescriptor;
+import org.exist.backup.restore.listener.RestoreListener;
+import org.exist.security.Subject;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.TransactionException;
+import org.exist.storage.txn.Txn;
+import org.exist.util.NamedThreadFactory;
+import org.exist.xmldb.XmldbURI;
+import org.xml.sax.SAXException;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Restores the sub-collections of a backup concurrently.
+ *
+ * A sub-collection is only submitted once the Collection which contains it
+ * has been restored, so the collection tree is still created top-down, whilst
+ * independent sub-trees are stored by a fixed number of threads. Each task
+ * borrows its own broker and restores each collection/resource in its own
+ * transaction.
+ *
+ * Sub-collections of /db/system are always restored by the calling thread,
+ * as the security manager expects them to be restored in order.
+ *
+ * As the tasks commit their own transactions, a restore may only be made
+ * concurrent when the calling thread is not restoring within a transaction
+ * of its own. Otherwise the tasks would store into collections which that
+ * transaction has created but not yet committed.
+ *
+ * The permissions of a collection whose sub-collections were submitted are
+ * deferred with {@link #deferPermission(DeferredPermission, RestoreListener)}
+ * and applied by {@link #awaitCompletion(DBBroker)}, once nothing more
+ * is being stored into the collection.
+ */
+@ThreadSafe
+public class ParallelRestore implements AutoCloseable {
+
+    private static final Logger LOG = LogManager.getLogger(ParallelRestore.class);
+
+    private final BrokerPool brokerPool;
+    private final Subject subject;
+    private final ExecutorService executorService;
+
+    private final Object lock = new Object();
+    private long outstanding = 0;
+    @Nullable private Exception failure = null;
+    private final List<PendingPermission> pendingPermissions = new ArrayList<>();
+
+    /**
+     * @param brokerPool the database to restore into
+     * @param subject the subject to restore as
+     * @param threads the number of threads to restore with
+     */
+    public ParallelRestore(final BrokerPool brokerPool, final Subject subject, final int threads) {
+        this.brokerPool = brokerPool;
+        this.subject = subject;
+        this.executorService = Executors.newFixedThreadPool(threads, new NamedThreadFactory(brokerPool, "restore"));
+    }
+
+    /**
+     * Determines if the sub-collections of a collection may be restored concurrently.
+     *
+     * @param collectionUri the uri of the collection containing the sub-collections
+     *
+     * @return true if the sub-collections may be submitted to {@link #submit(BackupDescriptor, RestoreTask)}
+     */
+    public static boolean isConcurrent(@Nullable final XmldbURI collectionUri) {
+        return collectionUri != null && !collectionUri.startsWith(XmldbURI.SYSTEM);
+    }
+
+    /**
+     * Submits a backup descriptor to be restored by another thread.
+     *
+     * @param descriptor the backup descriptor of the sub-collection
+     * @param task restores the descriptor
+     */
+    public void submit(final BackupDescriptor descriptor, final RestoreTask task) {
+        synchronized (lock) {
+            outstanding++;
+        }
+
+        try {
+            executorService.execute(() -> {
+                try {
+                    if (!hasFailed()) {
+                        try (final DBBroker broker = brokerPool.get(Optional.of(subject))) {
+                            task.restore(broker);
+                        }
+                    }
+                } catch (final Exception e) {
+                    LOG.error("Failed to restore: {}: {}", descriptor.getSymbolicPath(), e.getMessage(), e);
+                    synchronized (lock) {
+                        if (failure == null) {
+                            failure = e;
+                        }
+                    }
+                } finally {
+                    completed();
+                }
+            });
+        } catch (final RuntimeException e) {
+            completed();
+            throw e;
+        }
+    }
+
+    /**
+     * Defers the permissions of a collection until every submitted
+     * descriptor has been restored, as its sub-collections may still
+     * be being restored by other threads.
+     *
+     * @param permission the permissions of the collection
+     * @param listener the listener to report a failure to apply the permissions to
+     */
+    public void deferPermission(final DeferredPermission permission, final RestoreListener listener) {
+        synchronized (lock) {
+            pendingPermissions.add(new PendingPermission(permission, listener));
+        }
+    }
+
+    private boolean hasFailed() {
+        synchronized (lock) {
+            return failure != null;
+        }
+    }
+
+    private void completed() {
+        synchronized (lock) {
+            if (--outstanding == 0) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits until every submitted descriptor, and any
+     * sub-collections that they submitted, have been restored,
+     * and then applies the deferred permissions of their collections.
+     *
+     * @param broker the broker of the calling thread, used to apply the deferred permissions
+     *
+     * @throws SAXException if restoring any of the descriptors failed,
+     *     or the wait was interrupted
+     */
+    public void awaitCompletion(final DBBroker broker) throws SAXException {
+        final Exception e;
+        final List<PendingPermission> permissions;
+        synchronized (lock) {
+            while (outstanding > 0) {
+                try {
+                    lock.wait();
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new SAXException("Interrupted whilst waiting for restore to complete", ie);
+                }
+            }
+            e = failure;
+            failure = null;
+            permissions = new ArrayList<>(pendingPermissions);
+            pendingPermissions.clear();
+        }
+
+        if (e != null) {
+            if (e instanceof SAXException) {
+                throw (SAXException) e;
+            }
+            throw new SAXException(e.getMessage(), e);
+        }
+
+        // as for a restore by a single thread, sub-collections are given their permissions before their parents
+        permissions.sort(Comparator.comparingInt((PendingPermission p) -> p.permission.getTarget().numSegments()).reversed());
+        for (final PendingPermission pending : permissions) {
+            try (final Txn transaction = broker.continueOrBeginTransaction()) {
+                pending.permission.apply(broker, transaction);
+                transaction.commit();
+            } catch (final TransactionException te) {
+                final String msg = "ERROR: Failed to set permissions on: '" + pending.permission.getTarget() + "'.";
+                LOG.error(msg, te);
+                pending.listener.warn(msg);
+            }
+        }
+    }
+
+    /**
+     * Stops any outstanding restore tasks, and waits for the threads to finish.
+     */
+    @Override
+    public void close() {
+        executorService.shutdownNow();
+        try {
+            if (!executorService.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOG.warn("Restore threads did not terminate within 1 minute");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class PendingPermission {
+        private final DeferredPermission permission;
+        private final RestoreListener listener;
+
+        private PendingPermission(final DeferredPermission permission, final RestoreListener listener) {
+            this.permission = permission;
+            this.listener = listener;
+        }
+    }
+
+    @FunctionalInterface
+    public interface RestoreTask {
+        /**
+         * @param broker the broker of the thread restoring the descriptor
+         *
+         * @throws Exception if the descriptor could not be restored
+         */
+        void restore(DBBroker broker) throws Exception;
+    }
+}
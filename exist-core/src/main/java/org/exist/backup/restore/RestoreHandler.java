@@ -91,6 +91,8 @@ public class RestoreHandler extends DefaultHandler {
     private XmldbURI currentCollectionUri = null;
     private final Deque<DeferredPermission> deferredPermissions = new ArrayDeque<>();
     private final Set<String> pathsToIgnore;
+    @Nullable private final ParallelRestore parallelRestore;
+    private boolean submittedSubCollections = false;
 
     /**
      * @param broker the database broker
@@ -103,11 +105,29 @@ public class RestoreHandler extends DefaultHandler {
      */
     public RestoreHandler(final DBBroker broker, @Nullable final Txn transaction, final BackupDescriptor descriptor,
             final RestoreListener listener, final Set<String> pathsToIgnore) {
+        this(broker, transaction, descriptor, listener, pathsToIgnore, null);
+    }
+
+    /**
+     * @param broker the database broker
+     * @param transaction the transaction to use for the entire restore,
+     *                    or null if restoring each collection/resource
+     *                    should occur in its own transaction
+     * @param descriptor the backup descriptor to start restoring from
+     * @param listener the listener to report restore events to,
+     *                 must be thread-safe if sub-collections are restored concurrently
+     * @param pathsToIgnore database paths to ignore in the backup
+     * @param parallelRestore restores sub-collections concurrently,
+     *                        or null to restore them in the calling thread
+     */
+    public RestoreHandler(final DBBroker broker, @Nullable final Txn transaction, final BackupDescriptor descriptor,
+            final RestoreListener listener, final Set<String> pathsToIgnore, @Nullable final ParallelRestore parallelRestore) {
         this.broker = broker;
         this.transaction = transaction;
         this.descriptor = descriptor;
         this.listener = listener;
         this.pathsToIgnore = pathsToIgnore;
+        this.parallelRestore = parallelRestore;
     }
 
     /**
@@ -158,7 +178,7 @@ public class RestoreHandler extends DefaultHandler {
     @Override
     public void endElement(final String namespaceURI, final String localName, final String qName) throws SAXException {
         if (namespaceURI.equals(Namespaces.EXIST_NS) && ("collection".equals(localName) || "resource".equals(localName))) {
-            setDeferredPermissions();
+            setDeferredPermissions("collection".equals(localName));
         }
         super.endElement(namespaceURI, localName, qName);
     }
@@ -418,32 +438,43 @@ public class RestoreHandler extends DefaultHandler {
                         "is already installed.", subDescriptor.getNumberOfFiles());
                 return;
             }
-            final XMLReaderPool parserPool = broker.getBrokerPool().getParserPool();
-            XMLReader reader = null;
-            try {
-                reader = parserPool.borrowXMLReader();
-
-                final EXistInputSource is = subDescriptor.getInputSource();
-                is.setEncoding(UTF_8.displayName());
-
-                final RestoreHandler handler = new RestoreHandler(broker, transaction, subDescriptor, listener, pathsToIgnore);
-
-                reader.setContentHandler(handler);
-                reader.parse(is);
-            } catch(final SAXParseException se) {
-                listener.error("SAX exception while reading sub-collection " + subDescriptor.getSymbolicPath() + " for processing: " + se.getMessage());
-            } catch(final IOException ioe) {
-                listener.error("Could not read sub-collection for processing: " + ioe.getMessage());
-            } finally {
-                if (reader != null) {
-                    parserPool.returnXMLReader(reader);
-                }
+
+            if (parallelRestore != null && ParallelRestore.isConcurrent(currentCollectionUri)) {
+                // each sub-collection restored by another thread uses its own transactions
+                submittedSubCollections = true;
+                parallelRestore.submit(subDescriptor, subBroker -> restoreSubCollection(subBroker, null, subDescriptor));
+            } else {
+                restoreSubCollection(broker, transaction, subDescriptor);
             }
         } else {
             listener.error("Collection " + descriptor.getSymbolicPath(name, false) + " does not exist or is not readable.");
         }
     }
 
+    private void restoreSubCollection(final DBBroker broker, @Nullable final Txn transaction, final BackupDescriptor subDescriptor) throws SAXException {
+        final XMLReaderPool parserPool = broker.getBrokerPool().getParserPool();
+        XMLReader reader = null;
+        try {
+            reader = parserPool.borrowXMLReader();
+
+            final EXistInputSource is = subDescriptor.getInputSource();
+            is.setEncoding(UTF_8.displayName());
+
+            final RestoreHandler handler = new RestoreHandler(broker, transaction, subDescriptor, listener, pathsToIgnore, parallelRestore);
+
+            reader.setContentHandler(handler);
+            reader.parse(is);
+        } catch(final SAXParseException se) {
+            listener.error("SAX exception while reading sub-collection " + subDescriptor.getSymbolicPath() + " for processing: " + se.getMessage());
+        } catch(final IOException ioe) {
+            listener.error("Could not read sub-collection for processing: " + ioe.getMessage());
+        } finally {
+            if (reader != null) {
+                parserPool.returnXMLReader(reader);
+            }
+        }
+    }
+
     private void restoreDeletedEntry(final Attributes atts) {
         final String name = atts.getValue("name");
         final String type = atts.getValue("type");
@@ -512,8 +543,13 @@ public class RestoreHandler extends DefaultHandler {
         deferredPermissions.peek().addACE(index, target, who, access_type, mode);
     }
 
-    private void setDeferredPermissions() {
+    private void setDeferredPermissions(final boolean collection) {
         final DeferredPermission deferredPermission = deferredPermissions.pop();
+        if (collection && submittedSubCollections) {
+            // the sub-collections may still be being restored by other threads
+            parallelRestore.deferPermission(deferredPermission, listener);
+            return;
+        }
         try (final Txn transaction = beginTransaction()) {
             deferredPermission.apply(broker, transaction);
 
@@ -90,6 +90,8 @@ public class SystemImportHandler extends DefaultHandler {
     private int version = 0;
     private Collection currentCollection;
     private final Deque<DeferredPermission> deferredPermissions = new ArrayDeque<>();
+    @Nullable private final ParallelRestore parallelRestore;
+    private boolean submittedSubCollections = false;
 
     /**
      * @param broker the database broker
@@ -100,10 +102,27 @@ public class SystemImportHandler extends DefaultHandler {
      * @param listener the listener to report restore events to
      */
     public SystemImportHandler(final DBBroker broker, @Nullable final Txn transaction, final BackupDescriptor descriptor, final RestoreListener listener) {
+        this(broker, transaction, descriptor, listener, null);
+    }
+
+    /**
+     * @param broker the database broker
+     * @param transaction the transaction to use for the entire restore,
+     *                    or null if restoring each collection/resource
+     *                    should occur in its own transaction
+     * @param descriptor the backup descriptor to start restoring from
+     * @param listener the listener to report restore events to,
+     *                 must be thread-safe if sub-collections are restored concurrently
+     * @param parallelRestore restores sub-collections concurrently,
+     *                        or null to restore them in the calling thread
+     */
+    public SystemImportHandler(final DBBroker broker, @Nullable final Txn transaction, final BackupDescriptor descriptor,
+            final RestoreListener listener, @Nullable final ParallelRestore parallelRestore) {
         this.broker = broker;
         this.transaction = transaction;
         this.listener = listener;
         this.descriptor = descriptor;
+        this.parallelRestore = parallelRestore;
         
         rh = broker.getDatabase().getPluginsManager().getRestoreHandler();
     }
@@ -162,7 +181,7 @@ public class SystemImportHandler extends DefaultHandler {
     @Override
     public void endElement(final String namespaceURI, final String localName, final String qName) throws SAXException {
         if(namespaceURI.equals(Namespaces.EXIST_NS) && ("collection".equals(localName) || "resource".equals(localName))) {
-            setDeferredPermissions();
+            setDeferredPermissions("collection".equals(localName));
         }
         rh.endElement(namespaceURI, localName, qName);
         super.endElement(namespaceURI, localName, qName);
@@ -264,31 +283,42 @@ public class SystemImportHandler extends DefaultHandler {
         final BackupDescriptor subDescriptor = descriptor.getChildBackupDescriptor(name);
         if(subDescriptor != null) {
 
-            final XMLReaderPool parserPool = broker.getBrokerPool().getParserPool();
-            XMLReader reader = null;
-            try {
-                reader = parserPool.borrowXMLReader();
-
-                final EXistInputSource is = subDescriptor.getInputSource();
-                is.setEncoding(UTF_8.displayName());
-
-                final SystemImportHandler handler = new SystemImportHandler(broker, transaction, subDescriptor, listener);
-
-                reader.setContentHandler(handler);
-                reader.parse(is);
-            } catch(final SAXParseException e) {
-                throw new SAXException("Could not process collection: " + descriptor.getSymbolicPath(name, false), e);
-            } catch(final IOException ioe) {
-                throw new SAXException("Could not read sub-collection for processing: " + ioe.getMessage(), ioe);
-            } finally {
-                if (reader != null) {
-                    parserPool.returnXMLReader(reader);
-                }
+            if (parallelRestore != null && currentCollection != null && ParallelRestore.isConcurrent(currentCollection.getURI())) {
+                // each sub-collection restored by another thread uses its own transactions
+                submittedSubCollections = true;
+                parallelRestore.submit(subDescriptor, subBroker -> restoreSubCollection(subBroker, null, name, subDescriptor));
+            } else {
+                restoreSubCollection(broker, transaction, name, subDescriptor);
             }
         } else {
             listener.error("Collection " + descriptor.getSymbolicPath(name, false) + " does not exist or is not readable.");
         }
     }
+
+    private void restoreSubCollection(final DBBroker broker, @Nullable final Txn transaction, final String name,
+            final BackupDescriptor subDescriptor) throws SAXException {
+        final XMLReaderPool parserPool = broker.getBrokerPool().getParserPool();
+        XMLReader reader = null;
+        try {
+            reader = parserPool.borrowXMLReader();
+
+            final EXistInputSource is = subDescriptor.getInputSource();
+            is.setEncoding(UTF_8.displayName());
+
+            final SystemImportHandler handler = new SystemImportHandler(broker, transaction, subDescriptor, listener, parallelRestore);
+
+            reader.setContentHandler(handler);
+            reader.parse(is);
+        } catch(final SAXParseException e) {
+            throw new SAXException("Could not process collection: " + descriptor.getSymbolicPath(name, false), e);
+        } catch(final IOException ioe) {
+            throw new SAXException("Could not read sub-collection for processing: " + ioe.getMessage(), ioe);
+        } finally {
+            if (reader != null) {
+                parserPool.returnXMLReader(reader);
+            }
+        }
+    }
     
     private DeferredPermission restoreResourceEntry(final Attributes atts) throws SAXException {
         
@@ -488,8 +518,13 @@ public class SystemImportHandler extends DefaultHandler {
         deferredPermissions.peek().addACE(index, target, who, access_type, mode);
     }
 
-    private void setDeferredPermissions() {
+    private void setDeferredPermissions(final boolean collection) {
         final DeferredPermission deferredPermission = deferredPermissions.pop();
+        if (collection && submittedSubCollections) {
+            // the sub-collections may still be being restored by other threads
+            parallelRestore.deferPermission(deferredPermission, listener);
+            return;
+        }
         try (final Txn transaction = beginTransaction()) {
             deferredPermission.apply(broker, transaction);
 
@@ -0,0 +1,83 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.backup.restore.listener;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Serializes the calls to a {@link RestoreListener}
+ * which receives events from more than one restore thread.
+ */
+@ThreadSafe
+public class SynchronizedRestoreListener implements RestoreListener {
+
+    private final RestoreListener listener;
+
+    public SynchronizedRestoreListener(final RestoreListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public synchronized void started(final long numberOfFiles) {
+        listener.started(numberOfFiles);
+    }
+
+    @Override
+    public synchronized void processingDescriptor(final String backupDescriptor) {
+        listener.processingDescriptor(backupDescriptor);
+    }
+
+    @Override
+    public synchronized void createdCollection(final String collection) {
+        listener.createdCollection(collection);
+    }
+
+    @Override
+    public synchronized void restoredResource(final String resource) {
+        listener.restoredResource(resource);
+    }
+
+    @Override
+    public synchronized void skipResources(final String message, final long count) {
+        listener.skipResources(message, count);
+    }
+
+    @Override
+    public synchronized void info(final String message) {
+        listener.info(message);
+    }
+
+    @Override
+    public synchronized void warn(final String message) {
+        listener.warn(message);
+    }
+
+    @Override
+    public synchronized void error(final String message) {
+        listener.error(message);
+    }
+
+    @Override
+    public synchronized void finished() {
+        listener.finished();
+    }
+}
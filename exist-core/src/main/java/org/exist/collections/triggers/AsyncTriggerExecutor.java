@@ -0,0 +1,251 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.collections.triggers;
+
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.security.Subject;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.BrokerPoolService;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.Txn;
+import org.exist.util.NamedThreadFactory;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes the 'after' events of triggers once the transaction
+ * which caused them has been committed, so that they do not add
+ * to the time taken by that transaction.
+ *
+ * Events are executed by a number of threads, each in its own transaction,
+ * and are retried if they fail. Triggers which are configured with the same
+ * number of threads and of waiting events share those threads.
+ *
+ * The number of waiting events is bounded. A place for an event is reserved
+ * before the transaction which causes it is committed, without waiting; if no
+ * place is left, the trigger executes the event itself before the commit, which
+ * slows down the writers until the threads have caught up. The event is then
+ * submitted when the transaction is committed, which never waits either.
+ *
+ * As the events run concurrently with other writers, a trigger which updates
+ * documents in its own collection must not also do so in its 'before' events.
+ */
+@ThreadSafe
+public class AsyncTriggerExecutor implements BrokerPoolService {
+
+    private static final Logger LOG = LogManager.getLogger(AsyncTriggerExecutor.class);
+
+    public static final int DEFAULT_THREADS = 2;
+    public static final int DEFAULT_MAX_QUEUED_EVENTS = 10_000;
+    private static final long RETRY_DELAY_MS = 100;
+
+    private BrokerPool brokerPool;
+
+    /**
+     * "threads/maximum number of waiting events" -> the threads, and the places for events, of that configuration.
+     */
+    private final Map<String, Lane> lanes = new HashMap<>();
+    private boolean stopped = false;
+
+    @Override
+    public void prepare(final BrokerPool brokerPool) {
+        this.brokerPool = brokerPool;
+    }
+
+    private synchronized @Nullable Lane getLane(final int threads, final int maxQueuedEvents) {
+        if (stopped) {
+            return null;
+        }
+        return lanes.computeIfAbsent(threads + "/" + maxQueuedEvents, k -> new Lane(threads, maxQueuedEvents));
+    }
+
+    /**
+     * Reserves a place for an event, without waiting.
+     *
+     * @param threads the number of threads which execute the events
+     * @param maxQueuedEvents the maximum number of events which may be waiting to be executed
+     *
+     * @return the reservation, or null if there is no place left, or the database is shutting down
+     */
+    public @Nullable Reservation reserve(final int threads, final int maxQueuedEvents) {
+        final Lane lane = getLane(threads, maxQueuedEvents);
+        if (lane == null || !lane.places.tryAcquire()) {
+            return null;
+        }
+        return new Reservation(lane);
+    }
+
+    private void execute(final Subject subject, final String description, final int retries, final AsyncEvent event) {
+        for (int attempt = 0; ; attempt++) {
+            try (final DBBroker broker = brokerPool.get(Optional.of(subject));
+                 final Txn transaction = brokerPool.getTransactionManager().beginTransaction()) {
+                event.execute(broker, transaction);
+                transaction.commit();
+                return;
+            } catch (final Exception e) {
+                if (attempt >= retries) {
+                    LOG.error("Trigger event failed: {}: {}", description, e.getMessage(), e);
+                    return;
+                }
+                LOG.warn("Trigger event failed, retrying: {}: {}", description, e.getMessage());
+            }
+
+            try {
+                Thread.sleep(RETRY_DELAY_MS * (attempt + 1));
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOG.error("Trigger event abandoned: {}, interrupted whilst waiting to retry", description);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Waits for all of the events that have been submitted to be executed.
+     *
+     * @param timeout the maximum time to wait in milliseconds
+     *
+     * @return true if all of the events were executed within the timeout
+     *
+     * @throws InterruptedException if interrupted whilst waiting
+     */
+    public boolean awaitEvents(final long timeout) throws InterruptedException {
+        final List<Lane> lanes;
+        synchronized (this) {
+            lanes = new ArrayList<>(this.lanes.values());
+        }
+
+        final long end = System.currentTimeMillis() + timeout;
+        for (final Lane lane : lanes) {
+            while (lane.executor.getQueue().size() > 0 || lane.executor.getActiveCount() > 0) {
+                if (System.currentTimeMillis() > end) {
+                    return false;
+                }
+                Thread.sleep(10);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Executes the events which are still waiting, and then stops the threads.
+     */
+    @Override
+    public void stopMultiUser(final BrokerPool brokerPool) {
+        final List<Lane> lanes;
+        synchronized (this) {
+            lanes = new ArrayList<>(this.lanes.values());
+            this.lanes.clear();
+            this.stopped = true;
+        }
+
+        for (final Lane lane : lanes) {
+            lane.executor.shutdown();
+        }
+        try {
+            final long end = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+            for (final Lane lane : lanes) {
+                if (!lane.executor.awaitTermination(Math.max(0, end - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                    LOG.warn("Trigger events did not complete within 1 minute, {} events are dropped", lane.executor.shutdownNow().size());
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private class Lane {
+        final ThreadPoolExecutor executor;
+        final Semaphore places;
+
+        Lane(final int threads, final int maxQueuedEvents) {
+            // the queue is bounded by the places
+            this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(), new NamedThreadFactory(brokerPool, "async-trigger"));
+            this.places = new Semaphore(maxQueuedEvents);
+        }
+    }
+
+    /**
+     * A place reserved for an event, which must be either submitted or cancelled.
+     */
+    public class Reservation {
+        private final Lane lane;
+
+        private Reservation(final Lane lane) {
+            this.lane = lane;
+        }
+
+        /**
+         * Submits the event to be executed by another thread.
+         *
+         * @param subject the subject to execute the event as
+         * @param description a description of the event for logging
+         * @param retries the number of times to retry the event if it fails
+         * @param event the event
+         */
+        public void submit(final Subject subject, final String description, final int retries, final AsyncEvent event) {
+            try {
+                lane.executor.execute(() -> {
+                    try {
+                        execute(subject, description, retries, event);
+                    } finally {
+                        lane.places.release();
+                    }
+                });
+            } catch (final RejectedExecutionException e) {
+                lane.places.release();
+                LOG.error("Dropped trigger event: {}, the database is shutting down", description);
+            }
+        }
+
+        /**
+         * Gives up the place, as the event did not happen.
+         */
+        public void cancel() {
+            lane.places.release();
+        }
+    }
+
+    @FunctionalInterface
+    public interface AsyncEvent {
+        /**
+         * @param broker the broker of the thread executing the event
+         * @param transaction the transaction to execute the event in
+         *
+         * @throws TriggerException if the event failed
+         */
+        void execute(DBBroker broker, Txn transaction) throws TriggerException;
+    }
+}
@@ -40,9 +40,13 @@ import org.exist.source.DBSource;
 import org.exist.source.Source;
 import org.exist.source.SourceFactory;
 import org.exist.source.StringSource;
+import org.exist.security.Subject;
 import org.exist.storage.DBBroker;
 import org.exist.storage.ProcessMonitor;
+import org.exist.storage.XQueryPool;
 import org.exist.storage.txn.Txn;
+import org.exist.storage.txn.TxnListener;
+import org.exist.util.Configuration;
 import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.*;
 import org.exist.xquery.value.AnyURIValue;
@@ -65,6 +69,15 @@ import org.exist.xquery.value.StringValue;
  * <code>xxx:event</code> : the kind of triggered event
  * xxx is the namespace prefix within the XQuery, can be set by the variable "bindingPrefix"
  * 
+ * The compiled XQuery is borrowed from, and returned to, the {@link XQueryPool}.
+ * 
+ * If the parameter named "async" is set to "yes", the 'after' events are executed
+ * by the {@link AsyncTriggerExecutor} once the transaction has been committed, and are
+ * retried up to the number of times given by the parameter named "async-retries" if they fail.
+ * The parameter named "async-threads" sets the number of threads which execute the events, and
+ * "async-max-queued-events" the number of events which may be waiting; should that number be
+ * reached, then the 'after' events are executed before the commit instead.
+ * 
  * @author <a href="mailto:pierrick.brihaye@free.fr">Pierrick Brihaye</a>
  * @author <a href="mailto:adam.retter@devon.gov.uk">Adam Retter</a>
  * @author <a href="mailto:gazdovsky@gmail.com">Evgeny Gazdovsky</a>
@@ -79,6 +92,12 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
 	private final static String EVENT_TYPE_FINISH = "finish";
 	
 	private final static String DEFAULT_BINDING_PREFIX = "local:";
+
+	public final static String ASYNC_PARAM = "async";
+	public final static String ASYNC_RETRIES_PARAM = "async-retries";
+	public final static String ASYNC_THREADS_PARAM = "async-threads";
+	public final static String ASYNC_MAX_QUEUED_EVENTS_PARAM = "async-max-queued-events";
+	private final static int DEFAULT_ASYNC_RETRIES = 3;
 	
 	public final static String [] EVENTS = {
 		"CREATE-DOCUMENT", //0
@@ -133,6 +152,12 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
 	private String bindingPrefix = null;
 	private XQuery service;
 
+	/** Execute the 'after' events once the transaction has been committed */
+	private boolean async = false;
+	private int asyncRetries = DEFAULT_ASYNC_RETRIES;
+	private int asyncThreads = AsyncTriggerExecutor.DEFAULT_THREADS;
+	private int asyncMaxQueuedEvents = AsyncTriggerExecutor.DEFAULT_MAX_QUEUED_EVENTS;
+
     public final static String PREPARE_EXCEPTION_MESSAGE = "Error during trigger prepare";
 	
 	/**
@@ -183,6 +208,27 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
 					strQuery = (String) paramValue;
  				}
 
+ 				//execute the 'after' events asynchronously (if any)
+ 				else if(ASYNC_PARAM.equals(paramName)) {
+					async = Configuration.parseBoolean((String) paramValue, false);
+ 				}
+
+ 				else if(ASYNC_RETRIES_PARAM.equals(paramName)) {
+					try {
+						asyncRetries = Integer.parseInt(((String) paramValue).trim());
+					} catch (final NumberFormatException e) {
+						throw new TriggerException("Invalid value for parameter '" + ASYNC_RETRIES_PARAM + "': " + paramValue);
+					}
+ 				}
+
+ 				else if(ASYNC_THREADS_PARAM.equals(paramName)) {
+					asyncThreads = parseIntParameter(ASYNC_THREADS_PARAM, paramValue, 1);
+ 				}
+
+ 				else if(ASYNC_MAX_QUEUED_EVENTS_PARAM.equals(paramName)) {
+					asyncMaxQueuedEvents = parseIntParameter(ASYNC_MAX_QUEUED_EVENTS_PARAM, paramValue, 0);
+ 				}
+
  				//make any other parameters available as external variables for the query
  				else {
                     //TODO could be enhanced to setup a sequence etc
@@ -233,6 +279,114 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
 	
 		return querySource;
 	}
+
+	/**
+	 * Borrows the Trigger's compiled XQuery from the XQuery pool,
+	 * or compiles it if there is none in the pool
+	 *
+	 * @param broker the database broker
+	 * @param query the Source for the XQuery
+	 *
+	 * @return the compiled XQuery
+	 */
+	private CompiledXQuery borrowOrCompile(final DBBroker broker, final Source query) throws XPathException, IOException, PermissionDeniedException {
+		final XQueryPool pool = broker.getBrokerPool().getXQueryPool();
+		final CompiledXQuery compiledQuery = pool.borrowCompiledXQuery(broker, query);
+		if (compiledQuery != null) {
+			compiledQuery.getContext().prepareForReuse();
+			return compiledQuery;
+		}
+
+		final XQueryContext context = new XQueryContext(broker.getBrokerPool());
+		if (query instanceof DBSource) {
+			context.setModuleLoadPath(XmldbURI.EMBEDDED_SERVER_URI_PREFIX + ((DBSource)query).getDocumentPath().removeLastSegment().toString());
+		}
+		return service.compile(context, query);
+	}
+
+	/**
+	 * Returns the Trigger's compiled XQuery to the XQuery pool
+	 *
+	 * @param broker the database broker
+	 * @param query the Source for the XQuery
+	 * @param compiledQuery the compiled XQuery, or null if it could not be compiled
+	 */
+	private void returnToPool(final DBBroker broker, final Source query, final CompiledXQuery compiledQuery) {
+		if (compiledQuery != null) {
+			compiledQuery.getContext().runCleanupTasks();
+			broker.getBrokerPool().getXQueryPool().returnCompiledXQuery(query, compiledQuery);
+		}
+	}
+
+	private static int parseIntParameter(final String name, final Object value, final int min) throws TriggerException {
+		try {
+			final int i = Integer.parseInt(((String) value).trim());
+			if (i >= min) {
+				return i;
+			}
+		} catch (final NumberFormatException e) {
+			// reported below
+		}
+		throw new TriggerException("Invalid value for parameter '" + name + "': " + value);
+	}
+
+	/**
+	 * Executes an 'after' event once the transaction has been committed.
+	 *
+	 * The trigger is finished on the calling thread straight away, and started again
+	 * on the thread of the {@link AsyncTriggerExecutor} which executes the event.
+	 *
+	 * @param broker the database broker
+	 * @param transaction the transaction which caused the event
+	 * @param src the uri of the document or collection which caused the event
+	 * @param description a description of the event
+	 * @param event executes the event
+	 *
+	 * @return false if too many events are waiting, in which case the caller must execute the event itself
+	 */
+	private boolean afterCommit(final DBBroker broker, final Txn transaction, final XmldbURI src, final String description,
+			final AsyncTriggerExecutor.AsyncEvent event) {
+		// reserved before the commit, as the commit must not wait for a place
+		final AsyncTriggerExecutor.Reservation reservation = broker.getBrokerPool().getAsyncTriggerExecutor()
+				.reserve(asyncThreads, asyncMaxQueuedEvents);
+		if (reservation == null) {
+			LOG.debug("Too many trigger events are waiting, executing {} before the commit", description);
+			return false;
+		}
+
+		// avoid infinite recursion by allowing just one trigger per thread
+		if (!TriggerStatePerThread.verifyUniqueTriggerPerThreadBeforeFinish(this, src)) {
+			reservation.cancel();
+			return true;
+		}
+		TriggerStatePerThread.setTriggerRunningState(TriggerStatePerThread.NO_TRIGGER_RUNNING, this, null);
+		TriggerStatePerThread.setTransaction(null);
+
+		final Subject subject = broker.getCurrentSubject();
+		transaction.registerListener(new TxnListener() {
+			@Override
+			public void commit() {
+				reservation.submit(subject, description + ": " + src, asyncRetries, (asyncBroker, asyncTransaction) -> {
+					if (!TriggerStatePerThread.verifyUniqueTriggerPerThreadBeforePrepare(XQueryTrigger.this, src)) {
+						return;
+					}
+					try {
+						event.execute(asyncBroker, asyncTransaction);
+					} finally {
+						TriggerStatePerThread.setTriggerRunningState(TriggerStatePerThread.NO_TRIGGER_RUNNING, XQueryTrigger.this, null);
+						TriggerStatePerThread.setTransaction(null);
+					}
+				});
+			}
+
+			@Override
+			public void abort() {
+				// the event did not happen
+				reservation.cancel();
+			}
+		});
+		return true;
+	}
 	
 	private void prepare(int event, DBBroker broker, Txn transaction,
 			XmldbURI src, XmldbURI dst, boolean isCollection) throws TriggerException {
@@ -248,13 +402,12 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
 		}
 		TriggerStatePerThread.setTransaction(transaction);
 		
-		final XQueryContext context = new XQueryContext(broker.getBrokerPool());
-         //TODO : further initialisations ?
-        CompiledXQuery compiledQuery;
+        CompiledXQuery compiledQuery = null;
         try
         {
-        	//compile the XQuery
-        	compiledQuery = service.compile(context, query);
+        	//borrow or compile the XQuery
+        	compiledQuery = borrowOrCompile(broker, query);
+        	final XQueryContext context = compiledQuery.getContext();
 
         	//declare external variables
         	context.declareVariable(bindingPrefix + "type", EVENT_TYPE_PREPARE);
@@ -291,6 +444,7 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
             }
         	
         } catch(final XPathException | IOException | PermissionDeniedException e) {
+    		returnToPool(broker, query, compiledQuery);
     		TriggerStatePerThread.setTriggerRunningState(TriggerStatePerThread.NO_TRIGGER_RUNNING, this, null);
     		TriggerStatePerThread.setTransaction(null);
         	throw new TriggerException(PREPARE_EXCEPTION_MESSAGE, e);
@@ -307,10 +461,19 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
     		TriggerStatePerThread.setTriggerRunningState(TriggerStatePerThread.NO_TRIGGER_RUNNING, this, null);
     		TriggerStatePerThread.setTransaction(null);
         	throw new TriggerException(PREPARE_EXCEPTION_MESSAGE, e);
+        } finally {
+        	returnToPool(broker, query, compiledQuery);
         }
     }
-    
+
 	private void finish(int event, DBBroker broker, Txn transaction, XmldbURI src, XmldbURI dst, boolean isCollection) {
+		if (!async || transaction == null || !afterCommit(broker, transaction, src, "finish " + eventToString(event),
+				(asyncBroker, asyncTransaction) -> finishNow(event, asyncBroker, asyncTransaction, src, dst, isCollection))) {
+			finishNow(event, broker, transaction, src, dst, isCollection);
+		}
+	}
+    
+	private void finishNow(int event, DBBroker broker, Txn transaction, XmldbURI src, XmldbURI dst, boolean isCollection) {
 		
     	//get the query
     	final Source query = getQuerySource(broker);
@@ -321,11 +484,11 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
 		if(!TriggerStatePerThread.verifyUniqueTriggerPerThreadBeforeFinish(this, src))
 			{return;}
 		
-        final XQueryContext context = new XQueryContext(broker.getBrokerPool());
         CompiledXQuery compiledQuery = null;
         try {
-        	//compile the XQuery
-        	compiledQuery = service.compile(context, query);
+        	//borrow or compile the XQuery
+        	compiledQuery = borrowOrCompile(broker, query);
+        	final XQueryContext context = compiledQuery.getContext();
         	
         	//declare external variables
         	context.declareVariable(bindingPrefix + "type", EVENT_TYPE_FINISH);
@@ -377,6 +540,8 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
         } catch (final PermissionDeniedException e) {
         	//Should never be reached
         	LOG.error(e);
+        } finally {
+        	returnToPool(broker, query, compiledQuery);
         }
         
 		TriggerStatePerThread.setTriggerRunningState(TriggerStatePerThread.NO_TRIGGER_RUNNING, this, null);
@@ -400,15 +565,11 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
 		}
 		TriggerStatePerThread.setTransaction(transaction);
 		
-		final XQueryContext context = new XQueryContext(broker.getBrokerPool());
-        if (query instanceof DBSource) {
-            context.setModuleLoadPath(XmldbURI.EMBEDDED_SERVER_URI_PREFIX + ((DBSource)query).getDocumentPath().removeLastSegment().toString());
-        }
-
-        CompiledXQuery compiledQuery;
+        CompiledXQuery compiledQuery = null;
         try {
-        	//compile the XQuery
-        	compiledQuery = service.compile(context, query);
+        	//borrow or compile the XQuery
+        	compiledQuery = borrowOrCompile(broker, query);
+        	final XQueryContext context = compiledQuery.getContext();
 
         	//declare user defined parameters as external variables
             for (Object o : userDefinedVariables.keySet()) {
@@ -429,6 +590,7 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
         	return compiledQuery;
         } catch(final XPathException | IOException | PermissionDeniedException e) {
             LOG.warn(e.getMessage(), e);
+            returnToPool(broker, query, compiledQuery);
     		TriggerStatePerThread.setTriggerRunningState(TriggerStatePerThread.NO_TRIGGER_RUNNING, this, null);
     		TriggerStatePerThread.setTransaction(null);
         	throw new TriggerException(PREPARE_EXCEPTION_MESSAGE, e);
@@ -436,6 +598,13 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
     }
 	
 	private void execute(boolean isBefore, DBBroker broker, Txn transaction, QName functionName, XmldbURI src, XmldbURI dst) throws TriggerException {
+		if (isBefore || !async || transaction == null || !afterCommit(broker, transaction, src, functionName.getLocalPart(),
+				(asyncBroker, asyncTransaction) -> executeNow(false, asyncBroker, asyncTransaction, functionName, src, dst))) {
+			executeNow(isBefore, broker, transaction, functionName, src, dst);
+		}
+	}
+
+	private void executeNow(boolean isBefore, DBBroker broker, Txn transaction, QName functionName, XmldbURI src, XmldbURI dst) throws TriggerException {
 		final CompiledXQuery compiledQuery = getScript(isBefore, broker, transaction, src);
 		
 		if (compiledQuery == null) {return;}
@@ -491,6 +660,7 @@ public class XQueryTrigger extends SAXTrigger implements DocumentTrigger, Collec
         	}
     		compiledQuery.reset();
     		context.reset();
+    		returnToPool(broker, compiledQuery.getSource(), compiledQuery);
         }
 
         if (!isBefore) {
@@ -80,42 +80,8 @@ public abstract class AbstractCharacterData extends NodeImpl implements Characte
             count = existingDataLen - offset;
         }
 
-        final int len = arg.length();
-        final int existingCharactersLen = document.characters.length;
-        final int existingDataOffset = document.alpha[nodeNumber];
-
-        // 1) create a new array of the correct size for the data
-        final int change = len - count;
-        final int newCharactersLength = existingCharactersLen + change;
-        final char newCharacters[] = new char[newCharactersLength];
-
-        // 2) copy everything from document.characters to newCharacters that is before our offset
-        System.arraycopy(document.characters, 0, newCharacters, 0, existingDataOffset + offset);
-
-        // 3) insert our replacement data at the offset
-        System.arraycopy(arg.toCharArray(), 0, newCharacters, existingDataOffset + offset, len);
-
-        // 4) copy everything from document.characters to newCharacters that is after our offset + count
-        final int remainingExistingCharacters;
-        if(len > 0 && existingDataLen < len) {
-            // document.characters is expanding or staying the same length
-            remainingExistingCharacters = existingCharactersLen - count;
-        } else {
-            // empty `data` (i.e. replacement), or shrinking of value_
-            remainingExistingCharacters = existingCharactersLen - existingDataOffset - offset - count;
-        }
-        System.arraycopy(document.characters, existingDataOffset + offset + count, newCharacters, existingDataOffset + offset + len, remainingExistingCharacters);
-
-        // 5) replace document.characters with our newCharacters
-        document.characters = newCharacters;
-        document.alphaLen[nodeNumber] = existingDataLen + change;
-
-        // 6) renumber all offsets following our offset
-        for(int i = nodeNumber + 1; i < document.alpha.length; i++) {
-            if(document.alpha[i] > -1) {
-                document.alpha[i] += change;
-            }
-        }
+        final String data = getData();
+        setData(data.substring(0, offset) + arg + data.substring(offset + count));
     }
 
     @Override
@@ -129,35 +95,12 @@ public abstract class AbstractCharacterData extends NodeImpl implements Characte
             throw new DOMException(DOMException.INDEX_SIZE_ERR, "offset is out of bounds");
         }
 
-        final int len = arg.length();
-        final int existingDataOffset = document.alpha[nodeNumber];
-
-        // expand space for existing data and set
-
-        // 1) create a new array of the correct size for the data
-        final int existingCharactersLen = document.characters.length;
-        final int extraRequired = len;
-        final int newCharactersLen = existingCharactersLen + extraRequired;
-        final char newCharacters[] = new char[newCharactersLen];
-
-        // 2) copy everything from data to newData that is upto the end of our offset + provided offset
-        System.arraycopy(document.characters, 0, newCharacters, 0, existingDataOffset + offset);
-
-        // 3) insert our new data at the offset
-        System.arraycopy(arg.toCharArray(), 0, newCharacters, existingDataOffset + offset, len);
-
-        // 4) copy everything from data to newData that is after our our offset + provided offset
-        final int remainingExistingCharacters = existingCharactersLen - (existingDataOffset + existingDataLen);
-        System.arraycopy(document.characters, existingDataOffset + offset, newCharacters, existingDataOffset + offset + len, remainingExistingCharacters);
-
-        // 5) replace document.characters with our new characters
-        document.characters = newCharacters;
-        document.alphaLen[nodeNumber] = existingDataLen + len;
-
-        // 6) renumber all offsets following our offset
-        for(int i = nodeNumber + 1; i < document.alpha.length; i++) {
-            document.alpha[i] += extraRequired;
+        if(arg == null || arg.isEmpty()) {
+            return;
         }
+
+        final String data = getData();
+        setData(data.substring(0, offset) + arg + data.substring(offset));
     }
 
     @Override
@@ -166,36 +109,7 @@ public abstract class AbstractCharacterData extends NodeImpl implements Characte
             return;
         }
 
-        final int len = arg.length();
-        final int existingDataOffset = document.alpha[nodeNumber];
-        final int existingDataLen = document.alphaLen[nodeNumber];
-
-        // expand space for existing data and set
-
-        // 1) create a new array of the correct size for the data
-        final int existingCharactersLen = document.characters.length;
-        final int extraRequired = len;
-        final int newCharactersLen = existingCharactersLen + extraRequired;
-        final char newCharacters[] = new char[newCharactersLen];
-
-        // 2) copy everything from data to newData that is upto the end of our offset + len
-        System.arraycopy(document.characters, 0, newCharacters, 0, existingDataOffset + existingDataLen);
-
-        // 3) insert our new data after the existing data
-        System.arraycopy(arg.toCharArray(), 0, newCharacters, existingDataOffset + existingDataLen, len);
-
-        // 4) copy everything from data to newData that is after our our offset + len
-        final int remainingExistingCharacters = existingCharactersLen - (existingDataOffset + existingDataLen);
-        System.arraycopy(document.characters, existingDataOffset + existingDataLen, newCharacters, existingDataOffset + existingDataLen + len, remainingExistingCharacters);
-
-        // 5) replace document.characters with our new characters
-        document.characters = newCharacters;
-        document.alphaLen[nodeNumber] = existingDataLen + len;
-
-        // 6) renumber all offsets following our offset
-        for(int i = nodeNumber + 1; i < document.alpha.length; i++) {
-            document.alpha[i] += extraRequired;
-        }
+        setData(getData() + arg);
     }
 
     @Override
@@ -204,45 +118,9 @@ public abstract class AbstractCharacterData extends NodeImpl implements Characte
             data = "";
         }
 
-        final int len = data.length();
-        final int existingDataOffset = document.alpha[nodeNumber];
-        final int existingDataLen = document.alphaLen[nodeNumber];
-
-        if(len <= existingDataLen) {
-            // replace existing data
-
-            System.arraycopy(data.toCharArray(), 0, document.characters, existingDataOffset, len);
-            document.alphaLen[nodeNumber] = len;
-
-        } else {
-            // expand space for existing data and set
-
-            // 1) create a new array of the correct size for the data
-            final int existingCharactersLen = document.characters.length;
-            final int extraRequired = len - existingDataLen;
-            final int newCharactersLen = existingCharactersLen + extraRequired;
-            final char newCharacters[] = new char[newCharactersLen];
-
-            // 2) copy everything from data to newData that is before our offset
-            System.arraycopy(document.characters, 0, newCharacters, 0, existingDataOffset);
-
-            // 3) insert our new data
-            System.arraycopy(data.toCharArray(), 0, newCharacters, existingDataOffset, len);
-
-            // 4) copy everything from data to newData that is after our offset
-            final int remainingExistingCharacters = existingCharactersLen - (existingDataOffset + existingDataLen);
-            System.arraycopy(document.characters, existingDataOffset + existingDataLen, newCharacters, existingDataOffset + len, remainingExistingCharacters);
-
-            // 5) replace document.characters with our new characters
-            document.characters = newCharacters;
-            document.alphaLen[nodeNumber] = len;
-
-
-            // 6) renumber all offsets following our offset
-            for(int i = nodeNumber + 1; i < document.alpha.length; i++) {
-                document.alpha[i] += extraRequired;
-            }
-        }
+        // the characters of other nodes, and of attribute values, are not in document order,
+        // so rather than shifting them, a longer value is written to the end of the buffer
+        document.replaceChars(nodeNumber, data);
     }
 
     @Override
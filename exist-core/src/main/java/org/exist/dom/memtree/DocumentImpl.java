@@ -80,8 +80,14 @@ import static org.exist.dom.QName.Validity.ILLEGAL_FORMAT;
  *  * {@link #attrNodeId}
  *  * {@link #attrParent}
  *  * {@link #attrValue}
+ *  * {@link #attrValueLen}
  *  * {@link #references}
  *
+ * The values of attributes are held in {@link #characters} along with the content of the other nodes,
+ * rather than as a String object each. The arrays {@link #nodeId} and {@link #attrNodeId} are only
+ * allocated once the node ids are computed, and the arrays are trimmed to size when the document
+ * has been built, see {@link #compact()}.
+ *
  * This implementation stores all node data in the document object. Nodes from another document, i.e. a persistent document in the database, can be
  * stored as reference nodes, i.e. the nodes are not copied into this document object. Instead a reference is inserted which will only be expanded
  * during serialization.
@@ -120,7 +126,9 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
     protected int[] attrType;
     protected NodeId[] attrNodeId;
     protected int[] attrParent;
-    protected String[] attrValue;
+    // offset and length of the attribute value in characters, or -1 length for no value
+    protected int[] attrValue;
+    protected int[] attrValueLen;
     protected int nextAttr = 0;
 
     // namespaces
@@ -184,15 +192,14 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         next = new int[NODE_SIZE];
         Arrays.fill(next, -1);
         nodeName = new QName[NODE_SIZE];
-        nodeId = new NodeId[NODE_SIZE];
         alpha = new int[NODE_SIZE];
         alphaLen = new int[NODE_SIZE];
         Arrays.fill(alphaLen, -1);
         attrName = new QName[ATTR_SIZE];
         attrParent = new int[ATTR_SIZE];
-        attrValue = new String[ATTR_SIZE];
+        attrValue = new int[ATTR_SIZE];
+        attrValueLen = new int[ATTR_SIZE];
         attrType = new int[ATTR_SIZE];
-        attrNodeId = new NodeId[NODE_SIZE];
         treeLevel[0] = 0;
         nodeKind[0] = Node.DOCUMENT_NODE;
         document = this;
@@ -229,17 +236,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         if(nodeKind == null) {
             init();
         }
-        if(characters == null) {
-            characters = new char[len > CHAR_BUF_SIZE ? len : CHAR_BUF_SIZE];
-        } else if((nextChar + len) >= characters.length) {
-            int newLen = (characters.length * 3) / 2;
-            if(newLen < (nextChar + len)) {
-                newLen = nextChar + len;
-            }
-            final char[] nc = new char[newLen];
-            System.arraycopy(characters, 0, nc, 0, characters.length);
-            characters = nc;
-        }
+        ensureCharCapacity(len);
         alpha[nodeNum] = nextChar;
         alphaLen[nodeNum] = len;
         System.arraycopy(ch, start, characters, nextChar, len);
@@ -251,17 +248,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
             init();
         }
         int len = (s == null) ? 0 : s.length();
-        if(characters == null) {
-            characters = new char[(len > CHAR_BUF_SIZE) ? len : CHAR_BUF_SIZE];
-        } else if((nextChar + len) >= characters.length) {
-            int newLen = (characters.length * 3) / 2;
-            if(newLen < (nextChar + len)) {
-                newLen = nextChar + len;
-            }
-            final char[] nc = new char[newLen];
-            System.arraycopy(characters, 0, nc, 0, characters.length);
-            characters = nc;
-        }
+        ensureCharCapacity(len);
         alpha[nodeNum] = nextChar;
         alphaLen[nodeNum] = len;
         for(int i = 0; i < len; i++) {
@@ -270,17 +257,8 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
     }
 
     public void appendChars(final int nodeNum, final char[] ch, final int start, final int len) {
-        if(characters == null) {
-            characters = new char[(len > CHAR_BUF_SIZE) ? len : CHAR_BUF_SIZE];
-        } else if((nextChar + len) >= characters.length) {
-            int newLen = (characters.length * 3) / 2;
-            if(newLen < (nextChar + len)) {
-                newLen = nextChar + len;
-            }
-            final char[] nc = new char[newLen];
-            System.arraycopy(characters, 0, nc, 0, characters.length);
-            characters = nc;
-        }
+        relocateChars(nodeNum);
+        ensureCharCapacity(len);
         alphaLen[nodeNum] = alphaLen[nodeNum] + len;
         System.arraycopy(ch, start, characters, nextChar, len);
         nextChar += len;
@@ -288,6 +266,15 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
 
     public void appendChars(final int nodeNum, final CharSequence s) {
         final int len = s.length();
+        relocateChars(nodeNum);
+        ensureCharCapacity(len);
+        alphaLen[nodeNum] = alphaLen[nodeNum] + len;
+        for(int i = 0; i < len; i++) {
+            characters[nextChar++] = s.charAt(i);
+        }
+    }
+
+    private void ensureCharCapacity(final int len) {
         if(characters == null) {
             characters = new char[(len > CHAR_BUF_SIZE) ? len : CHAR_BUF_SIZE];
         } else if((nextChar + len) >= characters.length) {
@@ -295,14 +282,101 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
             if(newLen < (nextChar + len)) {
                 newLen = nextChar + len;
             }
-            final char[] nc = new char[newLen];
-            System.arraycopy(characters, 0, nc, 0, characters.length);
-            characters = nc;
+            characters = Arrays.copyOf(characters, newLen);
         }
-        alphaLen[nodeNum] = alphaLen[nodeNum] + len;
+    }
+
+    /**
+     * Moves the characters of a node to the end of {@link #characters}, if they are not
+     * already there, so that more characters can be appended to them.
+     */
+    private void relocateChars(final int nodeNum) {
+        final int start = alpha[nodeNum];
+        final int len = alphaLen[nodeNum];
+        if(start + len != nextChar) {
+            ensureCharCapacity(len);
+            System.arraycopy(characters, start, characters, nextChar, len);
+            alpha[nodeNum] = nextChar;
+            nextChar += len;
+        }
+    }
+
+    /**
+     * Replaces the characters of a node. If the new characters do not fit
+     * in place of the old ones, they are written to the end of {@link #characters}.
+     *
+     * @param nodeNum the node
+     * @param s the new characters
+     */
+    void replaceChars(final int nodeNum, final String s) {
+        final int len = s.length();
+        if(len <= alphaLen[nodeNum] && alpha[nodeNum] >= 0) {
+            s.getChars(0, len, characters, alpha[nodeNum]);
+        } else {
+            alpha[nodeNum] = addString(s);
+        }
+        alphaLen[nodeNum] = len;
+    }
+
+    /**
+     * Copies a string to the end of {@link #characters}.
+     *
+     * @param s the string
+     *
+     * @return the offset of the string in {@link #characters}
+     */
+    private int addString(final String s) {
+        final int len = s.length();
+        ensureCharCapacity(len);
+        final int start = nextChar;
+        s.getChars(0, len, characters, start);
+        nextChar += len;
+        return start;
+    }
+
+    /**
+     * Returns the value of an attribute.
+     *
+     * @param attr the number of the attribute
+     *
+     * @return the value of the attribute
+     */
+    public String getAttributeValue(final int attr) {
+        final int len = attrValueLen[attr];
+        if(len < 0) {
+            return null;
+        }
+        return new String(characters, attrValue[attr], len);
+    }
+
+    /**
+     * Sets the value of an attribute.
+     *
+     * @param attr the number of the attribute
+     * @param value the value of the attribute
+     */
+    public void setAttributeValue(final int attr, final String value) {
+        if(value == null) {
+            attrValue[attr] = 0;
+            attrValueLen[attr] = -1;
+        } else {
+            attrValue[attr] = addString(value);
+            attrValueLen[attr] = value.length();
+        }
+    }
+
+    private boolean attributeValueEquals(final int attr, final String value) {
+        final int len = attrValueLen[attr];
+        if(len != value.length()) {
+            return false;
+        }
+        final int start = attrValue[attr];
         for(int i = 0; i < len; i++) {
-            characters[nextChar++] = s.charAt(i);
+            if(characters[start + i] != value.charAt(i)) {
+                return false;
+            }
         }
+        return true;
     }
 
     public void addReferenceNode(final int nodeNum, final NodeProxy proxy) {
@@ -342,7 +416,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
             final QName prevQn = attrName[attrN];
             if(prevQn.equals(qname)) {
                 if(replaceAttribute) {
-                    attrValue[attrN] = value;
+                    setAttributeValue(attrN, value);
                     attrType[attrN] = type;
                     return attrN;
                 } else {
@@ -357,7 +431,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         final QName attrQname = new QName(qname.getLocalPart(), qname.getNamespaceURI(), qname.getPrefix(), ElementValue.ATTRIBUTE);
         attrParent[nextAttr] = nodeNum;
         attrName[nextAttr] = namePool.getSharedName(attrQname);
-        attrValue[nextAttr] = value;
+        setAttributeValue(nextAttr, value);
         attrType[nextAttr] = type;
         if(alpha[nodeNum] < 0) {
             alpha[nodeNum] = nextAttr;
@@ -404,7 +478,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
     }
 
     private void grow() {
-        final int newSize = (size * 3) / 2;
+        final int newSize = Math.max((size * 3) / 2, size + NODE_SIZE);
 
         final short[] newNodeKind = new short[newSize];
         System.arraycopy(nodeKind, 0, newNodeKind, 0, size);
@@ -423,9 +497,9 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         System.arraycopy(nodeName, 0, newNodeName, 0, size);
         nodeName = newNodeName;
 
-        final NodeId[] newNodeId = new NodeId[newSize];
-        System.arraycopy(nodeId, 0, newNodeId, 0, size);
-        nodeId = newNodeId;
+        if(nodeId != null) {
+            nodeId = Arrays.copyOf(nodeId, newSize);
+        }
 
         final int[] newAlpha = new int[newSize];
         System.arraycopy(alpha, 0, newAlpha, 0, size);
@@ -439,7 +513,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
 
     private void growAttributes() {
         final int size = attrName.length;
-        final int newSize = (size * 3) / 2;
+        final int newSize = Math.max((size * 3) / 2, size + ATTR_SIZE);
 
         final QName[] newAttrName = new QName[newSize];
         System.arraycopy(attrName, 0, newAttrName, 0, size);
@@ -449,17 +523,50 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         System.arraycopy(attrParent, 0, newAttrParent, 0, size);
         attrParent = newAttrParent;
 
-        final String[] newAttrValue = new String[newSize];
-        System.arraycopy(attrValue, 0, newAttrValue, 0, size);
-        attrValue = newAttrValue;
+        attrValue = Arrays.copyOf(attrValue, newSize);
+        attrValueLen = Arrays.copyOf(attrValueLen, newSize);
 
         final int[] newAttrType = new int[newSize];
         System.arraycopy(attrType, 0, newAttrType, 0, size);
         attrType = newAttrType;
 
-        final NodeId[] newNodeId = new NodeId[newSize];
-        System.arraycopy(attrNodeId, 0, newNodeId, 0, size);
-        attrNodeId = newNodeId;
+        if(attrNodeId != null) {
+            attrNodeId = Arrays.copyOf(attrNodeId, newSize);
+        }
+    }
+
+    /**
+     * Trims the arrays of the document to its size, once the
+     * document has been built. Nodes may still be added afterwards.
+     */
+    public void compact() {
+        if(nodeKind == null || size == 0) {
+            return;
+        }
+        if(nodeKind.length > size) {
+            nodeKind = Arrays.copyOf(nodeKind, size);
+            treeLevel = Arrays.copyOf(treeLevel, size);
+            next = Arrays.copyOf(next, size);
+            nodeName = Arrays.copyOf(nodeName, size);
+            if(nodeId != null) {
+                nodeId = Arrays.copyOf(nodeId, size);
+            }
+            alpha = Arrays.copyOf(alpha, size);
+            alphaLen = Arrays.copyOf(alphaLen, size);
+        }
+        if(attrName.length > nextAttr) {
+            attrName = Arrays.copyOf(attrName, nextAttr);
+            attrParent = Arrays.copyOf(attrParent, nextAttr);
+            attrValue = Arrays.copyOf(attrValue, nextAttr);
+            attrValueLen = Arrays.copyOf(attrValueLen, nextAttr);
+            attrType = Arrays.copyOf(attrType, nextAttr);
+            if(attrNodeId != null) {
+                attrNodeId = Arrays.copyOf(attrNodeId, nextAttr);
+            }
+        }
+        if(characters != null && characters.length > nextChar) {
+            characters = Arrays.copyOf(characters, nextChar);
+        }
     }
 
     private void growReferences() {
@@ -743,7 +850,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         if(-1 < attr) {
             while((attr < document.nextAttr) && (document.attrParent[attr] == nodeNumber)) {
                 if((document.attrType[attr] == AttrImpl.ATTR_ID_TYPE) &&
-                    id.equals(document.attrValue[attr])) {
+                    document.attributeValueEquals(attr, id)) {
                     return true;
                 }
                 ++attr;
@@ -757,7 +864,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         if(-1 < attr) {
             while((attr < document.nextAttr) && (document.attrParent[attr] == nodeNumber)) {
                 if((document.attrType[attr] == AttrImpl.ATTR_IDREF_TYPE) &&
-                    id.equals(document.attrValue[attr])) {
+                    document.attributeValueEquals(attr, id)) {
                     return new AttrImpl(this, attr);
                 }
                 ++attr;
@@ -1084,7 +1191,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
                 if(-1 < attr) {
                     while((attr < document.nextAttr) && (document.attrParent[attr] == nr)) {
                         final QName attrQName = document.attrName[attr];
-                        receiver.attribute(attrQName, attrValue[attr]);
+                        receiver.attribute(attrQName, getAttributeValue(attr));
                         ++attr;
                     }
                 }
@@ -1106,7 +1213,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
                 break;
             case Node.ATTRIBUTE_NODE:
                 final QName attrQName = document.attrName[nr];
-                receiver.attribute(attrQName, attrValue[nr]);
+                receiver.attribute(attrQName, getAttributeValue(nr));
                 break;
             case Node.COMMENT_NODE:
                 receiver.comment(document.characters, document.alpha[nr], document.alphaLen[nr]);
@@ -1194,7 +1301,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
     public NodeImpl getNodeById(final NodeId id) {
         expand();
         for(int i = 0; i < size; i++) {
-            if(id.equals(nodeId[i])) {
+            if(nodeId != null && id.equals(nodeId[i])) {
                 return getNode(i);
             }
         }
@@ -1202,9 +1309,11 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
     }
 
     private void computeNodeIds() throws EXistException {
-        if(nodeId[0] != null) {
+        if(nodeId != null && nodeId[0] != null) {
             return;
         }
+        nodeId = new NodeId[nodeKind.length];
+        attrNodeId = new NodeId[attrName.length];
         final NodeIdFactory nodeFactory = getDatabase().getNodeFactory();
         nodeId[0] = nodeFactory.documentNodeId();
         if(size == 1) {
@@ -1262,6 +1371,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         attrNodeId = newDoc.attrNodeId;
         attrParent = newDoc.attrParent;
         attrValue = newDoc.attrValue;
+        attrValueLen = newDoc.attrValueLen;
         attrType = newDoc.attrType;
         nextAttr = newDoc.nextAttr;
         namespaceParent = newDoc.namespaceParent;
@@ -1338,7 +1448,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
                     attribs = new AttrList();
                     while((attr < document.nextAttr) && (document.attrParent[attr] == nr)) {
                         final QName attrQName = document.attrName[attr];
-                        attribs.addAttribute(attrQName, attrValue[attr]);
+                        attribs.addAttribute(attrQName, getAttributeValue(attr));
                         ++attr;
                     }
                 }
@@ -1350,7 +1460,7 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
                 break;
             case Node.ATTRIBUTE_NODE:
                 final QName attrQName = document.attrName[nr];
-                receiver.attribute(attrQName, attrValue[nr]);
+                receiver.attribute(attrQName, getAttributeValue(nr));
                 break;
             case Node.COMMENT_NODE:
                 receiver.comment(document.characters, document.alpha[nr], document.alphaLen[nr]);
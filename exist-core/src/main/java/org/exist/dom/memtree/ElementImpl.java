@@ -101,7 +101,7 @@ public class ElementImpl extends NodeImpl implements Element {
             while(attr < document.nextAttr && document.attrParent[attr] == nodeNumber) {
                 final QName attrQName = document.attrName[attr];
                 if(attrQName.getStringValue().equals(name)) {
-                    return document.attrValue[attr];
+                    return document.getAttributeValue(attr);
                 }
                 ++attr;
             }
@@ -410,7 +410,7 @@ public class ElementImpl extends NodeImpl implements Element {
             while(attr < document.nextAttr && document.attrParent[attr] == nodeNumber) {
                 final QName name = document.attrName[attr];
                 if(name.getLocalPart().equals(localName) && name.getNamespaceURI().equals(namespaceURI)) {
-                    return document.attrValue[attr];
+                    return document.getAttributeValue(attr);
                 }
                 ++attr;
             }
@@ -103,6 +103,10 @@ public class MemTreeBuilder {
      * End building the document.
      */
     public void endDocument() {
+        // release the space reserved for nodes which will not be added
+        if(doc != null) {
+            doc.compact();
+        }
     }
 
 
@@ -31,6 +31,7 @@ import org.exist.collections.triggers.TriggerException;
 import org.exist.debuggee.DebuggeeFactory;
 import org.exist.dom.QName;
 import org.exist.dom.memtree.ElementImpl;
+import org.exist.dom.memtree.MemTreeBuilder;
 import org.exist.dom.memtree.NodeImpl;
 import org.exist.dom.memtree.SAXAdapter;
 import org.exist.dom.persistent.*;
@@ -60,6 +61,7 @@ import org.exist.util.io.CachingFilterInputStream;
 import org.exist.util.io.FilterInputStreamCache;
 import org.exist.util.io.FilterInputStreamCacheFactory;
 import org.exist.util.io.FilterInputStreamCacheFactory.FilterInputStreamCacheConfiguration;
+import org.exist.util.io.UTF8Writer;
 import org.exist.util.serializer.SAXSerializer;
 import org.exist.util.serializer.SerializerPool;
 import org.exist.util.serializer.XQuerySerializer;
@@ -250,6 +252,9 @@ public class RESTServer {
      *
      * <li>_xsl: an URI pointing to an XSL stylesheet that will be applied to
      * the returned XML.</li>
+     *
+     * <li>_explain: if set to "yes", "xml" or "json", the query is executed
+     * but its executed plan is returned instead of the results.</li>
      * </ul>
      *
      * @param broker the database broker
@@ -352,6 +357,9 @@ public class RESTServer {
         if ((option = getParameter(request, Session)) != null) {
             outputProperties.setProperty(Serializer.PROPERTY_SESSION_ID, option);
         }
+        if ((option = getParameter(request, Explain)) != null) {
+            setExplain(outputProperties, option);
+        }
         String stylesheet;
         if ((stylesheet = getParameter(request, XSL)) != null) {
             if ("no".equals(stylesheet)) {
@@ -797,6 +805,11 @@ public class RESTServer {
                                     Serializer.PROPERTY_SESSION_ID, option);
                         }
 
+                        option = root.getAttribute(Explain.xmlKey());
+                        if ((option != null) && (!option.isEmpty())) {
+                            setExplain(outputProperties, option);
+                        }
+
                         final NodeList children = root.getChildNodes();
                         for (int i = 0; i < children.getLength(); i++) {
 
@@ -1364,7 +1377,12 @@ public class RESTServer {
 
             try {
                 final long executeStart = System.currentTimeMillis();
-                final Sequence resultSequence = xquery.execute(broker, compiled, null, outputProperties);
+                final Sequence resultSequence;
+                if (isExplain(outputProperties)) {
+                    resultSequence = explain(broker, xquery, compiled, outputProperties);
+                } else {
+                    resultSequence = xquery.execute(broker, compiled, null, outputProperties);
+                }
                 final long executionTime = System.currentTimeMillis() - executeStart;
 
                 if (LOG.isDebugEnabled()) {
@@ -1379,7 +1397,8 @@ public class RESTServer {
                     }
                 }
 
-                writeResults(response, broker, transaction, resultSequence, howmany, start, typed, outputProperties, wrap, compilationTime, executionTime);
+                writeResults(response, broker, transaction, resultSequence, howmany, start, typed, outputProperties,
+                        wrap && !isExplain(outputProperties), compilationTime, executionTime);
 
             } finally {
                 context.runCleanupTasks();
@@ -1394,6 +1413,49 @@ public class RESTServer {
         }
     }
 
+    private static void setExplain(final Properties outputProperties, final String option) {
+        if ("no".equals(option)) {
+            outputProperties.remove(Explain.queryStringKey());
+            return;
+        }
+        outputProperties.setProperty(Explain.queryStringKey(), option);
+        if ("json".equals(option)) {
+            outputProperties.setProperty(SERIALIZATION_METHOD_PROPERTY, "json");
+        }
+    }
+
+    private static boolean isExplain(final Properties outputProperties) {
+        return outputProperties.getProperty(Explain.queryStringKey()) != null;
+    }
+
+    /**
+     * Execute the query in explain mode and return its executed plan
+     * instead of the query results.
+     */
+    private Sequence explain(final DBBroker broker, final XQuery xquery, final CompiledXQuery compiled,
+            final Properties outputProperties) throws XPathException, PermissionDeniedException {
+        final XQueryContext context = compiled.getContext();
+        context.getProfiler().startExplain();
+        try {
+            final Sequence result = xquery.execute(broker, compiled, null, outputProperties, false);
+            final QueryPlan plan = context.getProfiler().stopExplain();
+
+            context.pushDocumentContext();
+            try {
+                final MemTreeBuilder builder = context.getDocumentBuilder();
+                final AttributesImpl attrs = new AttributesImpl();
+                attrs.addAttribute("", "items", "items", "CDATA", Integer.toString(result.getItemCount()));
+                final int nodeNr = plan.toXML(builder, attrs);
+                return builder.getDocument().getNode(nodeNr);
+            } finally {
+                context.popDocumentContext();
+            }
+        } finally {
+            context.getProfiler().stopExplain();
+            context.reset();
+        }
+    }
+
     private void declareNamespaces(final XQueryContext context,
         final List<Namespace> namespaces) throws XPathException {
 
@@ -1563,7 +1625,13 @@ public class RESTServer {
 
             try {
                 final long executeStart = System.currentTimeMillis();
-                final Sequence result = xquery.execute(broker, compiled, null, outputProperties);
+                final Sequence result;
+                if (isExplain(outputProperties)) {
+                    result = explain(broker, xquery, compiled, outputProperties);
+                    wrap = false;
+                } else {
+                    result = xquery.execute(broker, compiled, null, outputProperties);
+                }
                 writeResults(response, broker, transaction, result, -1, 1, false, outputProperties, wrap, compilationTime, System.currentTimeMillis() - executeStart);
 
             } finally {
@@ -1805,7 +1873,7 @@ public class RESTServer {
                     outputProperties.setProperty("omit-xml-declaration", "no");
                 }
 
-                final OutputStreamWriter writer = new OutputStreamWriter(response.getOutputStream(), encoding);
+                final Writer writer = UTF8Writer.newWriter(response.getOutputStream(), encoding);
                 sax.setOutput(writer, outputProperties);
                 serializer.setSAXHandlers(sax, sax);
 
@@ -1958,8 +2026,7 @@ public class RESTServer {
 
         setCreatedAndLastModifiedHeaders(response, collection.getCreated(), collection.getCreated());
 
-        final OutputStreamWriter writer =
-                new OutputStreamWriter(response.getOutputStream(), encoding);
+        final Writer writer = UTF8Writer.newWriter(response.getOutputStream(), encoding);
 
         SAXSerializer serializer = null;
 
@@ -2143,7 +2210,7 @@ public class RESTServer {
             if (wrap) {
                 outputProperties.setProperty("method", "xml");
             }
-            final Writer writer = new OutputStreamWriter(response.getOutputStream(), encoding);
+            final Writer writer = UTF8Writer.newWriter(response.getOutputStream(), encoding);
             final XQuerySerializer serializer = new XQuerySerializer(broker, outputProperties, writer);
 
             //Marshaller.marshall(broker, results, start, howmany, serializer.getContentHandler());
@@ -2186,7 +2253,7 @@ public class RESTServer {
         outputProperties.setProperty(Serializer.GENERATE_DOC_EVENTS, "false");
         try {
             serializer.setProperties(outputProperties);
-            try (Writer writer = new OutputStreamWriter(response.getOutputStream(), outputProperties.getProperty(OutputKeys.ENCODING))) {
+            try (Writer writer = UTF8Writer.newWriter(response.getOutputStream(), outputProperties.getProperty(OutputKeys.ENCODING))) {
                 final JSONObject root = new JSONObject();
                 root.addObject(new JSONSimpleProperty("start", Integer.toString(start), true));
                 root.addObject(new JSONSimpleProperty("count", Integer.toString(howmany), true));
@@ -346,7 +346,38 @@ enum RESTServerParameter {
      * <exist:property name = string
      *  value = string/>
      */
-    Property;
+    Property,
+
+    /**
+     * Can be used in either the Query String of a GET request
+     * or in the body of a POST request when supplying an XPath or XQuery,
+     * or in the Query String of a GET request for a stored XQuery.
+     * The query is executed, but instead of its results the executed
+     * plan is returned, annotated with call counts, item counts, elapsed
+     * time, index usage and optimizations per expression.
+     * 
+     * Contexts: GET, POST
+     * 
+     * The value of the parameter should be "yes" or "xml" for an XML plan,
+     * "json" for a JSON plan, or "no".
+     * 
+     * The format of the plan is:
+     * 
+     * <stats:plan elapsed = number>
+     *     (stats:expr*)
+     * </stats:plan>
+     * 
+     * <stats:expr type = string
+     *  line? = number
+     *  column? = number
+     *  calls = number
+     *  items = number
+     *  elapsed = number
+     *  expression = string>
+     *     (stats:index*, stats:optimization*, stats:expr*)
+     * </stats:expr>
+     */
+    Explain;
 
     /**
      * Get the parameter key that is
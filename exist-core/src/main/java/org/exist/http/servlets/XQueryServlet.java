@@ -36,6 +36,7 @@ import org.exist.source.*;
 import org.exist.storage.DBBroker;
 import org.exist.util.Configuration;
 import org.exist.util.MimeTable;
+import org.exist.util.io.UTF8Writer;
 import org.exist.util.serializer.XQuerySerializer;
 import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.*;
@@ -50,7 +51,6 @@ import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import javax.xml.transform.OutputKeys;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.URISyntaxException;
 import java.nio.charset.Charset;
@@ -263,7 +263,7 @@ public class XQueryServlet extends AbstractExistHttpServlet {
 //            } catch (IllegalStateException e) {
 //            }
         final ServletOutputStream sout = response.getOutputStream();
-        final PrintWriter output = new PrintWriter(new OutputStreamWriter(sout, getFormEncoding()));
+        final PrintWriter output = new PrintWriter(UTF8Writer.newWriter(sout, getFormEncoding()));
 //        response.setContentType(contentType + "; charset=" + formEncoding);
         response.addHeader( "pragma", "no-cache" );
         response.addHeader( "Cache-Control", "no-cache" );
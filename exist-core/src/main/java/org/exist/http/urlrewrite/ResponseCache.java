@@ -0,0 +1,417 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.http.urlrewrite;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.security.Subject;
+import org.exist.storage.CollectionVersions;
+import org.exist.xmldb.XmldbURI;
+
+import javax.annotation.Nullable;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Server-side cache for complete responses to GET requests processed by {@link XQueryURLRewrite}.
+ *
+ * Responses are keyed by the requested URL, the user and the values of the request headers
+ * listed in the Vary header of the response. Entries expire after a fixed time and are dropped
+ * whenever one of the watched collections (any collection if none were given), or anything
+ * within them, changes.
+ *
+ * The generation of the cache is derived from the {@link CollectionVersions} of the watched
+ * collections, so the writer is not held up by clearing the cache. Entries recorded in an
+ * earlier generation are never sent, and the cache is cleared on the next lookup.
+ */
+class ResponseCache {
+
+    private static final Logger LOG = LogManager.getLogger(ResponseCache.class);
+
+    /**
+     * Responses larger than this are not cached.
+     */
+    private static final int MAX_ENTRY_SIZE = 1024 * 1024;
+
+    private final Cache<String, List<String>> varyHeaders;
+    private final Cache<String, CachedResponse> responses;
+    private final List<XmldbURI> collections;
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong clearedGeneration = new AtomicLong();
+    private volatile @Nullable CollectionVersions collectionVersions = null;
+
+    ResponseCache(final long maxEntries, final long ttl, final List<XmldbURI> collections) {
+        this.varyHeaders = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl, TimeUnit.SECONDS)
+                .build();
+        this.responses = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl, TimeUnit.SECONDS)
+                .build();
+        this.collections = collections;
+    }
+
+    /**
+     * Start watching the collections for changes.
+     *
+     * @param collectionVersions the modification stamps of the collections of the database
+     */
+    void watch(final CollectionVersions collectionVersions) {
+        this.collectionVersions = collectionVersions;
+    }
+
+    void clear() {
+        invalidate();
+        clearIfInvalidated();
+    }
+
+    /**
+     * Drop all cached responses.
+     */
+    void invalidate() {
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * Both the number of invalidations and the stamps of the collections only ever
+     * increase, so the generation changes whenever either of them does.
+     */
+    private long generation() {
+        long generation = invalidations.get();
+        final CollectionVersions versions = collectionVersions;
+        if (versions != null) {
+            if (collections.isEmpty()) {
+                generation += versions.getVersion(XmldbURI.ROOT_COLLECTION_URI);
+            } else {
+                long version = 0;
+                for (final XmldbURI collection : collections) {
+                    version = Math.max(version, versions.getVersion(collection));
+                }
+                generation += version;
+            }
+        }
+        return generation;
+    }
+
+    private void clearIfInvalidated() {
+        final long current = generation();
+        final long cleared = clearedGeneration.get();
+        if (cleared != current && clearedGeneration.compareAndSet(cleared, current)) {
+            varyHeaders.invalidateAll();
+            responses.invalidateAll();
+        }
+    }
+
+    static boolean isCacheable(final HttpServletRequest request) {
+        return "GET".equals(request.getMethod());
+    }
+
+    /**
+     * Send the cached response for the request, if there is one.
+     *
+     * @param request the http request
+     * @param user the user the request is processed for
+     * @param response the http response
+     *
+     * @return true if a cached response was sent
+     *
+     * @throws IOException if the response cannot be written
+     */
+    boolean send(final HttpServletRequest request, final Subject user, final HttpServletResponse response) throws IOException {
+        final long current = generation();
+        clearIfInvalidated();
+
+        final String url = getKey(request, user);
+        final List<String> vary = varyHeaders.getIfPresent(url);
+        if (vary == null) {
+            return false;
+        }
+        final CachedResponse cached = responses.getIfPresent(getKey(url, request, vary));
+        if (cached == null || cached.generation != current) {
+            return false;
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Using cached response for {}", url);
+        }
+        response.setStatus(HttpServletResponse.SC_OK);
+        if (cached.contentType != null) {
+            response.setContentType(cached.contentType);
+        }
+        for (final Map.Entry<String, List<String>> header : cached.headers.entrySet()) {
+            for (final String value : header.getValue()) {
+                response.addHeader(header.getKey(), value);
+            }
+        }
+        response.setContentLength(cached.data.length);
+        final ServletOutputStream os = response.getOutputStream();
+        os.write(cached.data);
+        os.flush();
+        return true;
+    }
+
+    RecordingResponseWrapper record(final HttpServletResponse response) {
+        return new RecordingResponseWrapper(response, generation());
+    }
+
+    /**
+     * Store a recorded response, unless it must not be reused or the cache
+     * was invalidated while it was being recorded.
+     *
+     * @param request the http request
+     * @param user the user the request was processed for
+     * @param recorded the response
+     */
+    void store(final HttpServletRequest request, final Subject user, final RecordingResponseWrapper recorded) {
+        if (recorded.generation != generation()) {
+            return;
+        }
+        final byte[] data = recorded.getData();
+        if (data == null || recorded.getStatus() != HttpServletResponse.SC_OK
+                || recorded.containsHeader("Set-Cookie")) {
+            return;
+        }
+        final Collection<String> cacheControl = recorded.getHeaders("Cache-Control");
+        for (final String value : cacheControl) {
+            if (value.contains("no-store")) {
+                return;
+            }
+        }
+
+        final List<String> vary = new ArrayList<>();
+        for (final String value : recorded.getHeaders("Vary")) {
+            for (final String name : value.split(",")) {
+                final String trimmed = name.trim();
+                if ("*".equals(trimmed)) {
+                    return;
+                }
+                if (!trimmed.isEmpty()) {
+                    vary.add(trimmed);
+                }
+            }
+        }
+
+        final Map<String, List<String>> headers = new LinkedHashMap<>();
+        for (final String name : recorded.getHeaderNames()) {
+            if (!"Content-Type".equalsIgnoreCase(name) && !"Content-Length".equalsIgnoreCase(name)) {
+                headers.put(name, new ArrayList<>(recorded.getHeaders(name)));
+            }
+        }
+
+        final String url = getKey(request, user);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Caching response for {}", url);
+        }
+        varyHeaders.put(url, vary);
+        responses.put(getKey(url, request, vary), new CachedResponse(recorded.generation, recorded.getContentType(), headers, data));
+    }
+
+    private static String getKey(final HttpServletRequest request, final Subject user) {
+        final StringBuilder key = new StringBuilder();
+        key.append(user.getName()).append('\n');
+        key.append(request.getHeader("Host")).append(request.getRequestURI());
+        if (request.getQueryString() != null) {
+            key.append('?').append(request.getQueryString());
+        }
+        return key.toString();
+    }
+
+    private static String getKey(final String url, final HttpServletRequest request, final List<String> vary) {
+        if (vary.isEmpty()) {
+            return url;
+        }
+        final StringBuilder key = new StringBuilder(url);
+        for (final String name : vary) {
+            key.append('\n').append(name).append(':');
+            for (final String value : Collections.list(request.getHeaders(name))) {
+                key.append(value).append(',');
+            }
+        }
+        return key.toString();
+    }
+
+    private static class CachedResponse {
+        private final long generation;
+        private final @Nullable String contentType;
+        private final Map<String, List<String>> headers;
+        private final byte[] data;
+
+        private CachedResponse(final long generation, @Nullable final String contentType,
+                final Map<String, List<String>> headers, final byte[] data) {
+            this.generation = generation;
+            this.contentType = contentType;
+            this.headers = headers;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Passes the response through to the client while keeping a copy
+     * of the content, so it can be cached afterwards.
+     */
+    static class RecordingResponseWrapper extends HttpServletResponseWrapper {
+        private final long generation;
+        private UnsynchronizedByteArrayOutputStream bytes = null;
+        private StringBuilder chars = null;
+        private ServletOutputStream sos = null;
+        private PrintWriter writer = null;
+        private boolean overflow = false;
+
+        RecordingResponseWrapper(final HttpServletResponse response, final long generation) {
+            super(response);
+            this.generation = generation;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (sos == null) {
+                bytes = new UnsynchronizedByteArrayOutputStream(512);
+                sos = new RecordingServletOutputStream(super.getOutputStream());
+            }
+            return sos;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                chars = new StringBuilder(512);
+                writer = new PrintWriter(new RecordingWriter(super.getWriter()));
+            }
+            return writer;
+        }
+
+        /**
+         * @return the content sent, or null if it was not recorded completely
+         */
+        @Nullable byte[] getData() {
+            if (overflow) {
+                return null;
+            }
+            if (writer != null) {
+                writer.flush();
+                final String encoding = getCharacterEncoding();
+                return chars.toString().getBytes(encoding == null ? UTF_8 : Charset.forName(encoding));
+            }
+            return bytes == null ? new byte[0] : bytes.toByteArray();
+        }
+
+        private boolean checkSize(final int size) {
+            if (!overflow && size > MAX_ENTRY_SIZE) {
+                overflow = true;
+                bytes = null;
+                chars = null;
+            }
+            return !overflow;
+        }
+
+        private class RecordingServletOutputStream extends ServletOutputStream {
+            private final ServletOutputStream out;
+
+            private RecordingServletOutputStream(final ServletOutputStream out) {
+                this.out = out;
+            }
+
+            @Override
+            public void write(final int b) throws IOException {
+                out.write(b);
+                if (checkSize(bytes == null ? 0 : bytes.size() + 1)) {
+                    bytes.write(b);
+                }
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                out.write(b, off, len);
+                if (checkSize(bytes == null ? 0 : bytes.size() + len)) {
+                    bytes.write(b, off, len);
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.close();
+            }
+
+            @Override
+            public boolean isReady() {
+                return out.isReady();
+            }
+
+            @Override
+            public void setWriteListener(final WriteListener writeListener) {
+                out.setWriteListener(writeListener);
+            }
+        }
+
+        private class RecordingWriter extends Writer {
+            private final Writer out;
+
+            private RecordingWriter(final Writer out) {
+                this.out = out;
+            }
+
+            @Override
+            public void write(final char[] cbuf, final int off, final int len) throws IOException {
+                out.write(cbuf, off, len);
+                if (checkSize(chars == null ? 0 : chars.length() + len)) {
+                    chars.append(cbuf, off, len);
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.close();
+            }
+        }
+    }
+}
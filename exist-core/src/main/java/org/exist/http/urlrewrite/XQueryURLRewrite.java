@@ -21,6 +21,8 @@
  */
 package org.exist.http.urlrewrite;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.apache.commons.io.input.UnsynchronizedByteArrayInputStream;
 import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
 import org.apache.logging.log4j.LogManager;
@@ -52,6 +54,7 @@ import org.exist.storage.lock.Lock.LockMode;
 import org.exist.storage.serializers.Serializer;
 import org.exist.util.LockException;
 import org.exist.util.MimeType;
+import org.exist.util.io.UTF8Writer;
 import org.exist.util.serializer.XQuerySerializer;
 import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.*;
@@ -118,8 +121,12 @@ public class XQueryURLRewrite extends HttpServlet {
     public static final String RQ_ATTR_RESULT = "org.exist.forward.result";
     public static final String RQ_ATTR_ERROR = "org.exist.forward.error";
 
+    private static final long DEFAULT_URL_CACHE_SIZE = 1000;
+    private static final long DEFAULT_RESPONSE_CACHE_TTL = 60;  // seconds
+
     private ServletConfig config;
-    private final Map<String, ModelAndView> urlCache = Collections.synchronizedMap(new TreeMap<>());
+    private Cache<String, ModelAndView> urlCache;
+    private @Nullable ResponseCache responseCache = null;
     private Subject defaultUser = null;
     private BrokerPool pool;
     // path to the query
@@ -145,6 +152,38 @@ public class XQueryURLRewrite extends HttpServlet {
         if (optSendChallenge != null) {
             sendChallenge = optSendChallenge.equalsIgnoreCase("true");
         }
+
+        urlCache = Caffeine.newBuilder()
+                .maximumSize(getLongParameter(filterConfig, "url-cache-size", DEFAULT_URL_CACHE_SIZE))
+                .build();
+
+        final long responseCacheSize = getLongParameter(filterConfig, "response-cache-size", 0);
+        if (responseCacheSize > 0) {
+            final long ttl = getLongParameter(filterConfig, "response-cache-ttl", DEFAULT_RESPONSE_CACHE_TTL);
+            final List<XmldbURI> collections = new ArrayList<>();
+            final String optCollections = filterConfig.getInitParameter("response-cache-collections");
+            if (optCollections != null) {
+                for (final String collection : optCollections.split("[\\s,]+")) {
+                    if (!collection.isEmpty()) {
+                        collections.add(XmldbURI.create(collection));
+                    }
+                }
+            }
+            responseCache = new ResponseCache(responseCacheSize, ttl, collections);
+        }
+    }
+
+    private static long getLongParameter(final ServletConfig filterConfig, final String name, final long defaultValue) {
+        final String value = filterConfig.getInitParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (final NumberFormatException e) {
+            LOG.warn("Invalid value for init parameter {}: {}", name, value);
+            return defaultValue;
+        }
     }
 
     @Override
@@ -187,6 +226,20 @@ public class XQueryURLRewrite extends HttpServlet {
             }
         }
 
+        if (responseCache != null && ResponseCache.isCacheable(request)) {
+            if (responseCache.send(request, user, response)) {
+                return;
+            }
+            final ResponseCache.RecordingResponseWrapper recorder = responseCache.record(response);
+            process(request, recorder, user, start);
+            responseCache.store(request, user, recorder);
+        } else {
+            process(request, response, user, start);
+        }
+    }
+
+    private void process(final HttpServletRequest request, final HttpServletResponse response, final Subject user,
+            final long start) throws ServletException {
         try {
             configure();
             //checkCache(user);
@@ -427,7 +480,7 @@ public class XQueryURLRewrite extends HttpServlet {
     private void response(final DBBroker broker, final HttpServletResponse response, final Properties outputProperties, final Sequence resultSequence) throws IOException {
         final String encoding = outputProperties.getProperty(OutputKeys.ENCODING);
         try (final OutputStream os = response.getOutputStream();
-                final Writer writer = new OutputStreamWriter(os, encoding);
+                final Writer writer = UTF8Writer.newWriter(os, encoding);
                 final PrintWriter printWriter = new PrintWriter(writer)) {
             if (!response.containsHeader("Content-Type")) {
                 String mimeType = outputProperties.getProperty(OutputKeys.MEDIA_TYPE);
@@ -466,7 +519,7 @@ public class XQueryURLRewrite extends HttpServlet {
         /* Make sure we have a broker *before* we synchronize on urlCache or we may run
          * into a deadlock situation (with method checkCache)
          */
-        final ModelAndView model = urlCache.get(url);
+        final ModelAndView model = urlCache.getIfPresent(url);
         if (model == null) {
             return null;
         }
@@ -478,7 +531,7 @@ public class XQueryURLRewrite extends HttpServlet {
             }
 
             if (model.getSourceInfo().source.isValid(broker) != Source.Validity.VALID) {
-                urlCache.remove(url);
+                urlCache.invalidate(url);
                 return null;
             }
 
@@ -490,7 +543,10 @@ public class XQueryURLRewrite extends HttpServlet {
     }
 
     void clearCaches() {
-        urlCache.clear();
+        urlCache.invalidateAll();
+        if (responseCache != null) {
+            responseCache.clear();
+        }
     }
 
     /**
@@ -606,6 +662,10 @@ public class XQueryURLRewrite extends HttpServlet {
             }
         }
         authenticator = new BasicAuthenticator(pool);
+
+        if (responseCache != null) {
+            responseCache.watch(pool.getCollectionVersions());
+        }
     }
 
     private void logResult(final DBBroker broker, final Sequence result) throws SAXException {
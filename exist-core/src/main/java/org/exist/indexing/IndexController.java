@@ -21,6 +21,7 @@
  */
 package org.exist.indexing;
 
+import org.exist.dom.QName;
 import org.exist.dom.persistent.AttrImpl;
 import org.exist.dom.persistent.NodeProxy;
 import org.exist.dom.persistent.TextImpl;
@@ -35,10 +36,14 @@ import org.exist.storage.NodePath;
 import org.exist.storage.txn.Txn;
 import org.exist.util.DatabaseConfigurationException;
 import org.exist.xquery.QueryRewriter;
+import org.exist.xquery.XPathException;
 import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.AtomicValue;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import javax.annotation.Nullable;
+
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -471,4 +476,26 @@ public class IndexController {
         }
         return rewriters;
     }
+
+    /**
+     * Looks up the sort key of an element in the indexes implementing {@link SortKeyIndex}.
+     *
+     * @param element the element node
+     * @param attribute the name of the attribute providing the key
+     *
+     * @return the sort key, or null if none of the indexes covers the element
+     *
+     * @throws XPathException if an index cannot be read
+     */
+    public @Nullable AtomicValue getSortKey(final NodeProxy element, final QName attribute) throws XPathException {
+        for (final IndexWorker indexWorker : indexWorkers.values()) {
+            if (indexWorker instanceof SortKeyIndex) {
+                final AtomicValue key = ((SortKeyIndex) indexWorker).getSortKey(element, attribute);
+                if (key != null) {
+                    return key;
+                }
+            }
+        }
+        return null;
+    }
 }
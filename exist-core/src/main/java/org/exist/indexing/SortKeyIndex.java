@@ -0,0 +1,52 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing;
+
+import org.exist.dom.QName;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.value.AtomicValue;
+
+import javax.annotation.Nullable;
+
+/**
+ * Indexes which keep the value of an attribute for the elements they cover should
+ * implement this interface. An "order by" expression of the form <code>$x/@attr</code>
+ * can then take its sort keys from the index instead of evaluating the expression
+ * against every node to be sorted.
+ */
+public interface SortKeyIndex extends IndexWorker {
+
+    /**
+     * Returns the value of the given attribute of an element, as it is stored
+     * in the index.
+     *
+     * @param element the element node
+     * @param attribute the name of the attribute
+     *
+     * @return the value of the attribute, {@link AtomicValue#EMPTY_VALUE} if the element
+     *      does not have the attribute, or null if the element is not covered by the index
+     *
+     * @throws XPathException if the index cannot be read
+     */
+    @Nullable AtomicValue getSortKey(NodeProxy element, QName attribute) throws XPathException;
+}
@@ -85,7 +85,9 @@ public final class JMXAgent implements Agent {
                 new DiskUsage(instance),
                 new ProcessReport(instance),
                 new BinaryValues(instance),
-                new CollectionCache(instance)
+                new CollectionCache(instance),
+                new NodeValueCache(instance),
+                new QueryPool(instance)
         );
 
         for (final PerInstanceMBean perInstanceMBean : perInstanceMBeans) {
@@ -0,0 +1,43 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.exist.management.impl;
+
+/**
+ * JMX MXBean interface for examining the XQuery Pool
+ */
+public interface QueryPoolMXBean extends PerInstanceMBean {
+
+    /**
+     * Get the time taken to warm-up the XQuery Pool after the database was started
+     *
+     * @return the time in milliseconds, or -1 if the XQuery Pool has not (yet) been warmed up
+     */
+    long getWarmUpTime();
+
+    /**
+     * Get the number of queries that were compiled when the XQuery Pool was warmed up
+     *
+     * @return the number of queries
+     */
+    int getWarmedUpQueries();
+}
@@ -30,6 +30,8 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.Database;
 import org.exist.EXistException;
+import org.exist.backup.BackupChangeLog;
+import org.exist.collections.triggers.AsyncTriggerExecutor;
 import org.exist.collections.Collection;
 import org.exist.collections.CollectionCache;
 import org.exist.collections.CollectionConfiguration;
@@ -271,6 +273,30 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
      */
     private BlobStoreService blobStoreService;
 
+    /**
+     * The log of changes since the last backup of the database instance.
+     */
+    private BackupChangeLog backupChangeLog;
+
+    /**
+     * The modification stamps of the Collections of the database instance.
+     */
+    private CollectionVersions collectionVersions;
+
+    /**
+     * The cache of the results of XQueries which opted in to result caching.
+     */
+    private XQueryResultCache xqueryResultCache;
+
+    /**
+     * Executes the 'after' events of asynchronous triggers once their transaction has committed.
+     */
+    private AsyncTriggerExecutor asyncTriggerExecutor;
+
+    private DefragmentationService defragmentationService;
+
+    private NodeValueCache nodeValueCache;
+
     /**
      * Delay (in ms) for running jobs to return when the database instance shuts down.
      */
@@ -495,6 +521,7 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
                 .filter(size -> size != -1)
                 .orElse(DEFAULT_COLLECTION_BUFFER_SIZE);
         this.collectionCache = servicesManager.register(new CollectionCache());
+        this.nodeValueCache = servicesManager.register(new NodeValueCache());
         this.notificationService = servicesManager.register(new NotificationService());
 
         this.journalManager = recoveryEnabled ? Optional.of(new JournalManager()) : Optional.empty();
@@ -505,6 +532,14 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
 
         this.blobStoreService = servicesManager.register(new BlobStoreImplService());
 
+        this.backupChangeLog = servicesManager.register(new BackupChangeLog());
+        this.collectionVersions = servicesManager.register(new CollectionVersions());
+        this.xqueryResultCache = servicesManager.register(new XQueryResultCache());
+
+        this.asyncTriggerExecutor = servicesManager.register(new AsyncTriggerExecutor());
+
+        this.defragmentationService = servicesManager.register(new DefragmentationService());
+
         this.symbols = servicesManager.register(new SymbolTable());
 
         this.expathRepo = Optional.ofNullable(new ExistRepository());
@@ -590,6 +625,10 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
                         boolean recovered = false;
                         if(isRecoveryEnabled()) {
                             recovered = runRecovery(systemBroker);
+                            if(recovered) {
+                                // changes replayed from the journal are not in the backup change log
+                                backupChangeLog.invalidate("database recovery was run");
+                            }
                             //TODO : extract the following from this block ? What if we are not transactional ? -pb
                             if(!recovered) {
                                 try {
@@ -961,6 +1000,60 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         return blobStoreService.getBlobStore();
     }
 
+    /**
+     * Returns the log of changes since the last backup.
+     *
+     * @return The backup change log
+     */
+    public BackupChangeLog getBackupChangeLog() {
+        return backupChangeLog;
+    }
+
+    /**
+     * Returns the modification stamps of the Collections.
+     *
+     * @return The Collection versions
+     */
+    public CollectionVersions getCollectionVersions() {
+        return collectionVersions;
+    }
+
+    /**
+     * Returns the cache of XQuery results.
+     *
+     * @return The XQuery result cache
+     */
+    public XQueryResultCache getXQueryResultCache() {
+        return xqueryResultCache;
+    }
+
+    /**
+     * Returns the executor for the 'after' events of asynchronous triggers.
+     *
+     * @return The asynchronous trigger executor
+     */
+    public AsyncTriggerExecutor getAsyncTriggerExecutor() {
+        return asyncTriggerExecutor;
+    }
+
+    /**
+     * Returns the service which defragments documents in the background.
+     *
+     * @return The defragmentation service
+     */
+    public DefragmentationService getDefragmentationService() {
+        return defragmentationService;
+    }
+
+    /**
+     * Returns the cache of the string values of stored element nodes.
+     *
+     * @return The node value cache
+     */
+    public NodeValueCache getNodeValueCache() {
+        return nodeValueCache;
+    }
+
     public SymbolTable getSymbols() {
         return symbols;
     }
@@ -1718,6 +1811,7 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
                     }
 
                     collectionCache.invalidateAll();
+                    nodeValueCache.invalidateAll();
 
                     // final notification to database services to shutdown
                     servicesManager.shutdown();
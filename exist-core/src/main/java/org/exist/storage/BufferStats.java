@@ -36,12 +36,21 @@ public class BufferStats {
 	private final int used;
 	private final int pageHits;
 	private final int pageFails;
+	private final long readAheadRequests;
+	private final long readAheadPages;
 
 	public BufferStats(final int size, final int used, final int hits, final int fails) {
+		this(size, used, hits, fails, 0, 0);
+	}
+
+	public BufferStats(final int size, final int used, final int hits, final int fails,
+			final long readAheadRequests, final long readAheadPages) {
 		this.size = size;
 		this.used = used;
 		this.pageHits = hits;
 		this.pageFails = fails;
+		this.readAheadRequests = readAheadRequests;
+		this.readAheadPages = readAheadPages;
 	}
 
 	public int getPageFails() {
@@ -60,4 +69,18 @@ public class BufferStats {
 		return used;
 	}
 
+	/**
+	 * @return the number of times that pages were requested to be read ahead
+	 */
+	public long getReadAheadRequests() {
+		return readAheadRequests;
+	}
+
+	/**
+	 * @return the number of pages which were read ahead
+	 */
+	public long getReadAheadPages() {
+		return readAheadPages;
+	}
+
 }
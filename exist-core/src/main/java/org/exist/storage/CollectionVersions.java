@@ -0,0 +1,212 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import net.jcip.annotations.ThreadSafe;
+import org.exist.xmldb.XmldbURI;
+
+import javax.annotation.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keeps a modification stamp for each Collection, so that anything which
+ * caches data derived from the contents of a Collection can cheaply check
+ * whether that data is still current.
+ *
+ * The stamps are fed by the {@link NativeBroker} whenever a Collection or
+ * Resource entry is written to or removed from collections.dbx. A change to a
+ * Collection or to one of its Resources gives the Collection and all of its
+ * ancestors a new stamp; a change to a whole tree of Collections additionally
+ * gives all of its descendants a new stamp, whether or not they were ever
+ * modified before.
+ *
+ * Stamps are taken from a single counter, so a stamp is never reused, not
+ * even after a Collection was removed and created again. A Collection which
+ * was not modified since the database was started has the stamp {@code 0}.
+ * The stamps are not persisted.
+ *
+ * The stamps of the descendants of a removed or moved Collection are
+ * dropped, as the stamp of the tree change covers them. Should the number
+ * of stamps still exceed a limit, then all stamps are dropped, and every
+ * Collection is given one new stamp instead.
+ */
+@ThreadSafe
+public class CollectionVersions implements BrokerPoolService {
+
+    private static final String TEMP_COLLECTION_PREFIX = XmldbURI.TEMP_COLLECTION + "/";
+
+    static final int DEFAULT_MAX_STAMPS = 100_000;
+
+    private final int maxStamps;
+    private final AtomicLong clock = new AtomicLong();
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    private final Map<String, Long> treeVersions = new ConcurrentHashMap<>();
+
+    /**
+     * The stamp of every Collection since the stamps were last dropped.
+     */
+    private volatile long floor = 0;
+
+    /**
+     * Held for reading whilst stamping, and for writing whilst dropping the stamps,
+     * so that no new stamp is lost.
+     */
+    private final ReadWriteLock stampsLock = new ReentrantReadWriteLock();
+
+    public CollectionVersions() {
+        this(DEFAULT_MAX_STAMPS);
+    }
+
+    CollectionVersions(final int maxStamps) {
+        this.maxStamps = maxStamps;
+    }
+
+    /**
+     * Record that a Collection was stored or removed.
+     *
+     * @param collectionUri the URI of the Collection
+     */
+    public void collectionChanged(final XmldbURI collectionUri) {
+        final String path = path(collectionUri);
+        if (path == null || isTemp(path)) {
+            return;
+        }
+        stampsLock.readLock().lock();
+        try {
+            stamp(path, clock.incrementAndGet());
+        } finally {
+            stampsLock.readLock().unlock();
+        }
+        limit();
+    }
+
+    /**
+     * Record that a Resource was stored or removed.
+     *
+     * @param resourceUri the URI of the Resource
+     */
+    public void resourceChanged(final XmldbURI resourceUri) {
+        collectionChanged(resourceUri.removeLastSegment());
+    }
+
+    /**
+     * Record that a Collection and all of its descendants
+     * were moved or removed.
+     *
+     * @param collectionUri the URI of the Collection
+     */
+    public void treeChanged(final XmldbURI collectionUri) {
+        final String path = path(collectionUri);
+        if (path == null || isTemp(path)) {
+            return;
+        }
+        stampsLock.readLock().lock();
+        try {
+            final long version = clock.incrementAndGet();
+            treeVersions.put(path, version);
+            stamp(path, version);
+
+            // the stamp of the tree is newer than those of its descendants
+            final String prefix = path + "/";
+            versions.keySet().removeIf(key -> key.startsWith(prefix));
+            treeVersions.keySet().removeIf(key -> key.startsWith(prefix));
+        } finally {
+            stampsLock.readLock().unlock();
+        }
+        limit();
+    }
+
+    /**
+     * Get the modification stamp of a Collection.
+     *
+     * @param collectionUri the URI of the Collection
+     *
+     * @return the stamp of the last change to the Collection or
+     *     to any of its descendants, or {@code 0} if there was none
+     */
+    public long getVersion(final XmldbURI collectionUri) {
+        String path = path(collectionUri);
+        if (path == null) {
+            return 0;
+        }
+
+        // a change to the tree of an ancestor also changed this Collection
+        long version = Math.max(floor, versions.getOrDefault(path, 0L));
+        while (!path.isEmpty()) {
+            version = Math.max(version, treeVersions.getOrDefault(path, 0L));
+            final int sep = path.lastIndexOf('/');
+            path = sep < 0 ? "" : path.substring(0, sep);
+        }
+        return version;
+    }
+
+    /**
+     * Get the number of stamps which are kept.
+     *
+     * @return the number of stamps
+     */
+    int size() {
+        return versions.size() + treeVersions.size();
+    }
+
+    private void limit() {
+        if (size() <= maxStamps) {
+            return;
+        }
+        stampsLock.writeLock().lock();
+        try {
+            if (size() > maxStamps) {
+                // raise the floor first, so that no Collection ever reads an older stamp again
+                floor = clock.incrementAndGet();
+                versions.clear();
+                treeVersions.clear();
+            }
+        } finally {
+            stampsLock.writeLock().unlock();
+        }
+    }
+
+    private static @Nullable String path(final XmldbURI uri) {
+        final String path = uri.getCollectionPath();
+        if (path != null && path.length() > 1 && path.endsWith("/")) {
+            return path.substring(0, path.length() - 1);
+        }
+        return path;
+    }
+
+    private void stamp(String path, final long version) {
+        while (!path.isEmpty()) {
+            versions.put(path, version);
+            final int sep = path.lastIndexOf('/');
+            path = sep < 0 ? "" : path.substring(0, sep);
+        }
+    }
+
+    private static boolean isTemp(final String path) {
+        return path.equals(XmldbURI.TEMP_COLLECTION) || path.startsWith(TEMP_COLLECTION_PREFIX);
+    }
+}
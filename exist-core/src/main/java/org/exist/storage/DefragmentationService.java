@@ -0,0 +1,292 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.txn.Txn;
+import org.exist.util.Configuration;
+import org.exist.xmldb.XmldbURI;
+
+import javax.annotation.Nullable;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.exist.util.ThreadUtils.newInstanceThread;
+
+/**
+ * Defragments the documents whose DOM storage has become fragmented
+ * by updates, in the background.
+ *
+ * Rather than defragmenting a document whilst the update which
+ * fragmented it waits, the document is scheduled with this service.
+ * A single thread defragments the scheduled documents one at a time,
+ * those with the most page splits first, and waits for at least
+ * {@link #PROPERTY_DEFRAGMENTATION_INTERVAL} milliseconds between two
+ * documents, so that only a bounded share of the database's time is spent
+ * defragmenting.
+ *
+ * Documents which are still scheduled when the database is shutdown are
+ * not defragmented; they will be scheduled again when they are next updated.
+ */
+@ThreadSafe
+public class DefragmentationService implements BrokerPoolService {
+
+    private static final Logger LOG = LogManager.getLogger(DefragmentationService.class);
+
+    public static final String BACKGROUND_DEFRAGMENTATION_ATTRIBUTE = "background-defragmentation";
+    public static final String PROPERTY_BACKGROUND_DEFRAGMENTATION = "xupdate.background-defragmentation";
+
+    public static final String DEFRAGMENTATION_INTERVAL_ATTRIBUTE = "defragmentation-interval";
+    public static final String PROPERTY_DEFRAGMENTATION_INTERVAL = "xupdate.defragmentation-interval";
+
+    public static final long DEFAULT_DEFRAGMENTATION_INTERVAL = 1000;
+
+    private boolean enabled;
+    private long interval;
+    private int fragmentationLimit;
+
+    private BrokerPool brokerPool;
+
+    private final Object lock = new Object();
+    @GuardedBy("lock") private final Int2ObjectMap<ScheduledDocument> scheduled = new Int2ObjectLinkedOpenHashMap<>();
+    @GuardedBy("lock") private boolean defragmenting = false;
+    @GuardedBy("lock") private boolean stopped = false;
+    @Nullable private volatile Thread thread;
+    private final AtomicLong defragmented = new AtomicLong();
+
+    @Override
+    public void configure(final Configuration configuration) {
+        this.enabled = configuration.getProperty(PROPERTY_BACKGROUND_DEFRAGMENTATION, false);
+        this.interval = Math.max(0, configuration.getProperty(PROPERTY_DEFRAGMENTATION_INTERVAL, DEFAULT_DEFRAGMENTATION_INTERVAL));
+        this.fragmentationLimit = configuration.getProperty(DBBroker.PROPERTY_XUPDATE_FRAGMENTATION_FACTOR, -1);
+    }
+
+    @Override
+    public void prepare(final BrokerPool brokerPool) {
+        this.brokerPool = brokerPool;
+    }
+
+    /**
+     * @return true if fragmented documents should be scheduled with this service,
+     *     rather than being defragmented immediately
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Schedules a document to be defragmented, if it has
+     * more page splits than the allowed fragmentation.
+     *
+     * @param doc the document
+     *
+     * @return true if the document was scheduled
+     */
+    public boolean schedule(final DocumentImpl doc) {
+        if (doc.getSplitCount() <= fragmentationLimit) {
+            return false;
+        }
+
+        synchronized (lock) {
+            if (stopped) {
+                return false;
+            }
+            scheduled.put(doc.getDocId(), new ScheduledDocument(doc.getDocId(), doc.getURI(), doc.getSplitCount(), doc.getPageCount()));
+            lock.notifyAll();
+        }
+        return true;
+    }
+
+    @Override
+    public void startMultiUser(final BrokerPool brokerPool) {
+        if (!enabled) {
+            return;
+        }
+
+        final Thread thread = newInstanceThread(brokerPool, "defragmentation", this::run);
+        thread.setDaemon(true);
+        this.thread = thread;
+        thread.start();
+    }
+
+    @Override
+    public void stopMultiUser(final BrokerPool brokerPool) {
+        synchronized (lock) {
+            stopped = true;
+            scheduled.clear();
+            lock.notifyAll();
+        }
+
+        final Thread thread = this.thread;
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.thread = null;
+        }
+    }
+
+    private void run() {
+        while (true) {
+            final ScheduledDocument next;
+            synchronized (lock) {
+                while (scheduled.isEmpty() && !stopped) {
+                    try {
+                        lock.wait();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (stopped) {
+                    return;
+                }
+
+                next = mostFragmented();
+                scheduled.remove(next.docId);
+                defragmenting = true;
+            }
+
+            defragment(next);
+
+            // rate-limit, yielding to the updates which caused the fragmentation
+            synchronized (lock) {
+                defragmenting = false;
+                lock.notifyAll();
+
+                final long end = System.currentTimeMillis() + interval;
+                long remaining;
+                while (!stopped && (remaining = end - System.currentTimeMillis()) > 0) {
+                    try {
+                        lock.wait(remaining);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    @GuardedBy("lock")
+    private ScheduledDocument mostFragmented() {
+        ScheduledDocument mostFragmented = null;
+        for (final ScheduledDocument doc : scheduled.values()) {
+            if (mostFragmented == null || doc.splitCount > mostFragmented.splitCount
+                    || (doc.splitCount == mostFragmented.splitCount && doc.pageCount > mostFragmented.pageCount)) {
+                mostFragmented = doc;
+            }
+        }
+        return mostFragmented;
+    }
+
+    private void defragment(final ScheduledDocument scheduledDoc) {
+        if (brokerPool.isShuttingDownOrDown()) {
+            return;
+        }
+
+        try (final DBBroker broker = brokerPool.get(Optional.of(brokerPool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = brokerPool.getTransactionManager().beginTransaction();
+             final LockedDocument lockedDoc = broker.getXMLResource(scheduledDoc.uri, LockMode.WRITE_LOCK)) {
+
+            // the document may have been removed, or already defragmented, since it was scheduled
+            final DocumentImpl doc = lockedDoc == null ? null : lockedDoc.getDocument();
+            if (doc == null || doc.getDocId() != scheduledDoc.docId || doc.getSplitCount() <= fragmentationLimit) {
+                transaction.commit();
+                return;
+            }
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Defragmenting {}: {} page splits in {} pages", doc.getURI(), doc.getSplitCount(), doc.getPageCount());
+            }
+            broker.defragXMLResource(transaction, doc);
+            transaction.commit();
+            defragmented.incrementAndGet();
+        } catch (final Exception e) {
+            LOG.error("Failed to defragment {}: {}", scheduledDoc.uri, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Waits until all of the scheduled documents have been defragmented.
+     *
+     * @param timeout the maximum time to wait in milliseconds
+     *
+     * @return true if all of the documents were defragmented within the timeout
+     *
+     * @throws InterruptedException if interrupted whilst waiting
+     */
+    public boolean awaitDefragmentation(final long timeout) throws InterruptedException {
+        final long end = System.currentTimeMillis() + timeout;
+        synchronized (lock) {
+            long remaining;
+            while (!stopped && (!scheduled.isEmpty() || defragmenting)) {
+                remaining = end - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                lock.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of documents waiting to be defragmented
+     */
+    public int getScheduledCount() {
+        synchronized (lock) {
+            return scheduled.size();
+        }
+    }
+
+    /**
+     * @return the number of documents which have been defragmented
+     */
+    public long getDefragmentedCount() {
+        return defragmented.get();
+    }
+
+    private static class ScheduledDocument {
+        final int docId;
+        final XmldbURI uri;
+        final int splitCount;
+        final int pageCount;
+
+        ScheduledDocument(final int docId, final XmldbURI uri, final int splitCount, final int pageCount) {
+            this.docId = docId;
+            this.uri = uri;
+            this.splitCount = splitCount;
+            this.pageCount = pageCount;
+        }
+    }
+}
@@ -163,6 +163,8 @@ public class NativeBroker extends DBBroker {
     private final CollectionStore collectionsDb;
     private final DOMFile domDb;
 
+    private final NodeValueCache nodeValueCache;
+
     /** the index processors */
     private NativeValueIndex valueIndex;
 
@@ -220,6 +222,7 @@ public class NativeBroker extends DBBroker {
 
         this.indexConfiguration = (IndexSpec) config.getProperty(Indexer.PROPERTY_INDEXER_CONFIG);
         this.xmlSerializerPool = new XmlSerializerPool(this, config, 5);
+        this.nodeValueCache = pool.getNodeValueCache();
 
         try {
             pushSubject(pool.getSecurityManager().getSystemSubject());
@@ -1566,11 +1569,17 @@ public class NativeBroker extends DBBroker {
             final Value key = new CollectionStore.CollectionKey(sourceCollectionUri.toString());
             collectionsDb.remove(transaction, key);
         }
+        pool.getBackupChangeLog().collectionChanged(sourceCollectionUri);
+        pool.getCollectionVersions().treeChanged(sourceCollectionUri);
 
         // set source path to destination... source is now the destination
         sourceCollection.setPath(destinationCollectionUri, true);
         saveCollection(transaction, sourceCollection);
 
+        // the documents of the collection are not re-written, so record that the whole collection has moved
+        pool.getBackupChangeLog().treeChanged(destinationCollectionUri);
+        pool.getCollectionVersions().treeChanged(destinationCollectionUri);
+
         // add destination to target
         targetCollection.addCollection(this, sourceCollection);
         saveCollection(transaction, targetCollection);
@@ -1653,6 +1662,11 @@ public class NativeBroker extends DBBroker {
                 try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
                     final Value key = new CollectionStore.CollectionKey(collectionUri.getRawCollectionPath());
                     collectionsDb.remove(transaction, key);
+                    pool.getBackupChangeLog().collectionChanged(collectionUri);
+                    pool.getCollectionVersions().collectionChanged(collectionUri);
+                    // the documents are not removed one by one, so if the collection is created again it has to be backed up completely
+                    pool.getBackupChangeLog().treeChanged(collectionUri);
+                    pool.getCollectionVersions().treeChanged(collectionUri);
 
                     //TODO(AR) is this the correct place to invalidate the config?
                     // Notify the collection configuration manager
@@ -1743,6 +1757,7 @@ public class NativeBroker extends DBBroker {
                     return null;
                 }
             }.run();
+            nodeValueCache.invalidate(doc.getDocId());
 
             // if it is a binary document remove the content from disk
             if (doc instanceof BinaryDocument) {
@@ -1844,6 +1859,8 @@ public class NativeBroker extends DBBroker {
                 if (address == BFile.UNKNOWN_ADDRESS) {
                     throw new IOException("Could not store collection data for '" + collection.getURI() + "', address=BFile.UNKNOWN_ADDRESS");
                 }
+                pool.getBackupChangeLog().collectionChanged(collection.getURI());
+                pool.getCollectionVersions().collectionChanged(collection.getURI());
             }
         } catch(final LockException e) {
             throw new IOException(e);
@@ -1918,9 +1935,16 @@ public class NativeBroker extends DBBroker {
 
         // reindex documents
         try {
-            for (final Iterator<DocumentImpl> i = collection.iterator(this); i.hasNext(); ) {
-                final DocumentImpl next = i.next();
-                reindexXMLResource(transaction, next, mode);
+            final Iterator<DocumentImpl> i = collection.iterator(this);
+            DocumentImpl next = i.hasNext() ? i.next() : null;
+            while (next != null) {
+                final DocumentImpl doc = next;
+                next = i.hasNext() ? i.next() : null;
+                if (next != null) {
+                    // read the pages of the next document whilst this one is reindexed
+                    domDb.readAhead(next);
+                }
+                reindexXMLResource(transaction, doc, mode);
             }
         } catch(final LockException e) {
             LOG.error("LockException while reindexing documents of collection '{}'. Skipping...", collection.getURI(), e);
@@ -1979,6 +2003,7 @@ public class NativeBroker extends DBBroker {
                     return null;
                 }
             }.run();
+            nodeValueCache.invalidate(doc.getDocId());
         }
     }
 
@@ -2139,6 +2164,8 @@ public class NativeBroker extends DBBroker {
             doc.write(os);
             final Value key = new CollectionStore.DocumentKey(doc.getCollection().getId(), doc.getResourceType(), doc.getDocId());
             collectionsDb.put(transaction, key, os.data(), true);
+            pool.getBackupChangeLog().resourceChanged(doc.getURI());
+            pool.getCollectionVersions().resourceChanged(doc.getURI());
             //} catch (ReadOnlyException e) {
             //LOG.warn(DATABASE_IS_READ_ONLY);
         } catch(final LockException e) {
@@ -2853,6 +2880,7 @@ public class NativeBroker extends DBBroker {
                 return null;
             }
         }.run();
+        nodeValueCache.invalidate(document.getDocId());
     }
 
     @Override
@@ -2889,6 +2917,8 @@ public class NativeBroker extends DBBroker {
             }
             final Value key = new CollectionStore.DocumentKey(document.getCollection().getId(), document.getResourceType(), document.getDocId());
             collectionsDb.remove(transaction, key);
+            pool.getBackupChangeLog().resourceChanged(document.getURI());
+            pool.getCollectionVersions().resourceChanged(document.getURI());
         } catch(final LockException e) {
             LOG.error("Failed to acquire lock on {}", FileUtils.fileName(collectionsDb.getFile()));
         }
@@ -3024,6 +3054,7 @@ public class NativeBroker extends DBBroker {
                     return null;
                 }
             }.run();
+            nodeValueCache.invalidate(doc.getDocId());
             doc.copyChildren(tempDoc);
             doc.setSplitCount(0);
             doc.setPageCount(tempDoc.getPageCount());
@@ -3139,6 +3170,7 @@ public class NativeBroker extends DBBroker {
                 return null;
             }
         }.run();
+        nodeValueCache.invalidate(doc.getDocId());
         ++nodesCount;
         ByteArrayPool.releaseByteArray(data);
         nodeProcessor.reset(transaction, node, currentPath, indexSpec);
@@ -3162,6 +3194,7 @@ public class NativeBroker extends DBBroker {
                     return null;
                 }
             }.run();
+            nodeValueCache.invalidate(doc.getDocId());
             ByteArrayPool.releaseByteArray(data);
         } catch(final Exception e) {
             final Value oldVal = new DOMTransaction<Value>(this, domDb, () -> lockManager.acquireBtreeReadLock(domDb.getLockName())) {
@@ -3201,6 +3234,7 @@ public class NativeBroker extends DBBroker {
                 return null;
             }
         }.run();
+        nodeValueCache.invalidate(doc.getDocId());
         ByteArrayPool.releaseByteArray(data);
     }
 
@@ -3303,6 +3337,7 @@ public class NativeBroker extends DBBroker {
                 return null;
             }
         }.run();
+        nodeValueCache.invalidate(doc.getDocId());
         notifyRemoveNode(node, currentPath, content);
         final QName qname;
         switch(node.getNodeType()) {
@@ -3553,6 +3588,15 @@ public class NativeBroker extends DBBroker {
 
     @Override
     public String getNodeValue(final IStoredNode node, final boolean addWhitespace) {
+        // the type of a node which was reached through a NodeProxy is often not known, it is most likely an element
+        final short nodeType = node.getNodeType();
+        if (!addWhitespace && (nodeType == Node.ELEMENT_NODE || nodeType == NodeProxy.UNKNOWN_NODE_TYPE) && nodeValueCache.isEnabled()) {
+            return nodeValueCache.get(((DocumentImpl) node.getOwnerDocument()).getDocId(), node.getNodeId(), () -> readNodeValue(node, false));
+        }
+        return readNodeValue(node, addWhitespace);
+    }
+
+    private String readNodeValue(final IStoredNode node, final boolean addWhitespace) {
         return new DOMTransaction<String>(this, domDb, () -> lockManager.acquireBtreeReadLock(domDb.getLockName())) {
             @Override
             public String start() {
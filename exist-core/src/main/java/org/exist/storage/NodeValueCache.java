@@ -0,0 +1,239 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.collections.CollectionCache;
+import org.exist.numbering.NodeId;
+import org.exist.util.Configuration;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the string values of stored element nodes, keyed by
+ * document id and node id.
+ *
+ * Reading the string value of a stored element visits all of its
+ * descendant text nodes in the DOM storage, which for large elements
+ * that are atomized repeatedly may dominate the time taken by a query.
+ *
+ * The cache is disabled unless {@link #PROPERTY_CACHE_SIZE_BYTES} is
+ * greater than zero, in which case it holds at most approximately that many
+ * bytes of string values.
+ *
+ * Rather than searching for the entries of a document when it is modified,
+ * the documents are divided into stripes by their document id, and each
+ * stripe has a generation which is incremented by {@link #invalidate(int)}.
+ * A cached value is only returned whilst the generation of its stripe is
+ * the one which was current before the value was read from the DOM storage.
+ *
+ * @see NativeBroker#getNodeValue(org.exist.dom.persistent.IStoredNode, boolean)
+ */
+@ThreadSafe
+public class NodeValueCache implements BrokerPoolService {
+
+    private static final Logger LOG = LogManager.getLogger(NodeValueCache.class);
+
+    public static final String CACHE_SIZE_ATTRIBUTE = "nodeValueCache";
+    public static final String PROPERTY_CACHE_SIZE_BYTES = "db-connection.node-value-cache-mem";
+
+    private static final int STRIPES = 1024;    // must be a power of two
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+    private int maxCacheSize = 0;
+    @Nullable private Cache<Key, CachedValue> cache;
+    private StatsCounter statsCounter = new ConcurrentStatsCounter();
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+
+    @Override
+    public void configure(final Configuration configuration) {
+        this.maxCacheSize = Math.max(0, configuration.getInteger(PROPERTY_CACHE_SIZE_BYTES));
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("NodeValueCache will use {} bytes max.", this.maxCacheSize);
+        }
+    }
+
+    @Override
+    public void prepare(final BrokerPool brokerPool) {
+        if (maxCacheSize == 0) {
+            return;
+        }
+
+        this.statsCounter = new ConcurrentStatsCounter();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxCacheSize)
+                .weigher((Key key, CachedValue cached) -> ENTRY_OVERHEAD_BYTES + (2 * cached.value.length()))
+                .recordStats(() -> statsCounter)
+                .build();
+    }
+
+    /**
+     * @return true if string values are cached
+     */
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * Returns the maximum size of the cache in bytes
+     *
+     * @return maximum size of the cache in bytes, or 0 if the cache is disabled
+     */
+    public int getMaxCacheSize() {
+        return maxCacheSize;
+    }
+
+    /**
+     * Returns the string value of a node from the cache, or reads and
+     * caches it if it is not present.
+     *
+     * @param docId the id of the document containing the node
+     * @param nodeId the id of the node
+     * @param reader reads the string value of the node from the DOM storage
+     *
+     * @return the string value of the node
+     */
+    public String get(final int docId, final NodeId nodeId, final Supplier<String> reader) {
+        final Cache<Key, CachedValue> cache = this.cache;
+        if (cache == null) {
+            return reader.get();
+        }
+
+        final Key key = new Key(docId, nodeId);
+        final long generation = generations.get(stripe(docId));
+
+        // NOTE: Map#get does not record statistics, stale values must count as misses
+        final CachedValue cached = cache.asMap().get(key);
+        if (cached != null && cached.generation == generation) {
+            statsCounter.recordHits(1);
+            return cached.value;
+        }
+        statsCounter.recordMisses(1);
+
+        final long start = System.nanoTime();
+        final String value = reader.get();
+        if (value == null) {
+            statsCounter.recordLoadFailure(System.nanoTime() - start);
+            return null;
+        }
+        statsCounter.recordLoadSuccess(System.nanoTime() - start);
+
+        // a value read whilst the document was being modified is stale as soon as it is cached
+        cache.put(key, new CachedValue(generation, value));
+        return value;
+    }
+
+    /**
+     * Invalidates the cached string values of the nodes of a document.
+     *
+     * Must be called after the DOM storage of the document has been modified.
+     *
+     * @param docId the id of the document
+     */
+    public void invalidate(final int docId) {
+        if (cache != null) {
+            generations.incrementAndGet(stripe(docId));
+        }
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public void invalidateAll() {
+        final Cache<Key, CachedValue> cache = this.cache;
+        if (cache != null) {
+            for (int i = 0; i < STRIPES; i++) {
+                generations.incrementAndGet(i);
+            }
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * Get a Snapshot of the Cache Statistics
+     *
+     * @return The cache statistics
+     */
+    public CollectionCache.Statistics getStatistics() {
+        final CacheStats cacheStats = statsCounter.snapshot();
+        return new CollectionCache.Statistics(
+                cacheStats.hitCount(),
+                cacheStats.missCount(),
+                cacheStats.loadSuccessCount(),
+                cacheStats.loadFailureCount(),
+                cacheStats.totalLoadTime(),
+                cacheStats.evictionCount(),
+                cacheStats.evictionWeight()
+        );
+    }
+
+    private static int stripe(final int docId) {
+        return docId & (STRIPES - 1);
+    }
+
+    private static final class Key {
+        private final int docId;
+        private final NodeId nodeId;
+
+        Key(final int docId, final NodeId nodeId) {
+            this.docId = docId;
+            this.nodeId = nodeId;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return docId == other.docId && nodeId.equals(other.nodeId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * docId + nodeId.hashCode();
+        }
+    }
+
+    private static final class CachedValue {
+        private final long generation;
+        private final String value;
+
+        CachedValue(final long generation, final String value) {
+            this.generation = generation;
+            this.value = value;
+        }
+    }
+}
@@ -26,9 +26,20 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.dom.persistent.DocumentImpl;
 import org.exist.numbering.NodeId;
+import org.exist.util.NamedThreadFactory;
 
-import java.util.IdentityHashMap;
-import java.util.Map;
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 import org.exist.dom.persistent.IStoredNode;
 
@@ -37,6 +48,13 @@ import org.exist.dom.persistent.IStoredNode;
  * can subscribe to this service to be notified of document modifications,
  * removals or additions.
  *
+ * By default listeners are called on the thread which modified the document.
+ * Listeners which do not need to see the change before the writer continues,
+ * e.g. to invalidate a cache, may be subscribed with
+ * {@link #subscribeAsync(UpdateListener, int, OverflowPolicy)} instead. They
+ * are then called on a separate thread, from a bounded queue of pending
+ * notifications.
+ *
  * @author wolf
  */
 @ThreadSafe
@@ -45,19 +63,101 @@ public class NotificationService implements BrokerPoolService {
     private static final long serialVersionUID = -3629584664969740903L;
     private static final Logger LOG = LogManager.getLogger(NotificationService.class);
 
-    private final Map<UpdateListener, Object> listeners = new IdentityHashMap<>();
+    /**
+     * What to do when the queue of an asynchronously notified listener is full.
+     */
+    public enum OverflowPolicy {
+        /** wait until the listener has caught up */
+        BLOCK,
+        /** discard the oldest pending notification */
+        DROP_OLDEST,
+        /** discard the new notification */
+        DROP_NEWEST
+    }
+
+    /**
+     * Statistics of an asynchronously notified listener.
+     */
+    public interface AsyncDeliveryStats {
+
+        /**
+         * @return the number of notifications waiting to be delivered
+         */
+        int getPending();
+
+        /**
+         * @return the number of notifications delivered
+         */
+        long getDelivered();
+
+        /**
+         * @return the number of notifications discarded because the queue was full
+         */
+        long getDropped();
+
+        /**
+         * @return the time in milliseconds between the last notification and its delivery
+         */
+        long getLastLag();
+
+        /**
+         * @return the longest time in milliseconds between a notification and its delivery
+         */
+        long getMaxLag();
+    }
+
+    // copied on every change, so notifications can iterate without locking
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private @Nullable BrokerPool pool = null;
+    private @Nullable ExecutorService executor = null;
 
     public NotificationService() {
         super();
     }
 
+    @Override
+    public void prepare(final BrokerPool brokerPool) {
+        this.pool = brokerPool;
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
     /**
      * Subscribe an {@link UpdateListener} to receive notifications.
      *
      * @param listener to receive notifications for
      */
     public synchronized void subscribe(final UpdateListener listener) {
-        listeners.put(listener, new Object());
+        subscriptions.removeIf(subscription -> subscription.listener == listener);
+        subscriptions.add(new Subscription(listener));
+    }
+
+    /**
+     * Subscribe an {@link UpdateListener} to receive notifications asynchronously.
+     * The listener is called on a separate thread and must not rely on the state
+     * of the document passed to it, which may already have changed again.
+     *
+     * @param listener to receive notifications for
+     * @param queueSize maximum number of notifications waiting to be delivered
+     * @param overflowPolicy what to do when the queue is full
+     */
+    public synchronized void subscribeAsync(final UpdateListener listener, final int queueSize,
+            final OverflowPolicy overflowPolicy) {
+        if (executor == null) {
+            final NamedThreadFactory threadFactory = pool == null ?
+                    new NamedThreadFactory(null, null, "notification-service") :
+                    new NamedThreadFactory(pool, "notification-service");
+            executor = Executors.newCachedThreadPool(threadFactory);
+        }
+        subscriptions.removeIf(subscription -> subscription.listener == listener);
+        subscriptions.add(new AsyncSubscription(listener, queueSize, overflowPolicy, executor));
     }
 
     /**
@@ -66,13 +166,37 @@ public class NotificationService implements BrokerPoolService {
      * @param listener to stop receiving updates for
      */
     public synchronized void unsubscribe(final UpdateListener listener) {
-        final Object i = listeners.remove(listener);
-        if (i == null) {
+        Subscription found = null;
+        for (final Subscription subscription : subscriptions) {
+            if (subscription.listener == listener) {
+                found = subscription;
+                break;
+            }
+        }
+        if (found == null) {
             throw new RuntimeException(hashCode() + " listener not found: " + listener.hashCode());
         }
+        subscriptions.remove(found);
+        found.close();
         listener.unsubscribe();
     }
 
+    /**
+     * Get the delivery statistics of an asynchronously notified listener.
+     *
+     * @param listener the listener
+     *
+     * @return the statistics, or null if the listener is not subscribed asynchronously
+     */
+    public @Nullable AsyncDeliveryStats getAsyncDeliveryStats(final UpdateListener listener) {
+        for (final Subscription subscription : subscriptions) {
+            if (subscription.listener == listener && subscription instanceof AsyncSubscription) {
+                return (AsyncSubscription) subscription;
+            }
+        }
+        return null;
+    }
+
     /**
      * Notify all subscribers that a document has been updated/removed or
      * a new document has been added.
@@ -80,8 +204,10 @@ public class NotificationService implements BrokerPoolService {
      * @param document subscribers are listining to
      * @param event that triggers the notify
      */
-    public synchronized void notifyUpdate(final DocumentImpl document, final int event) {
-        listeners.keySet().forEach(listener -> listener.documentUpdated(document, event));
+    public void notifyUpdate(final DocumentImpl document, final int event) {
+        for (final Subscription subscription : subscriptions) {
+            subscription.deliver(listener -> listener.documentUpdated(document, event));
+        }
     }
 
     /**
@@ -90,14 +216,169 @@ public class NotificationService implements BrokerPoolService {
      * @param newNode the new node
      * @param oldNodeId old node that have been moved
      */
-    public synchronized void notifyMove(final NodeId oldNodeId, final IStoredNode newNode) {
-        listeners.keySet().forEach(listener -> listener.nodeMoved(oldNodeId, newNode));
+    public void notifyMove(final NodeId oldNodeId, final IStoredNode newNode) {
+        for (final Subscription subscription : subscriptions) {
+            subscription.deliver(listener -> listener.nodeMoved(oldNodeId, newNode));
+        }
     }
 
-    public synchronized void debug() {
+    public void debug() {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Registered UpdateListeners:");
         }
-        listeners.keySet().forEach(UpdateListener::debug);
+        for (final Subscription subscription : subscriptions) {
+            subscription.listener.debug();
+            if (LOG.isDebugEnabled() && subscription instanceof AsyncSubscription) {
+                final AsyncSubscription async = (AsyncSubscription) subscription;
+                LOG.debug("pending: {}, delivered: {}, dropped: {}, last lag: {}ms, max lag: {}ms",
+                        async.getPending(), async.getDelivered(), async.getDropped(), async.getLastLag(),
+                        async.getMaxLag());
+            }
+        }
+    }
+
+    private static class Subscription {
+        final UpdateListener listener;
+
+        Subscription(final UpdateListener listener) {
+            this.listener = listener;
+        }
+
+        void deliver(final Consumer<UpdateListener> notification) {
+            notification.accept(listener);
+        }
+
+        void close() {
+        }
+    }
+
+    private static class AsyncSubscription extends Subscription implements AsyncDeliveryStats, Runnable {
+        private final BlockingQueue<Notification> queue;
+        private final OverflowPolicy overflowPolicy;
+        private final ExecutorService executor;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean closed = false;
+
+        private final LongAdder delivered = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+        private volatile long lastLag = 0;
+        private final AtomicLong maxLag = new AtomicLong();
+
+        AsyncSubscription(final UpdateListener listener, final int queueSize, final OverflowPolicy overflowPolicy,
+                final ExecutorService executor) {
+            super(listener);
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+            this.overflowPolicy = overflowPolicy;
+            this.executor = executor;
+        }
+
+        @Override
+        void deliver(final Consumer<UpdateListener> notification) {
+            if (closed) {
+                return;
+            }
+            final Notification pending = new Notification(notification);
+            switch (overflowPolicy) {
+                case BLOCK:
+                    try {
+                        queue.put(pending);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        dropped.increment();
+                    }
+                    break;
+
+                case DROP_OLDEST:
+                    while (!queue.offer(pending)) {
+                        if (queue.poll() != null) {
+                            dropped.increment();
+                        }
+                    }
+                    break;
+
+                case DROP_NEWEST:
+                    if (!queue.offer(pending)) {
+                        dropped.increment();
+                    }
+                    break;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (!closed && scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (final RejectedExecutionException e) {
+                    // the service has been shut down
+                    scheduled.set(false);
+                    dropped.add(queue.size());
+                    queue.clear();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Notification pending;
+                while (!closed && (pending = queue.poll()) != null) {
+                    final long lag = (System.nanoTime() - pending.created) / 1_000_000;
+                    lastLag = lag;
+                    maxLag.accumulateAndGet(lag, Math::max);
+                    try {
+                        pending.notification.accept(listener);
+                    } catch (final RuntimeException e) {
+                        LOG.error("UpdateListener failed: {}", e.getMessage(), e);
+                    }
+                    delivered.increment();
+                }
+            } finally {
+                scheduled.set(false);
+                if (!queue.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+
+        @Override
+        void close() {
+            closed = true;
+            queue.clear();
+        }
+
+        @Override
+        public int getPending() {
+            return queue.size();
+        }
+
+        @Override
+        public long getDelivered() {
+            return delivered.sum();
+        }
+
+        @Override
+        public long getDropped() {
+            return dropped.sum();
+        }
+
+        @Override
+        public long getLastLag() {
+            return lastLag;
+        }
+
+        @Override
+        public long getMaxLag() {
+            return maxLag.get();
+        }
+    }
+
+    private static class Notification {
+        final long created = System.nanoTime();
+        final Consumer<UpdateListener> notification;
+
+        Notification(final Consumer<UpdateListener> notification) {
+            this.notification = notification;
+        }
     }
 }
@@ -32,23 +32,48 @@
  */
 package org.exist.storage;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.text.NumberFormat;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
+import antlr.collections.AST;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import net.jcip.annotations.ThreadSafe;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.exist.EXistException;
+import org.exist.dom.persistent.BinaryDocument;
+import org.exist.dom.persistent.LockedDocument;
 import org.exist.security.Permission;
 import org.exist.security.PermissionDeniedException;
 import org.exist.source.DBSource;
+import org.exist.source.FileSource;
 import org.exist.source.Source;
+import org.exist.storage.lock.Lock.LockMode;
 import org.exist.util.Configuration;
 import org.exist.util.Holder;
+import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.*;
 
+import javax.annotation.Nullable;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.exist.util.ThreadUtils.newInstanceThread;
+
 /**
  * Global pool for compiled XQuery expressions.
  *
@@ -58,6 +83,16 @@ import org.exist.xquery.*;
  * For each XQuery, a maximum of {@link #DEFAULT_MAX_QUERY_STACK_SIZE} compiled
  * expressions are kept in the pool.
  *
+ * The pool also keeps the parsed syntax tree of each library module that
+ * has been imported, so that compiling a query which imports a module
+ * that another query has already imported only has to analyze the module,
+ * and not also parse it again.
+ *
+ * If warm-up is enabled, the pool records how often each query stored in the
+ * database or the file system has been used, writes those counts to the data
+ * directory at shutdown, and then compiles the most used queries again in the
+ * background when the database is next started.
+ *
  * @author <a href="mailto:adam@evolvedbinary.com">Adam Retter</a>
  */
 @ThreadSafe
@@ -68,25 +103,50 @@ public class XQueryPool implements BrokerPoolService {
     public static final String CONFIGURATION_ELEMENT_NAME = "query-pool";
     public static final String MAX_STACK_SIZE_ATTRIBUTE = "max-stack-size";
     public static final String POOL_SIZE_ATTTRIBUTE = "size";
+    public static final String MODULE_CACHE_SIZE_ATTRIBUTE = "module-cache-size";
+    public static final String WARM_UP_ATTRIBUTE = "warm-up";
 
     public static final String PROPERTY_MAX_STACK_SIZE = "db-connection.query-pool.max-stack-size";
     public static final String PROPERTY_POOL_SIZE = "db-connection.query-pool.size";
+    public static final String PROPERTY_MODULE_CACHE_SIZE = "db-connection.query-pool.module-cache-size";
+    public static final String PROPERTY_WARM_UP = "db-connection.query-pool.warm-up";
+
+    static final String WARM_UP_FILE_NAME = "query-pool.warm";
 
     private static final int DEFAULT_MAX_POOL_SIZE = 128;
     private static final int DEFAULT_MAX_QUERY_STACK_SIZE = 64;
+    private static final int DEFAULT_MAX_MODULE_CACHE_SIZE = 256;
 
     private int maxPoolSize = DEFAULT_MAX_POOL_SIZE;
     private int maxQueryStackSize = DEFAULT_MAX_QUERY_STACK_SIZE;
+    private int maxModuleCacheSize = DEFAULT_MAX_MODULE_CACHE_SIZE;
+    private boolean warmUp = false;
+    @Nullable private Path warmUpFile;
 
     /**
      * Source -> Deque of compiled Queries
      */
     private Cache<Source, Deque<CompiledXQuery>> cache;
 
+    /**
+     * Source -> Parsed Library Module
+     */
+    private Cache<Source, ParsedModule> moduleCache;
+
+    /**
+     * Source type and path -> Usage, only recorded when warm-up is enabled
+     */
+    private Cache<String, Usage> usage;
+
+    @Nullable private volatile Thread warmUpThread;
+    private volatile long warmUpTime = -1;
+    private final AtomicInteger warmedUpQueries = new AtomicInteger();
+
     @Override
     public void configure(final Configuration configuration) {
         final Integer maxStSz = (Integer) configuration.getProperty(PROPERTY_MAX_STACK_SIZE);
         final Integer maxPoolSz = (Integer) configuration.getProperty(PROPERTY_POOL_SIZE);
+        final Integer maxModuleCacheSz = (Integer) configuration.getProperty(PROPERTY_MODULE_CACHE_SIZE);
         final NumberFormat nf = NumberFormat.getNumberInstance();
 
         if (maxPoolSz != null) {
@@ -101,11 +161,193 @@ public class XQueryPool implements BrokerPoolService {
             this.maxQueryStackSize = DEFAULT_MAX_QUERY_STACK_SIZE;
         }
 
+        if (maxModuleCacheSz != null) {
+            this.maxModuleCacheSize = maxModuleCacheSz;
+        } else {
+            this.maxModuleCacheSize = DEFAULT_MAX_MODULE_CACHE_SIZE;
+        }
+
         this.cache = Caffeine.newBuilder()
                 .maximumSize(maxPoolSize)
                 .build();
 
-        LOG.info("QueryPool: size = {}; maxQueryStackSize = {}", nf.format(maxPoolSize), nf.format(maxQueryStackSize));
+        this.moduleCache = Caffeine.newBuilder()
+                .maximumSize(Math.max(0, maxModuleCacheSize))
+                .build();
+
+        this.warmUp = configuration.getProperty(PROPERTY_WARM_UP, false);
+        final Path dataDir = (Path) configuration.getProperty(BrokerPool.PROPERTY_DATA_DIR);
+        if (warmUp && dataDir == null) {
+            LOG.warn("QueryPool: warm-up is disabled, could not determine {} from the configuration", BrokerPool.PROPERTY_DATA_DIR);
+            this.warmUp = false;
+        }
+        this.warmUpFile = dataDir != null ? dataDir.resolve(WARM_UP_FILE_NAME) : null;
+
+        this.usage = Caffeine.newBuilder()
+                .maximumSize(Math.max(0, maxPoolSize))
+                .build();
+
+        LOG.info("QueryPool: size = {}; maxQueryStackSize = {}; moduleCacheSize = {}; warmUp = {}", nf.format(maxPoolSize), nf.format(maxQueryStackSize), nf.format(maxModuleCacheSize), warmUp);
+    }
+
+    @Override
+    public void startMultiUser(final BrokerPool brokerPool) {
+        if (!warmUp || !Files.exists(warmUpFile)) {
+            return;
+        }
+
+        final List<Usage> usages = readUsage();
+        if (usages.isEmpty()) {
+            return;
+        }
+
+        final Thread thread = newInstanceThread(brokerPool, "query-pool.warm-up", () -> warmUp(brokerPool, usages));
+        thread.setDaemon(true);
+        this.warmUpThread = thread;
+        thread.start();
+    }
+
+    @Override
+    public void stopMultiUser(final BrokerPool brokerPool) {
+        final Thread thread = warmUpThread;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            warmUpThread = null;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        if (warmUp) {
+            writeUsage();
+        }
+    }
+
+    /**
+     * Compiles the queries which were used before the database was last shutdown,
+     * and places them in the pool.
+     *
+     * @param brokerPool the database
+     * @param usages the queries to compile, the most used first
+     */
+    private void warmUp(final BrokerPool brokerPool, final List<Usage> usages) {
+        final long start = System.currentTimeMillis();
+        try (final DBBroker broker = brokerPool.get(Optional.of(brokerPool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xqueryService = brokerPool.getXQueryService();
+            for (final Usage entry : usages) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+
+                try {
+                    final Source source = entry.getSource(broker);
+                    if (source == null) {
+                        continue;
+                    }
+
+                    final XQueryContext context = new XQueryContext(brokerPool);
+                    if (entry.moduleLoadPath != null) {
+                        context.setModuleLoadPath(entry.moduleLoadPath);
+                    }
+                    final CompiledXQuery compiledXQuery = xqueryService.compile(context, source);
+
+                    cache.asMap().compute(source, (key, value) -> {
+                        final Deque<CompiledXQuery> deque = value != null ? value : new ArrayDeque<>(maxQueryStackSize);
+                        deque.offerLast(compiledXQuery);
+                        return deque;
+                    });
+                    warmedUpQueries.incrementAndGet();
+                } catch (final XPathException | IOException | PermissionDeniedException | RuntimeException e) {
+                    LOG.warn("QueryPool: unable to warm-up query {}: {}", entry.path, e.getMessage());
+                }
+            }
+        } catch (final EXistException e) {
+            LOG.error("QueryPool: unable to warm-up: {}", e.getMessage(), e);
+        }
+
+        this.warmUpTime = System.currentTimeMillis() - start;
+        LOG.info("QueryPool: warmed up {} of {} queries in {} ms", warmedUpQueries.get(), usages.size(), warmUpTime);
+    }
+
+    private List<Usage> readUsage() {
+        final List<Usage> usages = new ArrayList<>();
+        try (final BufferedReader reader = Files.newBufferedReader(warmUpFile, UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null && usages.size() < maxPoolSize) {
+                final String[] fields = line.split("\t", 4);
+                if (fields.length != 4) {
+                    continue;
+                }
+                final Usage entry = new Usage(fields[1], fields[3], fields[2].isEmpty() ? null : fields[2]);
+                entry.hits.add(Long.parseLong(fields[0]));
+                usages.add(entry);
+            }
+        } catch (final IOException | NumberFormatException e) {
+            LOG.warn("QueryPool: unable to read warm-up file {}: {}", warmUpFile, e.getMessage());
+        }
+
+        // keep the counts until the queries are used again
+        for (final Usage entry : usages) {
+            usage.put(Usage.key(entry.type, entry.path), entry);
+        }
+
+        return usages;
+    }
+
+    private void writeUsage() {
+        final List<Usage> usages = new ArrayList<>(usage.asMap().values());
+        usages.sort(Comparator.comparingLong((Usage entry) -> entry.hits.sum()).reversed());
+
+        final Path tmp = warmUpFile.resolveSibling(WARM_UP_FILE_NAME + ".tmp");
+        try {
+            try (final Writer writer = Files.newBufferedWriter(tmp, UTF_8)) {
+                for (final Usage entry : usages) {
+                    writer.write(Long.toString(entry.hits.sum()));
+                    writer.write('\t');
+                    writer.write(entry.type);
+                    writer.write('\t');
+                    writer.write(entry.moduleLoadPath != null ? entry.moduleLoadPath : "");
+                    writer.write('\t');
+                    writer.write(entry.path);
+                    writer.write('\n');
+                }
+            }
+            Files.move(tmp, warmUpFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            LOG.warn("QueryPool: unable to write warm-up file {}: {}", warmUpFile, e.getMessage());
+        }
+    }
+
+    private void recordUsage(final Source source, final CompiledXQuery compiledXQuery) {
+        if (!warmUp || !(source instanceof DBSource || source instanceof FileSource)) {
+            return;
+        }
+
+        usage.get(Usage.key(source.type(), source.path()), key -> new Usage(source.type(), source.path(), compiledXQuery.getContext().getModuleLoadPath()))
+                .hits.increment();
+    }
+
+    /**
+     * Get the time taken to warm-up the pool after the database was started.
+     *
+     * @return the time in milliseconds, or -1 if the pool has not (yet) been warmed up.
+     */
+    public long getWarmUpTime() {
+        return warmUpTime;
+    }
+
+    /**
+     * Get the number of queries that were compiled when the pool was warmed up.
+     *
+     * @return the number of queries.
+     */
+    public int getWarmedUpQueries() {
+        return warmedUpQueries.get();
     }
 
     /**
@@ -131,6 +373,8 @@ public class XQueryPool implements BrokerPoolService {
 
             return deque;
         });
+
+        recordUsage(source, compiledXQuery);
     }
 
     /**
@@ -216,10 +460,113 @@ public class XQueryPool implements BrokerPoolService {
         return compiledXQuery.isValid();
     }
 
+    /**
+     * Returns the parsed syntax tree of a library module to the XQuery pool.
+     *
+     * The syntax tree is shared by all queries which import the module, and so
+     * must not be modified after it has been returned.
+     *
+     * @param source The source of the library module.
+     * @param ast The syntax tree produced by parsing the source.
+     */
+    public void returnModule(final Source source, final AST ast) {
+        if (source == null || ast == null || maxModuleCacheSize <= 0) {
+            return;
+        }
+        moduleCache.put(source, new ParsedModule(source, ast));
+    }
+
+    /**
+     * Borrows the parsed syntax tree of a library module from the XQuery pool.
+     *
+     * Unlike a compiled XQuery, the syntax tree does not have to be returned
+     * after use, as it is not bound to the context of the importing query.
+     *
+     * @param broker A database broker.
+     * @param source The source of the library module.
+     *
+     * @return The syntax tree of the library module, or null if
+     *     there is no valid syntax tree in the XQuery pool.
+     */
+    public @Nullable AST borrowModule(final DBBroker broker, final Source source) {
+        if (broker == null || source == null) {
+            return null;
+        }
+
+        final ParsedModule parsedModule = moduleCache.asMap().computeIfPresent(source, (key, value) -> {
+            Source.Validity validity = value.source.isValid(broker);
+            if (validity == Source.Validity.UNKNOWN) {
+                validity = value.source.isValid(source);
+            }
+
+            if (validity == Source.Validity.INVALID || validity == Source.Validity.UNKNOWN) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("{} is invalid, removing module from XQuery Pool...", source.pathOrShortIdentifier());
+                }
+
+                // module is invalid, returning null will remove the entry from the cache
+                return null;
+            }
+
+            return value;
+        });
+
+        return parsedModule != null ? parsedModule.ast : null;
+    }
+
     /**
      * Removes all entries from the XQuery Pool.
      */
     public void clear() {
         cache.invalidateAll();
+        moduleCache.invalidateAll();
+    }
+
+    /**
+     * How often a query stored in the database or the file system has been used.
+     */
+    private static class Usage {
+        private final String type;
+        private final String path;
+        @Nullable private final String moduleLoadPath;
+        private final LongAdder hits = new LongAdder();
+
+        private Usage(final String type, final String path, @Nullable final String moduleLoadPath) {
+            this.type = type;
+            this.path = path;
+            this.moduleLoadPath = moduleLoadPath;
+        }
+
+        private static String key(final String type, final String path) {
+            return type + ':' + path;
+        }
+
+        private @Nullable Source getSource(final DBBroker broker) throws PermissionDeniedException, IOException {
+            if ("DB".equals(type)) {
+                try (final LockedDocument lockedDoc = broker.getXMLResource(XmldbURI.create(path), LockMode.READ_LOCK)) {
+                    if (lockedDoc == null || !(lockedDoc.getDocument() instanceof BinaryDocument)) {
+                        return null;
+                    }
+                    return new DBSource(broker, (BinaryDocument) lockedDoc.getDocument(), true);
+                }
+            } else if ("File".equals(type)) {
+                final Path file = Paths.get(path);
+                if (!Files.isReadable(file)) {
+                    return null;
+                }
+                return new FileSource(file, true);
+            }
+            return null;
+        }
+    }
+
+    private static class ParsedModule {
+        private final Source source;
+        private final AST ast;
+
+        private ParsedModule(final Source source, final AST ast) {
+            this.source = source;
+            this.ast = ast;
+        }
     }
 }
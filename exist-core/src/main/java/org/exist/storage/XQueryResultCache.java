@@ -0,0 +1,340 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.dom.QName;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.http.servlets.RequestWrapper;
+import org.exist.security.Subject;
+import org.exist.source.DBSource;
+import org.exist.source.Source;
+import org.exist.util.Configuration;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.Option;
+import org.exist.xquery.Variable;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceIterator;
+import org.exist.xquery.value.Type;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Global cache for the results of XQueries.
+ *
+ * Only queries which declare the option {@code exist:cache-result} are cached,
+ * e.g. {@code declare option exist:cache-result "collections=/db/data ttl=60";}.
+ * The option accepts the parameters:
+ * <ul>
+ *     <li>{@code collections} a comma separated list of the Collections the
+ *     result depends on, defaults to {@code /db}</li>
+ *     <li>{@code ttl} the maximum number of seconds a result is kept,
+ *     defaults to keeping the result until one of the Collections changes</li>
+ * </ul>
+ *
+ * Results are looked up by the {@link Source} of the query, the values
+ * bound to its external variables, the calling user, and if the query is
+ * executed by an HTTP GET or HEAD request, the request URI and parameters.
+ * Queries executed by any other HTTP method are not cached. A result is
+ * discarded as soon as the {@link CollectionVersions} of one of the
+ * Collections it depends on differs from the versions observed before
+ * the query was executed.
+ *
+ * Only results consisting of atomic values and stored nodes are cached.
+ * In-memory nodes belong to the context of the query which constructed
+ * them, so they can not be shared with other queries.
+ *
+ * Side effects of a query, e.g. HTTP response headers it sets, are not
+ * replayed when a cached result is returned, so only queries without side
+ * effects should declare the option.
+ */
+@ThreadSafe
+public class XQueryResultCache implements BrokerPoolService {
+
+    private static final Logger LOG = LogManager.getLogger(XQueryResultCache.class);
+
+    public static final String RESULT_CACHE_SIZE_ATTRIBUTE = "result-cache-size";
+    public static final String PROPERTY_RESULT_CACHE_SIZE = "db-connection.query-pool.result-cache-size";
+
+    private static final int DEFAULT_RESULT_CACHE_SIZE = 128;
+
+    private static final XmldbURI[] DEFAULT_COLLECTIONS = { XmldbURI.ROOT_COLLECTION_URI };
+
+    private int maxSize = DEFAULT_RESULT_CACHE_SIZE;
+    private Cache<String, Entry> cache;
+    private CollectionVersions collectionVersions;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Override
+    public void configure(final Configuration configuration) {
+        final Integer size = (Integer) configuration.getProperty(PROPERTY_RESULT_CACHE_SIZE);
+        this.maxSize = size != null ? Math.max(0, size) : DEFAULT_RESULT_CACHE_SIZE;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .build();
+        LOG.info("XQueryResultCache: size = {}", maxSize);
+    }
+
+    @Override
+    public void prepare(final BrokerPool brokerPool) {
+        this.collectionVersions = brokerPool.getCollectionVersions();
+    }
+
+    /**
+     * Prepare the lookup of the result of a query.
+     *
+     * This must be called before the query is executed, as it records
+     * the versions of the Collections the result depends on.
+     *
+     * @param context the context of the compiled query, with its external variables bound
+     * @param subject the user executing the query
+     *
+     * @return the request, or null if the query did not opt in to
+     *     result caching, or its result cannot be cached
+     *
+     * @throws XPathException if the value of an external variable cannot be read
+     */
+    public @Nullable Request request(final XQueryContext context, final Subject subject) throws XPathException {
+        if (maxSize == 0) {
+            return null;
+        }
+        final Option option = context.getOption(Option.CACHE_RESULT_QNAME);
+        if (option == null) {
+            return null;
+        }
+
+        final String key = key(context, subject);
+        if (key == null) {
+            return null;
+        }
+
+        XmldbURI[] collections = DEFAULT_COLLECTIONS;
+        long ttl = 0;
+        for (final String param : option.tokenizeContents()) {
+            final String[] kv = Option.parseKeyValuePair(param);
+            if (kv == null) {
+                continue;
+            }
+            if ("collections".equals(kv[0])) {
+                final List<XmldbURI> uris = new ArrayList<>();
+                for (final String path : kv[1].split(",")) {
+                    if (!path.trim().isEmpty()) {
+                        uris.add(XmldbURI.create(path.trim()));
+                    }
+                }
+                if (!uris.isEmpty()) {
+                    collections = uris.toArray(new XmldbURI[0]);
+                }
+            } else if ("ttl".equals(kv[0])) {
+                try {
+                    ttl = TimeUnit.SECONDS.toMillis(Long.parseLong(kv[1]));
+                } catch (final NumberFormatException e) {
+                    LOG.warn("Invalid ttl for option {}: {}", Option.CACHE_RESULT_QNAME, kv[1]);
+                }
+            }
+        }
+
+        final long[] versions = new long[collections.length];
+        for (int i = 0; i < collections.length; i++) {
+            versions[i] = collectionVersions.getVersion(collections[i]);
+        }
+        return new Request(key, versions, ttl);
+    }
+
+    /**
+     * Get the cached result of a query.
+     *
+     * @param request the request for the result
+     *
+     * @return the result, or null if there is no current result
+     */
+    public @Nullable Sequence get(final Request request) {
+        final Entry entry = cache.getIfPresent(request.key);
+        if (entry != null) {
+            if (entry.expires != 0 && entry.expires <= System.currentTimeMillis()) {
+                cache.asMap().remove(request.key, entry);
+            } else if (Arrays.equals(entry.versions, request.versions)) {
+                hits.incrementAndGet();
+                return entry.result;
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Cache the result of a query.
+     *
+     * @param request the request the result was looked up with
+     * @param result the result of the query
+     */
+    public void put(final Request request, final Sequence result) {
+        try {
+            if (!isCacheable(result)) {
+                return;
+            }
+        } catch (final XPathException e) {
+            LOG.warn("Unable to inspect result of query for caching: {}", e.getMessage());
+            return;
+        }
+        final long expires = request.ttl > 0 ? System.currentTimeMillis() + request.ttl : 0;
+        cache.put(request.key, new Entry(result, request.versions, expires));
+    }
+
+    /**
+     * Remove all cached results.
+     */
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static @Nullable String key(final XQueryContext context, final Subject subject) throws XPathException {
+        final StringBuilder key = new StringBuilder();
+        final Source source = context.getSource();
+        if (source == null) {
+            return null;
+        }
+        key.append(source.type()).append('|').append(source.getKey());
+        if (source instanceof DBSource) {
+            key.append('|').append(((DBSource) source).getLastModified());
+        }
+        append(key, subject.getName());
+
+        for (final Map.Entry<QName, Variable> variable : context.getGlobalVariables().entrySet()) {
+            append(key, variable.getKey().toURIQualifiedName());
+            final Sequence value = variable.getValue().getValue();
+            if (value != null && !appendValue(key, value)) {
+                return null;
+            }
+        }
+
+        final XQueryContext.HttpContext httpContext = context.getHttpContext();
+        if (httpContext != null && httpContext.getRequest() != null) {
+            final RequestWrapper request = httpContext.getRequest();
+            final String method = request.getMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                return null;
+            }
+            append(key, request.getRequestURI());
+            final List<String> names = Collections.list(request.getParameterNames());
+            Collections.sort(names);
+            for (final String name : names) {
+                append(key, name);
+                final String[] values = request.getParameterValues(name);
+                if (values != null) {
+                    for (final String value : values) {
+                        append(key, value);
+                    }
+                }
+            }
+        }
+        return key.toString();
+    }
+
+    private static boolean appendValue(final StringBuilder key, final Sequence value) throws XPathException {
+        key.append('[');
+        for (final SequenceIterator i = value.iterate(); i.hasNext(); ) {
+            final Item item = i.nextItem();
+            key.append(item.getType());
+            if (item instanceof NodeProxy) {
+                final NodeProxy node = (NodeProxy) item;
+                append(key, node.getOwnerDocument().getDocId() + "/" + node.getNodeId());
+            } else if (Type.subTypeOf(item.getType(), Type.ATOMIC)) {
+                append(key, item.getStringValue());
+            } else {
+                return false;
+            }
+        }
+        key.append(']');
+        return true;
+    }
+
+    private static void append(final StringBuilder key, final String value) {
+        key.append('|').append(value.length()).append(':').append(value);
+    }
+
+    /**
+     * In-memory nodes hold the context of the query which constructed them,
+     * which is needed to store, expand or resolve them, so only results of
+     * atomic values and stored nodes are cached.
+     */
+    private static boolean isCacheable(final Sequence result) throws XPathException {
+        for (final SequenceIterator i = result.iterate(); i.hasNext(); ) {
+            final Item item = i.nextItem();
+            if (!(item instanceof NodeProxy) && !Type.subTypeOf(item.getType(), Type.ATOMIC)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The lookup of the result of a query.
+     */
+    public static final class Request {
+        private final String key;
+        private final long[] versions;
+        private final long ttl;
+
+        private Request(final String key, final long[] versions, final long ttl) {
+            this.key = key;
+            this.versions = versions;
+            this.ttl = ttl;
+        }
+    }
+
+    private static final class Entry {
+        private final Sequence result;
+        private final long[] versions;
+        private final long expires;
+
+        private Entry(final Sequence result, final long[] versions, final long expires) {
+            this.result = result;
+            this.versions = versions;
+            this.expires = expires;
+        }
+    }
+}
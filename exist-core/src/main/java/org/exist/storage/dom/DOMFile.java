@@ -29,6 +29,7 @@ import java.nio.file.Path;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.List;
+import javax.annotation.Nullable;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
@@ -166,6 +167,10 @@ public class DOMFile extends BTree implements Lockable {
 
     public static final short FILE_FORMAT_VERSION_ID = 10;
 
+    public static final String READ_AHEAD_ATTRIBUTE = "readAhead";
+    public static final String PROPERTY_READ_AHEAD = "db-connection.read-ahead";
+    public static final int DEFAULT_READ_AHEAD = 0;
+
     private final LockManager lockManager;
 
     //Page types
@@ -188,6 +193,8 @@ public class DOMFile extends BTree implements Lockable {
 
     private final AddValueLoggable addValueLog = new AddValueLoggable();
 
+    @Nullable private final DOMFileReadAhead readAhead;
+
     public DOMFile(final BrokerPool pool, final byte id, final Path dataDir, final Configuration config) throws DBException {
         super(pool, id, FILE_FORMAT_VERSION_ID, true, pool.getCacheManager());
         this.lockManager = pool.getLockManager();
@@ -208,6 +215,8 @@ public class DOMFile extends BTree implements Lockable {
             }
             create();
         }
+        final int maxReadAhead = config.getProperty(PROPERTY_READ_AHEAD, DEFAULT_READ_AHEAD);
+        this.readAhead = maxReadAhead > 0 ? new DOMFileReadAhead(pool, this, maxReadAhead) : null;
         config.setProperty(getConfigKeyForFile(), this);
     }
 
@@ -305,10 +314,58 @@ public class DOMFile extends BTree implements Lockable {
         if (LOG.isDebugEnabled() && !lockManager.isBtreeLockedForWrite(getLockName())) {
             LOG.debug("The file doesn't own a write lock");
         }
+        if (readAhead != null) {
+            readAhead.close();
+        }
         super.close();
         cacheManager.deregisterCache(dataCache);
     }
 
+    /**
+     * Creates the read-ahead cursor of an iteration over data pages.
+     *
+     * @return the read-ahead cursor of the iteration, or null if read-ahead is disabled
+     */
+    @Nullable DOMFileReadAhead.Cursor newReadAheadCursor() {
+        return readAhead == null ? null : readAhead.newCursor();
+    }
+
+    /**
+     * Asynchronously reads ahead the first data pages of a document,
+     * which is about to be iterated over. This is only done when
+     * reindexing a collection; queries over a set of documents
+     * do not read ahead the next document.
+     *
+     * @param doc the document
+     */
+    public void readAhead(final DocumentImpl doc) {
+        if (readAhead == null || doc.getResourceType() != DocumentImpl.XML_FILE) {
+            return;
+        }
+        final long firstChild = doc.getFirstChildAddress();
+        if (StorageAddress.hasAddress(firstChild)) {
+            readAhead.readAhead(StorageAddress.pageFromPointer(firstChild));
+        }
+    }
+
+    /**
+     * Reads the number of the next data page from the raw data of a page.
+     *
+     * @param data the data of the page, including its header
+     *
+     * @return the number of the next data page, or {@link #NO_PAGE}
+     *     if the page is the last page, or not a data page
+     *
+     * @throws IOException if the page header cannot be read
+     */
+    long getNextDataPage(final byte[] data) throws IOException {
+        final DOMFilePageHeader pageHeader = new DOMFilePageHeader(data, 0);
+        if (pageHeader.getStatus() != RECORD) {
+            return NO_PAGE;
+        }
+        return pageHeader.getNextDataPage();
+    }
+
     void setCurrentDocument(final DocumentImpl doc) {
         if(LOG.isDebugEnabled() && !lockManager.isBtreeLocked(getLockName())) {
             LOG.debug("The file doesn't own a lock");
@@ -1415,8 +1472,12 @@ public class DOMFile extends BTree implements Lockable {
     }
 
     public BufferStats getDataBufferStats() {
-        return new BufferStats(dataCache.getBuffers(), dataCache.getUsedBuffers(), 
-            dataCache.getHits(), dataCache.getFails());
+        if (readAhead == null) {
+            return new BufferStats(dataCache.getBuffers(), dataCache.getUsedBuffers(),
+                dataCache.getHits(), dataCache.getFails());
+        }
+        return new BufferStats(dataCache.getBuffers(), dataCache.getUsedBuffers(),
+            dataCache.getHits(), dataCache.getFails(), readAhead.getRequests(), readAhead.getPagesRead());
     }
 
 
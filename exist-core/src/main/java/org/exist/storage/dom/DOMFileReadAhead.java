@@ -0,0 +1,248 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.dom;
+
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.btree.Paged;
+import org.exist.util.FileUtils;
+import org.exist.util.NamedThreadFactory;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.exist.storage.btree.Paged.Page.NO_PAGE;
+
+/**
+ * Reads the linked data pages of a {@link DOMFile} ahead of a
+ * {@link NodeIterator}, so that iterating over the nodes of a document
+ * on a cold cache does not wait for one synchronous read per page.
+ *
+ * The pages are read asynchronously by a single thread, through a
+ * separate read-only channel and without holding the lock of the DOMFile,
+ * into the operating system's file cache; the data pages themselves are still
+ * loaded into the DOMFile's buffer cache by the iterator, under its lock. As the
+ * pages are read without the lock, a page may be read while it is modified,
+ * in which case the read-ahead simply follows a stale link.
+ *
+ * Each iteration has a {@link Cursor}, which only starts to read ahead once
+ * the iteration follows the link to a next page, so iterations confined to a
+ * single page cost nothing. The window of pages to read ahead starts at
+ * {@link #MIN_WINDOW} pages, and is doubled each time the iteration consumes
+ * half of the pages which were read ahead, up to a configured maximum.
+ *
+ * At most {@link #MAX_PENDING} read-ahead requests wait for the thread; further
+ * requests are dropped, and the cursor tries again when the iteration moves on.
+ */
+@ThreadSafe
+final class DOMFileReadAhead {
+
+    private static final Logger LOG = LogManager.getLogger(DOMFileReadAhead.class);
+
+    static final int MIN_WINDOW = 4;
+    static final int MAX_PENDING = 16;
+
+    private final DOMFile db;
+    private final int maxWindow;
+    private final ExecutorService executor;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong pagesRead = new AtomicLong();
+
+    // only accessed by the read-ahead thread
+    @Nullable private FileChannel channel;
+    @Nullable private ByteBuffer buffer;
+
+    DOMFileReadAhead(final BrokerPool pool, final DOMFile db, final int maxWindow) {
+        this.db = db;
+        this.maxWindow = Math.max(MIN_WINDOW, maxWindow);
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_PENDING), new NamedThreadFactory(pool, "dom-read-ahead"));
+    }
+
+    /**
+     * Starts a read-ahead for an iteration over the pages of a document.
+     *
+     * @return the cursor of the iteration
+     */
+    Cursor newCursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Reads ahead the first pages of a document which is about to be iterated.
+     *
+     * @param pageNum the page containing the first node of the document
+     */
+    void readAhead(final long pageNum) {
+        if (pageNum == NO_PAGE) {
+            return;
+        }
+        final Cursor cursor = new Cursor();
+        cursor.running.set(true);
+        cursor.nextPage = pageNum;
+        submit(cursor);
+    }
+
+    /**
+     * @return the number of read-ahead requests which have been made
+     */
+    long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return the number of pages which have been read ahead
+     */
+    long getPagesRead() {
+        return pagesRead.get();
+    }
+
+    void close() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (final IOException e) {
+                LOG.warn("Failed to close read-ahead channel for {}: {}", FileUtils.fileName(db.getFile()), e.getMessage(), e);
+            }
+            channel = null;
+        }
+    }
+
+    private void submit(final Cursor cursor) {
+        try {
+            executor.execute(() -> run(cursor));
+            requests.incrementAndGet();
+        } catch (final RejectedExecutionException e) {
+            // too many pending requests, or the file is being closed
+            cursor.running.set(false);
+        }
+    }
+
+    private void run(final Cursor cursor) {
+        try {
+            while (!cursor.closed && cursor.ahead.get() < cursor.window) {
+                final long pageNum = cursor.nextPage;
+                if (pageNum == NO_PAGE) {
+                    cursor.exhausted = true;
+                    break;
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                cursor.nextPage = readPage(pageNum);
+                cursor.ahead.incrementAndGet();
+                pagesRead.incrementAndGet();
+            }
+        } catch (final IOException e) {
+            LOG.debug("Read-ahead failed in {}: {}", FileUtils.fileName(db.getFile()), e.getMessage());
+            cursor.exhausted = true;
+        } finally {
+            cursor.running.set(false);
+        }
+    }
+
+    /**
+     * Reads a data page.
+     *
+     * @param pageNum the number of the page
+     *
+     * @return the number of the next data page, or {@link Paged.Page#NO_PAGE}
+     */
+    private long readPage(final long pageNum) throws IOException {
+        final Paged.FileHeader fileHeader = db.getFileHeader();
+        if (channel == null) {
+            channel = FileChannel.open(db.getFile(), StandardOpenOption.READ);
+            buffer = ByteBuffer.allocate(fileHeader.getPageSize());
+        }
+
+        final long offset = fileHeader.getHeaderSize() + (pageNum * fileHeader.getPageSize());
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                return NO_PAGE;
+            }
+        }
+        return db.getNextDataPage(buffer.array());
+    }
+
+    /**
+     * The read-ahead state of a single iteration.
+     */
+    final class Cursor {
+        private final AtomicBoolean running = new AtomicBoolean();
+        private final AtomicInteger ahead = new AtomicInteger();
+        private volatile long nextPage = NO_PAGE;
+        private volatile int window = MIN_WINDOW;
+        private volatile boolean exhausted = false;
+        private volatile boolean closed = false;
+
+        /**
+         * Called by the iteration when it follows the link to the next page.
+         *
+         * @param nextPageNum the number of the page following the page
+         */
+        void pageLoaded(final long nextPageNum) {
+            if (closed || exhausted || nextPageNum == NO_PAGE) {
+                return;
+            }
+
+            final int remaining = ahead.decrementAndGet();
+            if (remaining > window / 2 || !running.compareAndSet(false, true)) {
+                return;
+            }
+
+            if (remaining < 0) {
+                // the read-ahead has fallen behind, or not yet started, so start at the iteration's position
+                ahead.set(0);
+                nextPage = nextPageNum;
+            } else {
+                // the iteration continues sequentially, so read further ahead
+                window = Math.min(window * 2, maxWindow);
+            }
+            submit(this);
+        }
+
+        void close() {
+            closed = true;
+        }
+    }
+}
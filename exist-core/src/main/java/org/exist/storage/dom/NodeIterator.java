@@ -39,6 +39,7 @@ import org.exist.util.FileUtils;
 import org.exist.util.LockException;
 import org.exist.util.sanity.SanityCheck;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -67,6 +68,7 @@ public final class NodeIterator implements INodeIterator {
     private DBBroker broker;
     private final LockManager lockManager;
     private boolean useNodePool = false;
+    @Nullable private final DOMFileReadAhead.Cursor readAhead;
 
     public NodeIterator(DBBroker broker, DOMFile db, NodeHandle node, boolean poolable)
             throws BTreeException, IOException {
@@ -76,6 +78,7 @@ public final class NodeIterator implements INodeIterator {
         this.node = node;
         this.broker = broker;
         this.lockManager = broker.getBrokerPool().getLockManager();
+        this.readAhead = db.newReadAheadCursor();
     }
 
     /**
@@ -149,6 +152,7 @@ public final class NodeIterator implements INodeIterator {
                         page = db.getDOMPage(nextPageNum);
                         db.addToBuffer(page);
                         offset = 0;
+                        readAhead();
                     }
                     //Extract the tuple ID
                     lastTupleID = ByteConversion.byteToShort(page.data, offset);
@@ -294,8 +298,16 @@ public final class NodeIterator implements INodeIterator {
         this.startAddress = address;
     }
 
+    private void readAhead() {
+        if (readAhead != null) {
+            readAhead.pageLoaded(page.getPageHeader().getNextDataPage());
+        }
+    }
+
     @Override
     public void close() throws IOException {
-        //nothing needs to be done
+        if (readAhead != null) {
+            readAhead.close();
+        }
     }
 }
\ No newline at end of file
@@ -38,6 +38,7 @@ import org.exist.util.FileUtils;
 import org.exist.util.LockException;
 import org.exist.util.sanity.SanityCheck;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -59,6 +60,7 @@ public class RawNodeIterator implements IRawNodeIterator {
     private short lastTupleID = ItemId.UNKNOWN_ID;
     private DOMFile.DOMPage page = null;
     private long pageNum;
+    @Nullable private final DOMFileReadAhead.Cursor readAhead;
 
     /**
      * Construct the iterator. The iterator will be positioned before the specified
@@ -73,6 +75,7 @@ public class RawNodeIterator implements IRawNodeIterator {
         this.broker = broker;
         this.lockManager = broker.getBrokerPool().getLockManager();
         this.db = db;
+        this.readAhead = db.newReadAheadCursor();
         seek(node);
     }
 
@@ -125,6 +128,7 @@ public class RawNodeIterator implements IRawNodeIterator {
                     page = db.getDOMPage(nextPage);
                     db.addToBuffer(page);
                     offset = 0;
+                    readAhead();
                 }
                 //Extract the tuple id
                 lastTupleID = ByteConversion.byteToShort(page.data, offset);
@@ -192,8 +196,17 @@ public class RawNodeIterator implements IRawNodeIterator {
         }
     }
 
+    private void readAhead() {
+        if (readAhead != null) {
+            readAhead.pageLoaded(page.getPageHeader().getNextDataPage());
+        }
+    }
+
     @Override
     public void close() {
+        if (readAhead != null) {
+            readAhead.close();
+        }
         db.closeDocument();
     }
 
@@ -475,6 +475,30 @@ public class BFile extends BTree {
         }
     }
 
+    /**
+     * Get the length in bytes of the value located at the specified
+     * address, without reading the value.
+     *
+     * @param pointer the pointer to the value
+     * @return the length of the value
+     * @throws IOException if an I/O error occurs
+     */
+    public int getValueLength(final long pointer) throws IOException {
+        final DataPage page = getDataPage(StorageAddress.pageFromPointer(pointer));
+        switch (page.getPageHeader().getStatus()) {
+            case MULTI_PAGE:
+                return page.getPageHeader().getDataLength();
+            default:
+                dataCache.add(page.getFirstPage(), 2);
+                final short tid = StorageAddress.tidFromPointer(pointer);
+                final int offset = page.findValuePosition(tid);
+                if (offset < 0) {
+                    throw new IOException("no data found at tid " + tid + "; page " + page.getPageNum());
+                }
+                return ByteConversion.byteToInt(page.getData(), offset);
+        }
+    }
+
     private VariableByteInput getAsStream(final DataPage page, final long pointer) throws IOException {
         dataCache.add(page.getFirstPage(), 2);
         final short tid = StorageAddress.tidFromPointer(pointer);
@@ -2305,11 +2329,14 @@ public class BFile extends BTree {
 
         @Override
         public final void skipBytes(final long count) throws IOException {
-            for(long i = 0; i < count; i++) {
+            long remaining = count;
+            while (remaining > 0) {
                 if (offset == pageLen) {
                     advance();
                 }
-                offset++;
+                final int skip = (int) Math.min(remaining, pageLen - offset);
+                offset += skip;
+                remaining -= skip;
             }
         }
 
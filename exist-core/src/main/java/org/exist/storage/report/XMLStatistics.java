@@ -121,6 +121,8 @@ public class XMLStatistics {
         addValue("used", String.valueOf(data.getUsed()));
         addValue("hits", String.valueOf(data.getPageHits()));
         addValue("fails", String.valueOf(data.getPageFails()));
+        addValue("read-ahead-requests", String.valueOf(data.getReadAheadRequests()));
+        addValue("read-ahead-pages", String.valueOf(data.getReadAheadPages()));
         this.contentHandler.endElement(NAMESPACE, "buffer", PREFIX + ":buffer");
         this.contentHandler.endElement(NAMESPACE, "file", PREFIX + ":file");
     }
@@ -31,6 +31,8 @@ import java.util.StringTokenizer;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.ibm.icu.text.*;
 import com.ibm.icu.util.ULocale;
 import com.ibm.icu.util.VersionInfo;
@@ -99,6 +101,14 @@ public class Collations {
      */
     private final static AtomicReference<Collator> samiskCollator = new AtomicReference<>();
 
+    /**
+     * Cache of the Collators created from parameterized collation URIs,
+     * the Collators are frozen and therefore may be shared.
+     */
+    private final static Cache<String, Collator> parameterizedCollators = Caffeine.newBuilder()
+            .maximumSize(100)
+            .build();
+
     /**
      * Get a {@link Comparator}from the specified URI.
      *
@@ -113,7 +123,15 @@ public class Collations {
     public static @Nullable Collator getCollationFromURI(final String uri) throws XPathException {
         final Collator collator;
 
-        if (uri.startsWith(EXIST_COLLATION_URI) || uri.startsWith(UCA_COLLATION_URI) || uri.startsWith("?")) {
+        final boolean parameterized = uri.startsWith(EXIST_COLLATION_URI) || uri.startsWith(UCA_COLLATION_URI) || uri.startsWith("?");
+        if (parameterized) {
+            final Collator cached = parameterizedCollators.getIfPresent(uri);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        if (parameterized) {
             URI u;
             try {
                 u = new URI(uri);
@@ -256,6 +274,10 @@ public class Collations {
         if (collator != null) {
             // make immutable and therefore thread-safe!
             collator.freeze();
+
+            if (parameterized) {
+                parameterizedCollators.put(uri, collator);
+            }
         }
 
         return collator;
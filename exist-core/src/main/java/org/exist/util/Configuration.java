@@ -51,10 +51,14 @@ import org.exist.storage.BrokerFactory;
 import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
 import org.exist.storage.DefaultCacheManager;
+import org.exist.storage.DefragmentationService;
 import org.exist.storage.IndexSpec;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.NativeValueIndex;
+import org.exist.storage.NodeValueCache;
 import org.exist.storage.XQueryPool;
+import org.exist.storage.XQueryResultCache;
+import org.exist.storage.dom.DOMFile;
 import org.exist.storage.journal.Journal;
 import org.exist.storage.serializers.CustomMatchListenerFactory;
 import org.exist.storage.serializers.Serializer;
@@ -528,6 +532,20 @@ public class Configuration implements ErrorHandler
             config.put( DBBroker.PROPERTY_XUPDATE_CONSISTENCY_CHECKS, parseBoolean( consistencyCheck, false ) );
             LOG.debug(DBBroker.PROPERTY_XUPDATE_CONSISTENCY_CHECKS + ": {}", config.get(DBBroker.PROPERTY_XUPDATE_CONSISTENCY_CHECKS));
         }
+
+        final String backgroundDefragmentation = getConfigAttributeValue( xupdate, DefragmentationService.BACKGROUND_DEFRAGMENTATION_ATTRIBUTE );
+
+        if( backgroundDefragmentation != null ) {
+            config.put( DefragmentationService.PROPERTY_BACKGROUND_DEFRAGMENTATION, parseBoolean( backgroundDefragmentation, false ) );
+            LOG.debug(DefragmentationService.PROPERTY_BACKGROUND_DEFRAGMENTATION + ": {}", config.get(DefragmentationService.PROPERTY_BACKGROUND_DEFRAGMENTATION));
+        }
+
+        final String defragmentationInterval = getConfigAttributeValue( xupdate, DefragmentationService.DEFRAGMENTATION_INTERVAL_ATTRIBUTE );
+
+        if( defragmentationInterval != null ) {
+            config.put( DefragmentationService.PROPERTY_DEFRAGMENTATION_INTERVAL, Long.valueOf(defragmentationInterval) );
+            LOG.debug(DefragmentationService.PROPERTY_DEFRAGMENTATION_INTERVAL + ": {}", config.get(DefragmentationService.PROPERTY_DEFRAGMENTATION_INTERVAL));
+        }
     }
 
 
@@ -827,7 +845,36 @@ public class Configuration implements ErrorHandler
             config.put(JobConfig.PROPERTY_SCHEDULER_JOBS, configs);
         }
     }
-    
+
+    /**
+     * Parses a size in bytes, which may have
+     * one of the suffixes k, kb, m, mb, g, or gb.
+     *
+     * @param size the size
+     *
+     * @return the number of bytes
+     *
+     * @throws NumberFormatException if the size is not a valid number
+     */
+    private static int parseSizeInBytes(String size) throws NumberFormatException {
+        size = size.toLowerCase();
+        if(size.endsWith("k")) {
+            return 1024 * Integer.parseInt(size.substring(0, size.length() - 1));
+        } else if(size.endsWith("kb")) {
+            return 1024 * Integer.parseInt(size.substring(0, size.length() - 2));
+        } else if(size.endsWith("m")) {
+            return 1024 * 1024 * Integer.parseInt(size.substring(0, size.length() - 1));
+        } else if(size.endsWith("mb")) {
+            return 1024 * 1024 * Integer.parseInt(size.substring(0, size.length() - 2));
+        } else if(size.endsWith("g")) {
+            return 1024 * 1024 * 1024 * Integer.parseInt(size.substring(0, size.length() - 1));
+        } else if(size.endsWith("gb")) {
+            return 1024 * 1024 * 1024 * Integer.parseInt(size.substring(0, size.length() - 2));
+        } else {
+            return Integer.parseInt(size);
+        }
+    }
+
 
     /**
      * DOCUMENT ME!
@@ -902,29 +949,10 @@ public class Configuration implements ErrorHandler
             LOG.warn("Cannot convert " + DefaultCacheManager.SHRINK_THRESHOLD_PROPERTY + " value to integer: {}", cacheShrinkThreshold, nfe);
         }
 
-        String collectionCache = getConfigAttributeValue(con, CollectionCache.CACHE_SIZE_ATTRIBUTE);
+        final String collectionCache = getConfigAttributeValue(con, CollectionCache.CACHE_SIZE_ATTRIBUTE);
         if(collectionCache != null) {
-            collectionCache = collectionCache.toLowerCase();
-
             try {
-                final int collectionCacheBytes;
-                if(collectionCache.endsWith("k")) {
-                    collectionCacheBytes = 1024 * Integer.parseInt(collectionCache.substring(0, collectionCache.length() - 1));
-                } else if(collectionCache.endsWith("kb")) {
-                    collectionCacheBytes = 1024 * Integer.parseInt(collectionCache.substring(0, collectionCache.length() - 2));
-                } else if(collectionCache.endsWith("m")) {
-                    collectionCacheBytes = 1024 * 1024 * Integer.parseInt(collectionCache.substring(0, collectionCache.length() - 1));
-                } else if(collectionCache.endsWith("mb")) {
-                    collectionCacheBytes = 1024 * 1024 * Integer.parseInt(collectionCache.substring(0, collectionCache.length() - 2));
-                } else if(collectionCache.endsWith("g")) {
-                    collectionCacheBytes = 1024 * 1024 * 1024 * Integer.parseInt(collectionCache.substring(0, collectionCache.length() - 1));
-                } else if(collectionCache.endsWith("gb")) {
-                    collectionCacheBytes = 1024 * 1024 * 1024 * Integer.parseInt(collectionCache.substring(0, collectionCache.length() - 2));
-                } else {
-                    collectionCacheBytes = Integer.parseInt(collectionCache);
-                }
-
-                config.put(CollectionCache.PROPERTY_CACHE_SIZE_BYTES, collectionCacheBytes);
+                config.put(CollectionCache.PROPERTY_CACHE_SIZE_BYTES, parseSizeInBytes(collectionCache));
 
                 if(LOG.isDebugEnabled()) {
                     LOG.debug("Set config {} = {}", CollectionCache.PROPERTY_CACHE_SIZE_BYTES, config.get(CollectionCache.PROPERTY_CACHE_SIZE_BYTES));
@@ -935,6 +963,31 @@ public class Configuration implements ErrorHandler
             }
         }
 
+        final String nodeValueCache = getConfigAttributeValue(con, NodeValueCache.CACHE_SIZE_ATTRIBUTE);
+        if(nodeValueCache != null) {
+            try {
+                config.put(NodeValueCache.PROPERTY_CACHE_SIZE_BYTES, parseSizeInBytes(nodeValueCache));
+
+                if(LOG.isDebugEnabled()) {
+                    LOG.debug("Set config {} = {}", NodeValueCache.PROPERTY_CACHE_SIZE_BYTES, config.get(NodeValueCache.PROPERTY_CACHE_SIZE_BYTES));
+                }
+            }
+            catch( final NumberFormatException nfe ) {
+                LOG.warn("Cannot convert " + NodeValueCache.PROPERTY_CACHE_SIZE_BYTES + " value to integer: {}", nodeValueCache, nfe);
+            }
+        }
+
+        final String readAhead = getConfigAttributeValue(con, DOMFile.READ_AHEAD_ATTRIBUTE);
+        if(readAhead != null) {
+            try {
+                config.put(DOMFile.PROPERTY_READ_AHEAD, Integer.valueOf(readAhead));
+                LOG.debug(DOMFile.PROPERTY_READ_AHEAD + ": {}", config.get(DOMFile.PROPERTY_READ_AHEAD));
+            }
+            catch( final NumberFormatException nfe ) {
+                LOG.warn("Cannot convert " + DOMFile.PROPERTY_READ_AHEAD + " value to integer: {}", readAhead, nfe);
+            }
+        }
+
         final String pageSize = getConfigAttributeValue( con, NativeBroker.PAGE_SIZE_ATTRIBUTE );
 
         if( pageSize != null ) {
@@ -1186,6 +1239,36 @@ public class Configuration implements ErrorHandler
                 LOG.warn( e );
             }
         }
+
+        final String maxModuleCacheSize = getConfigAttributeValue( queryPool, XQueryPool.MODULE_CACHE_SIZE_ATTRIBUTE );
+
+        if( maxModuleCacheSize != null ) {
+
+            try {
+                config.put( XQueryPool.PROPERTY_MODULE_CACHE_SIZE, Integer.valueOf(maxModuleCacheSize) );
+                LOG.debug(XQueryPool.PROPERTY_MODULE_CACHE_SIZE + ": {}", config.get(XQueryPool.PROPERTY_MODULE_CACHE_SIZE));
+            }
+            catch( final NumberFormatException e ) {
+                LOG.warn( e );
+            }
+        }
+
+        final String resultCacheSize = getConfigAttributeValue( queryPool, XQueryResultCache.RESULT_CACHE_SIZE_ATTRIBUTE );
+
+        if( resultCacheSize != null ) {
+
+            try {
+                config.put( XQueryResultCache.PROPERTY_RESULT_CACHE_SIZE, Integer.valueOf(resultCacheSize) );
+                LOG.debug(XQueryResultCache.PROPERTY_RESULT_CACHE_SIZE + ": {}", config.get(XQueryResultCache.PROPERTY_RESULT_CACHE_SIZE));
+            }
+            catch( final NumberFormatException e ) {
+                LOG.warn( e );
+            }
+        }
+
+        final boolean warmUp = parseBoolean( getConfigAttributeValue( queryPool, XQueryPool.WARM_UP_ATTRIBUTE ), false );
+        config.put( XQueryPool.PROPERTY_WARM_UP, warmUp );
+        LOG.debug(XQueryPool.PROPERTY_WARM_UP + ": {}", config.get(XQueryPool.PROPERTY_WARM_UP));
     }
     
     public static class StartupTriggerConfig {
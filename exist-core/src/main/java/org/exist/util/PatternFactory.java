@@ -24,6 +24,7 @@ package org.exist.util;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 
+import java.util.Objects;
 import java.util.regex.Pattern;
 
 /**
@@ -37,7 +38,7 @@ public class PatternFactory {
 
     private static final PatternFactory instance = new PatternFactory();
 
-    private final Cache<String, Pattern> cache;
+    private final Cache<Object, Pattern> cache;
 
     private PatternFactory() {
         this.cache = Caffeine.newBuilder()
@@ -50,10 +51,46 @@ public class PatternFactory {
     }
 
     public Pattern getPattern(final String pattern) {
-        return cache.get(pattern, Pattern::compile);
+        return cache.get(pattern, key -> Pattern.compile(pattern));
     }
 
     public Pattern getPattern(final String pattern, final int flags) {
-        return cache.get(pattern + flags, key -> Pattern.compile(pattern, flags));
+        if (flags == 0) {
+            return getPattern(pattern);
+        }
+        return cache.get(new PatternKey(pattern, flags), key -> Pattern.compile(pattern, flags));
+    }
+
+    /**
+     * Key for a pattern compiled with flags.
+     *
+     * Concatenating the pattern and the flags into a String would
+     * allow different pattern/flags combinations to share a key.
+     */
+    private static final class PatternKey {
+        private final String pattern;
+        private final int flags;
+
+        private PatternKey(final String pattern, final int flags) {
+            this.pattern = pattern;
+            this.flags = flags;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final PatternKey other = (PatternKey) o;
+            return flags == other.flags && pattern.equals(other.pattern);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(pattern, flags);
+        }
     }
 }
@@ -0,0 +1,223 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.util.io;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A Writer which encodes characters as UTF-8 directly into
+ * a buffer, and writes the buffer to an OutputStream.
+ *
+ * Unlike {@link OutputStreamWriter} this does not synchronize, or
+ * go through a {@link java.nio.charset.CharsetEncoder}, for every write,
+ * which is significant for the serializers as they write
+ * markup and escaped text in many small pieces.
+ *
+ * Unpaired surrogates are encoded as '?', as they are by
+ * {@link OutputStreamWriter}.
+ */
+@NotThreadSafe
+public class UTF8Writer extends Writer {
+
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final OutputStream os;
+    private final byte[] buf;
+    private int count = 0;
+    private char highSurrogate = 0;
+
+    public UTF8Writer(final OutputStream os) {
+        this(os, DEFAULT_BUFFER_SIZE);
+    }
+
+    public UTF8Writer(final OutputStream os, final int bufferSize) {
+        this.os = os;
+        // leave room for the longest encoding of a single character
+        this.buf = new byte[Math.max(bufferSize, 16)];
+    }
+
+    /**
+     * Creates a Writer for an OutputStream, which is a {@link UTF8Writer}
+     * if the encoding is UTF-8.
+     *
+     * @param os the output stream
+     * @param encoding the name of the character encoding
+     *
+     * @return the writer
+     *
+     * @throws java.io.UnsupportedEncodingException if the encoding is not supported
+     */
+    public static Writer newWriter(final OutputStream os, final String encoding) throws java.io.UnsupportedEncodingException {
+        if (encoding == null || isUTF8(encoding)) {
+            return new UTF8Writer(os);
+        }
+        return new OutputStreamWriter(os, encoding);
+    }
+
+    private static boolean isUTF8(final String encoding) {
+        if ("UTF-8".equalsIgnoreCase(encoding) || "UTF8".equalsIgnoreCase(encoding)) {
+            return true;
+        }
+        try {
+            return Charset.forName(encoding).equals(StandardCharsets.UTF_8);
+        } catch (final IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void write(final int c) throws IOException {
+        if (count > buf.length - 4) {
+            flushBuffer();
+        }
+        encode((char) c);
+    }
+
+    @Override
+    public void write(final char[] cbuf, final int off, final int len) throws IOException {
+        final int end = off + len;
+        int i = off;
+        while (i < end) {
+            // ASCII fast path
+            final int limit = Math.min(end, i + (buf.length - count));
+            while (i < limit) {
+                final char c = cbuf[i];
+                if (c >= 0x80 || highSurrogate != 0) {
+                    break;
+                }
+                buf[count++] = (byte) c;
+                i++;
+            }
+            if (i == end) {
+                break;
+            }
+            if (count > buf.length - 4) {
+                flushBuffer();
+            } else if (i < limit) {
+                encode(cbuf[i++]);
+            }
+        }
+    }
+
+    @Override
+    public void write(final String str, final int off, final int len) throws IOException {
+        final int end = off + len;
+        int i = off;
+        while (i < end) {
+            // ASCII fast path
+            final int limit = Math.min(end, i + (buf.length - count));
+            while (i < limit) {
+                final char c = str.charAt(i);
+                if (c >= 0x80 || highSurrogate != 0) {
+                    break;
+                }
+                buf[count++] = (byte) c;
+                i++;
+            }
+            if (i == end) {
+                break;
+            }
+            if (count > buf.length - 4) {
+                flushBuffer();
+            } else if (i < limit) {
+                encode(str.charAt(i++));
+            }
+        }
+    }
+
+    @Override
+    public void write(final String str) throws IOException {
+        write(str, 0, str.length());
+    }
+
+    /**
+     * Encodes a character into the buffer, which must
+     * have space for at least 4 bytes.
+     */
+    private void encode(final char c) {
+        if (highSurrogate != 0) {
+            final char high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                final int codePoint = Character.toCodePoint(high, c);
+                buf[count++] = (byte) (0xF0 | (codePoint >> 18));
+                buf[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buf[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buf[count++] = (byte) (0x80 | (codePoint & 0x3F));
+                return;
+            }
+            // an unpaired surrogate, the '?' and c take at most 4 bytes
+            buf[count++] = '?';
+        }
+
+        if (c < 0x80) {
+            buf[count++] = (byte) c;
+        } else if (c < 0x800) {
+            buf[count++] = (byte) (0xC0 | (c >> 6));
+            buf[count++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            buf[count++] = '?';
+        } else {
+            buf[count++] = (byte) (0xE0 | (c >> 12));
+            buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buf[count++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            os.write(buf, 0, count);
+            count = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        os.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (highSurrogate != 0) {
+                highSurrogate = 0;
+                if (count > buf.length - 4) {
+                    flushBuffer();
+                }
+                buf[count++] = '?';
+            }
+            flushBuffer();
+        } finally {
+            os.close();
+        }
+    }
+}
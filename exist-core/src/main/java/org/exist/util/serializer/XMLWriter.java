@@ -65,6 +65,8 @@ public class XMLWriter {
 
     private char[] charref = new char[10];
 
+    private final char[] charBuf = new char[1024];
+
     private static boolean[] textSpecialChars;
 
     private static boolean[] attrSpecialChars;
@@ -622,9 +624,23 @@ public class XMLWriter {
         }
     }
 
+    /**
+     * Writes a run of characters which need no escaping, in as few
+     * calls to the writer as possible rather than one per character.
+     */
     private void writeCharSeq(final CharSequence ch, final int start, final int end) throws IOException {
-        for(int i = start; i < end; i++) {
-            writer.write(ch.charAt(i));
+        if (ch instanceof String) {
+            writer.write((String) ch, start, end - start);
+            return;
+        }
+
+        int i = start;
+        while (i < end) {
+            final int len = Math.min(end - i, charBuf.length);
+            for (int j = 0; j < len; j++) {
+                charBuf[j] = ch.charAt(i++);
+            }
+            writer.write(charBuf, 0, len);
         }
     }
 
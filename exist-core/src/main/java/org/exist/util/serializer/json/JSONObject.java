@@ -61,6 +61,25 @@ public class JSONObject extends JSONNode {
         }
     }
 	
+    JSONNode getFirstChild() {
+        return firstChild;
+    }
+
+    /**
+     * Removes the first child, along with any other
+     * children of the same name which follow it.
+     *
+     * @return the removed child, or null if there are no children
+     */
+    JSONNode removeFirstChild() {
+        final JSONNode removed = firstChild;
+        if (removed != null) {
+            firstChild = removed.getNext();
+            removed.setNext(null);
+        }
+        return removed;
+    }
+
     public JSONNode findChild(final String nameToFind) {
         JSONNode nextNode = firstChild;
         while(nextNode != null) {
@@ -25,7 +25,9 @@ import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayDeque;
 import java.util.Deque;
+import java.util.HashSet;
 import java.util.Properties;
+import java.util.Set;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.TransformerException;
 import org.apache.logging.log4j.LogManager;
@@ -35,6 +37,8 @@ import org.exist.dom.QName.IllegalQNameException;
 import org.exist.storage.serializers.EXistOutputKeys;
 import org.exist.util.serializer.XMLWriter;
 
+import javax.annotation.Nullable;
+
 /**
  * This class plugs into eXist's serialization to transform XML to JSON. It is used
  * if the serialization property "method" is set to "json".
@@ -64,7 +68,15 @@ import org.exist.util.serializer.XMLWriter;
  * 
  * The attribute json:literal indicates that the element's text content should be serialized literally. This is
  * handy for writing boolean or numeric values. By default, text content is serialized as a Javascript string.
- *  
+ *
+ * The JSON is written whilst the XML is received, rather than once the root element has been closed. As all of the
+ * siblings with the same name are written together, at the position of the first of them, only one group of
+ * siblings of each element can be written as it is received; the following groups are held until the element
+ * is closed. The first member of a group is also held until the next member, or the end of the element, shows
+ * whether the group is an array. Attributes are written straight away. So a document whose root contains many
+ * elements of the same name, and no mixed content (or with {@link EXistOutputKeys#JSON_IGNORE_WHITESPACE_TEXT_NODES}),
+ * is written with only one of those elements held in memory at a time.
+ *
  * @author wolf
  *
  */
@@ -88,6 +100,8 @@ public class JSONWriter extends XMLWriter {
 	
     protected final Deque<JSONObject> stack = new ArrayDeque<>();
 
+    private final Deque<Frame> frames = new ArrayDeque<>();
+
     protected boolean useNSPrefix = false;
     
     protected boolean prefixAttributes = false;
@@ -107,6 +121,7 @@ public class JSONWriter extends XMLWriter {
     protected void resetObjectState() { 
         super.resetObjectState();
         stack.clear();
+        frames.clear();
         root = null;
     }
 
@@ -173,41 +188,267 @@ public class JSONWriter extends XMLWriter {
         }
     }
 
-    private void processStartElement(final String localName, boolean simpleValue) {
-        final JSONObject obj = new JSONObject(localName);
-        obj.setIndent(indent);
-        if(root == null) {
-            root = obj;
-            stack.push(obj);
-        } else {
-            final JSONObject parent = stack.peek();
-            parent.addObject(obj);
-            stack.push(obj);
-        }
+    private void processStartElement(final String localName, boolean simpleValue) throws TransformerException {
+        startObject(new JSONObject(localName));
     }
 
     private void processStartValue() throws TransformerException {
         // a json:value is stored as an unnamed object
-        final JSONObject obj = new JSONObject();
+        startObject(new JSONObject());
+    }
+
+    private void startObject(final JSONObject obj) throws TransformerException {
         obj.setIndent(indent);
+        final Frame frame = new Frame(obj);
         if(root == null) {
             root = obj;
-            stack.push(obj);
         } else {
-            final JSONObject parent = stack.peek();
-            parent.addObject(obj);
-            stack.push(obj);
+            frame.streaming = addChild(obj);
         }
+        stack.push(obj);
+        frames.push(frame);
     }
 
     @Override
     public void endElement(final String namespaceUri, final String localName, final String qname) throws TransformerException {
-        stack.pop();
+        endObject();
     }
 
     @Override
     public void endElement(final QName qname) throws TransformerException {
-        stack.pop();
+        endObject();
+    }
+
+    private void endObject() throws TransformerException {
+        final JSONObject obj = stack.pop();
+        final Frame frame = frames.pop();
+        if(!frame.streaming) {
+            // held by its parent, or the root which is written by endDocument
+            return;
+        }
+
+        try {
+            final Writer writer = getWriter();
+            if(!frame.complex) {
+                obj.serializeContent(writer);
+            } else {
+                if(frame.held != null) {
+                    writeProperty(frame, frame.held);
+                    frame.held = null;
+                } else if(frame.arrayOpen) {
+                    if(frame.groupType == JSONNode.Type.VALUE_TYPE && indent) {
+                        writer.write(' ');
+                    }
+                    writer.write(']');
+                }
+                for(JSONNode next = obj.removeFirstChild(); next != null; next = obj.removeFirstChild()) {
+                    writeProperty(frame, next);
+                }
+                if(indent) {
+                    writer.write(' ');
+                }
+                writer.write('}');
+            }
+
+            if(obj == root) {
+                if(root.getSerializationType() == JSONNode.SerializationType.AS_ARRAY) {
+                    writer.write(']');
+                }
+                if(jsonp != null) {
+                    writer.write(")");
+                }
+                root = null;
+            }
+        } catch(final IOException ioe) {
+            throw new TransformerException(ioe.getMessage(), ioe);
+        }
+    }
+
+    /**
+     * Adds a node to the element which is currently open, writing
+     * as much of the element as is now known.
+     *
+     * @param node the attribute, text or element node
+     *
+     * @return true if everything before the content of the node has been written,
+     *     so that the content of the node should also be written as it is received
+     */
+    private boolean addChild(final JSONNode node) throws TransformerException {
+        try {
+            return addChild(frames.peek(), node);
+        } catch(final IOException ioe) {
+            throw new TransformerException(ioe.getMessage(), ioe);
+        }
+    }
+
+    private boolean addChild(final Frame frame, final JSONNode node) throws IOException {
+        final Writer writer = getWriter();
+        if(!frame.streaming && frame.obj == root && node.getType() != JSONNode.Type.SIMPLE_PROPERTY_TYPE) {
+            // all of the attributes of the root have been received
+            if(jsonp != null) {
+                writer.write(jsonp + "(");
+            }
+            if(root.getSerializationType() == JSONNode.SerializationType.AS_ARRAY) {
+                writer.write('[');
+            }
+            frame.streaming = true;
+        }
+
+        if(!frame.streaming) {
+            frame.obj.addObject(node);
+            return false;
+        }
+
+        if(!frame.complex) {
+            frame.obj.addObject(node);
+            if(!isComplex(frame.obj)) {
+                // may yet be serialized as a simple value
+                return false;
+            }
+
+            writer.write('{');
+            if(indent) {
+                writer.write(' ');
+            }
+            frame.complex = true;
+
+            JSONNode head = frame.obj.getFirstChild();
+            while(head != null && head.getType() == JSONNode.Type.SIMPLE_PROPERTY_TYPE) {
+                writeProperty(frame, frame.obj.removeFirstChild());
+                head = frame.obj.getFirstChild();
+            }
+            if(head == null) {
+                return false;
+            }
+            return startGroup(frame, frame.obj.removeFirstChild(), node);
+        }
+
+        if(frame.writtenNames != null && frame.writtenNames.contains(node.getName())) {
+            // a property of the same name has been written, which ignores any siblings of the same name
+            return false;
+        }
+
+        if(node.getName().equals(frame.groupName)) {
+            return addGroupMember(frame, node);
+        }
+
+        if(frame.groupName == null) {
+            if(node.getType() == JSONNode.Type.SIMPLE_PROPERTY_TYPE) {
+                writeProperty(frame, node);
+                return false;
+            }
+            return startGroup(frame, node, node);
+        }
+
+        frame.obj.addObject(node);
+        return false;
+    }
+
+    /**
+     * Determines whether an object will be serialized as a complex
+     * object, whatever nodes are added to it subsequently.
+     *
+     * @see JSONObject#serializeContent(Writer)
+     */
+    private static boolean isComplex(final JSONObject obj) {
+        final JSONNode firstChild = obj.getFirstChild();
+        return firstChild.getNext() != null
+                || firstChild.getType() == JSONNode.Type.SIMPLE_PROPERTY_TYPE
+                || (firstChild.getType() == JSONNode.Type.OBJECT_TYPE && firstChild.isNamed());
+    }
+
+    private boolean startGroup(final Frame frame, final JSONNode head, final JSONNode node) throws IOException {
+        frame.groupName = head.getName();
+        frame.groupType = head.getType();
+        if(head.getNextOfSame() == null) {
+            // not known yet whether the group is an array
+            frame.held = head;
+            return false;
+        }
+
+        writeGroupStart(frame, head);
+        boolean streamNode = false;
+        for(JSONNode member = head; member != null; member = member.getNextOfSame()) {
+            if(member != head) {
+                writeMemberSeparator();
+            }
+            // the node just added is the last member, and the only one which may still be open
+            if(member == node && node.getType() == JSONNode.Type.OBJECT_TYPE) {
+                streamNode = true;
+            } else {
+                member.serializeContent(getWriter());
+            }
+        }
+        return streamNode;
+    }
+
+    private boolean addGroupMember(final Frame frame, final JSONNode node) throws IOException {
+        if(frame.held != null) {
+            final JSONNode head = frame.held;
+            frame.held = null;
+            writeGroupStart(frame, head);
+            head.serializeContent(getWriter());
+        }
+
+        writeMemberSeparator();
+        if(node.getType() == JSONNode.Type.OBJECT_TYPE) {
+            return true;
+        }
+        node.serializeContent(getWriter());
+        return false;
+    }
+
+    private void writeGroupStart(final Frame frame, final JSONNode head) throws IOException {
+        writePropertySeparator(frame);
+        if(head.getType() == JSONNode.Type.VALUE_TYPE || head.isNamed()) {
+            writeName(head.getName());
+        }
+        getWriter().write('[');
+        frame.arrayOpen = true;
+    }
+
+    /**
+     * Writes a property of a complex object, in the same way as {@link JSONObject#serializeContent(Writer)}.
+     */
+    private void writeProperty(final Frame frame, final JSONNode node) throws IOException {
+        writePropertySeparator(frame);
+        if(node.getType() == JSONNode.Type.VALUE_TYPE) {
+            writeName(node.getName());
+        } else if(node.getType() == JSONNode.Type.SIMPLE_PROPERTY_TYPE) {
+            if(frame.writtenNames == null) {
+                frame.writtenNames = new HashSet<>();
+            }
+            frame.writtenNames.add(node.getName());
+        }
+        node.serialize(getWriter(), false);
+    }
+
+    private void writePropertySeparator(final Frame frame) throws IOException {
+        if(frame.propertyWritten) {
+            writeMemberSeparator();
+        }
+        frame.propertyWritten = true;
+    }
+
+    private void writeMemberSeparator() throws IOException {
+        getWriter().write(',');
+        if(indent) {
+            getWriter().write(' ');
+        }
+    }
+
+    private void writeName(final String name) throws IOException {
+        final Writer writer = getWriter();
+        writer.write('"');
+        writer.write(name);
+        writer.write('"');
+        if(indent) {
+            writer.write(' ');
+        }
+        writer.write(':');
+        if(indent) {
+            writer.write(' ');
+        }
     }
 
     @Override
@@ -231,7 +472,7 @@ public class JSONWriter extends XMLWriter {
                 final String name = prefixAttributes ? "@" + qname : qname;
                 final JSONSimpleProperty obj = new JSONSimpleProperty(name, value);
                 obj.setIndent(indent);
-                parent.addObject(obj);
+                addChild(obj);
                 break;
         }
     }
@@ -255,7 +496,7 @@ public class JSONWriter extends XMLWriter {
         value.setIndent(indent);
         value.setSerializationType(parent.getSerializationType());
         value.setSerializationDataType(parent.getSerializationDataType());
-        parent.addObject(value);
+        addChild(value);
     }
 
     @Override
@@ -303,4 +544,45 @@ public class JSONWriter extends XMLWriter {
     public void documentType(final String name, final String publicId, final String systemId) throws TransformerException {
         // skip
     }
+
+    /**
+     * The state of an element which is open.
+     */
+    private static final class Frame {
+        final JSONObject obj;
+
+        /**
+         * True once everything before the content of the element has been written,
+         * false whilst the element is held in the tree of its parent.
+         */
+        boolean streaming = false;
+
+        /**
+         * True once the '{' of the complex object has been written.
+         */
+        boolean complex = false;
+
+        boolean propertyWritten = false;
+
+        /**
+         * The names of the attributes which have been written.
+         */
+        @Nullable Set<String> writtenNames = null;
+
+        /**
+         * The name of the group of children which is being written.
+         */
+        @Nullable String groupName = null;
+        @Nullable JSONNode.Type groupType = null;
+
+        /**
+         * The first member of the group, until it is known whether the group is an array.
+         */
+        @Nullable JSONNode held = null;
+        boolean arrayOpen = false;
+
+        Frame(final JSONObject obj) {
+            this.obj = obj;
+        }
+    }
 }
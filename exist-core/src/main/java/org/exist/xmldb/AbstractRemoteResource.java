@@ -464,6 +464,18 @@ public abstract class AbstractRemoteResource extends AbstractRemote
         return retval;
     }
 
+    protected String getStreamSymbolicPath() {
+        String retval = "<streamunknown>";
+
+        if (file != null) {
+            retval = file.toAbsolutePath().toString();
+        } else if (inputSource != null && inputSource instanceof EXistInputSource) {
+            retval = ((EXistInputSource) inputSource).getSymbolicPath();
+        }
+
+        return retval;
+    }
+
     protected long getStreamLengthInternal(final Object obj)
             throws XMLDBException {
 
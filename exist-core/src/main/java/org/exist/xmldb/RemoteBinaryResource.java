@@ -31,7 +31,6 @@ import java.util.Properties;
 import org.apache.xmlrpc.XmlRpcException;
 import org.apache.xmlrpc.client.XmlRpcClient;
 import org.exist.storage.blob.BlobId;
-import org.exist.util.EXistInputSource;
 import org.exist.util.Leasable;
 import org.exist.util.MimeType;
 import org.exist.util.crypto.digest.DigestType;
@@ -99,18 +98,6 @@ public class RemoteBinaryResource
         getContentIntoAStreamInternal(os, content, false, -1, -1);
     }
 
-    protected String getStreamSymbolicPath() {
-        String retval = "<streamunknown>";
-
-        if (file != null) {
-            retval = file.toAbsolutePath().toString();
-        } else if (inputSource != null && inputSource instanceof EXistInputSource) {
-            retval = ((EXistInputSource) inputSource).getSymbolicPath();
-        }
-
-        return retval;
-    }
-
     @Override
     public void setContent(final Object obj) throws XMLDBException {
         if (!super.setContentInternal(obj)) {
@@ -505,7 +505,12 @@ public class RemoteCollection extends AbstractRemote implements EXistCollection
             ((AbstractRemoteResource) res).dateCreated = a;
             ((AbstractRemoteResource) res).dateModified = b;
             if (XMLResource.RESOURCE_TYPE.equals(res.getResourceType())) {
-                store((RemoteXMLResource) res);
+                // large content, e.g. set from a DOM or SAX, is streamed to the server in chunks
+                if (((RemoteXMLResource) res).getStreamLength() < MAX_CHUNK_LENGTH) {
+                    store((RemoteXMLResource) res);
+                } else {
+                    uploadAndStore(res);
+                }
             } else {
                 store((RemoteBinaryResource) res);
             }
@@ -554,6 +559,10 @@ public class RemoteCollection extends AbstractRemote implements EXistCollection
             if (res instanceof RemoteBinaryResource) {
                 is = ((RemoteBinaryResource) res).getStreamContent();
                 descString = ((RemoteBinaryResource) res).getStreamSymbolicPath();
+            } else if (res instanceof RemoteXMLResource) {
+                // stream the content rather than reading it into a String with getContent()
+                is = ((RemoteXMLResource) res).getStreamContent();
+                descString = ((RemoteXMLResource) res).getStreamSymbolicPath();
             } else {
                 final Object content = res.getContent();
                 if (content instanceof File) {
@@ -74,6 +74,7 @@ import org.exist.util.*;
 import org.exist.util.crypto.digest.DigestType;
 import org.exist.util.crypto.digest.MessageDigest;
 import org.apache.commons.io.input.UnsynchronizedByteArrayInputStream;
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
 import org.exist.util.io.TemporaryFileManager;
 import org.exist.util.serializer.SAXSerializer;
 import org.exist.util.serializer.SerializerPool;
@@ -102,6 +103,8 @@ import com.evolvedbinary.j8fu.tuple.Tuple2;
 
 import java.io.*;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
@@ -110,6 +113,7 @@ import java.util.concurrent.*;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import javax.xml.parsers.ParserConfigurationException;
@@ -133,7 +137,14 @@ public class RpcConnection implements RpcAPI {
 
     private final static Logger LOG = LogManager.getLogger(RpcConnection.class);
 
+    /**
+     * The size of the chunks in which a serialized result is downloaded.
+     * Results larger than {@link #DOWNLOAD_CHUNKS} chunks of this size
+     * are downloaded in fewer, larger chunks, see {@link #getChunkSize(long)}.
+     */
     public final static int MAX_DOWNLOAD_CHUNK_SIZE = 1024 * 1024;  // 1 MB
+    public final static int MAX_ADAPTIVE_DOWNLOAD_CHUNK_SIZE = 8 * 1024 * 1024;  // 8 MB
+    private final static int DOWNLOAD_CHUNKS = 64;
     private final static Charset DEFAULT_ENCODING = StandardCharsets.UTF_8;
 
     private final XmldbRequestProcessorFactory factory;
@@ -627,22 +638,41 @@ public class RpcConnection implements RpcAPI {
     @Override
     public byte[] getDocument(final String name, final Map<String, Object> parameters) throws EXistException,
             PermissionDeniedException {
-        final Charset encoding = getEncoding(parameters);
         final boolean compression = useCompression(parameters);
+        if (compression && LOG.isDebugEnabled()) {
+            LOG.debug("getDocument with compression");
+        }
 
-        final String xml = getDocumentAsString(name, parameters);
+        final XmldbURI docUri;
+        try {
+            docUri = XmldbURI.xmldbUriFor(name);
+        } catch (final URISyntaxException e) {
+            throw new EXistException(e);
+        }
 
-        if (compression) {
-            if(LOG.isDebugEnabled()) {
-                LOG.debug("getDocument with compression");
-            }
-            try {
-                return Compressor.compress(xml.getBytes(encoding));
-            } catch (final IOException ioe) {
-                throw new EXistException(ioe);
+        return this.<byte[]>readDocument(docUri).apply((document, broker, transaction) ->
+                serializeToBytes(broker, parameters, compression, saxSerializer -> saxSerializer.toSAX(document)));
+    }
+
+    /**
+     * Serializes directly into the encoded, and optionally compressed, bytes,
+     * without first building a String of the serialized result.
+     *
+     * @param broker the database broker
+     * @param parameters the serialization parameters
+     * @param compression true to compress the bytes in the same format as {@link Compressor#compress(byte[])}
+     * @param toSaxFunction serializes the result
+     *
+     * @return the bytes
+     */
+    private byte[] serializeToBytes(final DBBroker broker, final Map<String, Object> parameters, final boolean compression,
+            final ConsumerE<Serializer, SAXException> toSaxFunction) throws IOException, SAXException {
+        try (final UnsynchronizedByteArrayOutputStream baos = new UnsynchronizedByteArrayOutputStream()) {
+            try (final OutputStream os = compression ? new GZIPOutputStream(baos) : baos;
+                 final Writer writer = new OutputStreamWriter(os, getEncoding(parameters))) {
+                serialize(broker, toProperties(parameters), toSaxFunction, writer);
             }
-        } else {
-            return xml.getBytes(encoding);
+            return baos.toByteArray();
         }
     }
 
@@ -697,53 +727,100 @@ public class RpcConnection implements RpcAPI {
             throw new EXistException(e);
         }
 
-        return this.<Map<String, Object>>readDocument(docUri).apply((document, broker, transaction) -> {
-            final Charset encoding = getEncoding(parameters);
+        final boolean compression = useCompression(parameters);
+        if (compression && LOG.isDebugEnabled()) {
+            LOG.debug("getDocumentData with compression");
+        }
 
+        return this.<Map<String, Object>>readDocument(docUri).apply((document, broker, transaction) -> {
             // A tweak for very large resources, VirtualTempFile
-            final Map<String, Object> result = new HashMap<>();
-            final TemporaryFileManager temporaryFileManager = TemporaryFileManager.getInstance();
-            final Path tempFile = temporaryFileManager.getTemporaryFile();
+            final Path tempFile = TemporaryFileManager.getInstance().getTemporaryFile();
 
-            if (document.getResourceType() == DocumentImpl.XML_FILE) {
-                try (final Writer writer = Files.newBufferedWriter(tempFile, encoding)) {
-                    serialize(broker, toProperties(parameters), saxSerializer -> saxSerializer.toSAX(document), writer);
-                }
-            } else {
-                try (final OutputStream os = new BufferedOutputStream(Files.newOutputStream(tempFile))) {
+            try (final OutputStream os = newChunkOutputStream(tempFile, compression)) {
+                if (document.getResourceType() == DocumentImpl.XML_FILE) {
+                    try (final Writer writer = new OutputStreamWriter(os, getEncoding(parameters))) {
+                        serialize(broker, toProperties(parameters), saxSerializer -> saxSerializer.toSAX(document), writer);
+                    }
+                } else {
                     broker.readBinaryResource(transaction, (BinaryDocument) document, os);
                 }
             }
 
-            final byte[] firstChunk = getChunk(tempFile, 0);
+            return getFirstChunk(tempFile);
+        });
+    }
+
+    /**
+     * Opens a stream for writing a serialized result, which
+     * is afterwards downloaded in chunks by {@link #getFirstChunk(Path)}.
+     *
+     * @param tempFile the file to write the result to
+     * @param compression true to compress the result as it is written
+     *
+     * @return the output stream
+     */
+    private static OutputStream newChunkOutputStream(final Path tempFile, final boolean compression) throws IOException {
+        final OutputStream os = new BufferedOutputStream(Files.newOutputStream(tempFile));
+        return compression ? new DeflaterOutputStream(os) : os;
+    }
 
-            result.put("data", firstChunk);
-            int offset = 0;
-            if (Files.size(tempFile) > MAX_DOWNLOAD_CHUNK_SIZE) {
-                offset = firstChunk.length;
+    /**
+     * Gets the first chunk of a serialized result.
+     *
+     * If there is more than one chunk, the file is kept and a handle
+     * to it is returned for {@link #getNextChunk(String, int)} and
+     * {@link #getNextExtendedChunk(String, String)}, otherwise the
+     * file is returned to the {@link TemporaryFileManager}.
+     *
+     * @param tempFile the file containing the serialized result
+     *
+     * @return the result map, with the data of the first chunk and the offset of the next chunk
+     */
+    private Map<String, Object> getFirstChunk(final Path tempFile) throws IOException {
+        final Map<String, Object> result = new HashMap<>();
+        final byte[] firstChunk = getChunk(tempFile, 0);
+        result.put("data", firstChunk);
+        int offset = 0;
+        if (firstChunk.length < Files.size(tempFile)) {
+            offset = firstChunk.length;
 
-                final int handle = factory.resultSets.add(new SerializedResult(tempFile));
-                result.put("handle", Integer.toString(handle));
-                result.put("supports-long-offset", Boolean.TRUE);
-            } else {
-                temporaryFileManager.returnTemporaryFile(tempFile);
-            }
-            result.put("offset", offset);
+            final int handle = factory.resultSets.add(new SerializedResult(tempFile));
+            result.put("handle", Integer.toString(handle));
+            result.put("supports-long-offset", Boolean.TRUE);
+        } else {
+            TemporaryFileManager.getInstance().returnTemporaryFile(tempFile);
+        }
+        result.put("offset", offset);
+        return result;
+    }
 
-            return result;
-        });
+    /**
+     * Determines the size of the chunks in which a result is downloaded.
+     *
+     * Small results are downloaded in chunks of {@link #MAX_DOWNLOAD_CHUNK_SIZE},
+     * larger results in no more than {@link #DOWNLOAD_CHUNKS} chunks, up to
+     * {@link #MAX_ADAPTIVE_DOWNLOAD_CHUNK_SIZE} each, to save round-trips.
+     *
+     * @param size the size of the result in bytes
+     *
+     * @return the size of each chunk
+     */
+    static int getChunkSize(final long size) {
+        return (int) Math.max(MAX_DOWNLOAD_CHUNK_SIZE, Math.min(MAX_ADAPTIVE_DOWNLOAD_CHUNK_SIZE, size / DOWNLOAD_CHUNKS));
     }
 
-    private byte[] getChunk(final Path file, final int offset) throws IOException {
+    private byte[] getChunk(final Path file, final long offset) throws IOException {
         final long available = Files.size(file);
-        final int len = (int)Math.min(Math.min(available - offset, MAX_DOWNLOAD_CHUNK_SIZE), Integer.MAX_VALUE);
+        final int len = (int) Math.min(available - offset, getChunkSize(available));
 
         final byte[] chunk = new byte[len];
-        try (final InputStream is = Files.newInputStream(file)) {
-            is.skip(offset);
-            final int read = is.read(chunk);
-            if(read != len) {
-                throw new IOException("Unable to read full chunk at offset: " + offset + ", from file: " + file.toAbsolutePath().toString());
+        try (final SeekableByteChannel channel = Files.newByteChannel(file)) {
+            channel.position(offset);
+            final ByteBuffer buf = ByteBuffer.wrap(chunk);
+            while (buf.hasRemaining()) {
+                if (channel.read(buf) < 0) {
+                    throw new IOException("Unable to read full chunk at offset: " + offset + ", from file: " + file.toAbsolutePath().toString());
+                }
             }
         }
         return chunk;
@@ -804,7 +881,7 @@ public class RpcConnection implements RpcAPI {
                 factory.resultSets.remove(resultId);
                 throw new EXistException("No more data available");
             }
-            final byte[] chunk = getChunk(tempFile, (int)longOffset);
+            final byte[] chunk = getChunk(tempFile, longOffset);
             final long nextChunk = longOffset + chunk.length;
 
             final Map<String, Object> result = new HashMap<>();
@@ -2222,35 +2299,17 @@ public class RpcConnection implements RpcAPI {
             final NodeId nodeId = factory.getBrokerPool().getNodeFactory().createFromString(id);
             final NodeProxy node = new NodeProxy(document, nodeId);
 
-            final Map<String, Object> result = new HashMap<>();
-            final TemporaryFileManager temporaryFileManager = TemporaryFileManager.getInstance();
-            final Path tempFile = temporaryFileManager.getTemporaryFile();
+            final Path tempFile = TemporaryFileManager.getInstance().getTemporaryFile();
 
             if (compression && LOG.isDebugEnabled()) {
                 LOG.debug("retrieveFirstChunk with compression");
             }
 
-            try (final OutputStream os = compression
-                    ? new DeflaterOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))
-                    : new BufferedOutputStream(Files.newOutputStream(tempFile));
-                    final Writer writer = new OutputStreamWriter(os, getEncoding(parameters))) {
+            try (final Writer writer = new OutputStreamWriter(newChunkOutputStream(tempFile, compression), getEncoding(parameters))) {
                 serialize(broker, toProperties(parameters), saxSerializer -> saxSerializer.toSAX(node), writer);
             }
 
-            final byte[] firstChunk = getChunk(tempFile, 0);
-            result.put("data", firstChunk);
-            int offset = 0;
-            if (Files.size(tempFile) > MAX_DOWNLOAD_CHUNK_SIZE) {
-                offset = firstChunk.length;
-
-                final int handle = factory.resultSets.add(new SerializedResult(tempFile));
-                result.put("handle", Integer.toString(handle));
-                result.put("supports-long-offset", Boolean.TRUE);
-            } else {
-                temporaryFileManager.returnTemporaryFile(tempFile);
-            }
-            result.put("offset", offset);
-            return result;
+            return getFirstChunk(tempFile);
         });
     }
 
@@ -2326,18 +2385,13 @@ public class RpcConnection implements RpcAPI {
                 throw new EXistException("index out of range");
             }
 
-            final Map<String, Object> result = new HashMap<>();
-            final TemporaryFileManager temporaryFileManager = TemporaryFileManager.getInstance();
-            final Path tempFile = temporaryFileManager.getTemporaryFile();
+            final Path tempFile = TemporaryFileManager.getInstance().getTemporaryFile();
 
             if (compression && LOG.isDebugEnabled()) {
                 LOG.debug("retrieveFirstChunk with compression");
             }
 
-            try (final OutputStream os = compression
-                    ? new DeflaterOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))
-                    : new BufferedOutputStream(Files.newOutputStream(tempFile));
-                    final Writer writer = new OutputStreamWriter(os, getEncoding(parameters))) {
+            try (final Writer writer = new OutputStreamWriter(newChunkOutputStream(tempFile, compression), getEncoding(parameters))) {
                 if (Type.subTypeOf(item.getType(), Type.NODE)) {
                     final NodeValue nodeValue = (NodeValue) item;
                     for (final Map.Entry<Object, Object> entry : qr.serialization.entrySet()) {
@@ -2351,20 +2405,7 @@ public class RpcConnection implements RpcAPI {
                 throw new EXistException(e);
             }
 
-            final byte[] firstChunk = getChunk(tempFile, 0);
-            result.put("data", firstChunk);
-            int offset = 0;
-            if (Files.size(tempFile) > MAX_DOWNLOAD_CHUNK_SIZE) {
-                offset = firstChunk.length;
-
-                final int handle = factory.resultSets.add(new SerializedResult(tempFile));
-                result.put("handle", Integer.toString(handle));
-                result.put("supports-long-offset", Boolean.TRUE);
-            } else {
-                temporaryFileManager.returnTemporaryFile(tempFile);
-            }
-            result.put("offset", offset);
-            return result;
+            return getFirstChunk(tempFile);
         });
     }
 
@@ -2444,18 +2485,13 @@ public class RpcConnection implements RpcAPI {
             final SAXSerializer handler = (SAXSerializer) SerializerPool.getInstance().borrowObject(SAXSerializer.class);
             try {
 
-                final Map<String, Object> result = new HashMap<>();
-                final TemporaryFileManager temporaryFileManager = TemporaryFileManager.getInstance();
-                final Path tempFile = temporaryFileManager.getTemporaryFile();
+                final Path tempFile = TemporaryFileManager.getInstance().getTemporaryFile();
 
                 if (compression && LOG.isDebugEnabled()) {
                     LOG.debug("retrieveAllFirstChunk with compression");
                 }
 
-                try (final OutputStream os = compression
-                        ? new DeflaterOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))
-                        : new BufferedOutputStream(Files.newOutputStream(tempFile));
-                     final Writer writer = new OutputStreamWriter(os, getEncoding(parameters))) {
+                try (final Writer writer = new OutputStreamWriter(newChunkOutputStream(tempFile, compression), getEncoding(parameters))) {
                     handler.setOutput(writer, toProperties(parameters));
 
                     // serialize results
@@ -2493,21 +2529,7 @@ public class RpcConnection implements RpcAPI {
                     handler.endDocument();
                 }
 
-
-                final byte[] firstChunk = getChunk(tempFile, 0);
-                result.put("data", firstChunk);
-                int offset = 0;
-                if (Files.size(tempFile) > MAX_DOWNLOAD_CHUNK_SIZE) {
-                    offset = firstChunk.length;
-
-                    final int handle = factory.resultSets.add(new SerializedResult(tempFile));
-                    result.put("handle", Integer.toString(handle));
-                    result.put("supports-long-offset", Boolean.TRUE);
-                } else {
-                    temporaryFileManager.returnTemporaryFile(tempFile);
-                }
-                result.put("offset", offset);
-                return result;
+                return getFirstChunk(tempFile);
             } finally {
                 SerializerPool.getInstance().returnObject(handler);
             }
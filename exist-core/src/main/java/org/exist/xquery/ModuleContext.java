@@ -32,6 +32,7 @@ import org.exist.storage.UpdateListener;
 import org.exist.util.Configuration;
 import org.exist.util.FileUtils;
 import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.update.PendingUpdateList;
 import org.exist.xquery.value.AnyURIValue;
 import org.exist.xquery.value.BinaryValue;
 import org.exist.xquery.value.Sequence;
@@ -265,6 +266,16 @@ public class ModuleContext extends XQueryContext {
         return parentContext.getWatchDog();
     }
 
+    @Override
+    public @Nullable PendingUpdateList getPendingUpdates() {
+        return parentContext.getPendingUpdates();
+    }
+
+    @Override
+    public void setPendingUpdates(@Nullable final PendingUpdateList pendingUpdates) {
+        parentContext.setPendingUpdates(pendingUpdates);
+    }
+
     @Override
     public Profiler getProfiler() {
         return parentContext.getProfiler();
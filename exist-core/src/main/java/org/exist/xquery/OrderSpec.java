@@ -22,7 +22,15 @@
 package org.exist.xquery;
 
 import com.ibm.icu.text.Collator;
+import org.exist.dom.QName;
+import org.exist.dom.persistent.NodeProxy;
 import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.value.AtomicValue;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.Type;
+
+import javax.annotation.Nullable;
 
 /**
  * An XQuery order specifier as specified in an "order by" clause.
@@ -42,6 +50,10 @@ public class OrderSpec {
 	private int modifiers = 0;
 	private Collator collator = null;
 
+	// set if the sort expression has the form $var/@attr
+	private QName sortKeyVariable = null;
+	private QName sortKeyAttribute = null;
+
 	public OrderSpec(XQueryContext context, Expression sortExpr) {
 		this.expression = sortExpr;
 		this.context = context;
@@ -49,6 +61,55 @@ public class OrderSpec {
 
 	public void analyze(AnalyzeContextInfo contextInfo) throws XPathException {
 	    expression.analyze(contextInfo);
+	    analyzeSortKey();
+	}
+
+	private void analyzeSortKey() {
+		sortKeyVariable = null;
+		sortKeyAttribute = null;
+		Expression expr = expression;
+		while (expr instanceof PathExpr && ((PathExpr) expr).getLength() == 1) {
+			expr = ((PathExpr) expr).getExpression(0);
+		}
+		if (!(expr instanceof PathExpr) || ((PathExpr) expr).getLength() != 2) {
+			return;
+		}
+		final Expression first = ((PathExpr) expr).getExpression(0);
+		final Expression second = ((PathExpr) expr).getExpression(1);
+		if (first instanceof VariableReference && second instanceof LocationStep) {
+			final LocationStep step = (LocationStep) second;
+			if (step.getAxis() == Constants.ATTRIBUTE_AXIS && !step.hasPredicates() &&
+					step.getTest().getType() == Type.ATTRIBUTE && step.getTest() instanceof NameTest &&
+					!(step.getTest().getName() instanceof QName.PartialQName)) {
+				sortKeyVariable = ((VariableReference) first).getName();
+				sortKeyAttribute = step.getTest().getName();
+			}
+		}
+	}
+
+	/**
+	 * If the sort expression has the form <code>$var/@attr</code> and the variable is bound
+	 * to a stored element, try to look up the value of the attribute in the indexes
+	 * implementing {@link org.exist.indexing.SortKeyIndex}. This saves evaluating the
+	 * sort expression for every item to be sorted.
+	 *
+	 * @return the sort key, or null if it has to be obtained by evaluating the sort expression
+	 * @throws XPathException if an index cannot be read
+	 */
+	public @Nullable AtomicValue getIndexedSortKey() throws XPathException {
+		if (sortKeyAttribute == null) {
+			return null;
+		}
+		final Variable var = context.resolveVariable(sortKeyVariable);
+		final Sequence value = var == null ? null : var.getValue();
+		if (value == null || !value.hasOne()) {
+			return null;
+		}
+		final Item item = value.itemAt(0);
+		if (!(item instanceof NodeProxy)) {
+			return null;
+		}
+		return context.getBroker().getIndexController().getSortKey((NodeProxy) item, sortKeyAttribute);
 	}
 	
 	public void setModifiers(int modifiers) {
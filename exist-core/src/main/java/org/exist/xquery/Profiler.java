@@ -83,6 +83,11 @@ public class Profiler {
 
     private Database db;
 
+    /**
+     * The plan of the current query, if explain mode is active.
+     */
+    private QueryPlan plan = null;
+
     public Profiler(Database db) {
         this.db = db;
         this.stats = new PerformanceStats(db);
@@ -138,7 +143,45 @@ public class Profiler {
      * @return True if profiling is enabled
      */
     public final boolean isEnabled() {
-        return enabled;
+        return enabled || plan != null;
+    }
+
+    /**
+     * Start recording the executed plan of the query,
+     * see {@link QueryPlan}. Has no effect if explain
+     * mode is already active.
+     *
+     * @return true if explain mode was started by this call
+     */
+    public final boolean startExplain() {
+        if (plan != null) {
+            return false;
+        }
+        plan = new QueryPlan();
+        return true;
+    }
+
+    /**
+     * Is explain mode active?
+     *
+     * @return true if the executed plan is being recorded
+     */
+    public final boolean isExplaining() {
+        return plan != null;
+    }
+
+    /**
+     * Stop recording the executed plan of the query.
+     *
+     * @return the recorded plan, or null if explain mode was not active
+     */
+    public final QueryPlan stopExplain() {
+        final QueryPlan recorded = plan;
+        plan = null;
+        if (recorded != null) {
+            recorded.finish();
+        }
+        return recorded;
     }
 
     public final boolean isLogEnabled() {
@@ -157,7 +200,7 @@ public class Profiler {
     }
     
     public final boolean traceFunctions() {
-        return stats.isEnabled() || isLogEnabled();
+        return plan != null || stats.isEnabled() || isLogEnabled();
     }
     
     /**
@@ -200,10 +243,16 @@ public class Profiler {
 
     public final void traceIndexUsage(XQueryContext context, String indexType, Expression expression, int mode, long elapsed) {
         stats.recordIndexUse(expression, indexType, context.getSource().pathOrShortIdentifier(), mode, elapsed);
+        if (plan != null) {
+            plan.recordIndexUse(expression, indexType, mode, elapsed);
+        }
     }
 
     public final void traceOptimization(XQueryContext context, PerformanceStats.OptimizationType type, Expression expression) {
         stats.recordOptimization(expression, type, context.getSource().pathOrShortIdentifier());
+        if (plan != null) {
+            plan.recordOptimization(expression, type);
+        }
     }
 
     private void save() {
@@ -230,6 +279,9 @@ public class Profiler {
      * @param message if not null, contains an optional message to print in the log.
      */
     public final void start(Expression expr, String message) {
+        if (plan != null) {
+            plan.enter(expr);
+        }
         if (!enabled)
             {return;}
         
@@ -274,6 +326,9 @@ public class Profiler {
      *               the number of items in the result sequence will be printed to the log.
      */
     public final void end(Expression expr, String message, Sequence result) {
+        if (plan != null) {
+            plan.exit(expr, result);
+        }
         if (!enabled)
             {return;}        
         
@@ -417,6 +472,7 @@ public class Profiler {
             log.debug("QUERY RESET");
         }
         stack.clear();
+        plan = null;
         if (stats.isEnabled() && stats.hasData()) {
             save();
             stats.reset();
@@ -0,0 +1,375 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.dom.QName;
+import org.exist.dom.memtree.MemTreeBuilder;
+import org.exist.xquery.value.Sequence;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The executed plan of a single query, as recorded by the {@link Profiler}
+ * while the query is running in explain mode.
+ *
+ * Every expression which reports its start and end to the profiler becomes
+ * a node in the plan. Nodes are nested the way the expressions were nested
+ * at runtime, and repeated evaluations of the same expression below the same
+ * parent are folded into one node with accumulated call counts, item counts
+ * and elapsed time. Index usage and optimizations traced by an expression are
+ * attached to its node.
+ *
+ * The plan can be written as XML into a {@link MemTreeBuilder}; the JSON
+ * representation is obtained by serializing that XML with method "json".
+ */
+public class QueryPlan {
+
+    public final static String XML_NAMESPACE = PerformanceStats.XML_NAMESPACE;
+    public final static String XML_PREFIX = PerformanceStats.XML_PREFIX;
+
+    public final static QName PLAN_ELEMENT = new QName("plan", XML_NAMESPACE, XML_PREFIX);
+    public final static QName EXPR_ELEMENT = new QName("expr", XML_NAMESPACE, XML_PREFIX);
+    public final static QName INDEX_ELEMENT = new QName("index", XML_NAMESPACE, XML_PREFIX);
+    public final static QName OPTIMIZATION_ELEMENT = new QName("optimization", XML_NAMESPACE, XML_PREFIX);
+
+    /** Maximum length of the expression description written to the plan */
+    private final static int MAX_DESCRIPTION_LENGTH = 128;
+
+    private final PlanNode root = new PlanNode(null);
+    private final Deque<PlanNode> stack = new ArrayDeque<>();
+    private final long start;
+    private long elapsed = -1;
+
+    public QueryPlan() {
+        this.start = System.nanoTime();
+        stack.push(root);
+    }
+
+    /**
+     * Called when an expression starts evaluating.
+     *
+     * @param expr the expression
+     */
+    public void enter(final Expression expr) {
+        PlanNode node = null;
+        // recursive evaluation: fold into the node which is already active
+        for (final PlanNode active : stack) {
+            if (active.expr == expr) {
+                node = active;
+                break;
+            }
+        }
+        if (node == null) {
+            node = stack.peek().child(expr);
+        }
+        if (node.active++ == 0) {
+            node.started = System.nanoTime();
+        }
+        node.calls++;
+        stack.push(node);
+    }
+
+    /**
+     * Called when an expression finished evaluating.
+     *
+     * @param expr the expression
+     * @param result the result of the expression, may be null
+     */
+    public void exit(final Expression expr, final Sequence result) {
+        if (!isActive(expr)) {
+            return;
+        }
+        // expressions which terminated with an error never report their end,
+        // so unwind up to the matching expression
+        PlanNode node;
+        do {
+            node = stack.pop();
+            if (--node.active == 0) {
+                node.elapsed += System.nanoTime() - node.started;
+            }
+        } while (node.expr != expr);
+
+        if (result != null) {
+            node.items += result.getItemCount();
+        }
+    }
+
+    private boolean isActive(final Expression expr) {
+        for (final PlanNode active : stack) {
+            if (active.expr == expr) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void recordIndexUse(final Expression expr, final String indexType, final int mode, final long elapsed) {
+        final PlanNode node = nodeFor(expr);
+        for (final IndexUse use : node.indexes) {
+            if (use.indexType.equals(indexType) && use.mode == mode) {
+                use.calls++;
+                use.elapsed += elapsed;
+                return;
+            }
+        }
+        node.indexes.add(new IndexUse(indexType, mode, elapsed));
+    }
+
+    public void recordOptimization(final Expression expr, final PerformanceStats.OptimizationType type) {
+        nodeFor(expr).optimizations.add(type);
+    }
+
+    /**
+     * Index usage and optimizations may be traced by an expression before it
+     * reports its start, or by expressions which do not report to the profiler
+     * at all. Attach them to the innermost active node in that case.
+     */
+    private PlanNode nodeFor(final Expression expr) {
+        for (final PlanNode active : stack) {
+            if (active.expr == expr) {
+                return active;
+            }
+        }
+        final PlanNode current = stack.peek();
+        for (final PlanNode child : current.children) {
+            if (child.expr == expr) {
+                return child;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Stop recording. Subsequent calls to {@link #getElapsed()} return the
+     * time between the creation of the plan and this call.
+     */
+    public void finish() {
+        if (elapsed < 0) {
+            elapsed = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * @return the elapsed time of the query in nanoseconds
+     */
+    public long getElapsed() {
+        return elapsed < 0 ? System.nanoTime() - start : elapsed;
+    }
+
+    /**
+     * @return the top-level nodes of the plan
+     */
+    public List<PlanNode> getNodes() {
+        return root.children;
+    }
+
+    public int toXML(final MemTreeBuilder builder) {
+        return toXML(builder, null);
+    }
+
+    /**
+     * Write the plan as XML.
+     *
+     * @param builder the builder to write to
+     * @param planAttrs additional attributes for the root element, may be null
+     *
+     * @return the node number of the root element
+     */
+    public int toXML(final MemTreeBuilder builder, final Attributes planAttrs) {
+        final AttributesImpl attrs = planAttrs == null ? new AttributesImpl() : new AttributesImpl(planAttrs);
+        attrs.addAttribute("", "elapsed", "elapsed", "CDATA", seconds(getElapsed()));
+        final int nodeNr = builder.startElement(PLAN_ELEMENT, attrs);
+        for (final PlanNode node : root.children) {
+            node.toXML(builder, attrs);
+        }
+        builder.endElement();
+        return nodeNr;
+    }
+
+    /**
+     * @return the plan as indented text, one expression per line
+     */
+    @Override
+    public String toString() {
+        final StringBuilder buf = new StringBuilder();
+        buf.append("PLAN\t").append(seconds(getElapsed())).append(" s");
+        for (final PlanNode node : root.children) {
+            node.toString(buf, 1);
+        }
+        return buf.toString();
+    }
+
+    private static String seconds(final long nanos) {
+        return Double.toString(nanos / 1_000_000_000.0);
+    }
+
+    private static String indexMode(final int mode) {
+        switch (mode) {
+            case PerformanceStats.OPTIMIZED_INDEX:
+                return "optimized";
+            case PerformanceStats.BASIC_INDEX:
+                return "basic";
+            default:
+                return "none";
+        }
+    }
+
+    public static class PlanNode {
+
+        private final Expression expr;
+        private final List<PlanNode> children = new ArrayList<>();
+        private final List<IndexUse> indexes = new ArrayList<>(1);
+        private final Set<PerformanceStats.OptimizationType> optimizations = EnumSet.noneOf(PerformanceStats.OptimizationType.class);
+        private int calls = 0;
+        private long items = 0;
+        private long elapsed = 0;
+        private long started;
+        private int active = 0;
+
+        private PlanNode(final Expression expr) {
+            this.expr = expr;
+        }
+
+        private PlanNode child(final Expression expr) {
+            for (final PlanNode child : children) {
+                if (child.expr == expr) {
+                    return child;
+                }
+            }
+            final PlanNode child = new PlanNode(expr);
+            children.add(child);
+            return child;
+        }
+
+        public Expression getExpression() {
+            return expr;
+        }
+
+        public List<PlanNode> getChildren() {
+            return children;
+        }
+
+        public int getCalls() {
+            return calls;
+        }
+
+        public long getItems() {
+            return items;
+        }
+
+        /**
+         * @return the accumulated time spent in the expression, in nanoseconds
+         */
+        public long getElapsed() {
+            return elapsed;
+        }
+
+        private void toXML(final MemTreeBuilder builder, final AttributesImpl attrs) {
+            attrs.clear();
+            attrs.addAttribute("", "type", "type", "CDATA", expr.getClass().getSimpleName());
+            if (expr.getLine() > -1) {
+                attrs.addAttribute("", "line", "line", "CDATA", Integer.toString(expr.getLine()));
+                attrs.addAttribute("", "column", "column", "CDATA", Integer.toString(expr.getColumn()));
+            }
+            attrs.addAttribute("", "calls", "calls", "CDATA", Integer.toString(calls));
+            attrs.addAttribute("", "items", "items", "CDATA", Long.toString(items));
+            attrs.addAttribute("", "elapsed", "elapsed", "CDATA", seconds(elapsed));
+            attrs.addAttribute("", "expression", "expression", "CDATA", describe(expr));
+            builder.startElement(EXPR_ELEMENT, attrs);
+
+            for (final IndexUse use : indexes) {
+                attrs.clear();
+                attrs.addAttribute("", "type", "type", "CDATA", use.indexType);
+                attrs.addAttribute("", "optimization", "optimization", "CDATA", indexMode(use.mode));
+                attrs.addAttribute("", "calls", "calls", "CDATA", Integer.toString(use.calls));
+                attrs.addAttribute("", "elapsed", "elapsed", "CDATA", Double.toString(use.elapsed / 1000.0));
+                builder.startElement(INDEX_ELEMENT, attrs);
+                builder.endElement();
+            }
+            for (final PerformanceStats.OptimizationType optimization : optimizations) {
+                attrs.clear();
+                attrs.addAttribute("", "type", "type", "CDATA", optimization.toString());
+                builder.startElement(OPTIMIZATION_ELEMENT, attrs);
+                builder.endElement();
+            }
+            for (final PlanNode child : children) {
+                child.toXML(builder, attrs);
+            }
+            builder.endElement();
+        }
+
+        private void toString(final StringBuilder buf, final int depth) {
+            buf.append('\n');
+            for (int i = 0; i < depth; i++) {
+                buf.append('\t');
+            }
+            buf.append(seconds(elapsed)).append(" s\t");
+            buf.append(calls).append(" call(s)\t");
+            buf.append(items).append(" item(s)\t");
+            if (expr.getLine() > -1) {
+                buf.append('[').append(expr.getLine()).append(',').append(expr.getColumn()).append("]\t");
+            }
+            buf.append(expr.getClass().getSimpleName()).append('\t').append(describe(expr));
+            for (final IndexUse use : indexes) {
+                buf.append("\tINDEX ").append(use.indexType).append(' ').append(indexMode(use.mode));
+            }
+            for (final PerformanceStats.OptimizationType optimization : optimizations) {
+                buf.append("\tOPTIMIZATION ").append(optimization);
+            }
+            for (final PlanNode child : children) {
+                child.toString(buf, depth + 1);
+            }
+        }
+
+        private static String describe(final Expression expr) {
+            final String description = expr.toString();
+            if (description == null) {
+                return "";
+            }
+            if (description.length() > MAX_DESCRIPTION_LENGTH) {
+                return description.substring(0, MAX_DESCRIPTION_LENGTH) + "...";
+            }
+            return description;
+        }
+    }
+
+    private static class IndexUse {
+
+        final String indexType;
+        final int mode;
+        int calls = 1;
+        long elapsed;
+
+        IndexUse(final String indexType, final int mode, final long elapsed) {
+            this.indexType = indexType;
+            this.mode = mode;
+            this.elapsed = elapsed;
+        }
+    }
+}
@@ -42,6 +42,7 @@ import org.exist.source.FileSource;
 import org.exist.source.Source;
 import org.exist.source.StringSource;
 import org.exist.storage.DBBroker;
+import org.exist.storage.XQueryResultCache;
 import org.exist.xquery.parser.XQueryLexer;
 import org.exist.xquery.parser.XQueryParser;
 import org.exist.xquery.parser.XQueryTreeParser;
@@ -363,6 +364,14 @@ public class XQuery {
             broker.getBrokerPool().getProcessMonitor().queryStarted(context.getWatchDog());
             try {
 
+                // results are only cached for queries which are not given a context
+                final XQueryResultCache.Request cacheRequest;
+                if(contextSequence == null && context.getContextItemDeclartion() == null) {
+                    cacheRequest = broker.getBrokerPool().getXQueryResultCache().request(context, callingUser);
+                } else {
+                    cacheRequest = null;
+                }
+
                 // support for XQuery 3.0 - declare context item :=
                 if(contextSequence == null) {
                     if(context.getContextItemDeclartion() != null) {
@@ -370,7 +379,13 @@ public class XQuery {
                     }
                 }
 
-                final Sequence result = expression.eval(contextSequence);
+                Sequence result = cacheRequest != null ? broker.getBrokerPool().getXQueryResultCache().get(cacheRequest) : null;
+                if(result == null) {
+                    result = expression.eval(contextSequence);
+                    if(cacheRequest != null) {
+                        broker.getBrokerPool().getXQueryResultCache().put(cacheRequest, result);
+                    }
+                }
                 if(LOG.isDebugEnabled()) {
                     final NumberFormat nf = NumberFormat.getNumberInstance();
                     LOG.debug("Execution took {} ms", nf.format(System.currentTimeMillis() - start));
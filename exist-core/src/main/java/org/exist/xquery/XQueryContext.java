@@ -80,6 +80,7 @@ import org.exist.source.*;
 import org.exist.stax.ExtendedXMLStreamReader;
 import org.exist.storage.DBBroker;
 import org.exist.storage.UpdateListener;
+import org.exist.storage.XQueryPool;
 import org.exist.storage.lock.Lock.LockMode;
 import org.exist.storage.lock.LockedDocumentMap;
 import org.exist.storage.txn.Txn;
@@ -92,6 +93,7 @@ import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.parser.*;
 import org.exist.xquery.pragmas.*;
 import org.exist.xquery.update.Modification;
+import org.exist.xquery.update.PendingUpdateList;
 import org.exist.xquery.util.SerializerUtils;
 import org.exist.xquery.value.*;
 import org.w3c.dom.Node;
@@ -271,6 +273,11 @@ public class XQueryContext implements BinaryValueManager, Context {
      */
     protected MutableDocumentSet modifiedDocuments = null;
 
+    /**
+     * Collects the modifications made by the XQuery update extensions within an exist:batch-updates pragma.
+     */
+    @Nullable private PendingUpdateList pendingUpdates = null;
+
     /**
      * A general-purpose map to set attributes in the current query context.
      */
@@ -338,6 +345,12 @@ public class XQueryContext implements BinaryValueManager, Context {
      */
     private Deque<MemTreeBuilder> fragmentStack = new ArrayDeque<>();
 
+    /**
+     * In-memory documents which have been stored in the temporary collection
+     * by this query, mapped to their stored copy.
+     */
+    @Nullable private Map<org.exist.dom.memtree.DocumentImpl, DocumentImpl> temporaryDocs = null;
+
     /**
      * The root of the expression tree.
      */
@@ -1343,6 +1356,26 @@ public class XQueryContext implements BinaryValueManager, Context {
         modifiedDocuments.add(document);
     }
 
+    /**
+     * Gets the list which collects the modifications made by the XQuery
+     * update extensions, rather than applying them immediately.
+     *
+     * @return the pending update list, or null if modifications should be applied immediately
+     */
+    public @Nullable PendingUpdateList getPendingUpdates() {
+        return pendingUpdates;
+    }
+
+    /**
+     * Sets the list which collects the modifications made by the XQuery
+     * update extensions, rather than applying them immediately.
+     *
+     * @param pendingUpdates the pending update list, or null to apply modifications immediately
+     */
+    public void setPendingUpdates(@Nullable final PendingUpdateList pendingUpdates) {
+        this.pendingUpdates = pendingUpdates;
+    }
+
     @Override
     public void reset() {
         reset(false);
@@ -1362,17 +1395,19 @@ public class XQueryContext implements BinaryValueManager, Context {
 
         if (modifiedDocuments != null) {
             try {
-                Modification.checkFragmentation(this, modifiedDocuments);
+                Modification.scheduleDefragmentation(this, modifiedDocuments);
             } catch (final LockException | EXistException e) {
                 LOG.warn("Error while checking modified documents: {}", e.getMessage(), e);
             }
             modifiedDocuments = null;
         }
+        pendingUpdates = null;
 
         calendar = null;
         implicitTimeZone = null;
 
         resetDocumentBuilder();
+        temporaryDocs = null;
 
         contextSequence = null;
         contextItem = Sequence.EMPTY_SEQUENCE;
@@ -2578,7 +2613,8 @@ public class XQueryContext implements BinaryValueManager, Context {
     }
 
     /**
-     * Compile of borrow an already compile module from the cache.
+     * Compile a module, borrowing its already parsed syntax tree
+     * from the {@link XQueryPool} if another query has imported it.
      *
      * @param prefix the module namespace prefix
      * @param namespaceURI the module namespace URI
@@ -2633,22 +2669,31 @@ public class XQueryContext implements BinaryValueManager, Context {
             addModule(namespaceURI, modExternal);
             final XQueryContext modContext = new ModuleContext(this, prefix, namespaceURI, location);
             modExternal.setContext(modContext);
-            final XQueryLexer lexer = new XQueryLexer(modContext, reader);
-            final XQueryParser parser = new XQueryParser(lexer);
             final XQueryTreeParser astParser = new XQueryTreeParser(modContext, modExternal);
 
             try {
-                parser.xpath();
+                // the syntax tree of the module may be shared with other queries, but the
+                // analyzed module is always private to this context
+                final XQueryPool xqueryPool = getBroker() != null ? getBroker().getBrokerPool().getXQueryPool() : null;
+                AST ast = xqueryPool != null ? xqueryPool.borrowModule(getBroker(), source) : null;
+                if (ast == null) {
+                    final XQueryLexer lexer = new XQueryLexer(modContext, reader);
+                    final XQueryParser parser = new XQueryParser(lexer);
+                    parser.xpath();
+
+                    if (parser.foundErrors()) {
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug(parser.getErrorMessage());
+                        }
+                        throw new XPathException(ErrorCodes.XPST0003, "error found while loading module from " + location + ": " + parser.getErrorMessage());
+                    }
 
-                if (parser.foundErrors()) {
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug(parser.getErrorMessage());
+                    ast = parser.getAST();
+                    if (xqueryPool != null) {
+                        xqueryPool.returnModule(source, ast);
                     }
-                    throw new XPathException(ErrorCodes.XPST0003, "error found while loading module from " + location + ": " + parser.getErrorMessage());
                 }
 
-                final AST ast = parser.getAST();
-
                 final PathExpr path = new PathExpr(modContext);
                 astParser.xpath(ast, path);
 
@@ -2959,9 +3004,17 @@ public class XQueryContext implements BinaryValueManager, Context {
                 return new ProfilePragma(qname, contents);
             }
 
+            if (ExplainPragma.EXPLAIN_PRAGMA.equals(qname)) {
+                return new ExplainPragma(qname, contents);
+            }
+
             if (NoIndexPragma.NO_INDEX_PRAGMA.equals(qname)) {
                 return new NoIndexPragma(qname, contents);
             }
+
+            if (BatchUpdatesPragma.BATCH_UPDATES_PRAGMA.equals(qname)) {
+                return new BatchUpdatesPragma(qname, contents);
+            }
         }
 
         return null;
@@ -2969,6 +3022,14 @@ public class XQueryContext implements BinaryValueManager, Context {
 
     @Override
     public DocumentImpl storeTemporaryDoc(final org.exist.dom.memtree.DocumentImpl doc) throws XPathException {
+        // in-memory documents are not modified once constructed, so each needs storing at most once per query
+        if (temporaryDocs != null) {
+            final DocumentImpl storedDoc = temporaryDocs.get(doc);
+            if (storedDoc != null) {
+                return storedDoc;
+            }
+        }
+
         try {
             final DocumentImpl targetDoc = getBroker().storeTempResource(doc);
 
@@ -2976,6 +3037,11 @@ public class XQueryContext implements BinaryValueManager, Context {
                 throw new XPathException("Internal error: failed to store temporary doc fragment");
             }
             LOG.warn("Stored: {}: {}", targetDoc.getDocId(), targetDoc.getURI(), new Throwable());
+
+            if (temporaryDocs == null) {
+                temporaryDocs = new IdentityHashMap<>();
+            }
+            temporaryDocs.put(doc, targetDoc);
             return targetDoc;
         } catch (final EXistException | LockException | PermissionDeniedException e) {
             throw new XPathException(TEMP_STORE_ERROR, e);
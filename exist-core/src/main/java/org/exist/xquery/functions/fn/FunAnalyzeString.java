@@ -31,6 +31,7 @@ import net.sf.saxon.regex.RegularExpression;
 import org.exist.dom.QName;
 import org.exist.dom.memtree.MemTreeBuilder;
 import org.exist.xquery.*;
+import org.exist.xquery.regex.RegularExpressionFactory;
 import org.exist.xquery.value.FunctionParameterSequenceType;
 import org.exist.xquery.value.FunctionReturnSequenceType;
 import org.exist.xquery.value.NodeValue;
@@ -41,6 +42,8 @@ import org.xml.sax.helpers.AttributesImpl;
 
 import javax.xml.XMLConstants;
 
+import static org.exist.xquery.regex.RegexUtil.literalString;
+
 /**
  * XPath and XQuery 3.0 F+O fn:analyze-string()
  *
@@ -92,10 +95,39 @@ public class FunAnalyzeString extends BasicFunction {
         )
     };
 
+    /**
+     * The compiled regular expression of this call, if the pattern and
+     * flags arguments are literals. Compiled once during analysis.
+     */
+    private RegularExpression staticRegularExpression = null;
+
     public FunAnalyzeString(final XQueryContext context, final FunctionSignature signature) {
         super(context, signature);
     }
 
+    @Override
+    public void analyze(final AnalyzeContextInfo contextInfo) throws XPathException {
+        super.analyze(contextInfo);
+
+        staticRegularExpression = null;
+        final String pattern = literalString(getArgument(1));
+        final String flags = getArgumentCount() == 3 ? literalString(getArgument(2)) : "";
+        if (pattern == null || flags == null) {
+            return;
+        }
+        final Configuration config = RegularExpressionFactory.getSaxonConfiguration(context);
+        if (config == null) {
+            // compiled when the function is evaluated
+            return;
+        }
+        try {
+            staticRegularExpression = RegularExpressionFactory.getInstance().getRegularExpression(config, pattern, flags, new ArrayList<>(1));
+        } catch (final net.sf.saxon.trans.XPathException e) {
+            // the error is reported when the function is evaluated
+            staticRegularExpression = null;
+        }
+    }
+
     @Override
     public Sequence eval(final Sequence[] args, final Sequence contextSequence) throws XPathException {
         context.pushDocumentContext();
@@ -129,9 +161,12 @@ public class FunAnalyzeString extends BasicFunction {
         final List<String> warnings = new ArrayList<>(1);
 
         try {
-            final RegularExpression regularExpression = config.compileRegularExpression(pattern, flags, "XP30", warnings);
-
-            //TODO(AR) cache the regular expression... might be possible through Saxon config
+            final RegularExpression regularExpression;
+            if (staticRegularExpression != null) {
+                regularExpression = staticRegularExpression;
+            } else {
+                regularExpression = RegularExpressionFactory.getInstance().getRegularExpression(config, pattern, flags, warnings);
+            }
 
             final RegexIterator regexIterator = regularExpression.analyze(input);
             Item item;
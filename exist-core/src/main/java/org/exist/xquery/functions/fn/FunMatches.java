@@ -106,6 +106,13 @@ public class FunMatches extends Function implements Optimizable, IndexUseReporte
     protected Matcher matcher = null;
     protected Pattern pat = null;
 
+    /**
+     * The translated and compiled pattern of this call, if the pattern and
+     * flags arguments are literals. Compiled once during analysis.
+     */
+    protected Pattern staticPattern = null;
+    protected int staticFlags = 0;
+
     protected boolean hasUsedIndex = false;
 
     private LocationStep contextStep = null;
@@ -208,26 +215,22 @@ public class FunMatches extends Function implements Optimizable, IndexUseReporte
         }
 
         final int flags;
-        if (getSignature().getArgumentCount() == 3) {
-            final String flagsArg = getArgument(2).eval(contextSequence).getStringValue();
-            flags = parseFlags(this, flagsArg);
+        final String pattern;
+        if (staticPattern != null) {
+            flags = staticFlags;
+            pattern = staticPattern.pattern();
         } else {
-            flags = 0;
+            if (getSignature().getArgumentCount() == 3) {
+                final String flagsArg = getArgument(2).eval(contextSequence).getStringValue();
+                flags = parseFlags(this, flagsArg);
+            } else {
+                flags = 0;
+            }
+            pattern = translatePattern(getArgument(1).eval(contextSequence).getStringValue(), flags);
         }
 
         final boolean caseSensitive = !hasCaseInsensitive(flags);
 
-        final String pattern;
-        final boolean literal = hasLiteral(flags);
-        if (literal) {
-            // no need to change anything
-            pattern = getArgument(1).eval(contextSequence).getStringValue();
-        } else {
-            final boolean ignoreWhitespace = hasIgnoreWhitespace(flags);
-            final boolean caseBlind = !caseSensitive;
-            pattern = translateRegexp(this, getArgument(1).eval(contextSequence).getStringValue(), ignoreWhitespace, caseBlind);
-        }
-
         try {
             preselectResult = context.getBroker().getValueIndex().match(context.getWatchDog(), contextSequence.getDocumentSet(),
                     useContext ? contextSequence.toNodeSet() : null, NodeSet.DESCENDANT, pattern,
@@ -289,6 +292,51 @@ public class FunMatches extends Function implements Optimizable, IndexUseReporte
         for (int i = 0; i < getArgumentCount(); i++) {
             getArgument(i).analyze(newContextInfo);
         }
+        analyzePattern();
+    }
+
+    /**
+     * Compiles the regular expression of this call once, if the pattern
+     * and flags are literals. If the regular expression is invalid, the
+     * error is left to be reported when the function is evaluated.
+     *
+     * @throws XPathException if an error occurs
+     */
+    protected void analyzePattern() throws XPathException {
+        staticPattern = null;
+        if (getArgumentCount() < 2 || isCalledAs("matches-regex")) {
+            return;
+        }
+        final String pattern = literalString(getArgument(1));
+        final String flags = getArgumentCount() == 3 ? literalString(getArgument(2)) : "";
+        if (pattern == null || flags == null) {
+            return;
+        }
+        try {
+            staticFlags = parseFlags(this, flags);
+            staticPattern = PatternFactory.getInstance().getPattern(translatePattern(pattern, staticFlags), staticFlags);
+        } catch (final XPathException | PatternSyntaxException e) {
+            staticPattern = null;
+        }
+    }
+
+    /**
+     * Translates an XPath regular expression to Java syntax, unless the flags
+     * request the pattern to be taken literally.
+     *
+     * @param pattern the XPath regular expression
+     * @param flags the Java regular expression flags
+     *
+     * @return the Java regular expression
+     *
+     * @throws XPathException if the regular expression cannot be translated
+     */
+    protected String translatePattern(final String pattern, final int flags) throws XPathException {
+        if (hasLiteral(flags)) {
+            // no need to change anything
+            return pattern;
+        }
+        return translateRegexp(this, pattern, hasIgnoreWhitespace(flags), hasCaseInsensitive(flags));
     }
 
     @Override
@@ -378,32 +426,29 @@ public class FunMatches extends Function implements Optimizable, IndexUseReporte
         }
 
         final int flags;
-        if (getSignature().getArgumentCount() == 3) {
-            final String flagsArg = getArgument(2).eval(contextSequence, contextItem).getStringValue();
-            flags = parseFlags(this, flagsArg);
-        } else {
-            flags = 0;
-        }
-
-        final boolean caseSensitive = !hasCaseInsensitive(flags);
-
-        Sequence result = null;
-
         final String pattern;
-        if (isCalledAs("matches-regex")) {
-            pattern = getArgument(1).eval(contextSequence, contextItem).getStringValue();
+        if (staticPattern != null) {
+            flags = staticFlags;
+            pattern = staticPattern.pattern();
         } else {
-            final boolean literal = hasLiteral(flags);
-            if (literal) {
-                // no need to change anything
+            if (getSignature().getArgumentCount() == 3) {
+                final String flagsArg = getArgument(2).eval(contextSequence, contextItem).getStringValue();
+                flags = parseFlags(this, flagsArg);
+            } else {
+                flags = 0;
+            }
+
+            if (isCalledAs("matches-regex")) {
                 pattern = getArgument(1).eval(contextSequence, contextItem).getStringValue();
             } else {
-                final boolean ignoreWhitespace = hasIgnoreWhitespace(flags);
-                final boolean caseBlind = !caseSensitive;
-                pattern = translateRegexp(this, getArgument(1).eval(contextSequence, contextItem).getStringValue(), ignoreWhitespace, caseBlind);
+                pattern = translatePattern(getArgument(1).eval(contextSequence, contextItem).getStringValue(), flags);
             }
         }
 
+        final boolean caseSensitive = !hasCaseInsensitive(flags);
+
+        Sequence result = null;
+
         final NodeSet nodes = input.toNodeSet();
         // get the type of a possible index
         final int indexType = nodes.getIndexType();
@@ -492,6 +537,10 @@ public class FunMatches extends Function implements Optimizable, IndexUseReporte
     private Sequence evalGeneric(final Sequence contextSequence, final Item contextItem, final Sequence input) throws XPathException {
         final String string = input.getStringValue();
 
+        if (staticPattern != null) {
+            return BooleanValue.valueOf(match(string, staticPattern));
+        }
+
         final int flags;
         if (getSignature().getArgumentCount() == 3) {
             flags = parseFlags(this, getArgument(2).eval(contextSequence, contextItem).getStringValue());
@@ -503,15 +552,7 @@ public class FunMatches extends Function implements Optimizable, IndexUseReporte
         if (isCalledAs("matches-regex")) {
             pattern = getArgument(1).eval(contextSequence, contextItem).getStringValue();
         } else {
-            final boolean literal = hasLiteral(flags);
-            if (literal) {
-                // no need to change anything
-                pattern = getArgument(1).eval(contextSequence, contextItem).getStringValue();
-            } else {
-                final boolean ignoreWhitespace = hasIgnoreWhitespace(flags);
-                final boolean caseBlind = hasCaseInsensitive(flags);
-                pattern = translateRegexp(this, getArgument(1).eval(contextSequence, contextItem).getStringValue(), ignoreWhitespace, caseBlind);
-            }
+            pattern = translatePattern(getArgument(1).eval(contextSequence, contextItem).getStringValue(), flags);
         }
 
         return BooleanValue.valueOf(match(string, pattern, flags));
@@ -527,20 +568,31 @@ public class FunMatches extends Function implements Optimizable, IndexUseReporte
     private boolean match(final String string, final String pattern, final int flags) throws XPathException {
         try {
             if (pat == null || (!pattern.equals(pat.pattern())) || flags != pat.flags()) {
-                pat = PatternFactory.getInstance().getPattern(pattern, flags);
                 //TODO : make matches('&#x212A;', '[A-Z]', 'i') work !
-                matcher = pat.matcher(string);
-            } else {
-                matcher.reset(string);
+                return match(string, PatternFactory.getInstance().getPattern(pattern, flags));
             }
-
-            return matcher.find();
+            return match(string, pat);
 
         } catch (final PatternSyntaxException e) {
             throw new XPathException(this, ErrorCodes.FORX0001, "Invalid regular expression: " + e.getMessage(), new StringValue(pattern), e);
         }
     }
 
+    /**
+     * @param string the value
+     * @param pattern the compiled pattern
+     * @return Whether or not the string matches the given pattern
+     */
+    private boolean match(final String string, final Pattern pattern) {
+        if (pat != pattern || matcher == null) {
+            pat = pattern;
+            matcher = pat.matcher(string);
+        } else {
+            matcher.reset(string);
+        }
+        return matcher.find();
+    }
+
     @Override
     public void reset() {
         super.reset();
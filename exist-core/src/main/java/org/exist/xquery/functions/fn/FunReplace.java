@@ -39,6 +39,7 @@ import org.exist.xquery.FunctionSignature;
 import org.exist.xquery.Profiler;
 import org.exist.xquery.XPathException;
 import org.exist.xquery.XQueryContext;
+import org.exist.xquery.regex.RegularExpressionFactory;
 import org.exist.xquery.util.Error;
 import org.exist.xquery.value.FunctionParameterSequenceType;
 import org.exist.xquery.value.FunctionReturnSequenceType;
@@ -106,10 +107,37 @@ public class FunReplace extends FunMatches {
 		)
 	};
 
+	/**
+	 * The compiled regular expression of this call, if the pattern and
+	 * flags arguments are literals. Compiled once during analysis.
+	 */
+	private RegularExpression staticRegularExpression = null;
+
 	public FunReplace(final XQueryContext context, final FunctionSignature signature) {
 		super(context, signature);
 	}
 
+	@Override
+	protected void analyzePattern() throws XPathException {
+		staticRegularExpression = null;
+		final String pattern = literalString(getArgument(1));
+		final String flags = getArgumentCount() == 4 ? literalString(getArgument(3)) : "";
+		if (pattern == null || flags == null) {
+			return;
+		}
+		final Configuration config = RegularExpressionFactory.getSaxonConfiguration(context);
+		if (config == null) {
+			// compiled when the function is evaluated
+			return;
+		}
+		try {
+			staticRegularExpression = RegularExpressionFactory.getInstance().getRegularExpression(config, pattern, flags, new ArrayList<>(1));
+		} catch (final net.sf.saxon.trans.XPathException e) {
+			// the error is reported when the function is evaluated
+			staticRegularExpression = null;
+		}
+	}
+
 	@Override
 	public void setArguments(List<Expression> arguments) {
 	    steps.clear();
@@ -170,20 +198,21 @@ public class FunReplace extends FunMatches {
 			}
 
     		final String string = stringArg.getStringValue();
-    		final Sequence patternSeq = getArgument(1).eval(contextSequence, contextItem);
-    		final String pattern = patternSeq.getStringValue();
 
 			final Sequence replaceSeq = getArgument(2).eval(contextSequence, contextItem);
 			final String replace = replaceSeq.getStringValue();
 
-			final Configuration config = context.getBroker().getBrokerPool().getSaxonConfiguration();
-
-			final List<String> warnings = new ArrayList<>(1);
-
 			try {
-				final RegularExpression regularExpression = config.compileRegularExpression(pattern, flags, "XP30", warnings);
-
-				//TODO(AR) cache the regular expression... might be possible through Saxon config
+				final RegularExpression regularExpression;
+				if (staticRegularExpression != null) {
+					regularExpression = staticRegularExpression;
+				} else {
+					final Sequence patternSeq = getArgument(1).eval(contextSequence, contextItem);
+					final String pattern = patternSeq.getStringValue();
+					final Configuration config = context.getBroker().getBrokerPool().getSaxonConfiguration();
+					final List<String> warnings = new ArrayList<>(1);
+					regularExpression = RegularExpressionFactory.getInstance().getRegularExpression(config, pattern, flags, warnings);
+				}
 
 				if (!hasLiteral(flags)) {
 					final String msg = Replace.checkReplacement(replace);
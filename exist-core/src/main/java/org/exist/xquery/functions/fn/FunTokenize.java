@@ -100,30 +100,30 @@ public class FunTokenize extends FunMatches {
                 result = Sequence.EMPTY_SEQUENCE;
             } else {
                 final int flags;
-                if (getSignature().getArgumentCount() == 3) {
-                    flags = parseFlags(this, getArgument(2).eval(contextSequence, contextItem)
-                            .getStringValue());
-                } else {
-                    flags = 0;
-                }
-
                 final String pattern;
-                if(getArgumentCount() == 1) {
-                    pattern = " ";
-                    string = FunNormalizeSpace.normalize(string);
+                if (staticPattern != null) {
+                    flags = staticFlags;
+                    pattern = staticPattern.pattern();
                 } else {
-                    if(hasLiteral(flags)) {
-                        // no need to change anything
-                        pattern = getArgument(1).eval(contextSequence, contextItem).getStringValue();
+                    if (getSignature().getArgumentCount() == 3) {
+                        flags = parseFlags(this, getArgument(2).eval(contextSequence, contextItem)
+                                .getStringValue());
+                    } else {
+                        flags = 0;
+                    }
+
+                    if(getArgumentCount() == 1) {
+                        pattern = " ";
+                        string = FunNormalizeSpace.normalize(string);
                     } else {
-                        final boolean ignoreWhitespace = hasIgnoreWhitespace(flags);
-                        final boolean caseBlind = hasCaseInsensitive(flags);
-                        pattern = translateRegexp(this, getArgument(1).eval(contextSequence, contextItem).getStringValue(), ignoreWhitespace, caseBlind);
+                        pattern = translatePattern(getArgument(1).eval(contextSequence, contextItem).getStringValue(), flags);
                     }
                 }
 
                 try {
-                    if (pat == null || (!pattern.equals(pat.pattern())) || flags != pat.flags()) {
+                    if (staticPattern != null) {
+                        pat = staticPattern;
+                    } else if (pat == null || (!pattern.equals(pat.pattern())) || flags != pat.flags()) {
                         pat = PatternFactory.getInstance().getPattern(pattern, flags);
                     }
 
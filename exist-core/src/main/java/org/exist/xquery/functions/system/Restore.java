@@ -35,6 +35,7 @@ import org.exist.xquery.FunctionSignature;
 import org.exist.xquery.XPathException;
 import org.exist.xquery.XQueryContext;
 import org.exist.xquery.value.FunctionParameterSequenceType;
+import org.exist.xquery.value.IntegerValue;
 import org.exist.xquery.value.NodeValue;
 import org.exist.xquery.value.Sequence;
 import org.exist.xquery.value.Type;
@@ -58,6 +59,9 @@ public class Restore extends BasicFunction {
             "The password for the admin user");
     public static final FunctionParameterSequenceType PARAM_NEW_ADMIN_PASS = optParam("new-admin-pass", Type.STRING,
             "Set the admin password to this new password.");
+    public static final FunctionParameterSequenceType PARAM_OVERWRITE = param("overwrite", Type.BOOLEAN,
+            "Should newer versions of apps installed in the database be overwritten " +
+                    "by those found in the backup? False by default.");
 
     private static final String FS_RESTORE_NAME = "restore";
 
@@ -75,9 +79,17 @@ public class Restore extends BasicFunction {
                          PARAM_DIR_OR_FILE,
                          PARAM_ADMIN_PASS,
                          PARAM_NEW_ADMIN_PASS,
-                         param("overwrite", Type.BOOLEAN,
-                                 "Should newer versions of apps installed in the database be overwritten " +
-                                         "by those found in the backup? False by default.")
+                         PARAM_OVERWRITE
+                 ),
+                 arity(
+                         PARAM_DIR_OR_FILE,
+                         PARAM_ADMIN_PASS,
+                         PARAM_NEW_ADMIN_PASS,
+                         PARAM_OVERWRITE,
+                         param("threads", Type.INTEGER,
+                                 "The number of threads used to restore independent collections concurrently. " +
+                                         "1 restores the backup in a single thread. When restoring concurrently, each " +
+                                         "collection and resource is restored in its own transaction.")
                  )
             )
     );
@@ -99,7 +111,11 @@ public class Restore extends BasicFunction {
         if (args[2].hasOne())
                 {adminPassAfter = args[2].getStringValue();}
 
-        final boolean overwriteApps = args.length == 4 && args[3].effectiveBooleanValue();
+        final boolean overwriteApps = args.length >= 4 && args[3].effectiveBooleanValue();
+        final int threads = args.length == 5 ? ((IntegerValue) args[4].itemAt(0)).getInt() : 1;
+        if (threads < 1) {
+            throw new XPathException(this, "The number of threads must be at least 1");
+        }
 
         context.pushDocumentContext();
         try {
@@ -110,14 +126,20 @@ public class Restore extends BasicFunction {
             final BrokerPool pool = context.getBroker().getBrokerPool();
             try {
                 final Subject admin = pool.getSecurityManager().authenticate(SecurityManager.DBA_USER, adminPass);
-                try (final DBBroker broker = pool.get(Optional.of(admin));
-                     final Txn transaction = broker.continueOrBeginTransaction()) {
-
-                    final RestoreListener listener = new XMLRestoreListener(builder);
-                    final org.exist.backup.Restore restore = new org.exist.backup.Restore();
-                    restore.restore(broker, transaction, adminPassAfter, Paths.get(dirOrFile), listener, overwriteApps);
-
-                    transaction.commit();
+                try (final DBBroker broker = pool.get(Optional.of(admin))) {
+                    // a concurrent restore commits each collection/resource in its own transaction,
+                    // as the restore threads cannot take part in a transaction of this thread
+                    final boolean concurrent = threads > 1 && broker.getCurrentTransaction() == null;
+                    try (final Txn transaction = concurrent ? null : broker.continueOrBeginTransaction()) {
+
+                        final RestoreListener listener = new XMLRestoreListener(builder);
+                        final org.exist.backup.Restore restore = new org.exist.backup.Restore();
+                        restore.restore(broker, transaction, adminPassAfter, Paths.get(dirOrFile), listener, overwriteApps, threads);
+
+                        if (transaction != null) {
+                            transaction.commit();
+                        }
+                    }
                 }
             } catch (final Exception e) {
                 throw new XPathException(this, "restore failed with exception: " + e.getMessage(), e);
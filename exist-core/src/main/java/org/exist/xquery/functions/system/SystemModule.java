@@ -76,6 +76,7 @@ public class SystemModule extends AbstractInternalModule {
             new FunctionDef(GetScheduledJobs.signature, GetScheduledJobs.class),
             new FunctionDef(Restore.FS_RESTORE[0], Restore.class),
 			new FunctionDef(Restore.FS_RESTORE[1], Restore.class),
+            new FunctionDef(Restore.FS_RESTORE[2], Restore.class),
             new FunctionDef(FunctionTrace.signatures[0], FunctionTrace.class),
             new FunctionDef(FunctionTrace.signatures[1], FunctionTrace.class),
             new FunctionDef(FunctionTrace.signatures[2], FunctionTrace.class),
@@ -0,0 +1,119 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.functions.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.dom.QName;
+import org.exist.dom.memtree.MemTreeBuilder;
+import org.exist.security.PermissionDeniedException;
+import org.exist.xquery.BasicFunction;
+import org.exist.xquery.Cardinality;
+import org.exist.xquery.CompiledXQuery;
+import org.exist.xquery.FunctionSignature;
+import org.exist.xquery.QueryPlan;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.FunctionParameterSequenceType;
+import org.exist.xquery.value.FunctionReturnSequenceType;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceType;
+import org.exist.xquery.value.Type;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Executes a query and returns its executed plan, see {@link QueryPlan}.
+ */
+public class Explain extends BasicFunction {
+
+    protected static final Logger logger = LogManager.getLogger(Explain.class);
+
+    public final static FunctionSignature[] signatures = {
+        new FunctionSignature(
+            new QName("explain", UtilModule.NAMESPACE_URI, UtilModule.PREFIX),
+            "Compiles and executes the XQuery expression given in parameter $expression and returns " +
+            "the executed plan instead of the result. The plan lists every evaluated expression " +
+            "with the number of calls, the number of items returned, the elapsed time in seconds, " +
+            "the indexes used and the optimizations applied.",
+            new SequenceType[] {
+                new FunctionParameterSequenceType("expression", Type.STRING, Cardinality.EXACTLY_ONE, "The XPath/XQuery expression.")
+            },
+            new FunctionReturnSequenceType(Type.ELEMENT, Cardinality.EXACTLY_ONE, "the executed plan of the expression")),
+        new FunctionSignature(
+            new QName("explain", UtilModule.NAMESPACE_URI, UtilModule.PREFIX),
+            "Compiles and executes the XQuery expression given in parameter $expression and returns " +
+            "the executed plan instead of the result. The plan lists every evaluated expression " +
+            "with the number of calls, the number of items returned, the elapsed time in seconds, " +
+            "the indexes used and the optimizations applied.",
+            new SequenceType[] {
+                new FunctionParameterSequenceType("expression", Type.STRING, Cardinality.EXACTLY_ONE, "The XPath/XQuery expression."),
+                new FunctionParameterSequenceType("module-load-path", Type.STRING, Cardinality.ZERO_OR_ONE, "The module load path. " +
+                    "Imports will be resolved relative to this. Use xmldb:exist:///db if your modules are stored in db.")
+            },
+            new FunctionReturnSequenceType(Type.ELEMENT, Cardinality.EXACTLY_ONE, "the executed plan of the expression"))
+    };
+
+    public Explain(XQueryContext context, FunctionSignature signature) {
+        super(context, signature);
+    }
+
+    public Sequence eval(Sequence[] args, Sequence contextSequence)
+            throws XPathException {
+
+        final String expr = args[0].getStringValue();
+        logger.debug("explain: {}", expr);
+
+        final XQuery xquery = context.getBroker().getBrokerPool().getXQueryService();
+        final XQueryContext pContext = new XQueryContext(context.getBroker().getBrokerPool());
+        if (getArgumentCount() == 2 && args[1].hasOne()) {
+            pContext.setModuleLoadPath(args[1].getStringValue());
+        }
+        try {
+            final long compilationStart = System.nanoTime();
+            final CompiledXQuery compiled = xquery.compile(pContext, expr);
+            final long compilationTime = System.nanoTime() - compilationStart;
+
+            pContext.getProfiler().startExplain();
+            final Sequence result = xquery.execute(context.getBroker(), compiled, null, false);
+            final QueryPlan plan = pContext.getProfiler().stopExplain();
+
+            context.pushDocumentContext();
+            try {
+                final MemTreeBuilder builder = context.getDocumentBuilder();
+                final AttributesImpl attrs = new AttributesImpl();
+                attrs.addAttribute("", "items", "items", "CDATA", Integer.toString(result.getItemCount()));
+                attrs.addAttribute("", "compilation", "compilation", "CDATA",
+                        Double.toString(compilationTime / 1_000_000_000.0));
+                final int nodeNr = plan.toXML(builder, attrs);
+                return builder.getDocument().getNode(nodeNr);
+            } finally {
+                context.popDocumentContext();
+            }
+        } catch (final PermissionDeniedException e) {
+            throw new XPathException(this, e.getMessage(), e);
+        } finally {
+            pContext.runCleanupTasks();
+            pContext.reset(false);
+        }
+    }
+}
@@ -86,6 +86,8 @@ public class UtilModule extends AbstractInternalModule {
             new FunctionDef(Compile.signatures[0], Compile.class),
             new FunctionDef(Compile.signatures[1], Compile.class),
             new FunctionDef(Compile.signatures[2], Compile.class),
+            new FunctionDef(Explain.signatures[0], Explain.class),
+            new FunctionDef(Explain.signatures[1], Explain.class),
             new FunctionDef(DocumentNameOrId.FS_DOCUMENT_ID, DocumentNameOrId.class),
             new FunctionDef(DocumentNameOrId.FS_DOCUMENT_NAME, DocumentNameOrId.class),
             new FunctionDef(DocumentNameOrId.FS_ABSOLUTE_RESOURCE_ID, DocumentNameOrId.class),
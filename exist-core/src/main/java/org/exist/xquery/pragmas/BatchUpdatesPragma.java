@@ -0,0 +1,86 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.pragmas;
+
+import org.exist.Namespaces;
+import org.exist.dom.QName;
+import org.exist.xquery.*;
+import org.exist.xquery.update.PendingUpdateList;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+
+/**
+ * Defers the modifications made by the XQuery update extensions within the
+ * enclosed expression until the expression has been evaluated, and then
+ * applies them together, see {@link PendingUpdateList}.
+ *
+ * <pre>
+ * (# exist:batch-updates #) {
+ *     for $i in 1 to 10000
+ *     return
+ *         update insert &lt;item n="{$i}"/&gt; into doc("/db/data.xml")/items
+ * }
+ * </pre>
+ *
+ * Within the pragma, an update expression does not see the
+ * modifications made by the update expressions before it.
+ */
+public class BatchUpdatesPragma extends Pragma {
+
+    public static final QName BATCH_UPDATES_PRAGMA = new QName("batch-updates", Namespaces.EXIST_NS, "exist");
+
+    private XQueryContext context;
+    private Expression expression;
+
+    public BatchUpdatesPragma(final QName qname, final String contents) throws XPathException {
+        super(qname, contents);
+    }
+
+    @Override
+    public void before(final XQueryContext context, final Expression expression, final Sequence contextSequence) throws XPathException {
+        this.context = context;
+        this.expression = expression;
+    }
+
+    @Override
+    public Sequence eval(final Sequence contextSequence, final Item contextItem) throws XPathException {
+        if (context.getPendingUpdates() != null) {
+            // nested, the enclosing pragma applies the modifications
+            return null;
+        }
+
+        final PendingUpdateList pendingUpdates = new PendingUpdateList();
+        context.setPendingUpdates(pendingUpdates);
+        final Sequence result;
+        try {
+            result = expression.eval(contextSequence, contextItem);
+        } finally {
+            context.setPendingUpdates(null);
+        }
+        pendingUpdates.apply(context);
+        return result;
+    }
+
+    @Override
+    public void after(final XQueryContext context, final Expression expression) throws XPathException {
+    }
+}
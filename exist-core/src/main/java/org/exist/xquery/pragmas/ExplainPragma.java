@@ -0,0 +1,79 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.pragmas;
+
+import org.exist.xquery.*;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.Namespaces;
+import org.exist.dom.QName;
+import org.exist.xquery.value.Sequence;
+
+/**
+ * Records the executed plan of the enclosed expression and writes it
+ * to a logger once the expression has been evaluated. Example:
+ *
+ * <pre>(# exist:explain logger=explain #) { //SPEECH[SPEAKER = 'HAMLET'] }</pre>
+ */
+public class ExplainPragma extends Pragma {
+
+    public final static QName EXPLAIN_PRAGMA = new QName("explain", Namespaces.EXIST_NS, "exist");
+
+    private Logger log = null;
+
+    private boolean started = false;
+
+    public ExplainPragma(QName qname, String contents) throws XPathException {
+        super(qname, contents);
+        if (contents != null && contents.length() > 0) {
+            final String options[] = Option.tokenize(contents);
+            for (String option : options) {
+                final String param[] = Option.parseKeyValuePair(option);
+                if (param == null) {
+                    throw new XPathException("Invalid content found for pragma " + EXPLAIN_PRAGMA.getStringValue() +
+                            ": " + contents);
+                }
+                if ("logger".equals(param[0])) {
+                    log = LogManager.getLogger(param[1]);
+                }
+            }
+        }
+        if (log == null)
+            {log = LogManager.getLogger(ExplainPragma.class);}
+    }
+
+    public void before(XQueryContext context, Expression expression, Sequence contextSequence) throws XPathException {
+        // an enclosing explain (e.g. util:explain) keeps recording the plan
+        started = context.getProfiler().startExplain();
+    }
+
+    public void after(XQueryContext context, Expression expression) throws XPathException {
+        if (!started) {
+            return;
+        }
+        started = false;
+        final QueryPlan plan = context.getProfiler().stopExplain();
+        if (plan != null && log.isInfoEnabled()) {
+            log.info("Plan for expression at line {}:\n{}", expression.getLine(), plan);
+        }
+    }
+}
@@ -21,17 +21,26 @@
  */
 package org.exist.xquery.regex;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.exist.thirdparty.net.sf.saxon.functions.regex.JDK15RegexTranslator;
 import org.exist.thirdparty.net.sf.saxon.functions.regex.RegexSyntaxException;
 import org.exist.thirdparty.net.sf.saxon.functions.regex.RegularExpression;
+import org.exist.xquery.Atomize;
+import org.exist.xquery.DynamicCardinalityCheck;
+import org.exist.xquery.DynamicTypeCheck;
 import org.exist.xquery.ErrorCodes;
 import org.exist.xquery.Expression;
+import org.exist.xquery.LiteralValue;
+import org.exist.xquery.PathExpr;
 import org.exist.xquery.XPathException;
 import org.exist.xquery.value.StringValue;
+import org.exist.xquery.value.Type;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.regex.Pattern;
 
 /**
@@ -39,6 +48,13 @@ import java.util.regex.Pattern;
  */
 public class RegexUtil {
 
+    /**
+     * Cache of XPath regular expressions already translated to Java syntax.
+     */
+    private static final Cache<TranslationKey, String> TRANSLATIONS = Caffeine.newBuilder()
+            .maximumSize(1_000)
+            .build();
+
     /**
      * Parses the flags for an XQuery Regular Expression.
      *
@@ -140,6 +156,16 @@ public class RegexUtil {
      * @throws XPathException if the XQuery Regular Expression is invalid.
      */
     public static String translateRegexp(final Expression context, final String pattern, final boolean ignoreWhitespace, final boolean caseBlind) throws XPathException {
+        final TranslationKey key = new TranslationKey(pattern, ignoreWhitespace, caseBlind);
+        String translated = TRANSLATIONS.getIfPresent(key);
+        if (translated == null) {
+            translated = translate(context, pattern, ignoreWhitespace, caseBlind);
+            TRANSLATIONS.put(key, translated);
+        }
+        return translated;
+    }
+
+    private static String translate(final Expression context, final String pattern, final boolean ignoreWhitespace, final boolean caseBlind) throws XPathException {
         // convert pattern to Java regex syntax
         try {
             final int options = RegularExpression.XML11 | RegularExpression.XPATH30;
@@ -158,4 +184,63 @@ public class RegexUtil {
             throw new XPathException(context, ErrorCodes.FORX0002, "Conversion from XPath F&O 3.0 regular expression syntax to Java regular expression syntax failed: " + e.getMessage(), new StringValue(pattern), e);
         }
     }
+
+    /**
+     * Get the value of a function argument which is a string literal,
+     * looking through the checks wrapped around arguments by the function.
+     *
+     * Used to compile regular expressions once per call site when the
+     * pattern and flags are known at analysis time.
+     *
+     * @param argument the argument expression
+     *
+     * @return the string value of the literal, or null if the argument is
+     *     not a literal
+     *
+     * @throws XPathException if the literal cannot be converted to a string
+     */
+    public static @Nullable String literalString(Expression argument) throws XPathException {
+        while (argument instanceof DynamicCardinalityCheck || argument instanceof Atomize
+                || argument instanceof DynamicTypeCheck
+                || (argument.getClass() == PathExpr.class && argument.getSubExpressionCount() == 1)) {
+            argument = argument.getSubExpression(0);
+        }
+        if (argument instanceof LiteralValue) {
+            final LiteralValue literal = (LiteralValue) argument;
+            if (Type.subTypeOf(literal.getValue().getType(), Type.STRING)) {
+                return literal.getValue().getStringValue();
+            }
+        }
+        return null;
+    }
+
+    private static final class TranslationKey {
+        private final String pattern;
+        private final boolean ignoreWhitespace;
+        private final boolean caseBlind;
+
+        private TranslationKey(final String pattern, final boolean ignoreWhitespace, final boolean caseBlind) {
+            this.pattern = pattern;
+            this.ignoreWhitespace = ignoreWhitespace;
+            this.caseBlind = caseBlind;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final TranslationKey other = (TranslationKey) o;
+            return ignoreWhitespace == other.ignoreWhitespace && caseBlind == other.caseBlind
+                    && pattern.equals(other.pattern);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(pattern, ignoreWhitespace, caseBlind);
+        }
+    }
 }
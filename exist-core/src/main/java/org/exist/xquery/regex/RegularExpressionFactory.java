@@ -0,0 +1,126 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.regex;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import net.sf.saxon.Configuration;
+import net.sf.saxon.regex.RegularExpression;
+import net.sf.saxon.trans.XPathException;
+import org.exist.storage.BrokerPool;
+import org.exist.xquery.XQueryContext;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A Factory for Saxon XPath 3.0 Regular Expressions.
+ *
+ * Compiled Regular Expressions are immutable and are Cached in a LRU like Cache,
+ * so they may be shared by all queries.
+ */
+public class RegularExpressionFactory {
+
+    private static final RegularExpressionFactory instance = new RegularExpressionFactory();
+
+    private final Cache<RegexKey, RegularExpression> cache;
+
+    private RegularExpressionFactory() {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(1_000)
+                .build();
+    }
+
+    public static RegularExpressionFactory getInstance() {
+        return instance;
+    }
+
+    /**
+     * Get the Saxon configuration of the database of a query.
+     *
+     * Does not need an active broker, so may be used while a query is
+     * compiled, e.g. to compile a regular expression during static analysis.
+     *
+     * @param context the context of the query
+     *
+     * @return the Saxon configuration, or null if the query is not
+     *     associated with a database
+     */
+    public static @Nullable Configuration getSaxonConfiguration(final XQueryContext context) {
+        if (context.getDatabase() instanceof BrokerPool) {
+            return ((BrokerPool) context.getDatabase()).getSaxonConfiguration();
+        }
+        return null;
+    }
+
+    /**
+     * Get the compiled form of an XPath 3.0 Regular Expression.
+     *
+     * @param config the Saxon configuration used to compile the regular expression
+     * @param pattern the XPath regular expression
+     * @param flags the XPath regular expression flags
+     * @param warnings receives any warnings from compiling the regular expression,
+     *     nothing is added if the compiled regular expression was taken from the cache
+     *
+     * @return the compiled regular expression
+     *
+     * @throws XPathException if the regular expression or the flags are invalid
+     */
+    public RegularExpression getRegularExpression(final Configuration config, final String pattern,
+            final String flags, final List<String> warnings) throws XPathException {
+        final RegexKey key = new RegexKey(pattern, flags);
+        RegularExpression regularExpression = cache.getIfPresent(key);
+        if (regularExpression == null) {
+            regularExpression = config.compileRegularExpression(pattern, flags, "XP30", warnings);
+            cache.put(key, regularExpression);
+        }
+        return regularExpression;
+    }
+
+    private static final class RegexKey {
+        private final String pattern;
+        private final String flags;
+
+        private RegexKey(final String pattern, final String flags) {
+            this.pattern = pattern;
+            this.flags = flags;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final RegexKey other = (RegexKey) o;
+            return pattern.equals(other.pattern) && flags.equals(other.flags);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(pattern, flags);
+        }
+    }
+}
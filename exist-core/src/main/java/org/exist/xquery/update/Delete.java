@@ -110,49 +110,37 @@ public class Delete extends Modification {
         //END trap Delete failure
         
         if (!inSeq.isEmpty()) {
-            //start a transaction
-            try (final Txn transaction = getTransaction()) {
-                final NotificationService notifier = context.getBroker().getBrokerPool().getNotificationService();
-                final StoredNode[] ql = selectAndLock(transaction, inSeq);
-                for (final StoredNode node : ql) {
-                    final DocumentImpl doc = node.getOwnerDocument();
-                    if (!doc.getPermissions().validate(context.getSubject(), Permission.WRITE)) {
-                        //transact.abort(transaction);    
-                        throw new PermissionDeniedException("User '" + context.getSubject().getName() + "' does not have permission to write to the document '" + doc.getDocumentURI() + "'!");
-                    }
-
-                    //update the document
-                    final NodeImpl parent = (NodeImpl) getParent(node);
+            final PendingUpdateList pendingUpdates = context.getPendingUpdates();
+            if (pendingUpdates != null) {
+                addPendingUpdates(pendingUpdates, inSeq, this::delete);
+            } else {
+                //start a transaction
+                try (final Txn transaction = getTransaction()) {
+                    final NotificationService notifier = context.getBroker().getBrokerPool().getNotificationService();
+                    final StoredNode[] ql = selectAndLock(transaction, inSeq);
+                    for (final StoredNode node : ql) {
+                        final DocumentImpl doc = node.getOwnerDocument();
+                        if (!doc.getPermissions().validate(context.getSubject(), Permission.WRITE)) {
+                            //transact.abort(transaction);
+                            throw new PermissionDeniedException("User '" + context.getSubject().getName() + "' does not have permission to write to the document '" + doc.getDocumentURI() + "'!");
+                        }
 
-                    if (parent == null) {
-                        LOG.debug("Cannot remove the document element (no parent node)");
-                        throw new XPathException(this,
-                            "It is not possible to remove the document element.");
+                        //update the document
+                        delete(transaction, node);
 
-                    } else if (parent.getNodeType() != Node.ELEMENT_NODE) {
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug("parent = {}; {}", parent.getNodeType(), parent.getNodeName());
-                        }
-                        //transact.abort(transaction);
-                        throw new XPathException(this,
-                            "you cannot remove the document element. Use update "
-                                + "instead");
-                    } else {
-                        parent.removeChild(transaction, node);
+                        doc.setLastModified(System.currentTimeMillis());
+                        modifiedDocuments.add(doc);
+                        context.getBroker().storeXMLResource(transaction, doc);
+                        notifier.notifyUpdate(doc, UpdateListener.UPDATE);
                     }
-
-                    doc.setLastModified(System.currentTimeMillis());
-                    modifiedDocuments.add(doc);
-                    context.getBroker().storeXMLResource(transaction, doc);
-                    notifier.notifyUpdate(doc, UpdateListener.UPDATE);
+                    finishTriggers(transaction);
+                    //commit the transaction
+                    transaction.commit();
+                } catch (final EXistException | PermissionDeniedException | LockException | TriggerException e) {
+                    throw new XPathException(this, e.getMessage(), e);
+                } finally {
+                    unlockDocuments();
                 }
-                finishTriggers(transaction);
-                //commit the transaction
-                transaction.commit();
-            } catch (final EXistException | PermissionDeniedException | LockException | TriggerException e) {
-                throw new XPathException(this, e.getMessage(), e);
-            } finally {
-                unlockDocuments();
             }
         }
         
@@ -163,6 +151,27 @@ public class Delete extends Modification {
         return Sequence.EMPTY_SEQUENCE;
     }
 
+    private void delete(final Txn transaction, final StoredNode node) throws XPathException {
+        final NodeImpl parent = (NodeImpl) getParent(node);
+
+        if (parent == null) {
+            LOG.debug("Cannot remove the document element (no parent node)");
+            throw new XPathException(this,
+                "It is not possible to remove the document element.");
+
+        } else if (parent.getNodeType() != Node.ELEMENT_NODE) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("parent = {}; {}", parent.getNodeType(), parent.getNodeName());
+            }
+            //transact.abort(transaction);
+            throw new XPathException(this,
+                "you cannot remove the document element. Use update "
+                    + "instead");
+        } else {
+            parent.removeChild(transaction, node);
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.exist.xquery.Expression#dump(org.exist.xquery.util.ExpressionDumper)
      */
@@ -132,44 +132,44 @@ public class Insert extends Modification {
             context.pushInScopeNamespaces();
             contentSeq = deepCopy(contentSeq);
 
-            //start a transaction
-            try (final Txn transaction = getTransaction()) {
-                final StoredNode[] ql = selectAndLock(transaction, inSeq);
-                final NotificationService notifier = context.getBroker().getBrokerPool().getNotificationService();
-                final NodeList contentList = seq2nodeList(contentSeq);
-                for (final StoredNode node : ql) {
-                    final DocumentImpl doc = node.getOwnerDocument();
-                    if (!doc.getPermissions().validate(context.getSubject(), Permission.WRITE)) {
-                        throw new PermissionDeniedException("User '" + context.getSubject().getName() + "' does not have permission to write to the document '" + doc.getDocumentURI() + "'!");
+            final PendingUpdateList pendingUpdates = context.getPendingUpdates();
+            if (pendingUpdates != null) {
+                try {
+                    final NodeList contentList = seq2nodeList(contentSeq);
+                    for (final SequenceIterator i = inSeq.iterate(); i.hasNext(); ) {
+                        pendingUpdates.addInsert(this, pendingTarget(i.nextItem()), mode, contentList);
                     }
-
-                    //update the document
-                    if (mode == INSERT_APPEND) {
-                        node.appendChildren(transaction, contentList, -1);
-                    } else {
-                        final NodeImpl parent = (NodeImpl) getParent(node);
-                        switch (mode) {
-                            case INSERT_BEFORE:
-                                parent.insertBefore(transaction, contentList, node);
-                                break;
-                            case INSERT_AFTER:
-                                parent.insertAfter(transaction, contentList, node);
-                                break;
+                } finally {
+                    context.popInScopeNamespaces();
+                }
+            } else {
+                //start a transaction
+                try (final Txn transaction = getTransaction()) {
+                    final StoredNode[] ql = selectAndLock(transaction, inSeq);
+                    final NotificationService notifier = context.getBroker().getBrokerPool().getNotificationService();
+                    final NodeList contentList = seq2nodeList(contentSeq);
+                    for (final StoredNode node : ql) {
+                        final DocumentImpl doc = node.getOwnerDocument();
+                        if (!doc.getPermissions().validate(context.getSubject(), Permission.WRITE)) {
+                            throw new PermissionDeniedException("User '" + context.getSubject().getName() + "' does not have permission to write to the document '" + doc.getDocumentURI() + "'!");
                         }
+
+                        //update the document
+                        insert(transaction, node, mode, contentList);
+                        doc.setLastModified(System.currentTimeMillis());
+                        modifiedDocuments.add(doc);
+                        context.getBroker().storeXMLResource(transaction, doc);
+                        notifier.notifyUpdate(doc, UpdateListener.UPDATE);
                     }
-                    doc.setLastModified(System.currentTimeMillis());
-                    modifiedDocuments.add(doc);
-                    context.getBroker().storeXMLResource(transaction, doc);
-                    notifier.notifyUpdate(doc, UpdateListener.UPDATE);
+                    finishTriggers(transaction);
+                    //commit the transaction
+                    transaction.commit();
+                } catch (final PermissionDeniedException | EXistException | LockException | TriggerException e) {
+                    throw new XPathException(this, e.getMessage(), e);
+                } finally {
+                    unlockDocuments();
+                    context.popInScopeNamespaces();
                 }
-                finishTriggers(transaction);
-                //commit the transaction
-                transaction.commit();
-            } catch (final PermissionDeniedException | EXistException | LockException | TriggerException e) {
-                throw new XPathException(this, e.getMessage(), e);
-            } finally {
-                unlockDocuments();
-                context.popInScopeNamespaces();
             }
         }
 
@@ -180,6 +180,30 @@ public class Insert extends Modification {
         return Sequence.EMPTY_SEQUENCE;
     }
 
+    /**
+     * Inserts content relative to a node.
+     *
+     * @param transaction the current transaction
+     * @param node the node to insert the content relative to
+     * @param mode one of {@link #INSERT_BEFORE}, {@link #INSERT_AFTER}, or {@link #INSERT_APPEND}
+     * @param contentList the content to insert
+     */
+    void insert(final Txn transaction, final StoredNode node, final int mode, final NodeList contentList) {
+        if (mode == INSERT_APPEND) {
+            node.appendChildren(transaction, contentList, -1);
+        } else {
+            final NodeImpl parent = (NodeImpl) getParent(node);
+            switch (mode) {
+                case INSERT_BEFORE:
+                    parent.insertBefore(transaction, contentList, node);
+                    break;
+                case INSERT_AFTER:
+                    parent.insertAfter(transaction, contentList, node);
+                    break;
+            }
+        }
+    }
+
     private NodeList seq2nodeList(Sequence contentSeq) throws XPathException {
         final NodeListImpl nl = new NodeListImpl();
         for (final SequenceIterator i = contentSeq.iterate(); i.hasNext(); ) {
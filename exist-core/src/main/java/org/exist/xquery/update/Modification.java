@@ -42,7 +42,9 @@ import org.exist.dom.persistent.StoredNode;
 import org.exist.dom.memtree.DocumentBuilderReceiver;
 import org.exist.dom.memtree.MemTreeBuilder;
 import org.exist.dom.persistent.NodeHandle;
+import org.exist.numbering.NodeId;
 import org.exist.storage.DBBroker;
+import org.exist.storage.DefragmentationService;
 import org.exist.storage.lock.LockManager;
 import org.exist.storage.lock.ManagedDocumentLock;
 import org.exist.storage.serializers.Serializer;
@@ -180,6 +182,52 @@ public abstract class Modification extends AbstractExpression
         }
     }
 
+    /**
+     * Checks that a node selected by this modification may be
+     * added to a {@link PendingUpdateList}.
+     *
+     * @param item the selected node
+     *
+     * @return the node to modify when the pending update list is applied
+     *
+     * @throws XPathException if the node may not be updated
+     */
+    protected NodeProxy pendingTarget(final Item item) throws XPathException {
+        if (!Type.subTypeOf(item.getType(), Type.NODE)) {
+            throw new XPathException(this, "XQuery update expressions can only be applied to nodes. Got: " +
+                item.getStringValue());
+        }
+        final NodeValue nv = (NodeValue) item;
+        if (nv.getImplementationType() == NodeValue.IN_MEMORY_NODE) {
+            throw new XPathException(this, "XQuery update expressions can not be applied to in-memory nodes.");
+        }
+        if (item.getType() == Type.DOCUMENT) {
+            throw new XPathException(this, "Updating the document object is not allowed.");
+        }
+        final NodeProxy target = nv instanceof NodeProxy ? (NodeProxy) nv : new NodeProxy((NodeHandle) nv.getNode());
+        if (NodeId.DOCUMENT_NODE.equals(target.getNodeId())) {
+            throw new XPathException(this, "Updating the document object is not allowed.");
+        }
+        return target;
+    }
+
+    /**
+     * Adds the modification of each of the selected nodes to
+     * a {@link PendingUpdateList}, rather than applying it.
+     *
+     * @param pendingUpdates the pending update list
+     * @param nodes the nodes selected by this modification
+     * @param update applies the modification to a node
+     *
+     * @throws XPathException if any of the nodes may not be updated
+     */
+    protected void addPendingUpdates(final PendingUpdateList pendingUpdates, final Sequence nodes,
+            final PendingUpdateList.Update update) throws XPathException {
+        for (final SequenceIterator i = nodes.iterate(); i.hasNext(); ) {
+            pendingUpdates.add(pendingTarget(i.nextItem()), update);
+        }
+    }
+
     protected Sequence deepCopy(Sequence inSeq) throws XPathException {
         context.pushDocumentContext();
         final MemTreeBuilder builder = context.getDocumentBuilder();
@@ -260,6 +308,31 @@ public abstract class Modification extends AbstractExpression
         checkFragmentation(context, docs, fragmentationLimit);
     }
 
+    /**
+     * Check if any of the modified documents needs defragmentation, and if so schedule
+     * them with the {@link DefragmentationService}. If background defragmentation is
+     * disabled, they are defragmented immediately, see {@link #checkFragmentation(XQueryContext, DocumentSet)}.
+     *
+     * @param context current context
+     * @param docs document set to check
+     * @throws EXistException on general errors during defrag
+     * @throws LockException in case locking failed
+     */
+    public static void scheduleDefragmentation(final XQueryContext context, final DocumentSet docs) throws EXistException, LockException {
+        final DBBroker broker = context.getBroker();
+        final DefragmentationService defragmentationService = broker.getBrokerPool().getDefragmentationService();
+        if (!defragmentationService.isEnabled()) {
+            checkFragmentation(context, docs);
+            return;
+        }
+
+        for (final Iterator<DocumentImpl> i = docs.getDocumentIterator(); i.hasNext(); ) {
+            final DocumentImpl next = i.next();
+            defragmentationService.schedule(next);
+            broker.checkXMLResourceConsistency(next);
+        }
+    }
+
     /**
      * Check if any of the modified documents needs defragmentation.
      *
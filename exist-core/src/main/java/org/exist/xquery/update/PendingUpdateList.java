@@ -0,0 +1,258 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.update;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import net.jcip.annotations.NotThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.EXistException;
+import org.exist.collections.ManagedLocks;
+import org.exist.collections.triggers.DocumentTrigger;
+import org.exist.collections.triggers.DocumentTriggers;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.dom.NodeListImpl;
+import org.exist.dom.persistent.DefaultDocumentSet;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.MutableDocumentSet;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.dom.persistent.StoredNode;
+import org.exist.security.Permission;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.DBBroker;
+import org.exist.storage.NotificationService;
+import org.exist.storage.UpdateListener;
+import org.exist.storage.lock.ManagedDocumentLock;
+import org.exist.storage.txn.Txn;
+import org.exist.util.LockException;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
+import org.w3c.dom.NodeList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Collects the modifications made by the XQuery Update expressions
+ * within an {@link org.exist.xquery.pragmas.BatchUpdatesPragma}, so that
+ * they can be applied together.
+ *
+ * The modifications are grouped by document and applied in the order in which
+ * they were made, within a single transaction. Each document is locked,
+ * has its update triggers fired, and is stored only once, however
+ * many modifications were made to it. Consecutive inserts of content at the
+ * same position are merged, so that the DOM and the indexes of the target
+ * node are only updated once.
+ *
+ * The target nodes are resolved when the list is applied, not when the
+ * modification is made. A modification of a node which was removed by an
+ * earlier modification is skipped.
+ */
+@NotThreadSafe
+public class PendingUpdateList {
+
+    private static final Logger LOG = LogManager.getLogger(PendingUpdateList.class);
+
+    private final Int2ObjectMap<DocumentUpdates> documents = new Int2ObjectLinkedOpenHashMap<>();
+
+    /**
+     * Adds a modification of a node.
+     *
+     * @param target the node to modify
+     * @param update applies the modification to the target node
+     */
+    void add(final NodeProxy target, final Update update) {
+        documentUpdates(target).updates.add(new PendingUpdate(target, update));
+    }
+
+    /**
+     * Adds an insert of content relative to a node.
+     *
+     * If the previous modification of the document inserted content at the same
+     * position, the content is merged into that insert instead.
+     *
+     * @param insert the insert expression
+     * @param target the node to insert the content relative to
+     * @param mode one of {@link Insert#INSERT_BEFORE}, {@link Insert#INSERT_AFTER}, or {@link Insert#INSERT_APPEND}
+     * @param content the content to insert
+     */
+    void addInsert(final Insert insert, final NodeProxy target, final int mode, final NodeList content) {
+        final List<PendingUpdate> updates = documentUpdates(target).updates;
+        if (!updates.isEmpty()) {
+            final PendingUpdate last = updates.get(updates.size() - 1);
+            if (last instanceof PendingInsert && ((PendingInsert) last).mode == mode
+                    && last.target.getNodeId().equals(target.getNodeId())) {
+                ((PendingInsert) last).merge(content);
+                return;
+            }
+        }
+        final NodeListImpl pendingContent = new NodeListImpl(content.getLength());
+        pendingContent.addAll(content);
+        updates.add(new PendingInsert(insert, target, mode, pendingContent));
+    }
+
+    private DocumentUpdates documentUpdates(final NodeProxy target) {
+        final DocumentImpl doc = target.getOwnerDocument();
+        DocumentUpdates documentUpdates = documents.get(doc.getDocId());
+        if (documentUpdates == null) {
+            documentUpdates = new DocumentUpdates(doc);
+            documents.put(doc.getDocId(), documentUpdates);
+        }
+        return documentUpdates;
+    }
+
+    public boolean isEmpty() {
+        return documents.isEmpty();
+    }
+
+    /**
+     * Applies the pending modifications.
+     *
+     * @param context the context of the query which made the modifications
+     *
+     * @throws XPathException if any of the modifications could not be applied,
+     *     in which case none of them are applied
+     */
+    public void apply(final XQueryContext context) throws XPathException {
+        if (documents.isEmpty()) {
+            return;
+        }
+
+        final DBBroker broker = context.getBroker();
+        final NotificationService notifier = broker.getBrokerPool().getNotificationService();
+
+        try (final Txn transaction = broker.continueOrBeginTransaction();
+                final ManagedLocks<ManagedDocumentLock> documentLocks = lockDocuments(broker)) {
+
+            for (final DocumentUpdates documentUpdates : documents.values()) {
+                DocumentImpl doc = documentUpdates.doc;
+                if (!doc.getPermissions().validate(context.getSubject(), Permission.WRITE)) {
+                    throw new PermissionDeniedException("User '" + context.getSubject().getName() + "' does not have permission to write to the document '" + doc.getDocumentURI() + "'!");
+                }
+
+                final DocumentTrigger trigger = new DocumentTriggers(broker, transaction, doc.getCollection());
+                trigger.beforeUpdateDocument(broker, transaction, doc);
+
+                for (final PendingUpdate update : documentUpdates.updates) {
+                    final StoredNode node = (StoredNode) update.target.getNode();
+                    if (node == null) {
+                        // removed by an earlier modification
+                        LOG.debug("Node {} no longer exists in document {}", update.target.getNodeId(), doc.getURI());
+                        continue;
+                    }
+                    update.update.apply(transaction, node);
+                    doc = node.getOwnerDocument();
+                }
+
+                doc.setLastModified(System.currentTimeMillis());
+                broker.storeXMLResource(transaction, doc);
+                notifier.notifyUpdate(doc, UpdateListener.UPDATE);
+
+                trigger.afterUpdateDocument(broker, transaction, doc);
+                context.addModifiedDoc(doc);
+            }
+
+            transaction.commit();
+        } catch (final PermissionDeniedException | EXistException | LockException | TriggerException e) {
+            throw new XPathException(e.getMessage(), e);
+        } finally {
+            documents.clear();
+        }
+    }
+
+    private ManagedLocks<ManagedDocumentLock> lockDocuments(final DBBroker broker) throws LockException {
+        final MutableDocumentSet docs = new DefaultDocumentSet(documents.size());
+        for (final DocumentUpdates documentUpdates : documents.values()) {
+            docs.add(documentUpdates.doc);
+        }
+
+        final Lock globalLock = broker.getBrokerPool().getGlobalUpdateLock();
+        globalLock.lock();
+        try {
+            return docs.lock(broker, true);
+        } finally {
+            globalLock.unlock();
+        }
+    }
+
+    @FunctionalInterface
+    interface Update {
+        /**
+         * Applies a modification.
+         *
+         * @param transaction the transaction to modify the node within
+         * @param node the target node
+         *
+         * @throws XPathException if the modification is not allowed
+         * @throws EXistException if the modification could not be applied
+         */
+        void apply(Txn transaction, StoredNode node) throws XPathException, EXistException;
+    }
+
+    private static class DocumentUpdates {
+        final DocumentImpl doc;
+        final List<PendingUpdate> updates = new ArrayList<>();
+
+        DocumentUpdates(final DocumentImpl doc) {
+            this.doc = doc;
+        }
+    }
+
+    private static class PendingUpdate {
+        final NodeProxy target;
+        final Update update;
+
+        PendingUpdate(final NodeProxy target, final Update update) {
+            this.target = target;
+            this.update = update;
+        }
+    }
+
+    private static class PendingInsert extends PendingUpdate {
+        final int mode;
+        private final NodeListImpl content;
+
+        PendingInsert(final Insert insert, final NodeProxy target, final int mode, final NodeListImpl content) {
+            super(target, (transaction, node) -> insert.insert(transaction, node, mode, content));
+            this.mode = mode;
+            this.content = content;
+        }
+
+        /**
+         * Merges the content of a later insert at the same position.
+         *
+         * Content inserted after a node precedes any content which was
+         * previously inserted after it, so it is merged in front.
+         */
+        void merge(final NodeList later) {
+            if (mode == Insert.INSERT_AFTER) {
+                final NodeListImpl merged = new NodeListImpl(later.getLength());
+                merged.addAll(later);
+                content.addAll(0, merged);
+            } else {
+                content.addAll(later);
+            }
+        }
+    }
+}
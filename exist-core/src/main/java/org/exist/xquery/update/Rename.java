@@ -119,48 +119,37 @@ public class Rename extends Modification {
                 }
             }
 
-            //start a transaction
-            try (final Txn transaction = getTransaction()) {
-                final StoredNode[] ql = selectAndLock(transaction, inSeq);
-                final NotificationService notifier = context.getBroker().getBrokerPool().getNotificationService();
-                for (final StoredNode node : ql) {
-                    final DocumentImpl doc = node.getOwnerDocument();
-                    if (!doc.getPermissions().validate(context.getSubject(), Permission.WRITE)) {
-                        throw new PermissionDeniedException("User '" + context.getSubject().getName() + "' does not have permission to write to the document '" + doc.getDocumentURI() + "'!");
-                    }
-
-                    final NodeImpl parent = (NodeImpl) getParent(node);
-
-                    //update the document
-                    final NamedNode newNode;
-                    switch (node.getNodeType()) {
-                        case Node.ELEMENT_NODE:
-                            newNode = new ElementImpl((ElementImpl) node);
-                            break;
-
-                        case Node.ATTRIBUTE_NODE:
-                            newNode = new AttrImpl((AttrImpl) node);
-                            break;
-
-                        default:
-                            throw new XPathException(this, "unsupported node-type");
+            final PendingUpdateList pendingUpdates = context.getPendingUpdates();
+            if (pendingUpdates != null) {
+                addPendingUpdates(pendingUpdates, inSeq, (transaction, node) -> rename(transaction, node, newQName));
+            } else {
+                //start a transaction
+                try (final Txn transaction = getTransaction()) {
+                    final StoredNode[] ql = selectAndLock(transaction, inSeq);
+                    final NotificationService notifier = context.getBroker().getBrokerPool().getNotificationService();
+                    for (final StoredNode node : ql) {
+                        final DocumentImpl doc = node.getOwnerDocument();
+                        if (!doc.getPermissions().validate(context.getSubject(), Permission.WRITE)) {
+                            throw new PermissionDeniedException("User '" + context.getSubject().getName() + "' does not have permission to write to the document '" + doc.getDocumentURI() + "'!");
+                        }
+
+                        //update the document
+                        rename(transaction, node, newQName);
+
+                        doc.setLastModified(System.currentTimeMillis());
+                        modifiedDocuments.add(doc);
+                        context.getBroker().storeXMLResource(transaction, doc);
+                        notifier.notifyUpdate(doc, UpdateListener.UPDATE);
                     }
-                    newNode.setNodeName(newQName, context.getBroker().getBrokerPool().getSymbols());
-                    parent.updateChild(transaction, node, newNode);
-
-                    doc.setLastModified(System.currentTimeMillis());
-                    modifiedDocuments.add(doc);
-                    context.getBroker().storeXMLResource(transaction, doc);
-                    notifier.notifyUpdate(doc, UpdateListener.UPDATE);
+                    finishTriggers(transaction);
+
+                    //commit the transaction
+                    transaction.commit();
+                } catch (final PermissionDeniedException | EXistException | LockException | TriggerException e) {
+                    throw new XPathException(this, e.getMessage(), e);
+                } finally {
+                    unlockDocuments();
                 }
-                finishTriggers(transaction);
-                
-                //commit the transaction
-                transaction.commit();
-            } catch (final PermissionDeniedException | EXistException | LockException | TriggerException e) {
-                throw new XPathException(this, e.getMessage(), e);
-            } finally {
-                unlockDocuments();
             }
         }
 
@@ -170,6 +159,26 @@ public class Rename extends Modification {
         return Sequence.EMPTY_SEQUENCE;
     }
 
+    private void rename(final Txn transaction, final StoredNode node, final QName newQName) throws XPathException {
+        final NodeImpl parent = (NodeImpl) getParent(node);
+
+        final NamedNode newNode;
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                newNode = new ElementImpl((ElementImpl) node);
+                break;
+
+            case Node.ATTRIBUTE_NODE:
+                newNode = new AttrImpl((AttrImpl) node);
+                break;
+
+            default:
+                throw new XPathException(this, "unsupported node-type");
+        }
+        newNode.setNodeName(newQName, context.getBroker().getBrokerPool().getSymbols());
+        parent.updateChild(transaction, node, newNode);
+    }
+
     /* (non-Javadoc)
      * @see org.exist.xquery.Expression#dump(org.exist.xquery.util.ExpressionDumper)
      */
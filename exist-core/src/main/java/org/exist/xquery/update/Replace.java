@@ -122,64 +122,42 @@ public class Replace extends Modification {
         }
         context.pushInScopeNamespaces();
         contentSeq = deepCopy(contentSeq);
-        
-        //start a transaction
-        try (final Txn transaction = getTransaction()) {
-            final StoredNode ql[] = selectAndLock(transaction, inSeq);
-            final NotificationService notifier = context.getBroker().getBrokerPool().getNotificationService();
-            Item temp;
-            TextImpl text;
-            AttrImpl attribute;
-            ElementImpl parent;
-            for (final StoredNode node : ql) {
-                final DocumentImpl doc = node.getOwnerDocument();
-                if (!doc.getPermissions().validate(context.getSubject(), Permission.WRITE)) {
-                    throw new PermissionDeniedException("User '" + context.getSubject().getName() + "' does not have permission to write to the document '" + doc.getDocumentURI() + "'!");
-                }
 
-                //update the document
-                parent = (ElementImpl) node.getParentStoredNode();
-                if (parent == null) {
-                    throw new XPathException(this, "The root element of a document can not be replaced with 'update replace'. " +
-                        "Please consider removing the document or use 'update value' to just replace the children of the root.");
-                }
-                switch (node.getNodeType()) {
-                    case Node.ELEMENT_NODE:
-                        temp = contentSeq.itemAt(0);
-                        if (!Type.subTypeOf(temp.getType(), Type.NODE)) {
-                            throw new XPathException(this,
-                                Messages.getMessage(Error.UPDATE_REPLACE_ELEM_TYPE,
-                                    Type.getTypeName(temp.getType())));
-                        }
-                        parent.replaceChild(transaction, ((NodeValue) temp).getNode(), node);
-                        break;
-                    case Node.TEXT_NODE:
-                        text = new TextImpl(contentSeq.getStringValue());
-                        text.setOwnerDocument(doc);
-                        parent.updateChild(transaction, node, text);
-                        break;
-                    case Node.ATTRIBUTE_NODE:
-                        final AttrImpl attr = (AttrImpl) node;
-                        attribute = new AttrImpl(attr.getQName(), contentSeq.getStringValue(), context.getBroker().getBrokerPool().getSymbols());
-                        attribute.setOwnerDocument(doc);
-                        parent.updateChild(transaction, node, attribute);
-                        break;
-                    default:
-                        throw new EXistException("unsupported node-type");
+        final PendingUpdateList pendingUpdates = context.getPendingUpdates();
+        if (pendingUpdates != null) {
+            try {
+                final Sequence content = contentSeq;
+                addPendingUpdates(pendingUpdates, inSeq, (transaction, node) -> replace(transaction, node, content));
+            } finally {
+                context.popInScopeNamespaces();
+            }
+        } else {
+            //start a transaction
+            try (final Txn transaction = getTransaction()) {
+                final StoredNode ql[] = selectAndLock(transaction, inSeq);
+                final NotificationService notifier = context.getBroker().getBrokerPool().getNotificationService();
+                for (final StoredNode node : ql) {
+                    final DocumentImpl doc = node.getOwnerDocument();
+                    if (!doc.getPermissions().validate(context.getSubject(), Permission.WRITE)) {
+                        throw new PermissionDeniedException("User '" + context.getSubject().getName() + "' does not have permission to write to the document '" + doc.getDocumentURI() + "'!");
+                    }
+
+                    //update the document
+                    replace(transaction, node, contentSeq);
+                    doc.setLastModified(System.currentTimeMillis());
+                    modifiedDocuments.add(doc);
+                    context.getBroker().storeXMLResource(transaction, doc);
+                    notifier.notifyUpdate(doc, UpdateListener.UPDATE);
                 }
-                doc.setLastModified(System.currentTimeMillis());
-                modifiedDocuments.add(doc);
-                context.getBroker().storeXMLResource(transaction, doc);
-                notifier.notifyUpdate(doc, UpdateListener.UPDATE);
+                finishTriggers(transaction);
+                //commit the transaction
+                transaction.commit();
+            } catch (final LockException | PermissionDeniedException | EXistException | TriggerException e) {
+                throw new XPathException(this, e.getMessage(), e);
+            } finally {
+                unlockDocuments();
+                context.popInScopeNamespaces();
             }
-            finishTriggers(transaction);
-            //commit the transaction
-            transaction.commit();
-        } catch (final LockException | PermissionDeniedException | EXistException | TriggerException e) {
-            throw new XPathException(this, e.getMessage(), e);
-        } finally {
-            unlockDocuments();
-            context.popInScopeNamespaces();
         }
 
         if (context.getProfiler().isEnabled()) {
@@ -189,6 +167,39 @@ public class Replace extends Modification {
         return Sequence.EMPTY_SEQUENCE;
     }
 
+    private void replace(final Txn transaction, final StoredNode node, final Sequence contentSeq) throws XPathException, EXistException {
+        final DocumentImpl doc = node.getOwnerDocument();
+        final ElementImpl parent = (ElementImpl) node.getParentStoredNode();
+        if (parent == null) {
+            throw new XPathException(this, "The root element of a document can not be replaced with 'update replace'. " +
+                "Please consider removing the document or use 'update value' to just replace the children of the root.");
+        }
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                final Item temp = contentSeq.itemAt(0);
+                if (!Type.subTypeOf(temp.getType(), Type.NODE)) {
+                    throw new XPathException(this,
+                        Messages.getMessage(Error.UPDATE_REPLACE_ELEM_TYPE,
+                            Type.getTypeName(temp.getType())));
+                }
+                parent.replaceChild(transaction, ((NodeValue) temp).getNode(), node);
+                break;
+            case Node.TEXT_NODE:
+                final TextImpl text = new TextImpl(contentSeq.getStringValue());
+                text.setOwnerDocument(doc);
+                parent.updateChild(transaction, node, text);
+                break;
+            case Node.ATTRIBUTE_NODE:
+                final AttrImpl attr = (AttrImpl) node;
+                final AttrImpl attribute = new AttrImpl(attr.getQName(), contentSeq.getStringValue(), context.getBroker().getBrokerPool().getSymbols());
+                attribute.setOwnerDocument(doc);
+                parent.updateChild(transaction, node, attribute);
+                break;
+            default:
+                throw new EXistException("unsupported node-type");
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.exist.xquery.Expression#dump(org.exist.xquery.util.ExpressionDumper)
      */
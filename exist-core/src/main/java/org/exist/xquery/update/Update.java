@@ -123,71 +123,40 @@ public class Update extends Modification {
         }
         //END trap Update failure
         
-        if (!inSeq.isEmpty()) {          
-            context.pushInScopeNamespaces();
-            //start a transaction
-            try (final Txn transaction = getTransaction()) {
-                final NotificationService notifier = context.getBroker().getBrokerPool().getNotificationService();
-
-                final StoredNode ql[] = selectAndLock(transaction, inSeq);
-                for (final StoredNode node : ql) {
-                    final DocumentImpl doc = node.getOwnerDocument();
-                    if (!doc.getPermissions().validate(context.getSubject(),
-                        Permission.WRITE)) {
-                        throw new XPathException(this, "User '" + context.getSubject().getName() + "' does not have permission to write to the document '" + doc.getDocumentURI() + "'!");
-                    }
-
-                    //update the document
-                    switch (node.getNodeType()) {
-                        case Node.ELEMENT_NODE:
-                            final NodeListImpl content = new NodeListImpl();
-                            for (final SequenceIterator j = contentSeq.iterate(); j.hasNext(); ) {
-                                final Item next = j.nextItem();
-                                if (Type.subTypeOf(next.getType(), Type.NODE)) {
-                                    content.add(((NodeValue) next).getNode());
-                                } else {
-                                    final TextImpl text = new TextImpl(next.getStringValue());
-                                    content.add(text);
-                                }
-                            }
-                            ((ElementImpl) node).update(transaction, content);
-                            break;
-
-                        case Node.TEXT_NODE:
-                            final ElementImpl textParent = (ElementImpl) node.getParentNode();
-                            final TextImpl text = new TextImpl(contentSeq.getStringValue());
-                            text.setOwnerDocument(doc);
-                            textParent.updateChild(transaction, node, text);
-                            break;
-
-                        case Node.ATTRIBUTE_NODE:
-                            final ElementImpl attrParent = (ElementImpl) ((Attr)node).getOwnerElement();
-                            if (attrParent == null) {
-                                LOG.warn("parent node not found for {}", node.getNodeId());
-                                break;
-                            }
-                            final AttrImpl attr = (AttrImpl) node;
-                            final AttrImpl attribute = new AttrImpl(attr.getQName(), contentSeq.getStringValue(), context.getBroker().getBrokerPool().getSymbols());
-                            attribute.setOwnerDocument(doc);
-                            attrParent.updateChild(transaction, node, attribute);
-                            break;
-
-                        default:
-                            throw new XPathException(this, "unsupported node-type");
+        if (!inSeq.isEmpty()) {
+            final PendingUpdateList pendingUpdates = context.getPendingUpdates();
+            if (pendingUpdates != null) {
+                addPendingUpdates(pendingUpdates, inSeq, (transaction, node) -> update(transaction, node, contentSeq));
+            } else {
+                context.pushInScopeNamespaces();
+                //start a transaction
+                try (final Txn transaction = getTransaction()) {
+                    final NotificationService notifier = context.getBroker().getBrokerPool().getNotificationService();
+
+                    final StoredNode ql[] = selectAndLock(transaction, inSeq);
+                    for (final StoredNode node : ql) {
+                        final DocumentImpl doc = node.getOwnerDocument();
+                        if (!doc.getPermissions().validate(context.getSubject(),
+                            Permission.WRITE)) {
+                            throw new XPathException(this, "User '" + context.getSubject().getName() + "' does not have permission to write to the document '" + doc.getDocumentURI() + "'!");
+                        }
+
+                        //update the document
+                        update(transaction, node, contentSeq);
+                        doc.setLastModified(System.currentTimeMillis());
+                        modifiedDocuments.add(doc);
+                        context.getBroker().storeXMLResource(transaction, doc);
+                        notifier.notifyUpdate(doc, UpdateListener.UPDATE);
                     }
-                    doc.setLastModified(System.currentTimeMillis());
-                    modifiedDocuments.add(doc);
-                    context.getBroker().storeXMLResource(transaction, doc);
-                    notifier.notifyUpdate(doc, UpdateListener.UPDATE);
+                    finishTriggers(transaction);
+                    //commit the transaction
+                    transaction.commit();
+                } catch (final LockException | EXistException | TriggerException e) {
+                    throw new XPathException(this, e.getMessage(), e);
+                } finally {
+                    unlockDocuments();
+                    context.popInScopeNamespaces();
                 }
-                finishTriggers(transaction);
-                //commit the transaction
-                transaction.commit();
-            } catch (final LockException | EXistException | TriggerException e) {
-                throw new XPathException(this, e.getMessage(), e);
-            } finally {
-                unlockDocuments();
-                context.popInScopeNamespaces();
             }
         }
 
@@ -198,6 +167,47 @@ public class Update extends Modification {
         return Sequence.EMPTY_SEQUENCE;
     }
 
+    private void update(final Txn transaction, final StoredNode node, final Sequence contentSeq) throws XPathException {
+        final DocumentImpl doc = node.getOwnerDocument();
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                final NodeListImpl content = new NodeListImpl();
+                for (final SequenceIterator j = contentSeq.iterate(); j.hasNext(); ) {
+                    final Item next = j.nextItem();
+                    if (Type.subTypeOf(next.getType(), Type.NODE)) {
+                        content.add(((NodeValue) next).getNode());
+                    } else {
+                        final TextImpl text = new TextImpl(next.getStringValue());
+                        content.add(text);
+                    }
+                }
+                ((ElementImpl) node).update(transaction, content);
+                break;
+
+            case Node.TEXT_NODE:
+                final ElementImpl textParent = (ElementImpl) node.getParentNode();
+                final TextImpl text = new TextImpl(contentSeq.getStringValue());
+                text.setOwnerDocument(doc);
+                textParent.updateChild(transaction, node, text);
+                break;
+
+            case Node.ATTRIBUTE_NODE:
+                final ElementImpl attrParent = (ElementImpl) ((Attr)node).getOwnerElement();
+                if (attrParent == null) {
+                    LOG.warn("parent node not found for {}", node.getNodeId());
+                    break;
+                }
+                final AttrImpl attr = (AttrImpl) node;
+                final AttrImpl attribute = new AttrImpl(attr.getQName(), contentSeq.getStringValue(), context.getBroker().getBrokerPool().getSymbols());
+                attribute.setOwnerDocument(doc);
+                attrParent.updateChild(transaction, node, attribute);
+                break;
+
+            default:
+                throw new XPathException(this, "unsupported node-type");
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.exist.xquery.Expression#dump(org.exist.xquery.util.ExpressionDumper)
      */
@@ -305,6 +305,11 @@ public class OrderedValueSequence extends AbstractSequence {
             this.pos = position;
             values = new AtomicValue[orderSpecs.length];
             for (int i = 0; i < orderSpecs.length; i++) {
+                final AtomicValue indexed = orderSpecs[i].getIndexedSortKey();
+                if (indexed != null) {
+                    values[i] = indexed;
+                    continue;
+                }
                 final Sequence seq = orderSpecs[i].getSortExpression().eval(null);
                 values[i] = AtomicValue.EMPTY_VALUE;
                 if (seq.hasOne()) {
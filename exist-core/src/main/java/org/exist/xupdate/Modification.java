@@ -47,6 +47,7 @@ import org.exist.security.PermissionDeniedException;
 import org.exist.source.Source;
 import org.exist.source.StringSource;
 import org.exist.storage.DBBroker;
+import org.exist.storage.DefragmentationService;
 import org.exist.storage.XQueryPool;
 import org.exist.storage.lock.ManagedDocumentLock;
 import org.exist.storage.txn.Txn;
@@ -293,7 +294,9 @@ public abstract class Modification {
 	 * Check if any of the modified documents needs defragmentation.
 	 * 
 	 * Defragmentation will take place if the number of split pages in the
-	 * document exceeds the limit defined in the configuration file.
+	 * document exceeds the limit defined in the configuration file. If
+	 * background defragmentation is enabled, the document is scheduled with
+	 * the {@link DefragmentationService} rather than being defragmented now.
 	 *
 	 * @param transaction the database transaction.
 	 * @param docs the documents
@@ -305,9 +308,12 @@ public abstract class Modification {
         final Object property = broker.getBrokerPool().getConfiguration().getProperty(DBBroker.PROPERTY_XUPDATE_FRAGMENTATION_FACTOR);
         if (property != null)
 	        {fragmentationLimit = (Integer) property;}
+        final DefragmentationService defragmentationService = broker.getBrokerPool().getDefragmentationService();
 	    for(final Iterator<DocumentImpl> i = docs.getDocumentIterator(); i.hasNext(); ) {
 	        final DocumentImpl next = i.next();
-	        if(next.getSplitCount() > fragmentationLimit)
+	        if(defragmentationService.isEnabled())
+	            {defragmentationService.schedule(next);}
+	        else if(next.getSplitCount() > fragmentationLimit)
 	            {broker.defragXMLResource(transaction, next);}
 	        broker.checkXMLResourceConsistency(next);
 	    }
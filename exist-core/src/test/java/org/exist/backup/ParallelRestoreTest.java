@@ -0,0 +1,210 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.backup;
+
+import org.exist.EXistException;
+import org.exist.TestUtils;
+import org.exist.backup.restore.listener.AbstractRestoreListener;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.security.AuthenticationException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+/**
+ * Restores a backup of a wide Collection hierarchy
+ * using more than one thread.
+ */
+public class ParallelRestoreTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @ClassRule
+    public static final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final XmldbURI BASE_COLLECTION_URI = XmldbURI.ROOT_COLLECTION_URI.append("parallel-restore-test");
+    private static final int COLLECTIONS = 4;
+    private static final int SUB_COLLECTIONS = 4;
+    private static final int DOCUMENTS = 10;
+    private static final int THREADS = 4;
+    private static final int PARENT_MODE = 0750;
+
+    private Path backup;
+
+    @Before
+    public void backup() throws EXistException, PermissionDeniedException, IOException, SAXException, LockException, TriggerException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            for (final XmldbURI collectionUri : collectionUris()) {
+                final Collection collection = broker.getOrCreateCollection(transaction, collectionUri);
+                // the permissions of a parent must only be applied once its sub-collections are restored
+                final Collection parent = broker.getCollection(collectionUri.removeLastSegment());
+                parent.setPermissions(broker, PARENT_MODE);
+                broker.saveCollection(transaction, parent);
+                broker.saveCollection(transaction, collection);
+                for (int i = 0; i < DOCUMENTS; i++) {
+                    final String xml = "<doc n=\"" + i + "\"/>";
+                    final IndexInfo info = collection.validateXMLResource(transaction, broker, XmldbURI.create("doc_" + i + ".xml"), xml);
+                    collection.store(transaction, broker, info, xml);
+                }
+            }
+            transaction.commit();
+        }
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final SystemExport export = new SystemExport(broker, transaction, null, null, true);
+            backup = export.export(temporaryFolder.newFolder().toPath().toAbsolutePath().toString(), false, false, null);
+            assertNotNull(backup);
+            transaction.commit();
+        }
+
+        removeBaseCollection(pool);
+    }
+
+    @Test
+    public void restore() throws EXistException, IOException, SAXException, PermissionDeniedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final CountingRestoreListener listener = new CountingRestoreListener();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            new Restore().restore(broker, null, null, backup, listener, true, THREADS);
+        }
+
+        assertTrue(listener.errors.isEmpty());
+        assertRestored(pool);
+        assertTrue(listener.restoredResources >= COLLECTIONS * SUB_COLLECTIONS * DOCUMENTS);
+        assertEquals(1, listener.finished);
+    }
+
+    /**
+     * A restore within a transaction is made by the calling thread alone,
+     * as the restore threads could not take part in the transaction.
+     */
+    @Test
+    public void restoreWithinTransaction() throws EXistException, IOException, SAXException, PermissionDeniedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final CountingRestoreListener listener = new CountingRestoreListener();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            new Restore().restore(broker, transaction, null, backup, listener, true, THREADS);
+            transaction.commit();
+        }
+
+        assertTrue(listener.errors.isEmpty());
+        assertRestored(pool);
+        assertTrue(listener.restoredResources >= COLLECTIONS * SUB_COLLECTIONS * DOCUMENTS);
+        assertEquals(1, listener.finished);
+    }
+
+    @Test
+    public void systemImport() throws EXistException, IOException, SAXException, PermissionDeniedException, AuthenticationException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final CountingRestoreListener listener = new CountingRestoreListener();
+        new SystemImport(pool).restore(TestUtils.ADMIN_DB_USER, TestUtils.ADMIN_DB_PWD, null, backup, listener, THREADS);
+
+        assertTrue(listener.errors.isEmpty());
+        assertRestored(pool);
+        assertEquals(1, listener.finished);
+    }
+
+    private static List<XmldbURI> collectionUris() {
+        final List<XmldbURI> collectionUris = new ArrayList<>();
+        for (int c = 0; c < COLLECTIONS; c++) {
+            for (int s = 0; s < SUB_COLLECTIONS; s++) {
+                collectionUris.add(BASE_COLLECTION_URI.append("col_" + c).append("sub_" + s));
+            }
+        }
+        return collectionUris;
+    }
+
+    private static void assertRestored(final BrokerPool pool) throws EXistException, PermissionDeniedException {
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            for (final XmldbURI collectionUri : collectionUris()) {
+                final Collection collection = broker.getCollection(collectionUri);
+                assertNotNull(collectionUri.toString(), collection);
+                assertEquals(collectionUri.toString(), DOCUMENTS, collection.getDocumentCount(broker));
+
+                final Collection parent = broker.getCollection(collectionUri.removeLastSegment());
+                assertEquals(parent.getURI().toString(), PARENT_MODE, parent.getPermissionsNoLock().getMode());
+            }
+        }
+    }
+
+    private static void removeBaseCollection(final BrokerPool pool) throws EXistException, PermissionDeniedException, IOException, TriggerException {
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            broker.removeCollection(transaction, broker.getCollection(BASE_COLLECTION_URI));
+            transaction.commit();
+        }
+    }
+
+    private static class CountingRestoreListener extends AbstractRestoreListener {
+        final List<String> errors = new ArrayList<>();
+        int restoredResources = 0;
+        int finished = 0;
+
+        @Override
+        public void restoredResource(final String resource) {
+            restoredResources++;
+        }
+
+        @Override
+        public void finished() {
+            finished++;
+        }
+
+        @Override
+        public void info(final String message) {
+        }
+
+        @Override
+        public void warn(final String message) {
+            errors.add(message);
+        }
+
+        @Override
+        public void error(final String message) {
+            errors.add(message);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.backup;
+
+import org.exist.EXistException;
+import org.exist.TestUtils;
+import org.exist.backup.restore.listener.LogRestoreListener;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.security.AuthenticationException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.SAXException;
+import org.xmldb.api.base.XMLDBException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Properties;
+
+import static org.exist.test.TestConstants.TEST_COLLECTION_URI;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that incremental exports only contain the
+ * changes recorded by the {@link BackupChangeLog}.
+ */
+public class SystemExportIncrementalTest {
+
+    @ClassRule
+    public static TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    private static final XmldbURI UNCHANGED_COLLECTION_URI = XmldbURI.ROOT_COLLECTION_URI.append("unchanged");
+
+    private static final String XML = "<test/>";
+    private static final String XML_UPDATED = "<test updated=\"true\"/>";
+
+    @Test
+    public void incrementalExportContainsOnlyChanges() throws EXistException, IOException, PermissionDeniedException, SAXException, LockException, AuthenticationException, URISyntaxException, XMLDBException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final Path backupDir = temporaryFolder.newFolder().toPath();
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final Collection test = broker.getOrCreateCollection(transaction, TEST_COLLECTION_URI);
+            broker.saveCollection(transaction, test);
+            store(transaction, broker, test, "unchanged.xml", XML);
+            store(transaction, broker, test, "updated.xml", XML);
+            store(transaction, broker, test, "removed.xml", XML);
+
+            final Collection unchanged = broker.getOrCreateCollection(transaction, UNCHANGED_COLLECTION_URI);
+            broker.saveCollection(transaction, unchanged);
+            store(transaction, broker, unchanged, "unchanged.xml", XML);
+
+            transaction.commit();
+        }
+
+        final Path full = export(pool, backupDir);
+        assertFalse("yes".equals(properties(full).getProperty(BackupDescriptor.CHANGE_TRACKED_PROP_NAME)));
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final Collection test = broker.getCollection(TEST_COLLECTION_URI);
+            store(transaction, broker, test, "updated.xml", XML_UPDATED);
+            store(transaction, broker, test, "added.xml", XML);
+            test.removeXMLResource(transaction, broker, XmldbURI.create("removed.xml"));
+
+            transaction.commit();
+        }
+
+        final Path incremental = export(pool, backupDir);
+        assertNotEquals(full, incremental);
+        assertEquals("yes", properties(incremental).getProperty(BackupDescriptor.CHANGE_TRACKED_PROP_NAME));
+
+        final Path testDir = incremental.resolve(TEST_COLLECTION_URI.getCollectionPath().substring(1));
+        assertTrue(Files.exists(testDir.resolve("updated.xml")));
+        assertTrue(Files.exists(testDir.resolve("added.xml")));
+        assertFalse(Files.exists(testDir.resolve("unchanged.xml")));
+        assertFalse(Files.exists(incremental.resolve("db").resolve("unchanged")));
+
+        // restore the chain of backups into an empty collection tree
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            broker.removeCollection(transaction, broker.getCollection(TEST_COLLECTION_URI));
+            broker.removeCollection(transaction, broker.getCollection(UNCHANGED_COLLECTION_URI));
+            transaction.commit();
+        } catch (final TriggerException e) {
+            fail(e.getMessage());
+        }
+
+        final SystemImport restore = new SystemImport(pool);
+        restore.restore(TestUtils.ADMIN_DB_USER, TestUtils.ADMIN_DB_PWD, null, incremental, new LogRestoreListener());
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Collection test = broker.getCollection(TEST_COLLECTION_URI);
+            assertNotNull(test);
+            assertNotNull(test.getDocument(broker, XmldbURI.create("unchanged.xml")));
+            assertNotNull(test.getDocument(broker, XmldbURI.create("added.xml")));
+            assertNull(test.getDocument(broker, XmldbURI.create("removed.xml")));
+
+            final DocumentImpl updated = test.getDocument(broker, XmldbURI.create("updated.xml"));
+            assertNotNull(updated);
+            assertEquals("true", updated.getDocumentElement().getAttribute("updated"));
+
+            final Collection unchanged = broker.getCollection(UNCHANGED_COLLECTION_URI);
+            assertNotNull(unchanged);
+            assertNotNull(unchanged.getDocument(broker, XmldbURI.create("unchanged.xml")));
+        }
+    }
+
+    private static void store(final Txn transaction, final DBBroker broker, final Collection collection, final String name, final String xml) throws EXistException, PermissionDeniedException, SAXException, LockException, IOException {
+        final IndexInfo info = collection.validateXMLResource(transaction, broker, XmldbURI.create(name), xml);
+        collection.store(transaction, broker, info, xml);
+    }
+
+    private static Path export(final BrokerPool pool, final Path backupDir) throws EXistException {
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final SystemExport export = new SystemExport(broker, transaction, null, null, true);
+            final Path backup = export.export(backupDir.toAbsolutePath().toString(), true, false, null);
+            assertNotNull(backup);
+            transaction.commit();
+            return backup;
+        }
+    }
+
+    private static Properties properties(final Path backup) throws IOException {
+        final Properties properties = new Properties();
+        try (final InputStream is = Files.newInputStream(backup.resolve(BackupDescriptor.BACKUP_PROPERTIES))) {
+            properties.load(is);
+        }
+        return properties;
+    }
+}
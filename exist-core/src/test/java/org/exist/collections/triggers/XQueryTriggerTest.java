@@ -23,13 +23,16 @@ package org.exist.collections.triggers;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.net.URISyntaxException;
 
 import javax.xml.transform.OutputKeys;
 
 import org.apache.commons.codec.binary.Base64;
+import org.exist.EXistException;
 import org.exist.TestUtils;
+import org.exist.storage.BrokerPool;
 import org.exist.test.ExistXmldbEmbeddedServer;
 import org.exist.xmldb.EXistCollectionManagementService;
 import org.exist.xmldb.EXistResource;
@@ -71,6 +74,34 @@ public class XQueryTriggerTest {
 		"  </exist:triggers>" +
         "</exist:collection>";    
 
+    private final static String ASYNC_COLLECTION_CONFIG =
+    	"<exist:collection xmlns:exist='http://exist-db.org/collection-config/1.0'>" +
+	    "  <exist:triggers>" +
+		"     <exist:trigger class='org.exist.collections.triggers.XQueryTrigger'>" +
+		"	     <exist:parameter " +
+		"			name='url' " +
+		"			value='" +XmldbURI.LOCAL_DB +  "/" + TEST_COLLECTION + "/" + MODULE_NAME + "' " +
+		"        />" +
+		"	     <exist:parameter name='async' value='yes'/>" +
+		"     </exist:trigger>" +
+		"  </exist:triggers>" +
+        "</exist:collection>";
+
+    private final static String ASYNC_NO_QUEUE_COLLECTION_CONFIG =
+    	"<exist:collection xmlns:exist='http://exist-db.org/collection-config/1.0'>" +
+	    "  <exist:triggers>" +
+		"     <exist:trigger class='org.exist.collections.triggers.XQueryTrigger'>" +
+		"	     <exist:parameter " +
+		"			name='url' " +
+		"			value='" +XmldbURI.LOCAL_DB +  "/" + TEST_COLLECTION + "/" + MODULE_NAME + "' " +
+		"        />" +
+		"	     <exist:parameter name='async' value='yes'/>" +
+		"	     <exist:parameter name='async-threads' value='1'/>" +
+		"	     <exist:parameter name='async-max-queued-events' value='0'/>" +
+		"     </exist:trigger>" +
+		"  </exist:triggers>" +
+        "</exist:collection>";
+
     private final static String EMPTY_COLLECTION_CONFIG =
     	"<exist:collection xmlns:exist='http://exist-db.org/collection-config/1.0'/>";
     
@@ -308,6 +339,59 @@ public class XQueryTriggerTest {
 //	        assertXMLEqual(DOCUMENT_CONTENT, ((XMLResource)result.getResource(0)).getContent().toString());
     }
 
+    /** test an asynchronous trigger fired by storing new Documents */
+    @Test
+    public void documentCreate_async() throws XMLDBException, InterruptedException, EXistException {
+        // configure the Collection with the trigger under test
+        final IndexQueryService idxConf = (IndexQueryService)
+        testCollection.getService("IndexQueryService", "1.0");
+        idxConf.configureCollection(ASYNC_COLLECTION_CONFIG);
+
+        // this will fire the trigger
+        for (int i = 0; i < 5; i++) {
+            final XMLResource doc = (XMLResource) testCollection.createResource("async-" + i + ".xml", "XMLResource" );
+            doc.setContent(DOCUMENT_CONTENT);
+            testCollection.storeResource(doc);
+
+            // wait for the 'after' event, as the 'before' event of the next store would
+            // otherwise update the log document concurrently with the 'after' event
+            assertTrue(BrokerPool.getInstance().getAsyncTriggerExecutor().awaitEvents(30_000));
+        }
+
+        // remove the trigger for the Collection under test
+        idxConf.configureCollection(EMPTY_COLLECTION_CONFIG);
+
+        final XPathQueryService service = (XPathQueryService) testCollection.getService("XPathQueryService", "1.0");
+
+        ResourceSet result = service.query(BEFORE+CREATE+DOCUMENT);
+        assertEquals(5, result.getSize());
+
+        result = service.query(AFTER+CREATE+DOCUMENT);
+        assertEquals(5, result.getSize());
+
+        result = service.query(AFTER+CREATE+DOCUMENT+"[uri/text() = '/db/testXQueryTrigger/async-4.xml']");
+        assertEquals(1, result.getSize());
+    }
+
+    /** test an asynchronous trigger which has no place for waiting events, so executes them before the commit */
+    @Test
+    public void documentCreate_asyncQueueFull() throws XMLDBException {
+        final IndexQueryService idxConf = (IndexQueryService)
+        testCollection.getService("IndexQueryService", "1.0");
+        idxConf.configureCollection(ASYNC_NO_QUEUE_COLLECTION_CONFIG);
+
+        final XMLResource doc = (XMLResource) testCollection.createResource("async-full.xml", "XMLResource" );
+        doc.setContent(DOCUMENT_CONTENT);
+        testCollection.storeResource(doc);
+
+        idxConf.configureCollection(EMPTY_COLLECTION_CONFIG);
+
+        // the 'after' event has been executed before the store returned, without waiting for the executor
+        final XPathQueryService service = (XPathQueryService) testCollection.getService("XPathQueryService", "1.0");
+        final ResourceSet result = service.query(AFTER+CREATE+DOCUMENT+"[uri/text() = '/db/testXQueryTrigger/async-full.xml']");
+        assertEquals(1, result.getSize());
+    }
+
     /** test a trigger fired by a Document Update */
     @Test
     public void documentUpdate() throws XMLDBException {
@@ -0,0 +1,215 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.http.urlrewrite;
+
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
+import org.easymock.EasyMock;
+import org.exist.security.Subject;
+import org.exist.storage.CollectionVersions;
+import org.exist.xmldb.XmldbURI;
+import org.junit.Test;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.easymock.EasyMock.anyInt;
+import static org.easymock.EasyMock.anyString;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseCacheTest {
+
+    @Test
+    public void storeAndSend() throws IOException {
+        final ResponseCache cache = new ResponseCache(10, 60, Collections.emptyList());
+        final Subject user = user("guest");
+
+        assertFalse(cache.send(request("/index.html", "en"), user, response(new UnsynchronizedByteArrayOutputStream(), 200)));
+
+        record(cache, request("/index.html", "en"), user, 200, "<p>hello</p>", Collections.emptyList());
+
+        final UnsynchronizedByteArrayOutputStream out = new UnsynchronizedByteArrayOutputStream();
+        assertTrue(cache.send(request("/index.html", "de"), user, response(out, 200)));
+        assertArrayEquals("<p>hello</p>".getBytes(UTF_8), out.toByteArray());
+
+        assertFalse(cache.send(request("/index.html", "en"), user("admin"), response(new UnsynchronizedByteArrayOutputStream(), 200)));
+        assertFalse(cache.send(request("/other.html", "en"), user, response(new UnsynchronizedByteArrayOutputStream(), 200)));
+
+        cache.clear();
+        assertFalse(cache.send(request("/index.html", "en"), user, response(new UnsynchronizedByteArrayOutputStream(), 200)));
+    }
+
+    @Test
+    public void vary() throws IOException {
+        final ResponseCache cache = new ResponseCache(10, 60, Collections.emptyList());
+        final Subject user = user("guest");
+
+        record(cache, request("/index.html", "en"), user, 200, "<p>hello</p>", Collections.singletonList("Accept-Language"));
+
+        assertFalse(cache.send(request("/index.html", "de"), user, response(new UnsynchronizedByteArrayOutputStream(), 200)));
+        final UnsynchronizedByteArrayOutputStream out = new UnsynchronizedByteArrayOutputStream();
+        assertTrue(cache.send(request("/index.html", "en"), user, response(out, 200)));
+        assertArrayEquals("<p>hello</p>".getBytes(UTF_8), out.toByteArray());
+    }
+
+    @Test
+    public void errorsAreNotCached() throws IOException {
+        final ResponseCache cache = new ResponseCache(10, 60, Collections.emptyList());
+        final Subject user = user("guest");
+
+        record(cache, request("/missing.html", "en"), user, 404, "not found", Collections.emptyList());
+
+        assertFalse(cache.send(request("/missing.html", "en"), user, response(new UnsynchronizedByteArrayOutputStream(), 200)));
+    }
+
+    @Test
+    public void changeToWatchedCollection() throws IOException {
+        final ResponseCache cache = new ResponseCache(10, 60, Collections.singletonList(XmldbURI.create("/db/apps/site")));
+        final CollectionVersions collectionVersions = new CollectionVersions();
+        cache.watch(collectionVersions);
+        final Subject user = user("guest");
+        record(cache, request("/index.html", "en"), user, 200, "<p>hello</p>", Collections.emptyList());
+
+        collectionVersions.resourceChanged(XmldbURI.create("/db/other/data.xml"));
+        assertTrue(cache.send(request("/index.html", "en"), user, response(new UnsynchronizedByteArrayOutputStream(), 200)));
+
+        // a change to a watched document directly following an irrelevant one must not get lost
+        collectionVersions.resourceChanged(XmldbURI.create("/db/other/data.xml"));
+        collectionVersions.resourceChanged(XmldbURI.create("/db/apps/site/data.xml"));
+        assertFalse(cache.send(request("/index.html", "en"), user, response(new UnsynchronizedByteArrayOutputStream(), 200)));
+
+        record(cache, request("/index.html", "en"), user, 200, "<p>hello again</p>", Collections.emptyList());
+        assertTrue(cache.send(request("/index.html", "en"), user, response(new UnsynchronizedByteArrayOutputStream(), 200)));
+    }
+
+    @Test
+    public void removalOfWatchedCollection() throws IOException {
+        final ResponseCache cache = new ResponseCache(10, 60, Collections.singletonList(XmldbURI.create("/db/apps/site/data")));
+        final CollectionVersions collectionVersions = new CollectionVersions();
+        cache.watch(collectionVersions);
+        final Subject user = user("guest");
+        record(cache, request("/index.html", "en"), user, 200, "<p>hello</p>", Collections.emptyList());
+        assertTrue(cache.send(request("/index.html", "en"), user, response(new UnsynchronizedByteArrayOutputStream(), 200)));
+
+        // the watched collection is removed along with its parent
+        collectionVersions.treeChanged(XmldbURI.create("/db/apps/site"));
+        assertFalse(cache.send(request("/index.html", "en"), user, response(new UnsynchronizedByteArrayOutputStream(), 200)));
+    }
+
+    @Test
+    public void invalidatedWhileRecording() throws IOException {
+        final ResponseCache cache = new ResponseCache(10, 60, Collections.emptyList());
+        final Subject user = user("guest");
+
+        final ResponseCache.RecordingResponseWrapper recorder = cache.record(recordedResponse(200, Collections.emptyList()));
+        recorder.getOutputStream().write("<p>hello</p>".getBytes(UTF_8));
+        cache.invalidate();
+        cache.store(request("/index.html", "en"), user, recorder);
+        assertFalse(cache.send(request("/index.html", "en"), user, response(new UnsynchronizedByteArrayOutputStream(), 200)));
+
+        final ResponseCache.RecordingResponseWrapper cleared = cache.record(recordedResponse(200, Collections.emptyList()));
+        cleared.getOutputStream().write("<p>hello</p>".getBytes(UTF_8));
+        cache.clear();
+        cache.store(request("/index.html", "en"), user, cleared);
+        assertFalse(cache.send(request("/index.html", "en"), user, response(new UnsynchronizedByteArrayOutputStream(), 200)));
+    }
+
+    private static void record(final ResponseCache cache, final HttpServletRequest request, final Subject user,
+            final int status, final String content, final List<String> vary) throws IOException {
+        final ResponseCache.RecordingResponseWrapper recorder = cache.record(recordedResponse(status, vary));
+        recorder.getOutputStream().write(content.getBytes(UTF_8));
+        cache.store(request, user, recorder);
+    }
+
+    private static HttpServletResponse recordedResponse(final int status, final List<String> vary) throws IOException {
+        final HttpServletResponse response = EasyMock.createNiceMock(HttpServletResponse.class);
+        expect(response.getOutputStream()).andStubReturn(new TestServletOutputStream(new UnsynchronizedByteArrayOutputStream()));
+        expect(response.getStatus()).andStubReturn(status);
+        expect(response.getContentType()).andStubReturn("text/html; charset=UTF-8");
+        expect(response.getHeaderNames()).andStubReturn(vary.isEmpty() ? Collections.emptyList() : Collections.singletonList("Vary"));
+        expect(response.getHeaders("Vary")).andStubReturn(vary.isEmpty() ? Collections.emptyList() : Collections.singletonList(String.join(",", vary)));
+        expect(response.getHeaders("Cache-Control")).andStubReturn(Collections.emptyList());
+        replay(response);
+        return response;
+    }
+
+    private static HttpServletRequest request(final String uri, final String language) {
+        final HttpServletRequest request = EasyMock.createNiceMock(HttpServletRequest.class);
+        expect(request.getMethod()).andStubReturn("GET");
+        expect(request.getHeader("Host")).andStubReturn("localhost");
+        expect(request.getRequestURI()).andStubReturn(uri);
+        expect(request.getHeaders("Accept-Language")).andStubAnswer(() -> Collections.enumeration(Arrays.asList(language)));
+        replay(request);
+        return request;
+    }
+
+    private static HttpServletResponse response(final UnsynchronizedByteArrayOutputStream out, final int status) throws IOException {
+        final HttpServletResponse response = EasyMock.createNiceMock(HttpServletResponse.class);
+        expect(response.getOutputStream()).andStubReturn(new TestServletOutputStream(out));
+        expect(response.getStatus()).andStubReturn(status);
+        response.addHeader(anyString(), anyString());
+        EasyMock.expectLastCall().anyTimes();
+        response.setContentLength(anyInt());
+        EasyMock.expectLastCall().anyTimes();
+        replay(response);
+        return response;
+    }
+
+    private static Subject user(final String name) {
+        final Subject user = EasyMock.createNiceMock(Subject.class);
+        expect(user.getName()).andStubReturn(name);
+        replay(user);
+        return user;
+    }
+
+    private static class TestServletOutputStream extends ServletOutputStream {
+        private final UnsynchronizedByteArrayOutputStream out;
+
+        private TestServletOutputStream(final UnsynchronizedByteArrayOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(final int b) {
+            out.write(b);
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(final WriteListener writeListener) {
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.xmldb.XmldbURI;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CollectionVersionsTest {
+
+    private static final XmldbURI DB = XmldbURI.ROOT_COLLECTION_URI;
+    private static final XmldbURI A = XmldbURI.create("/db/a");
+    private static final XmldbURI A_B = XmldbURI.create("/db/a/b");
+    private static final XmldbURI C = XmldbURI.create("/db/c");
+
+    @Test
+    public void resourceChangeStampsAncestors() {
+        final CollectionVersions versions = new CollectionVersions();
+        assertEquals(0, versions.getVersion(A_B));
+
+        versions.resourceChanged(XmldbURI.create("/db/a/b/doc.xml"));
+        final long version = versions.getVersion(A_B);
+        assertTrue(version > 0);
+        assertEquals(version, versions.getVersion(A));
+        assertEquals(version, versions.getVersion(DB));
+        assertEquals(version, versions.getVersion(XmldbURI.create("/db/a/b/")));
+        assertEquals(0, versions.getVersion(C));
+    }
+
+    @Test
+    public void collectionChangeDoesNotStampDescendants() {
+        final CollectionVersions versions = new CollectionVersions();
+        versions.resourceChanged(XmldbURI.create("/db/a/b/doc.xml"));
+        final long version = versions.getVersion(A_B);
+
+        versions.collectionChanged(A);
+        assertEquals(version, versions.getVersion(A_B));
+        assertNotEquals(version, versions.getVersion(A));
+        assertEquals(versions.getVersion(A), versions.getVersion(DB));
+    }
+
+    @Test
+    public void treeChangeStampsDescendants() {
+        final CollectionVersions versions = new CollectionVersions();
+        versions.resourceChanged(XmldbURI.create("/db/a/b/doc.xml"));
+        versions.resourceChanged(XmldbURI.create("/db/c/doc.xml"));
+        final long versionC = versions.getVersion(C);
+
+        versions.treeChanged(A);
+        final long version = versions.getVersion(A);
+        assertEquals(version, versions.getVersion(A_B));
+        assertEquals(version, versions.getVersion(DB));
+        assertEquals(versionC, versions.getVersion(C));
+    }
+
+    @Test
+    public void treeChangeStampsUnchangedDescendants() {
+        final CollectionVersions versions = new CollectionVersions();
+        assertEquals(0, versions.getVersion(A_B));
+
+        versions.treeChanged(A);
+        final long version = versions.getVersion(A);
+        assertTrue(version > 0);
+        assertEquals(version, versions.getVersion(A_B));
+        assertEquals(version, versions.getVersion(XmldbURI.create("/db/a/b/c")));
+        assertEquals(0, versions.getVersion(C));
+        assertEquals(0, versions.getVersion(XmldbURI.create("/db/ab")));
+
+        // a later change below the tree still gives a newer stamp
+        versions.resourceChanged(XmldbURI.create("/db/a/b/doc.xml"));
+        assertTrue(versions.getVersion(A_B) > version);
+    }
+
+    @Test
+    public void treeChangeDropsStampsOfDescendants() {
+        final CollectionVersions versions = new CollectionVersions();
+        versions.resourceChanged(XmldbURI.create("/db/a/b/c/doc.xml"));
+        versions.treeChanged(XmldbURI.create("/db/a/b/c"));
+        versions.resourceChanged(XmldbURI.create("/db/c/doc.xml"));
+        final int size = versions.size();
+        final long before = versions.getVersion(XmldbURI.create("/db/a/b/c"));
+
+        versions.treeChanged(A);
+        assertTrue(versions.size() < size);
+        final long version = versions.getVersion(A);
+        assertTrue(version > before);
+        assertEquals(version, versions.getVersion(A_B));
+        assertEquals(version, versions.getVersion(XmldbURI.create("/db/a/b/c")));
+    }
+
+    @Test
+    public void tooManyStampsAreDropped() {
+        final CollectionVersions versions = new CollectionVersions(10);
+        versions.resourceChanged(XmldbURI.create("/db/a/b/doc.xml"));
+        final long versionAB = versions.getVersion(A_B);
+        final long versionC = versions.getVersion(C);
+        assertEquals(0, versionC);
+
+        for (int i = 0; i < 20; i++) {
+            versions.collectionChanged(XmldbURI.create("/db/x" + i));
+        }
+        assertTrue(versions.size() <= 10);
+
+        // every Collection has a new stamp, which is kept until it changes
+        final long floor = versions.getVersion(C);
+        assertTrue(floor > versionAB);
+        assertEquals(floor, versions.getVersion(A_B));
+        versions.resourceChanged(XmldbURI.create("/db/c/doc.xml"));
+        assertTrue(versions.getVersion(C) > floor);
+        assertTrue(versions.getVersion(A_B) >= floor);
+    }
+
+    @Test
+    public void tempCollectionIsIgnored() {
+        final CollectionVersions versions = new CollectionVersions();
+        versions.resourceChanged(XmldbURI.create(XmldbURI.TEMP_COLLECTION + "/doc.xml"));
+        versions.collectionChanged(XmldbURI.TEMP_COLLECTION_URI);
+        assertEquals(0, versions.getVersion(DB));
+    }
+}
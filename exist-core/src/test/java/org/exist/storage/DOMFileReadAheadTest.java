@@ -0,0 +1,147 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.dom.persistent.NodeHandle;
+import org.exist.dom.persistent.IStoredNode;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.dom.DOMFile;
+import org.exist.storage.dom.INodeIterator;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.util.PropertiesBuilder;
+import org.exist.xmldb.XmldbURI;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the data pages of a document are read ahead
+ * whilst iterating over its nodes.
+ */
+public class DOMFileReadAheadTest {
+
+    private static final XmldbURI COLLECTION_URI = XmldbURI.ROOT_COLLECTION_URI.append("read-ahead-test");
+    private static final XmldbURI DOC_URI = COLLECTION_URI.append("large.xml");
+    private static final XmldbURI PARTIAL_DOC_URI = COLLECTION_URI.append("partial.xml");
+    private static final int ITEMS = 5000;
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(
+            PropertiesBuilder.propertiesBuilder()
+                    .put(DOMFile.PROPERTY_READ_AHEAD, 16)
+                    .build(),
+            true,
+            true);
+
+    @Test
+    public void iterationReadsAhead() throws EXistException, PermissionDeniedException, IOException, SAXException, LockException, TriggerException, InterruptedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final StringBuilder xml = new StringBuilder("<items>");
+            for (int i = 0; i < ITEMS; i++) {
+                xml.append("<item n=\"").append(i).append("\">item ").append(i).append("</item>");
+            }
+            xml.append("</items>");
+
+            final Collection collection = broker.getOrCreateCollection(transaction, COLLECTION_URI);
+            broker.saveCollection(transaction, collection);
+            final IndexInfo info = collection.validateXMLResource(transaction, broker, DOC_URI.lastSegment(), xml.toString());
+            collection.store(transaction, broker, info, xml.toString());
+            transaction.commit();
+        }
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final LockedDocument lockedDoc = broker.getXMLResource(DOC_URI, LockMode.READ_LOCK)) {
+            final DOMFile domFile = ((NativeBroker) broker).getDOMFile();
+            final long readAheadPages = domFile.getDataBufferStats().getReadAheadPages();
+
+            // each item has an element, attribute, and text node
+            int elements = 0;
+            try (final INodeIterator iterator = broker.getNodeIterator((NodeHandle) lockedDoc.getDocument().getDocumentElement())) {
+                for (int i = 0; i < 1 + (ITEMS * 3); i++) {
+                    final IStoredNode node = iterator.next();
+                    assertNotNull(node);
+                    if (node.getNodeType() == Node.ELEMENT_NODE) {
+                        elements++;
+                    }
+                }
+            }
+            assertEquals(1 + ITEMS, elements);
+
+            assertTrue(lockedDoc.getDocument().getPageCount() > 1);
+            final long end = System.currentTimeMillis() + 10_000;
+            while (domFile.getDataBufferStats().getReadAheadPages() == readAheadPages && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            assertTrue(domFile.getDataBufferStats().getReadAheadPages() > readAheadPages);
+            assertTrue(domFile.getDataBufferStats().getReadAheadRequests() > 0);
+        }
+    }
+
+    @Test
+    public void iterationWithinFirstPageDoesNotReadAhead() throws EXistException, PermissionDeniedException, IOException, SAXException, LockException, TriggerException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final StringBuilder xml = new StringBuilder("<items>");
+        for (int i = 0; i < ITEMS; i++) {
+            xml.append("<item n=\"").append(i).append("\">item ").append(i).append("</item>");
+        }
+        xml.append("</items>");
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, COLLECTION_URI);
+            broker.saveCollection(transaction, collection);
+            final IndexInfo info = collection.validateXMLResource(transaction, broker, PARTIAL_DOC_URI.lastSegment(), xml.toString());
+            collection.store(transaction, broker, info, xml.toString());
+            transaction.commit();
+        }
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final LockedDocument lockedDoc = broker.getXMLResource(PARTIAL_DOC_URI, LockMode.READ_LOCK)) {
+            final DOMFile domFile = ((NativeBroker) broker).getDOMFile();
+            final long readAheadRequests = domFile.getDataBufferStats().getReadAheadRequests();
+
+            try (final INodeIterator iterator = broker.getNodeIterator((NodeHandle) lockedDoc.getDocument().getDocumentElement())) {
+                for (int i = 0; i < 4; i++) {
+                    assertNotNull(iterator.next());
+                }
+            }
+
+            assertTrue(lockedDoc.getDocument().getPageCount() > 1);
+            assertEquals(readAheadRequests, domFile.getDataBufferStats().getReadAheadRequests());
+        }
+    }
+}
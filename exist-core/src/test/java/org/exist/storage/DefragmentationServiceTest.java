@@ -0,0 +1,110 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.util.PropertiesBuilder;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.value.Sequence;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that documents fragmented by XQuery updates
+ * are defragmented by the {@link DefragmentationService}.
+ */
+public class DefragmentationServiceTest {
+
+    private static final XmldbURI COLLECTION_URI = XmldbURI.ROOT_COLLECTION_URI.append("defragmentation-test");
+    private static final XmldbURI DOC_URI = COLLECTION_URI.append("fragmented.xml");
+    private static final int ITEMS = 2000;
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(
+            PropertiesBuilder.propertiesBuilder()
+                    .put(DefragmentationService.PROPERTY_BACKGROUND_DEFRAGMENTATION, true)
+                    .put(DefragmentationService.PROPERTY_DEFRAGMENTATION_INTERVAL, 0L)
+                    .put(DBBroker.PROPERTY_XUPDATE_FRAGMENTATION_FACTOR, 0)
+                    .build(),
+            true,
+            true);
+
+    @Test
+    public void defragmentInBackground() throws EXistException, PermissionDeniedException, IOException, SAXException, LockException, TriggerException, XPathException, InterruptedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final DefragmentationService defragmentationService = pool.getDefragmentationService();
+        assertTrue(defragmentationService.isEnabled());
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final StringBuilder xml = new StringBuilder("<items>");
+            for (int i = 0; i < ITEMS; i++) {
+                xml.append("<item n=\"").append(i).append("\">item ").append(i).append("</item>");
+            }
+            xml.append("</items>");
+
+            final Collection collection = broker.getOrCreateCollection(transaction, COLLECTION_URI);
+            broker.saveCollection(transaction, collection);
+            final IndexInfo info = collection.validateXMLResource(transaction, broker, DOC_URI.lastSegment(), xml.toString());
+            collection.store(transaction, broker, info, xml.toString());
+            transaction.commit();
+        }
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            // insert into the full pages in the middle of the document
+            final String query = "for $item in doc('" + DOC_URI + "')/items/item[@n mod 10 = 0] " +
+                    "return update insert <inserted>inserted before {$item/@n/string()}</inserted> preceding $item";
+            pool.getXQueryService().execute(broker, query, null);
+        }
+
+        assertTrue(defragmentationService.awaitDefragmentation(60_000));
+        assertEquals(1, defragmentationService.getDefragmentedCount());
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            try (final LockedDocument lockedDoc = broker.getXMLResource(DOC_URI, LockMode.READ_LOCK)) {
+                assertEquals(0, lockedDoc.getDocument().getSplitCount());
+            }
+
+            final Sequence result = pool.getXQueryService().execute(broker,
+                    "let $items := doc('" + DOC_URI + "')/items return (count($items/item), count($items/inserted), $items/inserted[1]/following-sibling::*[1]/@n/string())", null);
+            assertEquals(ITEMS, result.itemAt(0).toJavaObject(Integer.class).intValue());
+            assertEquals(ITEMS / 10, result.itemAt(1).toJavaObject(Integer.class).intValue());
+            assertEquals("0", result.itemAt(2).getStringValue());
+        }
+    }
+}
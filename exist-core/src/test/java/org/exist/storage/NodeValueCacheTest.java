@@ -0,0 +1,118 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.CollectionCache;
+import org.exist.collections.IndexInfo;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.util.PropertiesBuilder;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.value.Sequence;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the string values of stored elements are
+ * cached by the {@link NodeValueCache}, and are invalidated
+ * when the document is modified.
+ */
+public class NodeValueCacheTest {
+
+    private static final XmldbURI COLLECTION_URI = XmldbURI.ROOT_COLLECTION_URI.append("node-value-cache-test");
+    private static final XmldbURI DOC_URI = COLLECTION_URI.append("test.xml");
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(
+            PropertiesBuilder.propertiesBuilder()
+                    .put(NodeValueCache.PROPERTY_CACHE_SIZE_BYTES, 1024 * 1024)
+                    .build(),
+            true,
+            true);
+
+    @BeforeClass
+    public static void storeDocument() throws EXistException, PermissionDeniedException, IOException, SAXException, LockException, TriggerException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final String xml = "<test><para>one <b>two</b> three</para><para>four</para></test>";
+            final Collection collection = broker.getOrCreateCollection(transaction, COLLECTION_URI);
+            broker.saveCollection(transaction, collection);
+            final IndexInfo info = collection.validateXMLResource(transaction, broker, DOC_URI.lastSegment(), xml);
+            collection.store(transaction, broker, info, xml);
+            transaction.commit();
+        }
+    }
+
+    @Test
+    public void repeatedAtomizationHitsCache() throws EXistException, PermissionDeniedException, XPathException {
+        final NodeValueCache nodeValueCache = existEmbeddedServer.getBrokerPool().getNodeValueCache();
+        assertTrue(nodeValueCache.isEnabled());
+
+        assertEquals("one two three", query("string(doc('" + DOC_URI + "')/test/para[1])"));
+        final CollectionCache.Statistics before = nodeValueCache.getStatistics();
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("one two three", query("string(doc('" + DOC_URI + "')/test/para[1])"));
+        }
+        final CollectionCache.Statistics after = nodeValueCache.getStatistics();
+
+        assertTrue(after.getHitCount() - before.getHitCount() >= 10);
+        assertEquals(before.getMissCount(), after.getMissCount());
+    }
+
+    @Test
+    public void modificationInvalidates() throws EXistException, PermissionDeniedException, XPathException {
+        assertEquals("four", query("string(doc('" + DOC_URI + "')/test/para[2])"));
+        assertEquals("four", query("string(doc('" + DOC_URI + "')/test/para[2])"));
+
+        query("update value doc('" + DOC_URI + "')/test/para[2] with 'five'");
+        assertEquals("five", query("string(doc('" + DOC_URI + "')/test/para[2])"));
+
+        query("update insert <b>six</b> into doc('" + DOC_URI + "')/test/para[2]");
+        assertEquals("fivesix", query("string(doc('" + DOC_URI + "')/test/para[2])"));
+
+        query("update delete doc('" + DOC_URI + "')/test/para[2]/b");
+        assertEquals("five", query("string(doc('" + DOC_URI + "')/test/para[2])"));
+    }
+
+    private static String query(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Sequence result = pool.getXQueryService().execute(broker, query, null);
+            return result.isEmpty() ? null : result.getStringValue();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.NodeHandle;
+import org.exist.numbering.NodeId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NotificationServiceTest {
+
+    private NotificationService service;
+
+    @Before
+    public void setUp() {
+        service = new NotificationService();
+    }
+
+    @After
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    public void synchronousDelivery() {
+        final CountingListener listener = new CountingListener(null);
+        service.subscribe(listener);
+        service.notifyUpdate(null, UpdateListener.UPDATE);
+        service.notifyUpdate(null, UpdateListener.REMOVE);
+        assertEquals(2, listener.updates.get());
+        assertNull(service.getAsyncDeliveryStats(listener));
+
+        service.unsubscribe(listener);
+        service.notifyUpdate(null, UpdateListener.UPDATE);
+        assertEquals(2, listener.updates.get());
+        assertEquals(1, listener.unsubscribed.get());
+    }
+
+    @Test
+    public void asynchronousDelivery() throws InterruptedException {
+        final CountDownLatch delivered = new CountDownLatch(3);
+        final CountingListener listener = new CountingListener(delivered);
+        service.subscribeAsync(listener, 10, NotificationService.OverflowPolicy.BLOCK);
+        service.notifyUpdate(null, UpdateListener.ADD);
+        service.notifyUpdate(null, UpdateListener.UPDATE);
+        service.notifyUpdate(null, UpdateListener.REMOVE);
+
+        assertTrue(delivered.await(10, TimeUnit.SECONDS));
+        assertEquals(3, listener.updates.get());
+
+        final NotificationService.AsyncDeliveryStats stats = service.getAsyncDeliveryStats(listener);
+        assertNotNull(stats);
+        assertEquals(0, stats.getDropped());
+    }
+
+    @Test
+    public void dropNewestWhenFull() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch delivered = new CountDownLatch(2);
+        final CountingListener listener = new CountingListener(delivered) {
+            @Override
+            public void documentUpdated(final DocumentImpl document, final int event) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.documentUpdated(document, event);
+            }
+        };
+        service.subscribeAsync(listener, 1, NotificationService.OverflowPolicy.DROP_NEWEST);
+
+        // the first notification blocks the listener, the second waits in the queue
+        service.notifyUpdate(null, UpdateListener.UPDATE);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        service.notifyUpdate(null, UpdateListener.UPDATE);
+        service.notifyUpdate(null, UpdateListener.UPDATE);
+        service.notifyUpdate(null, UpdateListener.UPDATE);
+
+        final NotificationService.AsyncDeliveryStats stats = service.getAsyncDeliveryStats(listener);
+        assertNotNull(stats);
+        assertEquals(1, stats.getPending());
+        assertEquals(2, stats.getDropped());
+
+        release.countDown();
+        assertTrue(delivered.await(10, TimeUnit.SECONDS));
+        assertEquals(2, listener.updates.get());
+    }
+
+    private static class CountingListener implements UpdateListener {
+        final AtomicInteger updates = new AtomicInteger();
+        final AtomicInteger unsubscribed = new AtomicInteger();
+        private final CountDownLatch latch;
+
+        CountingListener(final CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public void documentUpdated(final DocumentImpl document, final int event) {
+            updates.incrementAndGet();
+            if (latch != null) {
+                latch.countDown();
+            }
+        }
+
+        @Override
+        public void nodeMoved(final NodeId oldNodeId, final NodeHandle newNode) {
+        }
+
+        @Override
+        public void unsubscribe() {
+            unsubscribed.incrementAndGet();
+        }
+
+        @Override
+        public void debug() {
+        }
+    }
+}
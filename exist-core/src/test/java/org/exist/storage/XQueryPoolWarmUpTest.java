@@ -0,0 +1,120 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.dom.persistent.BinaryDocument;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.security.PermissionDeniedException;
+import org.exist.source.DBSource;
+import org.exist.source.Source;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.LockException;
+import org.exist.util.PropertiesBuilder;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.CompiledXQuery;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.XQueryContext;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Properties;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the queries in the XQuery Pool are compiled
+ * again when the database is restarted.
+ */
+public class XQueryPoolWarmUpTest {
+
+    private static final XmldbURI QUERY_URI = XmldbURI.ROOT_COLLECTION_URI.append("warm-up.xq");
+
+    @Rule
+    public final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(
+            PropertiesBuilder.propertiesBuilder()
+                    .put(XQueryPool.PROPERTY_WARM_UP, true)
+                    .build(),
+            true,
+            true);
+
+    @Test
+    public void warmUpAfterRestart() throws EXistException, PermissionDeniedException, IOException, LockException, TriggerException, XPathException, DatabaseConfigurationException, InterruptedException {
+        BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        assertEquals(-1, pool.getXQueryPool().getWarmUpTime());
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final byte[] query = "1 + 1".getBytes(UTF_8);
+            try (final Collection collection = broker.openCollection(XmldbURI.ROOT_COLLECTION_URI, LockMode.WRITE_LOCK);
+                 final ByteArrayInputStream is = new ByteArrayInputStream(query)) {
+                collection.addBinaryResource(transaction, broker, QUERY_URI.lastSegment(), is, "application/xquery", query.length);
+            }
+            transaction.commit();
+        }
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            // use the query twice
+            final Source source = getSource(broker);
+            final XQuery xqueryService = pool.getXQueryService();
+            final CompiledXQuery compiledXQuery = xqueryService.compile(new XQueryContext(pool), source);
+            pool.getXQueryPool().returnCompiledXQuery(source, compiledXQuery);
+            pool.getXQueryPool().returnCompiledXQuery(source, pool.getXQueryPool().borrowCompiledXQuery(broker, source));
+        }
+
+        existEmbeddedServer.restart();
+
+        final Path warmUpFile = ((Path) existEmbeddedServer.getBrokerPool().getConfiguration().getProperty(BrokerPool.PROPERTY_DATA_DIR)).resolve(XQueryPool.WARM_UP_FILE_NAME);
+        assertTrue(Files.exists(warmUpFile));
+        assertTrue(Files.readAllLines(warmUpFile, UTF_8).get(0).startsWith("2\tDB\t"));
+
+        pool = existEmbeddedServer.getBrokerPool();
+        final long timeout = System.currentTimeMillis() + 30_000;
+        while (pool.getXQueryPool().getWarmUpTime() == -1 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(50);
+        }
+        assertNotEquals(-1, pool.getXQueryPool().getWarmUpTime());
+        assertEquals(1, pool.getXQueryPool().getWarmedUpQueries());
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            assertNotNull(pool.getXQueryPool().borrowCompiledXQuery(broker, getSource(broker)));
+        }
+    }
+
+    private static Source getSource(final DBBroker broker) throws PermissionDeniedException {
+        try (final LockedDocument lockedDoc = broker.getXMLResource(QUERY_URI, LockMode.READ_LOCK)) {
+            return new DBSource(broker, (BinaryDocument) lockedDoc.getDocument(), true);
+        }
+    }
+}
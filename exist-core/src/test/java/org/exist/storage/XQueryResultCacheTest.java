@@ -0,0 +1,105 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.value.Sequence;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class XQueryResultCacheTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    private static final String CACHED_QUERY =
+            "declare option exist:cache-result \"collections=/db/result-cache\";\n" +
+            "util:uuid()";
+
+    private static final String UNCACHED_QUERY = "util:uuid()";
+
+    @Test
+    public void resultIsCachedUntilCollectionChanges() throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final XQueryResultCache cache = pool.getXQueryResultCache();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+            execute(xquery, broker, "xmldb:create-collection('/db', 'result-cache')");
+
+            final long hits = cache.getHits();
+            final String first = execute(xquery, broker, CACHED_QUERY);
+            assertEquals(first, execute(xquery, broker, CACHED_QUERY));
+            assertEquals(hits + 1, cache.getHits());
+
+            // a change to another collection does not invalidate the result
+            execute(xquery, broker, "xmldb:store('/db', 'result-cache-other.xml', <other/>)");
+            assertEquals(first, execute(xquery, broker, CACHED_QUERY));
+
+            execute(xquery, broker, "xmldb:store('/db/result-cache', 'test.xml', <test/>)");
+            final String second = execute(xquery, broker, CACHED_QUERY);
+            assertNotEquals(first, second);
+            assertEquals(second, execute(xquery, broker, CACHED_QUERY));
+
+            execute(xquery, broker, "xmldb:remove('/db/result-cache', 'test.xml')");
+            assertNotEquals(second, execute(xquery, broker, CACHED_QUERY));
+        }
+    }
+
+    @Test
+    public void constructedNodesAreNotCached() throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final XQueryResultCache cache = pool.getXQueryResultCache();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+            final String query =
+                    "declare option exist:cache-result \"collections=/db/result-cache-nodes\";\n" +
+                    "<result>{util:uuid()}</result>";
+
+            final long hits = cache.getHits();
+            assertNotEquals(execute(xquery, broker, query), execute(xquery, broker, query));
+            assertEquals(hits, cache.getHits());
+        }
+    }
+
+    @Test
+    public void resultIsNotCachedWithoutOption() throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+            assertNotEquals(execute(xquery, broker, UNCACHED_QUERY), execute(xquery, broker, UNCACHED_QUERY));
+        }
+    }
+
+    private static String execute(final XQuery xquery, final DBBroker broker, final String query) throws PermissionDeniedException, XPathException {
+        final Sequence result = xquery.execute(broker, query, null);
+        return result.getStringValue();
+    }
+}
@@ -28,6 +28,7 @@ import org.junit.Test;
 
 import static junit.framework.TestCase.assertFalse;
 import static org.exist.util.Collations.HTML_ASCII_CASE_INSENSITIVE_COLLATION_URI;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class CollationsTest {
@@ -41,4 +42,13 @@ public class CollationsTest {
         assertTrue(Collations.contains(collator,"h&#244;tel", "h&#244;t"));
         assertFalse(Collations.contains(collator, "h&#244;tel", "H&#212;T"));
     }
+
+    @Test
+    public void parameterizedCollatorIsShared() throws XPathException {
+        final String uri = Collations.UCA_COLLATION_URI + "?lang=de;strength=primary";
+        final Collator collator = Collations.getCollationFromURI(uri);
+        assertSame(collator, Collations.getCollationFromURI(uri));
+        assertTrue(collator.isFrozen());
+        assertTrue(Collations.equals(collator, "Strasse", "strasse"));
+    }
 }
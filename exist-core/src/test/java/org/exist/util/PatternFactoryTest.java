@@ -0,0 +1,58 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.util;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class PatternFactoryTest {
+
+    @Test
+    public void cachesPattern() {
+        final PatternFactory factory = PatternFactory.getInstance();
+        assertSame(factory.getPattern("ab+c"), factory.getPattern("ab+c"));
+        assertSame(factory.getPattern("ab+c", Pattern.CASE_INSENSITIVE), factory.getPattern("ab+c", Pattern.CASE_INSENSITIVE));
+        assertSame(factory.getPattern("ab+c"), factory.getPattern("ab+c", 0));
+    }
+
+    @Test
+    public void flagsAreDistinguished() {
+        final PatternFactory factory = PatternFactory.getInstance();
+        assertNotSame(factory.getPattern("x.y"), factory.getPattern("x.y", Pattern.CASE_INSENSITIVE));
+    }
+
+    @Test
+    public void patternAndFlagsDoNotCollide() {
+        final PatternFactory factory = PatternFactory.getInstance();
+        final Pattern unflagged = factory.getPattern("a" + Pattern.CASE_INSENSITIVE);
+        final Pattern flagged = factory.getPattern("a", Pattern.CASE_INSENSITIVE);
+        assertEquals("a" + Pattern.CASE_INSENSITIVE, unflagged.pattern());
+        assertEquals(0, unflagged.flags());
+        assertEquals("a", flagged.pattern());
+        assertEquals(Pattern.CASE_INSENSITIVE, flagged.flags());
+    }
+}
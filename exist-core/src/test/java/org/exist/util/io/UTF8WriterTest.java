@@ -0,0 +1,108 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.util.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that {@link UTF8Writer} produces the same bytes as an {@link OutputStreamWriter}.
+ */
+public class UTF8WriterTest {
+
+    @Test
+    public void ascii() throws IOException {
+        assertSameAsOutputStreamWriter("<hello a=\"b\">world</hello>", 16);
+    }
+
+    @Test
+    public void multiByte() throws IOException {
+        assertSameAsOutputStreamWriter("café über €100 中文 😀 end", 16);
+    }
+
+    @Test
+    public void crossesBufferBoundaries() throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            builder.append("aé€😀");
+        }
+        assertSameAsOutputStreamWriter(builder.toString(), 16);
+        assertSameAsOutputStreamWriter(builder.toString(), 8192);
+    }
+
+    @Test
+    public void unpairedSurrogates() throws IOException {
+        assertSameAsOutputStreamWriter("a\ud83db\ude00c\ud83d", 16);
+    }
+
+    @Test
+    public void newWriter() throws IOException {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        assertTrue(UTF8Writer.newWriter(os, "utf-8") instanceof UTF8Writer);
+        assertTrue(UTF8Writer.newWriter(os, "ISO-8859-1") instanceof OutputStreamWriter);
+    }
+
+    private static void assertSameAsOutputStreamWriter(final String str, final int bufferSize) throws IOException {
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (final Writer writer = new OutputStreamWriter(expected, StandardCharsets.UTF_8)) {
+            write(writer, str);
+        }
+
+        final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try (final Writer writer = new UTF8Writer(actual, bufferSize)) {
+            write(writer, str);
+        }
+
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+
+    private static void write(final Writer writer, final String str) throws IOException {
+        // mix of single chars, strings and char arrays, split at every 7th char
+        final char[] chars = str.toCharArray();
+        int i = 0;
+        int n = 0;
+        while (i < chars.length) {
+            final int len = Math.min(7, chars.length - i);
+            switch (n++ % 3) {
+                case 0:
+                    for (int j = i; j < i + len; j++) {
+                        writer.write(chars[j]);
+                    }
+                    break;
+                case 1:
+                    writer.write(str, i, len);
+                    break;
+                default:
+                    writer.write(chars, i, len);
+            }
+            i += len;
+        }
+    }
+}
@@ -22,6 +22,7 @@
 
 package org.exist.util.serializer.json;
 
+import org.exist.dom.QName;
 import org.exist.storage.serializers.EXistOutputKeys;
 import org.apache.commons.io.input.UnsynchronizedByteArrayInputStream;
 import org.exist.util.serializer.SAXSerializer;
@@ -30,6 +31,7 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
+import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
@@ -168,6 +170,33 @@ public class JSONWriterTest {
         }
     }
 
+    @Test
+    public void writesRepeatedElementsBeforeRootIsClosed() throws IOException, TransformerException {
+        final Properties properties = new Properties();
+        properties.setProperty(OutputKeys.METHOD, "json");
+        properties.setProperty(OutputKeys.INDENT, "no");
+
+        try(final StringWriter writer = new StringWriter()) {
+            final JSONWriter jsonWriter = new JSONWriter(writer);
+            jsonWriter.setOutputProperties(properties);
+            jsonWriter.startDocument();
+            jsonWriter.startElement(new QName("root", XMLConstants.NULL_NS_URI));
+            jsonWriter.attribute(new QName("count", XMLConstants.NULL_NS_URI), "3");
+            for(int i = 1; i <= 3; i++) {
+                jsonWriter.startElement(new QName("item", XMLConstants.NULL_NS_URI));
+                jsonWriter.characters("item " + i);
+                jsonWriter.endElement(new QName("item", XMLConstants.NULL_NS_URI));
+            }
+
+            // only the first item is held, until the second shows that the items are an array
+            assertEquals("{\"count\":\"3\",\"item\":[\"item 1\",\"item 2\",\"item 3\"", writer.toString());
+
+            jsonWriter.endElement(new QName("root", XMLConstants.NULL_NS_URI));
+            jsonWriter.endDocument();
+            assertEquals("{\"count\":\"3\",\"item\":[\"item 1\",\"item 2\",\"item 3\"]}", writer.toString());
+        }
+    }
+
     private Document parseXml(final String xmlStr) throws ParserConfigurationException, IOException, SAXException {
         final DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
         try(final InputStream is = new UnsynchronizedByteArrayInputStream(xmlStr.getBytes(UTF_8))) {
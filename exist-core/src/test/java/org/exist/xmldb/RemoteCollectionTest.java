@@ -125,6 +125,31 @@ public class RemoteCollectionTest extends RemoteDBTest {
         assertFalse(diff.toString(), diff.hasDifferences());
     }
 
+    @Test
+    public void createLargeXmlResourceFromString() throws XMLDBException {
+        final Collection collection = getCollection();
+        final String resourceName = "large-testresource.xml";
+        final Resource resource = collection.createResource(resourceName, XMLResource.RESOURCE_TYPE);
+
+        // larger than a single call to parse, so uploaded in chunks
+        final StringBuilder builder = new StringBuilder("<xml>");
+        for (int i = 0; builder.length() < 1024 * 1024; i++) {
+            builder.append("<item n=\"").append(i).append("\"/>");
+        }
+        final String xml = builder.append("</xml>").toString();
+        resource.setContent(xml);
+        collection.storeResource(resource);
+
+        final Resource retrievedResource = collection.getResource(resourceName);
+        assertNotNull(retrievedResource);
+        final Diff diff = DiffBuilder.compare(Input.fromString(xml).build())
+                .withTest(Input.fromString((String) retrievedResource.getContent()).build())
+                .checkForSimilar()
+                .build();
+
+        assertFalse(diff.toString(), diff.hasDifferences());
+    }
+
     @Test
     public void createBinaryResourceFromString() throws XMLDBException {
         final Collection collection = getCollection();
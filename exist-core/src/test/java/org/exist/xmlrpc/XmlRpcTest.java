@@ -53,6 +53,8 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.*;
 
 import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 import org.junit.After;
 import org.xml.sax.SAXException;
@@ -300,6 +302,73 @@ public class XmlRpcTest {
         }
     }
 
+    @Test
+    public void getDocumentDataChunked_compressed() throws IOException, XmlRpcException, DataFormatException {
+        final XmlRpcClient xmlrpc = getClient();
+        List<Object> params = new ArrayList<>();
+        params.add(TARGET_COLLECTION.toString());
+        Boolean result = (Boolean) xmlrpc.execute("createCollection", params);
+        assertTrue(result);
+
+        params.clear();
+        final String generatedXml = generateXml((int)(MAX_DOWNLOAD_CHUNK_SIZE * 1.5));
+        params.add(generatedXml);
+        params.add(TARGET_RESOURCE.toString());
+        params.add(1);
+        result = (Boolean) xmlrpc.execute("parse", params);
+        assertTrue(result);
+
+        params.clear();
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        parameters.put(OutputKeys.INDENT, "no");
+        parameters.put(EXistOutputKeys.COMPRESS_OUTPUT, "yes");
+        params.add(TARGET_RESOURCE.toString());
+        params.add(parameters);
+        Map table = (Map) xmlrpc.execute("getDocumentData", params);
+
+        final Inflater inflater = new Inflater();
+        try (final UnsynchronizedByteArrayOutputStream os = new UnsynchronizedByteArrayOutputStream()) {
+            final byte[] buf = new byte[4096];
+            long offset = (int) table.get("offset");
+            byte[] data = (byte[]) table.get("data");
+            while (true) {
+                inflater.setInput(data);
+                int len;
+                while ((len = inflater.inflate(buf)) > 0) {
+                    os.write(buf, 0, len);
+                }
+                if (offset <= 0) {
+                    break;
+                }
+                params.clear();
+                params.add(table.get("handle"));
+                params.add(String.valueOf(offset));
+                table = (Map<?, ?>) xmlrpc.execute("getNextExtendedChunk", params);
+                offset = Long.valueOf((String) table.get("offset"));
+                data = (byte[]) table.get("data");
+            }
+            assertTrue(inflater.finished());
+            assertEquals(generatedXml, new String(os.toByteArray(), UTF_8));
+        } finally {
+            inflater.end();
+        }
+
+        params.clear();
+        params.add(TARGET_RESOURCE.toString());
+        params.add(parameters);
+        final byte[] compressed = (byte[]) xmlrpc.execute("getDocument", params);
+        assertEquals(generatedXml, new String(Compressor.uncompress(compressed), UTF_8));
+    }
+
+    @Test
+    public void downloadChunkSize() {
+        assertEquals(MAX_DOWNLOAD_CHUNK_SIZE, RpcConnection.getChunkSize(0));
+        assertEquals(MAX_DOWNLOAD_CHUNK_SIZE, RpcConnection.getChunkSize(MAX_DOWNLOAD_CHUNK_SIZE * 2L));
+        assertEquals(MAX_DOWNLOAD_CHUNK_SIZE * 2, RpcConnection.getChunkSize(MAX_DOWNLOAD_CHUNK_SIZE * 128L));
+        assertEquals(RpcConnection.MAX_ADAPTIVE_DOWNLOAD_CHUNK_SIZE, RpcConnection.getChunkSize(Long.MAX_VALUE));
+    }
+
     @Test
     public void uploadCompressedAndDownload() throws IOException, XmlRpcException {
         final XmlRpcClient xmlrpc = getClient();
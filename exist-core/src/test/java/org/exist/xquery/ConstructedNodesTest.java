@@ -187,4 +187,23 @@ public class ConstructedNodesTest {
         // Restore indent property to ensure test atomicity
 		xpathQueryService.setProperty(OutputKeys.INDENT, oki);
 	}
+
+	/**
+	 * Converting the same constructed nodes to a node set more than once
+	 * in a query should store them in the temporary collection only once
+	 */
+    @Test
+	public void constructedNodesStoredOnce() throws XMLDBException {
+		final String xquery =
+				"declare function local:stored() { if (xmldb:collection-available('/db/system/temp')) then count(xmldb:get-child-resources('/db/system/temp')) else 0 };\n" +
+				"let $x := <categories><category uid=\"1\">Fruit</category></categories>\n" +
+				"let $before := local:stored()\n" +
+				"let $first := util:index-keys($x/category, '', function($key, $count) { $key }, 10)\n" +
+				"let $second := util:index-keys($x/category, '', function($key, $count) { $key }, 10)\n" +
+				"return local:stored() - $before";
+
+		final ResourceSet result = existEmbeddedServer.executeQuery(xquery);
+		assertEquals(1, result.getSize());
+		assertEquals("1", result.getResource(0).getContent());
+	}
 }
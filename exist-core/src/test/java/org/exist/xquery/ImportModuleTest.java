@@ -38,6 +38,7 @@ import org.exist.EXistException;
 import org.exist.collections.Collection;
 import org.exist.collections.triggers.TriggerException;
 import org.exist.security.PermissionDeniedException;
+import org.exist.source.DBSource;
 import org.exist.source.Source;
 import org.exist.source.StringSource;
 import org.exist.storage.BrokerPool;
@@ -1408,6 +1409,60 @@ public class ImportModuleTest {
         }
     }
 
+    /**
+     * Checks that the parsed library module is shared between queries which import it,
+     * and that it is parsed again once the module has been modified.
+     */
+    @Test
+    public void sharedModule() throws EXistException, IOException, PermissionDeniedException, LockException, TriggerException, XPathException {
+        final String module =
+                "xquery version \"1.0\";\n" +
+                "module namespace impl1 = \"http://example.com/impl1\";\n" +
+                "declare variable $impl1:v := \"%s\";\n" +
+                "declare function impl1:f1($a as xs:string) as xs:string {\n" +
+                "    concat($impl1:v, $a)\n" +
+                "};\n";
+
+        final String query =
+                "import module namespace impl1 = \"http://example.com/impl1\"" +
+                "        at \"xmldb:exist:///db/impl1.xqm\";\n" +
+                "impl1:f1(\"%d\")\n";
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+
+            storeModules(broker, transaction, "/db", Tuple("impl1.xqm", String.format(module, "a")));
+
+            final Tuple2<Module, String> first = withCompiledQuery(broker, new StringSource(String.format(query, 1)), compiledXQuery ->
+                    Tuple(compiledXQuery.getContext().getModules("http://example.com/impl1")[0], executeQuery(broker, compiledXQuery).getStringValue()));
+            assertEquals("a1", first._2);
+
+            // the parsed module is in the pool, whilst the module itself is private to the context
+            final Source moduleSource = ((ExternalModule) first._1).getSource();
+            assertNotNull(pool.getXQueryPool().borrowModule(broker, moduleSource));
+
+            final Tuple2<Module, String> second = withCompiledQuery(broker, new StringSource(String.format(query, 2)), compiledXQuery ->
+                    Tuple(compiledXQuery.getContext().getModules("http://example.com/impl1")[0], executeQuery(broker, compiledXQuery).getStringValue()));
+            assertEquals("a2", second._2);
+            assertNotSame(first._1, second._1);
+
+            // modify the module, once it will be stored with a later timestamp
+            final long lastModified = ((DBSource) moduleSource).getLastModified();
+            while (System.currentTimeMillis() <= lastModified) {
+                Thread.yield();
+            }
+            storeModules(broker, transaction, "/db", Tuple("impl1.xqm", String.format(module, "b")));
+            assertNull(pool.getXQueryPool().borrowModule(broker, moduleSource));
+
+            final String third = withCompiledQuery(broker, new StringSource(String.format(query, 3)), compiledXQuery ->
+                    executeQuery(broker, compiledXQuery).getStringValue());
+            assertEquals("b3", third);
+
+            transaction.commit();
+        }
+    }
+
     private void storeModules(final DBBroker broker, final Txn transaction, final String collectionUri, final Tuple2<String, String>... modules) throws PermissionDeniedException, IOException, TriggerException, LockException, EXistException {
         // store modules
         try (final Collection collection = broker.openCollection(XmldbURI.create(collectionUri), Lock.LockMode.WRITE_LOCK)) {
@@ -0,0 +1,82 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.regex;
+
+import net.sf.saxon.Configuration;
+import net.sf.saxon.regex.RegularExpression;
+import net.sf.saxon.trans.XPathException;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.xquery.CompiledXQuery;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.XQueryContext;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RegularExpressionFactoryTest {
+
+    private static final Configuration SAXON_CONFIG = new Configuration();
+
+    @Test
+    public void cachesCompiledRegularExpression() throws XPathException {
+        final RegularExpressionFactory factory = RegularExpressionFactory.getInstance();
+        final RegularExpression first = factory.getRegularExpression(SAXON_CONFIG, "ab+c", "i", new ArrayList<>());
+        final RegularExpression second = factory.getRegularExpression(SAXON_CONFIG, "ab+c", "i", new ArrayList<>());
+        assertSame(first, second);
+    }
+
+    @Test
+    public void flagsAreDistinguished() throws XPathException {
+        final RegularExpressionFactory factory = RegularExpressionFactory.getInstance();
+        final RegularExpression plain = factory.getRegularExpression(SAXON_CONFIG, "a.c", "", new ArrayList<>());
+        final RegularExpression literal = factory.getRegularExpression(SAXON_CONFIG, "a.c", "q", new ArrayList<>());
+        assertNotSame(plain, literal);
+    }
+
+    @Test(expected = XPathException.class)
+    public void invalidRegularExpression() throws XPathException {
+        RegularExpressionFactory.getInstance().getRegularExpression(SAXON_CONFIG, "(", "", new ArrayList<>());
+    }
+
+    @Test
+    public void noSaxonConfigurationWithoutDatabase() throws DatabaseConfigurationException {
+        final XQueryContext context = new XQueryContext(new org.exist.util.Configuration());
+        assertNull(RegularExpressionFactory.getSaxonConfiguration(context));
+    }
+
+    /**
+     * Literal patterns are compiled during static analysis,
+     * which must also work when there is no database.
+     */
+    @Test
+    public void compileLiteralPatternsWithoutDatabase() throws DatabaseConfigurationException, org.exist.xquery.XPathException, org.exist.security.PermissionDeniedException {
+        final XQueryContext context = new XQueryContext(new org.exist.util.Configuration());
+        final CompiledXQuery compiled = new XQuery().compile(context,
+                "fn:matches('abc', 'b'), fn:replace('abc', 'b', 'x', 'i'), fn:tokenize('a,b', ','), fn:analyze-string('abc', 'b'), fn:replace('a', '(', 'b')");
+        assertNotNull(compiled);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.update;
+
+import org.junit.Test;
+import org.xmldb.api.base.ResourceSet;
+import org.xmldb.api.base.XMLDBException;
+import org.xmldb.api.modules.XQueryService;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the XQuery update extensions within an exist:batch-updates pragma.
+ */
+public class BatchUpdatesTest extends AbstractTestUpdate {
+
+    private static final String DOC = "<test><a n=\"1\">one</a><b>two</b><c/></test>";
+
+    @Test
+    public void insertInto() throws XMLDBException {
+        final String docName = "insertInto.xml";
+        final XQueryService service = storeXMLStringAndGetQueryService(docName, "<test/>");
+
+        final String update =
+                "(# exist:batch-updates #) {\n" +
+                "    for $i in 1 to 100\n" +
+                "    return\n" +
+                "        update insert <item n=\"{$i}\"/> into /test\n" +
+                "}";
+        queryResource(service, docName, update, 0);
+
+        queryResource(service, docName, "/test/item", 100);
+        final ResourceSet result = queryResource(service, docName, "string-join(/test/item/@n, ',')", 1);
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 1; i <= 100; i++) {
+            if (i > 1) {
+                expected.append(',');
+            }
+            expected.append(i);
+        }
+        assertEquals(expected.toString(), result.getResource(0).getContent());
+    }
+
+    @Test
+    public void insertOrderMatchesImmediateUpdates() throws XMLDBException {
+        final String updates =
+                "    update insert <x1/> following $doc/test/a,\n" +
+                "    update insert <x2/> following $doc/test/a,\n" +
+                "    update insert <y1/> preceding $doc/test/b,\n" +
+                "    update insert <y2/> preceding $doc/test/b,\n" +
+                "    update insert <z1/> into $doc/test/c,\n" +
+                "    update insert <z2/> into $doc/test/c\n";
+
+        final XQueryService service = storeXMLStringAndGetQueryService("immediate.xml", DOC);
+        storeXMLStringAndGetQueryService("batched.xml", DOC);
+
+        queryResource(service, "immediate.xml", "let $doc := doc('/db/test/immediate.xml') return (\n" + updates + ")", 0);
+        queryResource(service, "batched.xml", "let $doc := doc('/db/test/batched.xml') return (# exist:batch-updates #) {\n" + updates + "}", 0);
+
+        final String immediate = queryResource(service, "immediate.xml", "/test", 1).getResource(0).getContent().toString();
+        final String batched = queryResource(service, "batched.xml", "/test", 1).getResource(0).getContent().toString();
+        assertEquals(immediate, batched);
+    }
+
+    @Test
+    public void modificationsAreNotVisibleUntilApplied() throws XMLDBException {
+        final String docName = "notVisible.xml";
+        final XQueryService service = storeXMLStringAndGetQueryService(docName, DOC);
+
+        final String update =
+                "(# exist:batch-updates #) {\n" +
+                "    update insert <d/> into /test,\n" +
+                "    count(/test/d)\n" +
+                "}, count(/test/d)";
+        final ResourceSet result = queryResource(service, docName, update, 2);
+        assertEquals("0", result.getResource(0).getContent());
+        assertEquals("1", result.getResource(1).getContent());
+    }
+
+    @Test
+    public void mixedModifications() throws XMLDBException {
+        final String docName = "mixed.xml";
+        final XQueryService service = storeXMLStringAndGetQueryService(docName, DOC);
+
+        final String update =
+                "(# exist:batch-updates #) {\n" +
+                "    update value /test/a with 'uno',\n" +
+                "    update value /test/a/@n with '2',\n" +
+                "    update rename /test/b as 'bb',\n" +
+                "    update replace /test/c with <cc/>,\n" +
+                "    update insert <d/> into /test\n" +
+                "}";
+        queryResource(service, docName, update, 0);
+
+        final ResourceSet result = queryResource(service, docName, "serialize(/test, map { 'indent': false() })", 1);
+        assertEquals("<test><a n=\"2\">uno</a><bb>two</bb><cc/><d/></test>", result.getResource(0).getContent());
+    }
+
+    @Test
+    public void modificationOfDeletedNodeIsSkipped() throws XMLDBException {
+        final String docName = "deleted.xml";
+        final XQueryService service = storeXMLStringAndGetQueryService(docName, DOC);
+
+        final String update =
+                "(# exist:batch-updates #) {\n" +
+                "    update delete /test/c,\n" +
+                "    update insert <d/> into /test/c,\n" +
+                "    update delete /test/a\n" +
+                "}";
+        queryResource(service, docName, update, 0);
+
+        queryResource(service, docName, "/test/*", 1);
+        queryResource(service, docName, "/test/b", 1);
+        queryResource(service, docName, "//d", 0);
+    }
+}
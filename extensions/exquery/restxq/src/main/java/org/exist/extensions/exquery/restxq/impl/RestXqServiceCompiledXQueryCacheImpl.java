@@ -27,12 +27,16 @@
 package org.exist.extensions.exquery.restxq.impl;
 
 import java.net.URI;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Queue;
+import java.util.Set;
 import java.util.function.Function;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.exist.extensions.exquery.restxq.RestXqServiceCompiledXQueryCache;
 import org.exist.storage.DBBroker;
 import org.exist.xquery.CompiledXQuery;
@@ -47,6 +51,8 @@ import org.jctools.queues.atomic.MpmcAtomicArrayQueue;
  * @author <a href="mailto:adam@evolvedbinary.com">Adam Retter</a>
  */
 public class RestXqServiceCompiledXQueryCacheImpl implements RestXqServiceCompiledXQueryCache {
+
+    private static final Logger LOG = LogManager.getLogger(RestXqServiceCompiledXQueryCacheImpl.class);
     
     private static final RestXqServiceCompiledXQueryCacheImpl INSTANCE = new RestXqServiceCompiledXQueryCacheImpl();
 
@@ -103,6 +109,35 @@ public class RestXqServiceCompiledXQueryCacheImpl implements RestXqServiceCompil
         queue.offer(xquery);
     }
     
+    /**
+     * Compiles the XQuery of each service, so that the first request
+     * to each service does not have to wait for its XQuery to be compiled.
+     *
+     * @param broker The database broker.
+     * @param services The services to compile the XQuery of.
+     *
+     * @return The number of XQueries which were compiled.
+     */
+    public int warmUp(final DBBroker broker, final Iterable<RestXqService> services) {
+        final Set<URI> xqueryLocations = new HashSet<>();
+        int compiled = 0;
+        for (final RestXqService service : services) {
+            final URI xqueryLocation = service.getResourceFunction().getXQueryLocation();
+            if (!xqueryLocations.add(xqueryLocation)) {
+                continue;
+            }
+
+            try {
+                final CompiledXQuery xquery = XQueryCompiler.compile(broker, xqueryLocation);
+                returnCompiledQuery(xqueryLocation, xquery);
+                compiled++;
+            } catch (final RestXqServiceException e) {
+                LOG.warn("Unable to warm-up RESTXQ XQuery: {}: {}", xqueryLocation, e.getMessage());
+            }
+        }
+        return compiled;
+    }
+    
     @Override
     public void removeService(final RestXqService service) {
         final URI xqueryLocation = service.getResourceFunction().getXQueryLocation();
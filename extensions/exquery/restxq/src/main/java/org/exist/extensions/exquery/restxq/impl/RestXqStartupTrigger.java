@@ -28,21 +28,98 @@ package org.exist.extensions.exquery.restxq.impl;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.EXistException;
+import org.exist.management.AgentFactory;
+import org.exist.scheduler.UserJavaJob;
+import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
 import org.exist.storage.StartupTrigger;
 import org.exist.storage.txn.Txn;
+import org.exist.util.Configuration;
+import org.exist.util.DatabaseConfigurationException;
+import org.exquery.restxq.RestXqServiceRegistry;
 
 /**
  * Loads the RESTXQ Registry from disk during database startup
  * where the user account will be SYSTEM and has read access to
  * all queries
  *
+ * If the parameter {@code warm-up} is set to {@code yes}, the XQuery
+ * of each registered service is also compiled and placed in the
+ * {@link RestXqServiceCompiledXQueryCacheImpl}. This is done by a
+ * {@link WarmUpJob} once the database has started, so that it does
+ * not delay the startup. The time it took is exposed through the
+ * {@link RestXqWarmUpMXBean}.
+ *
  * @author <a href="mailto:adam.retter@googlemail.com">Adam Retter</a>
  */
 public class RestXqStartupTrigger implements StartupTrigger {
+
+    public static final String WARM_UP_PARAM = "warm-up";
+
+    private static final Logger LOG = LogManager.getLogger(RestXqStartupTrigger.class);
     
     @Override
     public void execute(final DBBroker broker, final Txn transaction, final Map<String, List<?>> params) {
         RestXqServiceRegistryManager.getRegistry(broker.getBrokerPool());
+
+        if (params != null) {
+            final List<?> warmUp = params.get(WARM_UP_PARAM);
+            if (warmUp != null && warmUp.size() == 1 && Configuration.parseBoolean(warmUp.get(0).toString(), false)) {
+                final RestXqWarmUp warmUpBean = new RestXqWarmUp(broker.getBrokerPool());
+                try {
+                    AgentFactory.getInstance().addMBean(warmUpBean);
+                } catch (final DatabaseConfigurationException e) {
+                    LOG.warn("Exception while registering JMX RestXqWarmUp MBean.", e);
+                }
+
+                // the scheduler only starts running jobs once the database has started
+                if (!broker.getBrokerPool().getScheduler().createPeriodicJob(0, new WarmUpJob(warmUpBean), 0, new Properties(), 0)) {
+                    LOG.warn("Unable to schedule the warm-up of the RESTXQ XQueries");
+                }
+            }
+        }
+    }
+
+    /**
+     * Compiles the XQuery of each registered service,
+     * with its own broker.
+     */
+    public static class WarmUpJob extends UserJavaJob {
+
+        private final RestXqWarmUp warmUpBean;
+        private String name = "restxq-warm-up";
+
+        public WarmUpJob(final RestXqWarmUp warmUpBean) {
+            this.warmUpBean = warmUpBean;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void setName(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void execute(final BrokerPool brokerPool, final Map<String, ?> params) {
+            final RestXqServiceRegistry registry = RestXqServiceRegistryManager.getRegistry(brokerPool);
+            try (final DBBroker broker = brokerPool.get(Optional.of(brokerPool.getSecurityManager().getSystemSubject()))) {
+                final long start = System.currentTimeMillis();
+                final int compiled = RestXqServiceCompiledXQueryCacheImpl.getInstance().warmUp(broker, registry);
+                final long time = System.currentTimeMillis() - start;
+                warmUpBean.warmedUp(time, compiled);
+                LOG.info("Warmed up {} RESTXQ XQueries in {} ms", compiled, time);
+            } catch (final EXistException e) {
+                LOG.error("Unable to warm-up the RESTXQ XQueries: {}", e.getMessage(), e);
+            }
+        }
     }
 }
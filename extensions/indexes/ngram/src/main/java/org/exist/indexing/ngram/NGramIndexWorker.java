@@ -408,6 +408,54 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         return result;
     }
 
+    /**
+     * Get the total length in bytes of the lists of occurrences of an ngram
+     * in the collections of the given documents, without reading the lists.
+     *
+     * The length is proportional to the cost of {@link #search(int, DocumentSet, List, String, String, XQueryContext, NodeSet, int)}
+     * for the ngram, and so may be used to search for the rarest ngrams of a query first.
+     *
+     * @param docs the documents
+     * @param qnames the qnames of the indexes to search, or null or empty to search all of the defined indexes
+     * @param query the ngram
+     * @param context the xquery context
+     *
+     * @return the length of the lists of occurrences in bytes
+     */
+    public long getOccurrencesLength(final DocumentSet docs, final List<QName> qnames, final String query,
+            final XQueryContext context) {
+        final List<QName> searchQnames;
+        if (qnames == null || qnames.isEmpty()) {
+            searchQnames = getDefinedIndexes(context.getBroker(), docs);
+        } else {
+            searchQnames = qnames;
+        }
+
+        final long[] length = { 0 };
+        for (final Iterator<Collection> iter = docs.getCollectionIterator(); iter.hasNext(); ) {
+            final int collectionId = iter.next().getId();
+            for (final QName qname : searchQnames) {
+                final NGramQNameKey key = new NGramQNameKey(collectionId, qname, index.getBrokerPool().getSymbols(), query);
+                try (final ManagedLock<ReentrantLock> dbLock = lockManager.acquireBtreeReadLock(index.db.getLockName())) {
+                    final int op = query.codePointCount(0, query.length()) < getN() ? IndexQuery.TRUNC_RIGHT : IndexQuery.EQ;
+                    index.db.query(new IndexQuery(op, key), (value, pointer) -> {
+                        try {
+                            length[0] += index.db.getValueLength(pointer);
+                        } catch (final IOException e) {
+                            LOG.error(e.getMessage(), e);
+                        }
+                        return true;
+                    });
+                } catch (final LockException e) {
+                    LOG.warn("Failed to acquire lock for '{}'", FileUtils.fileName(index.db.getFile()), e);
+                } catch (final IOException | BTreeException | TerminatedException e) {
+                    LOG.error("{} in '{}'", e.getMessage(), FileUtils.fileName(index.db.getFile()), e);
+                }
+            }
+        }
+        return length[0];
+    }
+
     /**
      * Check index configurations for all collection in the given DocumentSet and return
      * a list of QNames, which have indexes defined on them.
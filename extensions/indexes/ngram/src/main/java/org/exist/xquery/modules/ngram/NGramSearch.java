@@ -490,19 +490,16 @@ public class NGramSearch extends Function implements Optimizable {
         if (ngrams.length == 0)
             return new EmptyNodeSet();
 
-        String firstNgramm = ngrams[0];
-        LOG.trace("First NGRAM: {}", firstNgramm);
-        NodeSet result = index.search(getExpressionId(), docs, qnames, firstNgramm, firstNgramm, context, nodeSet, axis);
-
+        // if an ngram is shorter than n, fill it up with characters from the
+        // previous ngram. too short ngrams lead to a considerable performance loss.
+        final String[] filledNgrams = new String[ngrams.length];
+        filledNgrams[0] = ngrams[0];
         for (int i = 1; i < ngrams.length; i++) {
             String ngram = ngrams[i];
             int len = ngram.codePointCount(0, ngram.length());
             int fillSize = index.getN() - len;
             String filledNgram = ngram;
 
-            // if this ngram is shorter than n,
-            // fill it up with characters from the previous ngram. too short
-            // ngrams lead to a considerable performance loss.
             if (fillSize > 0) {
                 String filler = ngrams[i - 1];
                 StringBuilder buf = new StringBuilder();
@@ -516,12 +513,39 @@ public class NGramSearch extends Function implements Optimizable {
                 filledNgram = buf.toString();
                 LOG.debug("Filled: {}", filledNgram);
             }
+            filledNgrams[i] = filledNgram;
+        }
 
-            NodeSet nodes = index.search(getExpressionId(), docs, qnames, filledNgram, ngram, context, nodeSet, axis);
+        // search for the rarest ngrams first, and for each of the other ngrams
+        // only in the documents which contain all of the rarer ngrams
+        final Integer[] searchOrder = new Integer[ngrams.length];
+        for (int i = 0; i < ngrams.length; i++) {
+            searchOrder[i] = i;
+        }
+        if (ngrams.length > 1) {
+            final long[] lengths = new long[ngrams.length];
+            for (int i = 0; i < ngrams.length; i++) {
+                lengths[i] = index.getOccurrencesLength(docs, qnames, filledNgrams[i], context);
+            }
+            Arrays.sort(searchOrder, Comparator.comparingLong(i -> lengths[i]));
+        }
 
+        final NodeSet[] nodeSets = new NodeSet[ngrams.length];
+        DocumentSet searchDocs = docs;
+        for (final int i : searchOrder) {
+            LOG.trace("Searching NGRAM: {}", filledNgrams[i]);
+            nodeSets[i] = index.search(getExpressionId(), searchDocs, qnames, filledNgrams[i], ngrams[i], context, nodeSet, axis);
+            if (nodeSets[i].isEmpty()) {
+                return new EmptyNodeSet();
+            }
+            searchDocs = nodeSets[i].getDocumentSet();
+        }
+
+        NodeSet result = nodeSets[0];
+        for (int i = 1; i < ngrams.length; i++) {
             final NodeSet nodesContainingFirstINgrams = result;
 
-            result = NodeSets.transformNodes(nodes, proxy ->
+            result = NodeSets.transformNodes(nodeSets[i], proxy ->
                     Optional.ofNullable(nodesContainingFirstINgrams.get(proxy))
                             .map(before -> getContinuousMatches(before, proxy))
                             .orElse(null));
@@ -538,6 +538,41 @@ public class CustomIndexTest {
         }
     }
 
+    /**
+     * Queries with several ngrams, which are searched for in order of their number
+     * of occurrences, rather than in the order in which they appear in the query.
+     */
+    @Test
+    public void queryNGrams() throws PermissionDeniedException, XPathException, EXistException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try(final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            XQuery xquery = pool.getXQueryService();
+            assertNotNull(xquery);
+            Sequence seq = xquery.execute(broker, "//item[ngram:contains(., 'cabinet')]/@id/string()", null);
+            assertEquals(1, seq.getItemCount());
+            assertEquals("3", seq.itemAt(0).getStringValue());
+
+            seq = xquery.execute(broker, "//item[ngram:contains(., 'table')]/@id/string()", null);
+            assertEquals(1, seq.getItemCount());
+            assertEquals("2", seq.itemAt(0).getStringValue());
+
+            // the ngrams occur in different items
+            seq = xquery.execute(broker, "//item[ngram:contains(., 'chable')]", null);
+            assertEquals(0, seq.getItemCount());
+
+            // the ngrams occur in different documents
+            seq = xquery.execute(broker, "//*[ngram:contains(., 'chair01234')]", null);
+            assertEquals(0, seq.getItemCount());
+
+            // the ngrams occur in the same item, but not continuously
+            seq = xquery.execute(broker, "//item[ngram:contains(., 'cabnet')]", null);
+            assertEquals(0, seq.getItemCount());
+
+            seq = xquery.execute(broker, "//section[ngram:contains(para, '56789')]", null);
+            assertEquals(1, seq.getItemCount());
+        }
+    }
+
     @Test
     public void indexKeys() throws SAXException, PermissionDeniedException, XPathException, EXistException {
         final BrokerPool pool = existEmbeddedServer.getBrokerPool();
@@ -39,6 +39,9 @@ import org.exist.util.LockException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -51,6 +54,10 @@ import java.util.concurrent.locks.ReentrantLock;
  *
  * Every sort index has an id by which it is identified and distinguished from other indexes
  * on the same node set.
+ *
+ * Sort indexes may also be declared in the collection configuration, see {@link SortIndexConfig}.
+ * Those are maintained automatically whenever documents are stored or updated and are used
+ * transparently by "order by" expressions of the form <code>$x/@attr</code>.
  */
 public class SortIndex extends AbstractIndex implements RawBackupSupport {
 
@@ -61,6 +68,17 @@ public class SortIndex extends AbstractIndex implements RawBackupSupport {
     protected static final Logger LOG = LogManager.getLogger(SortIndex.class);
     protected BTreeStore btree;
 
+    /**
+     * Incremented whenever automatically maintained index entries change.
+     * Workers use it to invalidate the keys they cached.
+     */
+    final AtomicLong modCount = new AtomicLong();
+
+    /**
+     * Ids of the indexes declared in the collection configuration, keyed by name.
+     */
+    final Map<String, Short> autoIds = new ConcurrentHashMap<>();
+
     @Override
     public void open() throws DatabaseConfigurationException {
         final Path file = getDataDir().resolve(FILE_NAME);
@@ -103,7 +121,7 @@ public class SortIndex extends AbstractIndex implements RawBackupSupport {
 
     @Override
     public IndexWorker getWorker(final DBBroker broker) {
-        return new SortIndexWorker(this);
+        return new SortIndexWorker(this, broker);
     }
 
     @Override
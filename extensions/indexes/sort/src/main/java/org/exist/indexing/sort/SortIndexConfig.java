@@ -0,0 +1,84 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.sort;
+
+import org.exist.dom.QName;
+import org.exist.storage.ElementValue;
+import org.exist.util.DatabaseConfigurationException;
+
+import java.util.Map;
+
+/**
+ * Configuration of a sort index declared in collection.xconf, e.g.
+ * <code>&lt;sort qname="item" key="@date"/&gt;</code>. For every element
+ * with the given name, the index keeps the value of the key attribute, so
+ * "order by $item/@date" does not need to read the attribute from the DOM.
+ */
+public class SortIndexConfig {
+
+    private final QName qname;
+    private final QName key;
+
+    public SortIndexConfig(final Map<String, String> namespaces, final String qname, final String key)
+            throws DatabaseConfigurationException {
+        if (!key.startsWith("@")) {
+            throw new DatabaseConfigurationException("Sort index configuration: key must be an attribute name " +
+                    "starting with '@', found: " + key);
+        }
+        this.qname = parseQName(namespaces, qname, ElementValue.ELEMENT);
+        this.key = parseQName(namespaces, key.substring(1), ElementValue.ATTRIBUTE);
+    }
+
+    private static QName parseQName(final Map<String, String> namespaces, final String name, final byte type)
+            throws DatabaseConfigurationException {
+        try {
+            final String prefix = QName.extractPrefix(name);
+            final String localName = QName.extractLocalName(name);
+            String namespaceURI = "";
+            if (prefix != null) {
+                namespaceURI = namespaces.get(prefix);
+                if (namespaceURI == null) {
+                    throw new DatabaseConfigurationException("Sort index configuration: no namespace defined for prefix: " +
+                            prefix + " in index definition");
+                }
+            }
+            return new QName(localName, namespaceURI, prefix, type);
+        } catch (final QName.IllegalQNameException e) {
+            throw new DatabaseConfigurationException("Sort index configuration: " + e.getMessage(), e);
+        }
+    }
+
+    public QName getQName() {
+        return qname;
+    }
+
+    public QName getKey() {
+        return key;
+    }
+
+    /**
+     * @return the name under which the index entries are registered
+     */
+    public String getName() {
+        return "#auto:" + qname.toURIQualifiedName() + "/@" + key.toURIQualifiedName();
+    }
+}
@@ -24,12 +24,17 @@ package org.exist.indexing.sort;
 import org.exist.EXistException;
 import org.exist.collections.Collection;
 import org.exist.dom.persistent.*;
+import org.exist.dom.QName;
+import org.exist.indexing.AbstractStreamListener;
 import org.exist.indexing.IndexController;
 import org.exist.indexing.IndexWorker;
 import org.exist.indexing.MatchListener;
+import org.exist.indexing.SortKeyIndex;
 import org.exist.indexing.StreamListener;
 import org.exist.indexing.StreamListener.ReindexMode;
+import org.exist.numbering.NodeId;
 import org.exist.storage.DBBroker;
+import org.exist.storage.IndexSpec;
 import org.exist.storage.NodePath;
 import org.exist.storage.btree.BTreeCallback;
 import org.exist.storage.btree.BTreeException;
@@ -37,32 +42,73 @@ import org.exist.storage.btree.IndexQuery;
 import org.exist.storage.btree.Value;
 import org.exist.storage.lock.LockManager;
 import org.exist.storage.lock.ManagedLock;
+import org.exist.storage.txn.Txn;
 import org.exist.util.*;
 import org.exist.xquery.QueryRewriter;
 import org.exist.xquery.TerminatedException;
+import org.exist.xquery.XPathException;
 import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.AtomicValue;
+import org.exist.xquery.value.UntypedAtomicValue;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.locks.ReentrantLock;
 
-public class SortIndexWorker implements IndexWorker {
+public class SortIndexWorker implements SortKeyIndex {
+
+    public static final String INDEX_ELEMENT = "sort";
+    public static final String QNAME_ATTR = "qname";
+    public static final String KEY_ATTR = "key";
+
+    /**
+     * Entries of the indexes declared in the collection configuration are stored
+     * under this prefix as <code>[2][id][docId][units][nodeId][flag][value]</code>.
+     */
+    private static final byte AUTO_ENTRY = 2;
+    private static final byte NO_VALUE = 0;
+    private static final byte HAS_VALUE = 1;
+
+    /**
+     * Longer attribute values are not indexed, the sort key will then be read from the document.
+     */
+    private static final int MAX_VALUE_LENGTH = 512;
+
+    private static final int MAX_CACHED_DOCUMENTS = 16;
 
     private ReindexMode mode = ReindexMode.STORE;
     private DocumentImpl document = null;
     private SortIndex index;
+    private final DBBroker broker;
     private final LockManager lockManager;
 
-    public SortIndexWorker(final SortIndex index) {
+    private Map<QName, List<SortIndexConfig>> config = null;
+    private final List<PendingKey> pending = new ArrayList<>();
+    private final SortStreamListener listener = new SortStreamListener();
+
+    private final Map<Long, DocumentKeys> cachedKeys = new LinkedHashMap<Long, DocumentKeys>(MAX_CACHED_DOCUMENTS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Long, DocumentKeys> eldest) {
+            return size() > MAX_CACHED_DOCUMENTS;
+        }
+    };
+
+    public SortIndexWorker(final SortIndex index, final DBBroker broker) {
         this.index = index;
+        this.broker = broker;
         this.lockManager = index.getBrokerPool().getLockManager();
     }
 
     public void setDocument(final DocumentImpl doc, final ReindexMode mode) {
-        this.document = doc;
+        setDocument(doc);
         this.mode = mode;
     }
 
@@ -82,10 +128,145 @@ public class SortIndexWorker implements IndexWorker {
     @Override
     public void flush() {
         switch (mode) {
+            case STORE:
+                saveKeys();
+                break;
+            case REMOVE_SOME_NODES:
+                removeKeys();
+                break;
             case REMOVE_ALL_NODES:
                 remove(document);
                 break;
         }
+        pending.clear();
+    }
+
+    private void saveKeys() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
+            for (final PendingKey key : pending) {
+                final short id = getAutoId(key.config, true);
+                // replace an existing entry for the element
+                final byte[] prefix = computeKey(id, document.getDocId(), key.nodeId);
+                index.btree.remove(new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value(prefix)), null);
+                if (key.value == null || UTF8.encoded(key.value) <= MAX_VALUE_LENGTH) {
+                    index.btree.addValue(new Value(computeKey(prefix, key.value)), 0);
+                }
+            }
+        } catch (final EXistException | LockException | BTreeException | TerminatedException | IOException e) {
+            SortIndex.LOG.warn("Exception caught while writing sort index: {}", e.getMessage(), e);
+        } finally {
+            keysChanged();
+        }
+    }
+
+    private void removeKeys() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
+            for (final PendingKey key : pending) {
+                final short id = getAutoId(key.config, false);
+                if (id < 0) {
+                    continue;
+                }
+                final byte[] prefix = computeKey(id, document.getDocId(), key.nodeId);
+                index.btree.remove(new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value(prefix)), null);
+            }
+        } catch (final EXistException | LockException | BTreeException | TerminatedException | IOException e) {
+            SortIndex.LOG.warn("Exception caught while removing from sort index: {}", e.getMessage(), e);
+        } finally {
+            keysChanged();
+        }
+    }
+
+    private void keysChanged() {
+        index.modCount.incrementAndGet();
+        cachedKeys.clear();
+    }
+
+    @Override
+    public @Nullable AtomicValue getSortKey(final NodeProxy element, final QName attribute) throws XPathException {
+        final DocumentImpl doc = element.getOwnerDocument();
+        final IndexSpec indexConf = doc.getCollection().getIndexConfiguration(broker);
+        if (indexConf == null) {
+            return null;
+        }
+        final Map<QName, List<SortIndexConfig>> docConfig = (Map<QName, List<SortIndexConfig>>) indexConf.getCustomIndexSpec(SortIndex.ID);
+        if (docConfig == null) {
+            return null;
+        }
+        try {
+            for (final List<SortIndexConfig> configs : docConfig.values()) {
+                for (final SortIndexConfig config : configs) {
+                    if (!config.getKey().equals(attribute)) {
+                        continue;
+                    }
+                    final short id = getAutoId(config, false);
+                    if (id < 0) {
+                        continue;
+                    }
+                    final AtomicValue value = getKeys(id, doc).get(element.getNodeId());
+                    if (value != null) {
+                        return value;
+                    }
+                }
+            }
+        } catch (final EXistException | LockException e) {
+            throw new XPathException("Exception caught while reading sort index: " + e.getMessage(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the keys of all indexed elements in the document, reading them in one
+     * go from the index and caching them until the index is modified.
+     */
+    private Map<NodeId, AtomicValue> getKeys(final short id, final DocumentImpl doc) throws EXistException, LockException {
+        final long cacheKey = ((long) id << 32) | (doc.getDocId() & 0xFFFFFFFFL);
+        final long modCount = index.modCount.get();
+        DocumentKeys keys = cachedKeys.get(cacheKey);
+        if (keys != null && keys.modCount == modCount) {
+            return keys.keys;
+        }
+        keys = new DocumentKeys(modCount);
+        final Map<NodeId, AtomicValue> values = keys.keys;
+        final byte[] prefix = computeKey(id, doc.getDocId());
+        prefix[0] = AUTO_ENTRY;
+        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeReadLock(index.btree.getLockName())) {
+            index.btree.query(new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value(prefix)), (value, pointer) -> {
+                final byte[] data = value.getData();
+                final int units = ByteConversion.byteToShortH(data, value.start() + 7);
+                final NodeId nodeId = index.getBrokerPool().getNodeFactory().createFromData(units, data, value.start() + 9);
+                final int offset = value.start() + 9 + nodeId.size();
+                if (data[offset] == HAS_VALUE) {
+                    final int length = value.getLength() - (offset + 1 - value.start());
+                    values.put(nodeId, new UntypedAtomicValue(UTF8.decode(data, offset + 1, length).toString()));
+                } else {
+                    values.put(nodeId, AtomicValue.EMPTY_VALUE);
+                }
+                return true;
+            });
+        } catch (final BTreeException | TerminatedException | IOException e) {
+            throw new EXistException("Exception caught while reading sort index: " + e.getMessage(), e);
+        }
+        cachedKeys.put(cacheKey, keys);
+        return values;
+    }
+
+    private short getAutoId(final SortIndexConfig config, final boolean register) throws EXistException, LockException {
+        final String name = config.getName();
+        final Short cached = index.autoIds.get(name);
+        if (cached != null) {
+            return cached;
+        }
+        final short id = register ? getOrRegisterId(name) : getId(name);
+        if (id > 0) {
+            index.autoIds.put(name, id);
+        }
+        return id;
     }
 
     /**
@@ -154,7 +335,13 @@ public class SortIndexWorker implements IndexWorker {
             final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(fromKey), new Value(toKey));
             index.btree.remove(query, null);
 
+            final byte[] autoKey = computeKey(id);
+            autoKey[0] = AUTO_ENTRY;
+            index.btree.remove(new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value(autoKey)), null);
+
             removeId(name);
+            index.autoIds.remove(name);
+            keysChanged();
         } catch (final BTreeException | TerminatedException | IOException e) {
             throw new EXistException("Exception caught while deleting sort index: " + e.getMessage(), e);
         }
@@ -171,6 +358,11 @@ public class SortIndexWorker implements IndexWorker {
             final byte[] toKey = computeKey(id, doc.getDocId() + 1);
             final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(fromKey), new Value(toKey));
             index.btree.remove(query, null);
+
+            final byte[] autoKey = computeKey(id, doc.getDocId());
+            autoKey[0] = AUTO_ENTRY;
+            index.btree.remove(new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value(autoKey)), null);
+            keysChanged();
         } catch (final BTreeException | TerminatedException | IOException e) {
             throw new EXistException("Exception caught while deleting sort index: " + e.getMessage(), e);
         }
@@ -274,6 +466,27 @@ public class SortIndexWorker implements IndexWorker {
         return data;
     }
 
+    private byte[] computeKey(final short id, final int docId, final NodeId nodeId) {
+        final byte[] data = new byte[9 + nodeId.size()];
+        data[0] = AUTO_ENTRY;
+        ByteConversion.shortToByteH(id, data, 1);
+        ByteConversion.intToByteH(docId, data, 3);
+        ByteConversion.shortToByteH((short) nodeId.units(), data, 7);
+        nodeId.serialize(data, 9);
+        return data;
+    }
+
+    private byte[] computeKey(final byte[] prefix, @Nullable final String value) {
+        final int length = value == null ? 0 : UTF8.encoded(value);
+        final byte[] data = new byte[prefix.length + 1 + length];
+        System.arraycopy(prefix, 0, data, 0, prefix.length);
+        data[prefix.length] = value == null ? NO_VALUE : HAS_VALUE;
+        if (value != null) {
+            UTF8.encode(value, data, prefix.length + 1);
+        }
+        return data;
+    }
+
     private byte[] computeKey(final short id) {
         final byte[] data = new byte[3];
         data[0] = 0;
@@ -282,7 +495,25 @@ public class SortIndexWorker implements IndexWorker {
     }
 
     public Object configure(final IndexController controller, final NodeList configNodes, final Map<String, String> namespaces) throws DatabaseConfigurationException {
-        return null;
+        // the configured indexes, grouped by the name of the element they apply to
+        Map<QName, List<SortIndexConfig>> map = null;
+        for (int i = 0; i < configNodes.getLength(); i++) {
+            final Node node = configNodes.item(i);
+            if (node.getNodeType() == Node.ELEMENT_NODE && INDEX_ELEMENT.equals(node.getLocalName())) {
+                final String qname = ((Element) node).getAttribute(QNAME_ATTR);
+                final String key = ((Element) node).getAttribute(KEY_ATTR);
+                if (qname.isEmpty() || key.isEmpty()) {
+                    throw new DatabaseConfigurationException("Configuration error: element " + node.getNodeName() +
+                            " must have attributes " + QNAME_ATTR + " and " + KEY_ATTR);
+                }
+                final SortIndexConfig config = new SortIndexConfig(namespaces, qname, key);
+                if (map == null) {
+                    map = new HashMap<>();
+                }
+                map.computeIfAbsent(config.getQName(), k -> new ArrayList<>(1)).add(config);
+            }
+        }
+        return map;
     }
 
     public DocumentImpl getDocument() {
@@ -291,6 +522,13 @@ public class SortIndexWorker implements IndexWorker {
 
     public void setDocument(final DocumentImpl doc) {
         this.document = doc;
+        this.config = null;
+        if (doc != null) {
+            final IndexSpec indexConf = doc.getCollection().getIndexConfiguration(broker);
+            if (indexConf != null) {
+                config = (Map<QName, List<SortIndexConfig>>) indexConf.getCustomIndexSpec(SortIndex.ID);
+            }
+        }
     }
 
     @Override
@@ -302,12 +540,33 @@ public class SortIndexWorker implements IndexWorker {
         this.mode = mode;
     }
 
-    public IStoredNode getReindexRoot(final IStoredNode node, final NodePath path, final boolean insert, final boolean includeSelf) {
+    public <T extends IStoredNode> IStoredNode getReindexRoot(final IStoredNode<T> node, final NodePath path, final boolean insert, final boolean includeSelf) {
+        final IndexSpec indexConf = node.getOwnerDocument().getCollection().getIndexConfiguration(broker);
+        final Map<QName, List<SortIndexConfig>> docConfig = indexConf == null ? null :
+                (Map<QName, List<SortIndexConfig>>) indexConf.getCustomIndexSpec(SortIndex.ID);
+        if (docConfig == null) {
+            return insert ? null : node;
+        }
+        if (node.getNodeType() == Node.ATTRIBUTE_NODE) {
+            // the key of the parent element changes: reindex the element
+            final IStoredNode parent = node.getParentStoredNode();
+            final List<SortIndexConfig> configs = parent == null ? null : docConfig.get(parent.getQName());
+            if (configs != null) {
+                for (final SortIndexConfig config : configs) {
+                    if (config.getKey().equals(node.getQName())) {
+                        return parent;
+                    }
+                }
+            }
+        } else if (includeSelf && node.getNodeType() == Node.ELEMENT_NODE && docConfig.get(node.getQName()) != null) {
+            // attributes may be added to the element
+            return node;
+        }
         return insert ? null : node;
     }
 
     public StreamListener getListener() {
-        return null;
+        return config == null ? null : listener;
     }
 
     public MatchListener getMatchListener(final DBBroker broker, final NodeProxy proxy) {
@@ -325,6 +584,70 @@ public class SortIndexWorker implements IndexWorker {
         return new Occurrences[0];
     }
 
+    private class SortStreamListener extends AbstractStreamListener {
+
+        @Override
+        public void startElement(final Txn transaction, final ElementImpl element, final NodePath path) {
+            final List<SortIndexConfig> configs = config.get(element.getQName());
+            if (configs != null) {
+                for (final SortIndexConfig c : configs) {
+                    pending.add(new PendingKey(c, element.getNodeId()));
+                }
+            }
+            super.startElement(transaction, element, path);
+        }
+
+        @Override
+        public void attribute(final Txn transaction, final AttrImpl attrib, final NodePath path) {
+            // attributes immediately follow the start of their element
+            final NodeId parentId = attrib.getNodeId().getParentId();
+            boolean found = false;
+            for (int i = pending.size() - 1; i >= 0 && pending.get(i).nodeId.equals(parentId); i--) {
+                final PendingKey key = pending.get(i);
+                found = true;
+                if (key.config.getKey().equals(attrib.getQName())) {
+                    key.value = attrib.getValue();
+                }
+            }
+            if (!found && mode == ReindexMode.REMOVE_SOME_NODES) {
+                // the attribute is removed on its own: drop the entry of its element
+                for (final List<SortIndexConfig> configs : config.values()) {
+                    for (final SortIndexConfig c : configs) {
+                        if (c.getKey().equals(attrib.getQName())) {
+                            pending.add(new PendingKey(c, parentId));
+                        }
+                    }
+                }
+            }
+            super.attribute(transaction, attrib, path);
+        }
+
+        @Override
+        public IndexWorker getWorker() {
+            return SortIndexWorker.this;
+        }
+    }
+
+    private static class PendingKey {
+        final SortIndexConfig config;
+        final NodeId nodeId;
+        @Nullable String value = null;
+
+        PendingKey(final SortIndexConfig config, final NodeId nodeId) {
+            this.config = config;
+            this.nodeId = nodeId;
+        }
+    }
+
+    private static class DocumentKeys {
+        final long modCount;
+        final Map<NodeId, AtomicValue> keys = new HashMap<>();
+
+        DocumentKeys(final long modCount) {
+            this.modCount = modCount;
+        }
+    }
+
     private final static class FindIdCallback implements BTreeCallback {
         long max = 0;
         List<Long> allIds = null;
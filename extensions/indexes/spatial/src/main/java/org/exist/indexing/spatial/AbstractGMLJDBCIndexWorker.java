@@ -273,7 +273,7 @@ public abstract class AbstractGMLJDBCIndexWorker implements IndexWorker {
             LOG.error("Document: {} NodeID: {}", currentDoc, currentNodeId, e);
             try {
                 if (conn != null)
-                    conn.rollback();
+                    rollback(conn);
             } catch (SQLException ee) {
                 LOG.error(ee);
             }
@@ -554,6 +554,17 @@ public abstract class AbstractGMLJDBCIndexWorker implements IndexWorker {
 
     protected abstract void releaseConnection(Connection conn) throws SQLException;
 
+    /**
+     * Rolls back the changes made by a flush which failed.
+     *
+     * @param conn the connection used by the flush
+     *
+     * @throws SQLException if a JDBC error occurs
+     */
+    protected void rollback(Connection conn) throws SQLException {
+        conn.rollback();
+    }
+
     public Occurrences[] scanIndex(XQueryContext context, DocumentSet docs, NodeSet contextSet, Map hints) {
         //TODO : try to use contextSet
         Map<Geometry, Occurrences> occurences = new TreeMap<>();
@@ -56,6 +56,10 @@ public class GMLHSQLIndex extends AbstractGMLJDBCIndex implements RawBackupSuppo
     public static String TABLE_NAME = "SPATIAL_INDEX_V1";
     private DBBroker connectionOwner = null;
     private long connectionTimeout = 100000L;
+    /**
+     * The in-memory R-tree of the geometries, if enabled by the 'rtree' attribute of the configuration
+     */
+    GeometryRTree rtree = null;
     
     @Override
     public void configure(BrokerPool pool, Path dataDir, Element config) throws DatabaseConfigurationException {
@@ -80,6 +84,30 @@ public class GMLHSQLIndex extends AbstractGMLJDBCIndex implements RawBackupSuppo
 
         if (LOG.isDebugEnabled())
             LOG.debug("max_docs_in_context_to_refine_query = {}", max_docs_in_context_to_refine_query);
+
+        param = config.getAttribute("rtree");
+        if ("yes".equalsIgnoreCase(param) || "true".equalsIgnoreCase(param)) {
+            rtree = new GeometryRTree();
+            if (LOG.isDebugEnabled())
+                LOG.debug("In-memory R-tree of the GML index is enabled");
+        }
+    }
+
+    @Override
+    public void open() throws DatabaseConfigurationException {
+        super.open();
+        if (rtree != null) {
+            //Load the R-tree now, rather than by the first search, which would have to wait for it
+            synchronized (this) {
+                try {
+                    if (conn == null)
+                        initializeConnection();
+                    rtree.load(conn);
+                } catch (SQLException e) {
+                    throw new DatabaseConfigurationException("Unable to load the R-tree of the GML index: " + e.getMessage());
+                }
+            }
+        }
     }
 
     @Override
@@ -114,6 +142,8 @@ public class GMLHSQLIndex extends AbstractGMLJDBCIndex implements RawBackupSuppo
             throw new DBException(e.getMessage());
         } finally {
             conn = null;
+            if (rtree != null)
+                rtree.clear();
         }
     }
     
@@ -145,6 +175,8 @@ public class GMLHSQLIndex extends AbstractGMLJDBCIndex implements RawBackupSuppo
                 if (LOG.isDebugEnabled())
                     LOG.debug("GML index: {}/{}. {} nodes removed", getDataDir(), db_file_name_prefix, nodeCount);
             }
+            if (rtree != null)
+                rtree.clear();
         } catch (SQLException e) {
             throw new DBException(e.getMessage());
         }
@@ -211,55 +243,7 @@ public class GMLHSQLIndex extends AbstractGMLJDBCIndex implements RawBackupSuppo
                     LOG.debug("Opened GML index: {}/{}", getDataDir(), db_file_name_prefix);
             //Create the data structure if it doesn't exist
             } else if (rs.getRow() == 0) {
-                Statement stmt = conn.createStatement();
-                stmt.executeUpdate("CREATE TABLE " + TABLE_NAME + "(" +
-                    /*1*/ "DOCUMENT_URI VARCHAR, " +
-                    /*2*/ "NODE_ID_UNITS INTEGER, " +
-                    /*3*/ "NODE_ID BINARY, " +
-                    /*4*/ "GEOMETRY_TYPE VARCHAR, " +
-                    /*5*/ "SRS_NAME VARCHAR, " +
-                    /*6*/ "WKT VARCHAR(500000), " +
-                    /*7*/ "WKB BINARY, " +
-                    /*8*/ "MINX DOUBLE, " +
-                    /*9*/ "MAXX DOUBLE, " +
-                    /*10*/ "MINY DOUBLE, " +
-                    /*11*/ "MAXY DOUBLE, " +
-                    /*12*/ "CENTROID_X DOUBLE, " +
-                    /*13*/ "CENTROID_Y DOUBLE, " +
-                    /*14*/ "AREA DOUBLE, " +
-                    //Boundary ?
-                    /*15*/ "EPSG4326_WKT VARCHAR(500000), " +
-                    /*16*/ "EPSG4326_WKB BINARY, " +
-                    /*17*/ "EPSG4326_MINX DOUBLE, " +
-                    /*18*/ "EPSG4326_MAXX DOUBLE, " +
-                    /*19*/ "EPSG4326_MINY DOUBLE, " +
-                    /*20*/ "EPSG4326_MAXY DOUBLE, " +
-                    /*21*/ "EPSG4326_CENTROID_X DOUBLE, " +
-                    /*22*/ "EPSG4326_CENTROID_Y DOUBLE, " +
-                    /*23*/ "EPSG4326_AREA DOUBLE, " +
-                    //Boundary ?
-                    /*24*/ "IS_CLOSED BOOLEAN, " +
-                    /*25*/ "IS_SIMPLE BOOLEAN, " +
-                    /*26*/ "IS_VALID BOOLEAN, " +
-                    //Enforce uniqueness
-                    "UNIQUE (" +
-                        "DOCUMENT_URI, NODE_ID_UNITS, NODE_ID" +
-                    ")" +
-                ")");
-                stmt.executeUpdate("CREATE INDEX DOCUMENT_URI ON " + TABLE_NAME + " (DOCUMENT_URI);");
-                stmt.executeUpdate("CREATE INDEX NODE_ID ON " + TABLE_NAME + " (NODE_ID);");
-                stmt.executeUpdate("CREATE INDEX GEOMETRY_TYPE ON " + TABLE_NAME + " (GEOMETRY_TYPE);");
-                stmt.executeUpdate("CREATE INDEX SRS_NAME ON " + TABLE_NAME + " (SRS_NAME);");
-                stmt.executeUpdate("CREATE INDEX WKB ON " + TABLE_NAME + " (WKB);");
-                stmt.executeUpdate("CREATE INDEX EPSG4326_WKB ON " + TABLE_NAME + " (EPSG4326_WKB);");
-                stmt.executeUpdate("CREATE INDEX EPSG4326_MINX ON " + TABLE_NAME + " (EPSG4326_MINX);");
-                stmt.executeUpdate("CREATE INDEX EPSG4326_MAXX ON " + TABLE_NAME + " (EPSG4326_MAXX);");
-                stmt.executeUpdate("CREATE INDEX EPSG4326_MINY ON " + TABLE_NAME + " (EPSG4326_MINY);");
-                stmt.executeUpdate("CREATE INDEX EPSG4326_MAXY ON " + TABLE_NAME + " (EPSG4326_MAXY);");
-                stmt.executeUpdate("CREATE INDEX EPSG4326_CENTROID_X ON " + TABLE_NAME + " (EPSG4326_CENTROID_X);");
-                stmt.executeUpdate("CREATE INDEX EPSG4326_CENTROID_Y ON " + TABLE_NAME + " (EPSG4326_CENTROID_Y);");
-                //AREA ?
-                stmt.close();
+                createTable(conn);
                 if (LOG.isDebugEnabled())
                     LOG.debug("Created GML index: {}/{}", getDataDir(), db_file_name_prefix);
             } else {
@@ -271,6 +255,65 @@ public class GMLHSQLIndex extends AbstractGMLJDBCIndex implements RawBackupSuppo
         }
     }
 
+    /**
+     * Creates the table of the index, and its indexes.
+     *
+     * @param conn the connection to the index
+     *
+     * @throws SQLException if the table can not be created
+     */
+    static void createTable(Connection conn) throws SQLException {
+        Statement stmt = conn.createStatement();
+        stmt.executeUpdate("CREATE TABLE " + TABLE_NAME + "(" +
+            /*1*/ "DOCUMENT_URI VARCHAR, " +
+            /*2*/ "NODE_ID_UNITS INTEGER, " +
+            /*3*/ "NODE_ID BINARY, " +
+            /*4*/ "GEOMETRY_TYPE VARCHAR, " +
+            /*5*/ "SRS_NAME VARCHAR, " +
+            /*6*/ "WKT VARCHAR(500000), " +
+            /*7*/ "WKB BINARY, " +
+            /*8*/ "MINX DOUBLE, " +
+            /*9*/ "MAXX DOUBLE, " +
+            /*10*/ "MINY DOUBLE, " +
+            /*11*/ "MAXY DOUBLE, " +
+            /*12*/ "CENTROID_X DOUBLE, " +
+            /*13*/ "CENTROID_Y DOUBLE, " +
+            /*14*/ "AREA DOUBLE, " +
+            //Boundary ?
+            /*15*/ "EPSG4326_WKT VARCHAR(500000), " +
+            /*16*/ "EPSG4326_WKB BINARY, " +
+            /*17*/ "EPSG4326_MINX DOUBLE, " +
+            /*18*/ "EPSG4326_MAXX DOUBLE, " +
+            /*19*/ "EPSG4326_MINY DOUBLE, " +
+            /*20*/ "EPSG4326_MAXY DOUBLE, " +
+            /*21*/ "EPSG4326_CENTROID_X DOUBLE, " +
+            /*22*/ "EPSG4326_CENTROID_Y DOUBLE, " +
+            /*23*/ "EPSG4326_AREA DOUBLE, " +
+            //Boundary ?
+            /*24*/ "IS_CLOSED BOOLEAN, " +
+            /*25*/ "IS_SIMPLE BOOLEAN, " +
+            /*26*/ "IS_VALID BOOLEAN, " +
+            //Enforce uniqueness
+            "UNIQUE (" +
+                "DOCUMENT_URI, NODE_ID_UNITS, NODE_ID" +
+            ")" +
+        ")");
+        stmt.executeUpdate("CREATE INDEX DOCUMENT_URI ON " + TABLE_NAME + " (DOCUMENT_URI);");
+        stmt.executeUpdate("CREATE INDEX NODE_ID ON " + TABLE_NAME + " (NODE_ID);");
+        stmt.executeUpdate("CREATE INDEX GEOMETRY_TYPE ON " + TABLE_NAME + " (GEOMETRY_TYPE);");
+        stmt.executeUpdate("CREATE INDEX SRS_NAME ON " + TABLE_NAME + " (SRS_NAME);");
+        stmt.executeUpdate("CREATE INDEX WKB ON " + TABLE_NAME + " (WKB);");
+        stmt.executeUpdate("CREATE INDEX EPSG4326_WKB ON " + TABLE_NAME + " (EPSG4326_WKB);");
+        stmt.executeUpdate("CREATE INDEX EPSG4326_MINX ON " + TABLE_NAME + " (EPSG4326_MINX);");
+        stmt.executeUpdate("CREATE INDEX EPSG4326_MAXX ON " + TABLE_NAME + " (EPSG4326_MAXX);");
+        stmt.executeUpdate("CREATE INDEX EPSG4326_MINY ON " + TABLE_NAME + " (EPSG4326_MINY);");
+        stmt.executeUpdate("CREATE INDEX EPSG4326_MAXY ON " + TABLE_NAME + " (EPSG4326_MAXY);");
+        stmt.executeUpdate("CREATE INDEX EPSG4326_CENTROID_X ON " + TABLE_NAME + " (EPSG4326_CENTROID_X);");
+        stmt.executeUpdate("CREATE INDEX EPSG4326_CENTROID_Y ON " + TABLE_NAME + " (EPSG4326_CENTROID_Y);");
+        //AREA ?
+        stmt.close();
+    }
+
 	@Override
 	public void backupToArchive(RawDataBackup backup) throws IOException {
         final Path directory = getDataDir();
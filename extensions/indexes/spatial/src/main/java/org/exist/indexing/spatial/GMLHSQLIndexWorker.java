@@ -22,7 +22,9 @@
 package org.exist.indexing.spatial;
 
 import java.sql.*;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -45,6 +47,7 @@ import org.exist.xquery.value.DoubleValue;
 import org.exist.xquery.value.StringValue;
 import org.exist.xquery.value.ValueSequence;
 
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.io.ParseException;
 import org.apache.commons.io.input.UnsynchronizedByteArrayInputStream;
@@ -121,7 +124,8 @@ public class GMLHSQLIndexWorker extends AbstractGMLJDBCIndexWorker {
             /*EPSG4326_WKT*/
             ps.setString(15, wktWriter.write(EPSG4326_geometry));
             /*EPSG4326_WKB*/
-            ps.setBytes(16, wkbWriter.write(EPSG4326_geometry));
+            final byte[] EPSG4326_wkb = wkbWriter.write(EPSG4326_geometry);
+            ps.setBytes(16, EPSG4326_wkb);
             /*EPSG4326_MINX*/
             ps.setDouble(17, EPSG4326_geometry.getEnvelopeInternal().getMinX());
             /*EPSG4326_MAXX*/
@@ -149,10 +153,15 @@ public class GMLHSQLIndexWorker extends AbstractGMLJDBCIndexWorker {
             /*IS_VALID*/
             ps.setBoolean(26, geometry.isValid());
             try {
-                return (ps.executeUpdate() == 1);
+                if (ps.executeUpdate() != 1)
+                    return false;
             } catch (final SQLDataException e) {
                 throw e;
             }
+            final GeometryRTree rtree = getRTree();
+            if (rtree != null)
+                rtree.insert(doc.getURI().toString(), nodeId, EPSG4326_geometry.getEnvelopeInternal());
+            return true;
         } finally {
             //Let's help the garbage collector...
             geometry = null;
@@ -180,6 +189,9 @@ public class GMLHSQLIndexWorker extends AbstractGMLJDBCIndexWorker {
         nodeId.serialize(bytes, 0);
         ps.setBytes(3, bytes);
         try {
+            final GeometryRTree rtree = getRTree();
+            if (rtree != null)
+                rtree.removeNode(doc.getURI().toString(), nodeId);
             return (ps.executeUpdate() == 1);
         } finally {
             ps.close();
@@ -193,6 +205,9 @@ public class GMLHSQLIndexWorker extends AbstractGMLJDBCIndexWorker {
         ); 
         ps.setString(1, doc.getURI().toString());
         try {
+            final GeometryRTree rtree = getRTree();
+            if (rtree != null)
+                rtree.removeDocument(doc.getURI().toString());
             return ps.executeUpdate();
         } finally {
             ps.close();
@@ -207,12 +222,28 @@ public class GMLHSQLIndexWorker extends AbstractGMLJDBCIndexWorker {
         ps.setInt(1, collection.getURI().toString().length());
         ps.setString(2, collection.getURI().toString());
         try {
+            final GeometryRTree rtree = getRTree();
+            if (rtree != null)
+                rtree.removeCollection(collection.getURI().toString());
             return ps.executeUpdate();
         } finally {
             ps.close();
         }
     }
 
+    @Override
+    protected void rollback(Connection conn) throws SQLException {
+        conn.rollback();
+        //The R-tree may have been modified by the rolled back statements : reload it
+        final GeometryRTree rtree = getRTree();
+        if (rtree != null)
+            rtree.clear();
+    }
+
+    private GeometryRTree getRTree() {
+        return ((GMLHSQLIndex) index).rtree;
+    }
+
     //Since an embedded HSQL has only one connection available (unless I'm totally dumb)
     //acquire and release the connection from the index, which is *the* connection's owner 
 
@@ -228,6 +259,10 @@ public class GMLHSQLIndexWorker extends AbstractGMLJDBCIndexWorker {
 
     @Override
     protected NodeSet search(DBBroker broker, NodeSet contextSet, Geometry EPSG4326_geometry, int spatialOp, Connection conn) throws SQLException {
+        final GeometryRTree rtree = getRTree();
+        if (rtree != null)
+            return search(broker, contextSet, EPSG4326_geometry, spatialOp, conn, rtree);
+
         String extraSelection = null;
         String bboxConstraint = null;
 
@@ -338,32 +373,7 @@ public class GMLHSQLIndexWorker extends AbstractGMLJDBCIndexWorker {
                         if (!geometryMatches) {	
                             try {
                                 Geometry geometry = wkbReader.read(rs.getBytes("EPSG4326_WKB"));
-                                switch (spatialOp) {
-                                case SpatialOperator.EQUALS:
-                                    geometryMatches = geometry.equals(EPSG4326_geometry);
-                                    break;
-                                case SpatialOperator.DISJOINT:
-                                    geometryMatches = geometry.disjoint(EPSG4326_geometry);
-                                    break;
-                                case SpatialOperator.INTERSECTS:
-                                    geometryMatches = geometry.intersects(EPSG4326_geometry);
-                                    break;
-                                case SpatialOperator.TOUCHES:
-                                    geometryMatches = geometry.touches(EPSG4326_geometry);
-                                    break;
-                                case SpatialOperator.CROSSES:
-                                    geometryMatches = geometry.crosses(EPSG4326_geometry);
-                                    break;
-                                case SpatialOperator.WITHIN:
-                                    geometryMatches = geometry.within(EPSG4326_geometry);
-                                    break;
-                                case SpatialOperator.CONTAINS:
-                                    geometryMatches = geometry.contains(EPSG4326_geometry);
-                                    break;
-                                case SpatialOperator.OVERLAPS:
-                                    geometryMatches = geometry.overlaps(EPSG4326_geometry);
-                                    break;
-                                }
+                                geometryMatches = geometryMatches(geometry, EPSG4326_geometry, spatialOp);
                             } catch (ParseException e) {
                                 //Transforms the exception into an SQLException.
                                 //Very unlikely to happen though...
@@ -389,6 +399,135 @@ public class GMLHSQLIndexWorker extends AbstractGMLJDBCIndexWorker {
         }
     }
 
+    /**
+     * Searches the in-memory R-tree of the index for the candidate geometries,
+     * rather than the table.
+     */
+    private NodeSet search(DBBroker broker, NodeSet contextSet, Geometry EPSG4326_geometry, int spatialOp,
+            Connection conn, GeometryRTree rtree) throws SQLException {
+        //Normally loaded when the index was opened
+        if (!rtree.isLoaded())
+            rtree.load(conn);
+
+        final Envelope envelope = EPSG4326_geometry.getEnvelopeInternal();
+        final List<GeometryRTree.Entry> candidates;
+        if (spatialOp == SpatialOperator.DISJOINT)
+            //Nothing much we can do with the BBox at this stage
+            candidates = rtree.entries();
+        else
+            candidates = rtree.query(envelope);
+
+        //The documents in the context, by URI
+        Map<String, DocumentImpl> contextDocs = null;
+        if (contextSet != null) {
+            contextDocs = new HashMap<>();
+            for (Iterator<DocumentImpl> i = contextSet.getDocumentSet().getDocumentIterator(); i.hasNext(); ) {
+                final DocumentImpl doc = i.next();
+                contextDocs.put(doc.getURI().toString(), doc);
+            }
+        }
+        //The documents which are not in the context are looked up once only
+        final Map<String, DocumentImpl> docs = new HashMap<>();
+
+        final NodeSet result = new ExtArrayNodeSet();
+        int disjointPostFiltered = 0;
+        //The geometries are only read for the candidates which need an exact check
+        PreparedStatement readWKB = null;
+        try {
+            for (final GeometryRTree.Entry entry : candidates) {
+                DocumentImpl doc;
+                if (contextDocs != null) {
+                    //contextSet == null should be used to scan the whole index
+                    doc = contextDocs.get(entry.documentUri);
+                } else if (docs.containsKey(entry.documentUri)) {
+                    doc = docs.get(entry.documentUri);
+                } else {
+                    try {
+                        doc = (DocumentImpl)broker.getXMLResource(XmldbURI.create(entry.documentUri));
+                    } catch (PermissionDeniedException e) {
+                        LOG.debug(e);
+                        //Ignore since the broker has no right on the document
+                        doc = null;
+                    }
+                    docs.put(entry.documentUri, doc);
+                }
+                if (doc == null)
+                    continue;
+
+                NodeProxy p = new NodeProxy(doc, entry.nodeId);
+                //Node is in the context : check if it is accurate
+                //contextSet.contains(p) would have made more sense but there is a problem with
+                //VirtualNodeSet when on the DESCENDANT_OR_SELF axis
+                if (contextSet != null && contextSet.get(p) == null)
+                    continue;
+
+                boolean geometryMatches = false;
+                switch (spatialOp) {
+                case SpatialOperator.EQUALS:
+                    if (!entry.envelope.equals(envelope))
+                        continue;
+                    break;
+                case SpatialOperator.DISJOINT:
+                    //No BBox intersection : obviously disjoint
+                    if (!entry.envelope.intersects(envelope)) {
+                        geometryMatches = true;
+                        disjointPostFiltered++;
+                    }
+                    break;
+                case SpatialOperator.WITHIN:
+                    if (!envelope.contains(entry.envelope))
+                        continue;
+                    break;
+                case SpatialOperator.CONTAINS:
+                    if (!entry.envelope.contains(envelope))
+                        continue;
+                    break;
+                }
+                //Possible match : read the geometry from the table and check it
+                if (!geometryMatches) {
+                    if (readWKB == null)
+                        readWKB = prepareReadWKB(conn, true);
+                    final Geometry geometry = readGeometry(readWKB, entry.documentUri, entry.nodeId);
+                    if (geometry == null)
+                        continue;
+                    geometryMatches = geometryMatches(geometry, EPSG4326_geometry, spatialOp);
+                }
+                if (geometryMatches)
+                    result.add(p);
+            }
+        } finally {
+            if (readWKB != null)
+                readWKB.close();
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("{} eligible geometries, {}selected{}", candidates.size(), result.getItemCount(), spatialOp == SpatialOperator.DISJOINT ? "(" + disjointPostFiltered + " post filtered)" : "");
+        }
+        return result;
+    }
+
+    private boolean geometryMatches(Geometry geometry, Geometry EPSG4326_geometry, int spatialOp) {
+        switch (spatialOp) {
+        case SpatialOperator.EQUALS:
+            return geometry.equals(EPSG4326_geometry);
+        case SpatialOperator.DISJOINT:
+            return geometry.disjoint(EPSG4326_geometry);
+        case SpatialOperator.INTERSECTS:
+            return geometry.intersects(EPSG4326_geometry);
+        case SpatialOperator.TOUCHES:
+            return geometry.touches(EPSG4326_geometry);
+        case SpatialOperator.CROSSES:
+            return geometry.crosses(EPSG4326_geometry);
+        case SpatialOperator.WITHIN:
+            return geometry.within(EPSG4326_geometry);
+        case SpatialOperator.CONTAINS:
+            return geometry.contains(EPSG4326_geometry);
+        case SpatialOperator.OVERLAPS:
+            return geometry.overlaps(EPSG4326_geometry);
+        default:
+            return false;
+        }
+    }
+
     @Override
     protected Map<Geometry, String> getGeometriesForDocument(DocumentImpl doc, Connection conn) throws SQLException {       	
         PreparedStatement ps = conn.prepareStatement(
@@ -421,38 +560,74 @@ public class GMLHSQLIndexWorker extends AbstractGMLJDBCIndexWorker {
 
     @Override
     protected Geometry getGeometryForNode(DBBroker broker, NodeProxy p, boolean getEPSG4326, Connection conn) throws SQLException {
-        PreparedStatement ps = conn.prepareStatement(
+        PreparedStatement ps = prepareReadWKB(conn, getEPSG4326);
+        try {
+            return readGeometry(ps, p.getOwnerDocument().getURI().toString(), p.getNodeId());
+        } finally {
+            ps.close();
+        }
+    }
+
+    /**
+     * Prepares the statement which reads the geometry of a node as WKB, by the unique key of the node.
+     *
+     * @param conn the connection to the index
+     * @param getEPSG4326 whether to read the EPSG:4326 geometry, rather than the original one
+     *
+     * @return the statement, for {@link #readWKB(PreparedStatement, String, NodeId)}
+     *
+     * @throws SQLException if the statement can not be prepared
+     */
+    static PreparedStatement prepareReadWKB(Connection conn, boolean getEPSG4326) throws SQLException {
+        return conn.prepareStatement(
             "SELECT " + (getEPSG4326 ? "EPSG4326_WKB" : "WKB") +
             " FROM " + GMLHSQLIndex.TABLE_NAME + 
             " WHERE DOCUMENT_URI = ? AND NODE_ID_UNITS = ? AND NODE_ID = ?;"
         );
-        ps.setString(1, p.getOwnerDocument().getURI().toString());
-        ps.setInt(2, p.getNodeId().units());
-        byte[] bytes = new byte[p.getNodeId().size()];
-        p.getNodeId().serialize(bytes, 0);
+    }
+
+    /**
+     * Reads the geometry of a node as WKB.
+     *
+     * @param ps the statement from {@link #prepareReadWKB(Connection, boolean)}
+     * @param documentUri the URI of the document containing the node
+     * @param nodeId the id of the node
+     *
+     * @return the WKB, or null if the node has no geometry
+     *
+     * @throws SQLException if the geometry can not be read
+     */
+    static byte[] readWKB(PreparedStatement ps, String documentUri, NodeId nodeId) throws SQLException {
+        ps.setString(1, documentUri);
+        ps.setInt(2, nodeId.units());
+        byte[] bytes = new byte[nodeId.size()];
+        nodeId.serialize(bytes, 0);
         ps.setBytes(3, bytes);
-        ResultSet rs = null;
-        try {
-            rs = ps.executeQuery();
+        try (ResultSet rs = ps.executeQuery()) {
             if (!rs.next())
                 //Nothing returned
                 return null;
-            Geometry geometry = wkbReader.read(rs.getBytes(1));
+            byte[] wkb = rs.getBytes(1);
             if (rs.next()) {
                 //Should be impossible
-                throw new SQLException("More than one geometry for node " + p);
+                throw new SQLException("More than one geometry for node " + nodeId + " of " + documentUri);
             }
-            return geometry;
+            return wkb;
+        }
+    }
+
+    private Geometry readGeometry(PreparedStatement ps, String documentUri, NodeId nodeId) throws SQLException {
+        byte[] wkb = readWKB(ps, documentUri, nodeId);
+        if (wkb == null)
+            return null;
+        try {
+            return wkbReader.read(wkb);
         } catch (ParseException e) {
             //Transforms the exception into an SQLException.
             //Very unlikely to happen though...
             SQLException ee = new SQLException(e.getMessage());
             ee.initCause(e);
             throw ee;
-        } finally {
-            if (rs != null)
-                rs.close();
-            ps.close();
         }
     }
     
@@ -0,0 +1,309 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.spatial;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.numbering.DLN;
+import org.exist.numbering.NodeId;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+/**
+ * An in-memory R-tree of the EPSG:4326 bounding boxes of the geometries
+ * in a {@link GMLHSQLIndex}, so that the candidate geometries of a spatial
+ * search can be found without a bounding box query on the HSQL table, whose
+ * separate indexes on each of the bounds only narrow the search by one of them.
+ *
+ * Only the bounding box and the key of each geometry, i.e. the URI of its document
+ * and its node id, are kept in memory; the geometries themselves are read from
+ * the table by their key when a candidate has to be checked.
+ *
+ * The R-tree is loaded from the HSQL table when the index is opened, and is then kept
+ * up-to-date as geometries are stored and removed. The tree itself is bulk-loaded
+ * (STR packed) and so can not be modified; geometries stored since it was
+ * built are searched linearly, and removed geometries are marked as such,
+ * until there are enough of either for the tree to be rebuilt by the next search.
+ *
+ * All of the methods must be called whilst holding the connection of the index,
+ * so that the R-tree and the table are modified together.
+ */
+class GeometryRTree {
+
+    private final static Logger LOG = LogManager.getLogger(GeometryRTree.class);
+
+    private static final int NODE_CAPACITY = 16;
+
+    /**
+     * The minimum number of geometries stored or removed since the tree was built
+     * which causes it to be rebuilt; the tree is also rebuilt when they amount
+     * to more than a tenth of the geometries.
+     */
+    private static final int MIN_CHANGES_TO_REBUILD = 1024;
+
+    private boolean loaded = false;
+    private final Map<String, Document> documents = new HashMap<>();
+    private int size = 0;
+
+    private STRtree tree = null;
+    private final List<Entry> inserted = new ArrayList<>();
+    private int removedSinceBuild = 0;
+
+    /**
+     * @return true if the R-tree has been loaded from the table
+     */
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return true if the tree has been built, and not been invalidated
+     * by the geometries stored or removed since
+     */
+    boolean isBuilt() {
+        return tree != null;
+    }
+
+    /**
+     * Loads the R-tree from the table of the index.
+     *
+     * @param conn the connection to the index
+     *
+     * @throws SQLException if the table can not be read
+     */
+    void load(final Connection conn) throws SQLException {
+        clear();
+        final long start = System.currentTimeMillis();
+        try (final PreparedStatement ps = conn.prepareStatement(
+                "SELECT DOCUMENT_URI, NODE_ID_UNITS, NODE_ID, " +
+                "EPSG4326_MINX, EPSG4326_MAXX, EPSG4326_MINY, EPSG4326_MAXY FROM " + GMLHSQLIndex.TABLE_NAME + ";");
+             final ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                final NodeId nodeId = new DLN(rs.getInt("NODE_ID_UNITS"), rs.getBytes("NODE_ID"), 0);
+                final Envelope envelope = new Envelope(rs.getDouble("EPSG4326_MINX"), rs.getDouble("EPSG4326_MAXX"),
+                        rs.getDouble("EPSG4326_MINY"), rs.getDouble("EPSG4326_MAXY"));
+                add(rs.getString("DOCUMENT_URI"), nodeId, envelope);
+            }
+        }
+        build();
+        loaded = true;
+        if (LOG.isDebugEnabled())
+            LOG.debug("Loaded {} geometries into the R-tree of the GML index in {} ms", size, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Removes all of the geometries, so that the R-tree is loaded again
+     * from the table by the next search, unless the index is opened before.
+     */
+    void clear() {
+        loaded = false;
+        documents.clear();
+        size = 0;
+        tree = null;
+        inserted.clear();
+        removedSinceBuild = 0;
+    }
+
+    /**
+     * Adds a geometry which has been stored in the table.
+     *
+     * @param documentUri the URI of the document containing the geometry
+     * @param nodeId the id of the node of the geometry
+     * @param envelope the EPSG:4326 bounding box of the geometry
+     */
+    void insert(final String documentUri, final NodeId nodeId, final Envelope envelope) {
+        if (!loaded)
+            return;
+        final Entry entry = add(documentUri, nodeId, envelope);
+        if (tree != null)
+            inserted.add(entry);
+        checkRebuild();
+    }
+
+    private Entry add(final String documentUri, final NodeId nodeId, final Envelope envelope) {
+        final Document document = documents.computeIfAbsent(documentUri, Document::new);
+        //The entries of a document share the URI of the document
+        final Entry entry = new Entry(document.uri, nodeId, envelope);
+        final Entry previous = document.nodes.put(nodeId, entry);
+        if (previous != null)
+            markRemoved(previous);
+        size++;
+        return entry;
+    }
+
+    /**
+     * Removes the geometry of a node.
+     *
+     * @param documentUri the URI of the document containing the node
+     * @param nodeId the id of the node
+     */
+    void removeNode(final String documentUri, final NodeId nodeId) {
+        if (!loaded)
+            return;
+        final Document document = documents.get(documentUri);
+        if (document != null) {
+            final Entry entry = document.nodes.remove(nodeId);
+            if (entry != null)
+                markRemoved(entry);
+            if (document.nodes.isEmpty())
+                documents.remove(documentUri);
+        }
+        checkRebuild();
+    }
+
+    /**
+     * Removes the geometries of a document.
+     *
+     * @param documentUri the URI of the document
+     */
+    void removeDocument(final String documentUri) {
+        if (!loaded)
+            return;
+        final Document document = documents.remove(documentUri);
+        if (document != null) {
+            for (final Entry entry : document.nodes.values())
+                markRemoved(entry);
+        }
+        checkRebuild();
+    }
+
+    /**
+     * Removes the geometries of the documents whose URI starts with the URI of a collection.
+     *
+     * @param collectionUri the URI of the collection
+     */
+    void removeCollection(final String collectionUri) {
+        if (!loaded)
+            return;
+        for (final Iterator<Map.Entry<String, Document>> i = documents.entrySet().iterator(); i.hasNext(); ) {
+            final Map.Entry<String, Document> document = i.next();
+            if (document.getKey().startsWith(collectionUri)) {
+                for (final Entry entry : document.getValue().nodes.values())
+                    markRemoved(entry);
+                i.remove();
+            }
+        }
+        checkRebuild();
+    }
+
+    private void markRemoved(final Entry entry) {
+        if (!entry.removed) {
+            entry.removed = true;
+            size--;
+            removedSinceBuild++;
+        }
+    }
+
+    private void checkRebuild() {
+        final int changes = inserted.size() + removedSinceBuild;
+        if (tree != null && changes >= MIN_CHANGES_TO_REBUILD && changes > size / 10) {
+            tree = null;
+        }
+    }
+
+    /**
+     * Finds the geometries whose bounding boxes intersect an envelope.
+     *
+     * @param envelope the EPSG:4326 envelope
+     *
+     * @return the geometries
+     */
+    @SuppressWarnings("unchecked")
+    List<Entry> query(final Envelope envelope) {
+        if (tree == null)
+            build();
+        final List<Entry> result = new ArrayList<>();
+        for (final Entry entry : (List<Entry>) tree.query(envelope)) {
+            if (!entry.removed)
+                result.add(entry);
+        }
+        for (final Entry entry : inserted) {
+            if (!entry.removed && entry.envelope.intersects(envelope))
+                result.add(entry);
+        }
+        return result;
+    }
+
+    /**
+     * @return all of the geometries
+     */
+    List<Entry> entries() {
+        final List<Entry> result = new ArrayList<>(size);
+        for (final Document document : documents.values())
+            result.addAll(document.nodes.values());
+        return result;
+    }
+
+    private void build() {
+        final long start = System.currentTimeMillis();
+        tree = new STRtree(NODE_CAPACITY);
+        for (final Document document : documents.values()) {
+            for (final Entry entry : document.nodes.values())
+                tree.insert(entry.envelope, entry);
+        }
+        tree.build();
+        inserted.clear();
+        removedSinceBuild = 0;
+        if (LOG.isDebugEnabled())
+            LOG.debug("Built the R-tree of the GML index for {} geometries in {} ms", size, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * The geometries of a document.
+     */
+    private static final class Document {
+        final String uri;
+        final Map<NodeId, Entry> nodes = new TreeMap<>();
+
+        Document(final String uri) {
+            this.uri = uri;
+        }
+    }
+
+    /**
+     * A geometry in the R-tree.
+     */
+    static final class Entry {
+        final String documentUri;
+        final NodeId nodeId;
+        final Envelope envelope;
+        boolean removed = false;
+
+        Entry(final String documentUri, final NodeId nodeId, final Envelope envelope) {
+            this.documentUri = documentUri;
+            this.nodeId = nodeId;
+            this.envelope = envelope;
+        }
+    }
+}
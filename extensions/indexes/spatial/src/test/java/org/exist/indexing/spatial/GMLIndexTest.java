@@ -32,6 +32,9 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -65,6 +68,8 @@ import org.geotools.gml.GMLFilterDocument;
 import org.geotools.gml.GMLFilterGeometry;
 import org.geotools.gml.GMLHandlerJTS;
 import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
 import org.xml.sax.*;
 import org.xml.sax.helpers.XMLFilterImpl;
 
@@ -73,10 +78,22 @@ import com.vividsolutions.jts.geom.Geometry;
 import static org.junit.Assert.*;
 
 /**
+ * The tests are run both without and with the in-memory R-tree of the index,
+ * as enabled by its rtree="yes" configuration attribute.
+ *
  * @author <a href="mailto:pierrick.brihaye@free.fr">Pierrick Brihaye</a>
  */
+@RunWith(Parameterized.class)
 public class GMLIndexTest {
 
+    @Parameterized.Parameters(name = "rtree={0}")
+    public static List<Object[]> data() {
+        return Arrays.asList(new Object[][] { { false }, { true } });
+    }
+
+    @Parameterized.Parameter
+    public boolean rtree;
+
     @ClassRule
     public static final ExistEmbeddedServer server = new ExistEmbeddedServer(true, true);
 
@@ -154,6 +171,37 @@ public class GMLIndexTest {
         }
     }
 
+    @Before
+    public void configureRTree() {
+        final GMLHSQLIndex index = (GMLHSQLIndex) server.getBrokerPool().getIndexManager().getIndexById(AbstractGMLJDBCIndex.ID);
+        if (rtree && index.rtree == null) {
+            index.rtree = new GeometryRTree();
+        } else if (!rtree) {
+            index.rtree = null;
+        }
+    }
+
+    @After
+    public void checkRTree() throws EXistException, SQLException {
+        final BrokerPool pool = server.getBrokerPool();
+        final GMLHSQLIndex index = (GMLHSQLIndex) pool.getIndexManager().getIndexById(AbstractGMLJDBCIndex.ID);
+        if (index.rtree == null || !index.rtree.isLoaded()) {
+            return;
+        }
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final GMLHSQLIndexWorker indexWorker = (GMLHSQLIndexWorker) broker.getIndexController().getWorkerByIndexId(AbstractGMLJDBCIndex.ID);
+            final Connection conn = indexWorker.acquireConnection();
+            try (final Statement stmt = conn.createStatement();
+                 final ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + GMLHSQLIndex.TABLE_NAME + ";")) {
+                assertTrue(rs.next());
+                // the R-tree is kept up-to-date with the table
+                assertEquals(rs.getInt(1), index.rtree.entries().size());
+            } finally {
+                indexWorker.releaseConnection(conn);
+            }
+        }
+    }
+
     @Test
     public void indexDocument() throws EXistException, CollectionConfigurationException, PermissionDeniedException, IOException, SAXException, LockException, URISyntaxException, SQLException {
         final BrokerPool pool = server.getBrokerPool();
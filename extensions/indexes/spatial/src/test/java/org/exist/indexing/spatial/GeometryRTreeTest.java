@@ -0,0 +1,233 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.spatial;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.exist.numbering.DLN;
+import org.exist.numbering.NodeId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBReader;
+import com.vividsolutions.jts.io.WKBWriter;
+
+import static org.junit.Assert.*;
+
+public class GeometryRTreeTest {
+
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+    private Connection conn;
+
+    @Before
+    public void setUp() throws SQLException {
+        //Same settings as the index itself
+        conn = DriverManager.getConnection("jdbc:hsqldb:mem:rtree-test;sql.enforce_size=false", "sa", "");
+        GMLHSQLIndex.createTable(conn);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (final Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DROP TABLE " + GMLHSQLIndex.TABLE_NAME);
+        }
+        conn.close();
+    }
+
+    @Test
+    public void loadAndQuery() throws SQLException {
+        store("/db/test/a.xml", new DLN("1.1"), new Envelope(0, 1, 0, 1));
+        store("/db/test/a.xml", new DLN("1.2"), new Envelope(10, 11, 10, 11));
+        store("/db/test/b.xml", new DLN("1.1"), new Envelope(0.5, 2, 0.5, 2));
+
+        final GeometryRTree rtree = new GeometryRTree();
+        assertFalse(rtree.isLoaded());
+        rtree.load(conn);
+        assertTrue(rtree.isLoaded());
+        assertTrue(rtree.isBuilt());
+        assertEquals(3, rtree.entries().size());
+
+        final List<GeometryRTree.Entry> result = rtree.query(new Envelope(0, 0.75, 0, 0.75));
+        assertEquals(2, result.size());
+        assertTrue(contains(result, "/db/test/a.xml", new DLN("1.1")));
+        assertTrue(contains(result, "/db/test/b.xml", new DLN("1.1")));
+
+        assertEquals(1, rtree.query(new Envelope(9, 12, 9, 12)).size());
+        assertTrue(rtree.query(new Envelope(50, 60, 50, 60)).isEmpty());
+    }
+
+    @Test
+    public void geometryIsReadByKey() throws SQLException, ParseException {
+        store("/db/test/a.xml", new DLN("1.1"), new Envelope(0, 1, 0, 1));
+        store("/db/test/a.xml", new DLN("1.2"), new Envelope(10, 11, 10, 11));
+        final GeometryRTree rtree = new GeometryRTree();
+        rtree.load(conn);
+
+        final List<GeometryRTree.Entry> result = rtree.query(new Envelope(9, 12, 9, 12));
+        assertEquals(1, result.size());
+        final GeometryRTree.Entry entry = result.get(0);
+        try (final PreparedStatement ps = GMLHSQLIndexWorker.prepareReadWKB(conn, true)) {
+            final Geometry geometry = new WKBReader().read(GMLHSQLIndexWorker.readWKB(ps, entry.documentUri, entry.nodeId));
+            assertEquals(entry.envelope, geometry.getEnvelopeInternal());
+            assertEquals(new Envelope(10, 11, 10, 11), geometry.getEnvelopeInternal());
+
+            assertNull(GMLHSQLIndexWorker.readWKB(ps, "/db/test/a.xml", new DLN("1.3")));
+        }
+    }
+
+    @Test
+    public void insertIsIgnoredUntilLoaded() throws SQLException {
+        final GeometryRTree rtree = new GeometryRTree();
+        rtree.insert("/db/test/a.xml", new DLN("1.1"), new Envelope(0, 1, 0, 1));
+        assertTrue(rtree.entries().isEmpty());
+
+        rtree.load(conn);
+        assertTrue(rtree.entries().isEmpty());
+        assertTrue(rtree.query(new Envelope(0, 1, 0, 1)).isEmpty());
+    }
+
+    @Test
+    public void insertAfterBuild() throws SQLException {
+        store("/db/test/a.xml", new DLN("1.1"), new Envelope(0, 1, 0, 1));
+        final GeometryRTree rtree = new GeometryRTree();
+        rtree.load(conn);
+        assertEquals(1, rtree.query(new Envelope(0, 1, 0, 1)).size());
+
+        // searched linearly until the tree is rebuilt
+        rtree.insert("/db/test/b.xml", new DLN("1.1"), new Envelope(0.5, 1.5, 0.5, 1.5));
+        assertTrue(rtree.isBuilt());
+        final List<GeometryRTree.Entry> result = rtree.query(new Envelope(0, 1, 0, 1));
+        assertEquals(2, result.size());
+        assertTrue(contains(result, "/db/test/b.xml", new DLN("1.1")));
+
+        // storing the geometry of a node again replaces it
+        rtree.insert("/db/test/a.xml", new DLN("1.1"), new Envelope(20, 21, 20, 21));
+        assertEquals(1, rtree.query(new Envelope(0, 1, 0, 1)).size());
+        assertEquals(1, rtree.query(new Envelope(20, 21, 20, 21)).size());
+        assertEquals(2, rtree.entries().size());
+    }
+
+    @Test
+    public void remove() throws SQLException {
+        store("/db/test/a.xml", new DLN("1.1"), new Envelope(0, 1, 0, 1));
+        store("/db/test/a.xml", new DLN("1.2"), new Envelope(0, 1, 0, 1));
+        store("/db/test/b.xml", new DLN("1.1"), new Envelope(0, 1, 0, 1));
+        store("/db/test/sub/c.xml", new DLN("1.1"), new Envelope(0, 1, 0, 1));
+        store("/db/other/d.xml", new DLN("1.1"), new Envelope(0, 1, 0, 1));
+        final GeometryRTree rtree = new GeometryRTree();
+        rtree.load(conn);
+        final Envelope envelope = new Envelope(0, 1, 0, 1);
+        assertEquals(5, rtree.query(envelope).size());
+
+        rtree.removeNode("/db/test/a.xml", new DLN("1.2"));
+        List<GeometryRTree.Entry> result = rtree.query(envelope);
+        assertEquals(4, result.size());
+        assertFalse(contains(result, "/db/test/a.xml", new DLN("1.2")));
+
+        rtree.removeDocument("/db/test/b.xml");
+        result = rtree.query(envelope);
+        assertEquals(3, result.size());
+        assertFalse(contains(result, "/db/test/b.xml", new DLN("1.1")));
+
+        rtree.removeCollection("/db/test/");
+        result = rtree.query(envelope);
+        assertEquals(1, result.size());
+        assertTrue(contains(result, "/db/other/d.xml", new DLN("1.1")));
+        assertEquals(1, rtree.entries().size());
+    }
+
+    @Test
+    public void rebuildThreshold() throws SQLException {
+        store("/db/test/a.xml", new DLN("1.1"), new Envelope(0, 1, 0, 1));
+        final GeometryRTree rtree = new GeometryRTree();
+        rtree.load(conn);
+        rtree.query(new Envelope(0, 1, 0, 1));
+        assertTrue(rtree.isBuilt());
+
+        // the tree is kept until at least 1024 geometries have been stored or removed
+        for (int i = 1; i < 1024; i++) {
+            rtree.insert("/db/test/b.xml", new DLN(i), new Envelope(i, i + 1, i, i + 1));
+        }
+        assertTrue(rtree.isBuilt());
+        rtree.removeDocument("/db/test/a.xml");
+        assertFalse(rtree.isBuilt());
+
+        // and rebuilt by the next search
+        final List<GeometryRTree.Entry> result = rtree.query(new Envelope(0, 2.5, 0, 2.5));
+        assertTrue(rtree.isBuilt());
+        assertEquals(2, result.size());
+        assertTrue(contains(result, "/db/test/b.xml", new DLN(1)));
+        assertTrue(contains(result, "/db/test/b.xml", new DLN(2)));
+        assertEquals(1023, rtree.entries().size());
+
+        // nor is it invalidated by changes amounting to no more than a tenth of the geometries
+        for (int i = 1024; i < 1024 + 20000; i++) {
+            rtree.insert("/db/test/c.xml", new DLN(i), new Envelope(i, i + 1, i, i + 1));
+        }
+        assertFalse(rtree.isBuilt());
+        rtree.query(new Envelope(0, 1, 0, 1));
+        assertTrue(rtree.isBuilt());
+        for (int i = 1024; i < 1024 + 1500; i++) {
+            rtree.removeNode("/db/test/c.xml", new DLN(i));
+        }
+        assertTrue(rtree.isBuilt());
+        assertTrue(rtree.query(new Envelope(1024.5, 1024 + 1499, 1024.5, 1024 + 1499)).isEmpty());
+        assertEquals(2, rtree.query(new Envelope(1024 + 1500.5, 1024 + 1501.5, 1024 + 1500.5, 1024 + 1501.5)).size());
+    }
+
+    private void store(final String documentUri, final NodeId nodeId, final Envelope envelope) throws SQLException {
+        try (final PreparedStatement ps = conn.prepareStatement("INSERT INTO " + GMLHSQLIndex.TABLE_NAME +
+                " (DOCUMENT_URI, NODE_ID_UNITS, NODE_ID, EPSG4326_WKB, EPSG4326_MINX, EPSG4326_MAXX, EPSG4326_MINY, EPSG4326_MAXY)" +
+                " VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+            final byte[] data = new byte[nodeId.size()];
+            nodeId.serialize(data, 0);
+            ps.setString(1, documentUri);
+            ps.setInt(2, nodeId.units());
+            ps.setBytes(3, data);
+            ps.setBytes(4, new WKBWriter().write(GEOMETRY_FACTORY.toGeometry(envelope)));
+            ps.setDouble(5, envelope.getMinX());
+            ps.setDouble(6, envelope.getMaxX());
+            ps.setDouble(7, envelope.getMinY());
+            ps.setDouble(8, envelope.getMaxY());
+            ps.executeUpdate();
+        }
+    }
+
+    private static boolean contains(final List<GeometryRTree.Entry> entries, final String documentUri, final NodeId nodeId) {
+        for (final GeometryRTree.Entry entry : entries) {
+            if (entry.documentUri.equals(documentUri) && entry.nodeId.equals(nodeId))
+                return true;
+        }
+        return false;
+    }
+}
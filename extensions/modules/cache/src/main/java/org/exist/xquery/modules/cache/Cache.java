@@ -22,31 +22,69 @@
 package org.exist.xquery.modules.cache;
 
 import com.github.benmanes.caffeine.cache.Caffeine;
+import org.exist.storage.CollectionVersions;
+import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryWatchDog;
+import org.exist.xquery.functions.array.ArrayType;
+import org.exist.xquery.functions.map.AbstractMapType;
+import org.exist.xquery.value.AtomicValue;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.NodeValue;
 import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceIterator;
 import org.exist.xquery.value.StringValue;
+import org.exist.xquery.value.Type;
 import org.exist.xquery.value.ValueSequence;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * The cache itself.
  *
  * Just a small wrapper around {@link com.github.benmanes.caffeine.cache.Cache} to manage
  * translating to/from sequences
+ *
+ * Entries may depend on collections, in which case they are invalidated
+ * when a document (XML or binary) within one of those collections, or their
+ * sub-collections, is stored, updated or removed, or when one of those
+ * collections, or their ancestors, is removed or moved. The
+ * {@link CollectionVersions} of the database are checked when an entry
+ * is read, and an entry which is no longer current is discarded.
  */
 class Cache {
 
+    /**
+     * Thread -> the computation, of any cache, which it is waiting for.
+     */
+    private static final Map<Thread, Computation> WAITING = new HashMap<>();
+
+    /**
+     * How often a caller waiting for a computation checks whether its query was killed or timed out.
+     */
+    private static final long WAIT_CHECK_INTERVAL = 100;
+
 	private final CacheConfig config;
-	private final com.github.benmanes.caffeine.cache.Cache<String, Sequence> store;
+	private final com.github.benmanes.caffeine.cache.Cache<String, Entry> store;
+
+    /**
+     * Key -> the value being computed for it by {@link #getOrCompute(String, CollectionVersions, XmldbURI[], XQueryWatchDog, ValueComputer)}.
+     */
+    private final Map<String, Computation> computations = new ConcurrentHashMap<>();
 
 	public Cache(final CacheConfig config) {
 		this.config = config;
         final Caffeine<Object, Object> cacheBuilder = Caffeine.newBuilder();
 
         config.getMaximumSize().map(cacheBuilder::maximumSize);
+        config.getMaximumWeight().map(weight -> cacheBuilder.maximumWeight(weight).weigher((String key, Entry entry) -> entry.weight));
         config.getExpireAfterAccess().map(ms -> cacheBuilder.expireAfterAccess(ms, TimeUnit.MILLISECONDS));
 
         this.store = cacheBuilder.build();
@@ -57,9 +95,9 @@ class Cache {
 	}
 
     public Sequence put(final String key, final Sequence value) {
-	    final Sequence previous = store.asMap().put(key, value);
-	    if (previous != null) {
-	        return previous;
+	    final Entry previous = store.asMap().put(key, newEntry(value, null));
+	    if (previous != null && previous.isCurrent()) {
+	        return previous.value;
         }
 	    return Sequence.EMPTY_SEQUENCE;
     }
@@ -69,15 +107,19 @@ class Cache {
 
 	    if(keys.length == 0) {
 	        // all keys
-            for(final Sequence value : store.asMap().values()) {
-                values.addAll(value);
+            for(final Map.Entry<String, Entry> entry : store.asMap().entrySet()) {
+                if (current(entry.getKey(), entry.getValue()) != null) {
+                    values.addAll(entry.getValue().value);
+                }
             }
         } else {
 	        // just the specified keys
-            final Map<String, Sequence> entries = store.getAllPresent(Arrays.asList(keys));
+            final Map<String, Entry> entries = store.getAllPresent(Arrays.asList(keys));
 
-            for (final Sequence value : entries.values()) {
-                values.addAll(value);
+            for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+                if (current(entry.getKey(), entry.getValue()) != null) {
+                    values.addAll(entry.getValue().value);
+                }
             }
         }
 
@@ -86,27 +128,111 @@ class Cache {
 
     public Sequence listKeys() throws XPathException {
         final ValueSequence keys = new ValueSequence();
-	    for(final String key : store.asMap().keySet()) {
-            keys.add(new StringValue(key));
+	    for(final Map.Entry<String, Entry> entry : store.asMap().entrySet()) {
+	        if (current(entry.getKey(), entry.getValue()) != null) {
+                keys.add(new StringValue(entry.getKey()));
+            }
         }
         return keys;
     }
 
     public Sequence get(final String key) {
-	    final Sequence value = store.getIfPresent(key);
-	    if(value == null) {
+	    final Entry entry = current(key, store.getIfPresent(key));
+	    if(entry == null) {
 	        return Sequence.EMPTY_SEQUENCE;
         } else {
-	        return value;
+	        return entry.value;
+        }
+    }
+
+    /**
+     * Get the value associated with the key, or if there is none, compute and store it.
+     *
+     * Only one value is computed for a key at a time; concurrent callers for the same key
+     * wait for that computation and receive its value, or its error.
+     * Should one of the dependencies change whilst the value is being computed,
+     * then the value is still returned to the callers, but it is not stored.
+     *
+     * A caller which would wait for a computation that is itself, directly or through
+     * other computations, waiting for the caller, fails instead of deadlocking. A caller
+     * also stops waiting once the watchdog of its query kills it or times it out.
+     *
+     * @param key the key
+     * @param collectionVersions the modification stamps of the collections of the database
+     * @param dependencies the URIs of the collections which the value depends upon
+     * @param watchDog the watchdog of the calling query
+     * @param computer computes the value
+     *
+     * @return the value
+     *
+     * @throws XPathException if the value could not be computed, if waiting for it would deadlock,
+     *     or if the calling query was terminated whilst waiting
+     * @throws InterruptedException if interrupted whilst waiting for another caller to compute the value
+     */
+    public Sequence getOrCompute(final String key, final CollectionVersions collectionVersions, final XmldbURI[] dependencies, final XQueryWatchDog watchDog, final ValueComputer computer) throws XPathException, InterruptedException {
+        final Entry existing = current(key, store.getIfPresent(key));
+        if (existing != null) {
+            return existing.value;
+        }
+
+        final Computation computation = new Computation();
+        final Computation inFlight = computations.putIfAbsent(key, computation);
+        if (inFlight != null) {
+            return await(key, inFlight, watchDog);
+        }
+
+        try {
+            // the value may have been stored after we looked, but before we started computing
+            final Entry stored = current(key, store.getIfPresent(key));
+            if (stored != null) {
+                computation.result.complete(stored.value);
+                return stored.value;
+            }
+
+            // taken before computing, so that any change during the computation is detected
+            final Dependencies entryDependencies = dependencies.length == 0 ? null : new Dependencies(collectionVersions, dependencies);
+
+            final Sequence value;
+            try {
+                value = computer.compute();
+            } catch (final Throwable e) {
+                // also for errors, e.g. a StackOverflowError, else the waiting callers would never finish
+                computation.result.completeExceptionally(e);
+                throw e;
+            }
+
+            final Entry entry = newEntry(value, entryDependencies);
+            if (entry.isCurrent()) {
+                store.put(key, entry);
+            }
+
+            computation.result.complete(value);
+            return value;
+        } finally {
+            computations.remove(key, computation);
+            if (!computation.result.isDone()) {
+                // failed whilst storing the value
+                computation.result.completeExceptionally(new IllegalStateException("The value for the key: " + key + " could not be stored"));
+            }
         }
     }
 
+    /**
+     * @param key the key
+     *
+     * @return true if the current thread is computing the value for the key
+     */
+    public boolean isComputing(final String key) {
+        final Computation computation = computations.get(key);
+        return computation != null && computation.thread == Thread.currentThread();
+    }
+
     public Sequence remove(final String key) {
-        final Sequence prevValue = store.asMap().remove(key);
-        if(prevValue == null) {
+        final Entry prevEntry = store.asMap().remove(key);
+        if(prevEntry == null) {
             return Sequence.EMPTY_SEQUENCE;
         } else {
-            return prevValue;
+            return prevEntry.value;
         }
     }
 
@@ -117,4 +243,197 @@ class Cache {
     public void cleanup() {
 	    store.cleanUp();
     }
+
+    private Entry newEntry(final Sequence value, final Dependencies dependencies) {
+        final int weight = config.getMaximumWeight().isPresent() ? weigh(value) : 1;
+        return new Entry(value, dependencies, weight);
+    }
+
+    /**
+     * Discards an entry whose dependencies have changed since it was computed.
+     *
+     * @param key the key of the entry
+     * @param entry the entry, or null
+     *
+     * @return the entry, or null if there was none or it was discarded
+     */
+    private Entry current(final String key, final Entry entry) {
+        if (entry == null || entry.isCurrent()) {
+            return entry;
+        }
+        store.asMap().remove(key, entry);
+        return null;
+    }
+
+    /**
+     * Waits for the computation of a value by another thread.
+     *
+     * @param key the key of the value
+     * @param computation the computation
+     * @param watchDog the watchdog of the calling query
+     *
+     * @return the value
+     *
+     * @throws XPathException if the value could not be computed, if waiting for it would deadlock,
+     *     or if the calling query was terminated whilst waiting
+     * @throws InterruptedException if interrupted whilst waiting
+     */
+    private static Sequence await(final String key, final Computation computation, final XQueryWatchDog watchDog) throws XPathException, InterruptedException {
+        final Thread current = Thread.currentThread();
+        synchronized (WAITING) {
+            // follow whom the computing thread is waiting for, and so on; stop at a finished
+            // computation, as its thread may since be waiting for something else
+            for (Computation c = computation; c != null && !c.result.isDone(); c = WAITING.get(c.thread)) {
+                if (c.thread == current) {
+                    throw new XPathException(CacheModule.RECURSIVE_COMPUTATION, "The value for the key: " + key + " is being computed by a query which is waiting for this query");
+                }
+            }
+            WAITING.put(current, computation);
+        }
+
+        try {
+            return computation.await(watchDog);
+        } finally {
+            synchronized (WAITING) {
+                WAITING.remove(current);
+            }
+        }
+    }
+
+    /**
+     * Estimates the number of bytes of memory used by a sequence.
+     *
+     * @param value the sequence
+     *
+     * @return the estimated size
+     */
+    static int weigh(final Sequence value) {
+        long weight = 16;
+        try {
+            for (final SequenceIterator it = value.iterate(); it.hasNext(); ) {
+                weight += weighItem(it.nextItem());
+                if (weight >= Integer.MAX_VALUE) {
+                    return Integer.MAX_VALUE;
+                }
+            }
+        } catch (final XPathException e) {
+            // can not happen for a stored value; weigh what we have seen
+        }
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    private static long weighItem(final Item item) throws XPathException {
+        if (Type.subTypeOf(item.getType(), Type.NODE)) {
+            if (((NodeValue) item).getImplementationType() == NodeValue.PERSISTENT_NODE) {
+                // just a reference to the stored node
+                return 64;
+            }
+            return 64 + 2L * item.getStringValue().length();
+
+        } else if (item.getType() == Type.MAP) {
+            final AbstractMapType map = (AbstractMapType) item;
+            long weight = 64;
+            for (final SequenceIterator it = map.keys().iterate(); it.hasNext(); ) {
+                final AtomicValue key = (AtomicValue) it.nextItem();
+                weight += weighItem(key) + weigh(map.get(key));
+            }
+            return weight;
+
+        } else if (item.getType() == Type.ARRAY) {
+            final ArrayType array = (ArrayType) item;
+            long weight = 64;
+            for (int i = 0; i < array.getSize(); i++) {
+                weight += weigh(array.get(i));
+            }
+            return weight;
+
+        } else if (Type.subTypeOf(item.getType(), Type.FUNCTION_REFERENCE)) {
+            return 256;
+
+        } else {
+            return 32 + 2L * item.getStringValue().length();
+        }
+    }
+
+    /**
+     * Computes a value to be stored in the cache.
+     */
+    @FunctionalInterface
+    interface ValueComputer {
+        Sequence compute() throws XPathException;
+    }
+
+    private static class Entry {
+        final Sequence value;
+        final Dependencies dependencies;
+        final int weight;
+
+        Entry(final Sequence value, final Dependencies dependencies, final int weight) {
+            this.value = value;
+            this.dependencies = dependencies;
+            this.weight = weight;
+        }
+
+        boolean isCurrent() {
+            return dependencies == null || dependencies.isCurrent();
+        }
+    }
+
+    /**
+     * The collections which a value depends upon, and their
+     * modification stamp from before the value was computed.
+     */
+    private static class Dependencies {
+        final CollectionVersions collectionVersions;
+        final XmldbURI[] collections;
+        final long version;
+
+        Dependencies(final CollectionVersions collectionVersions, final XmldbURI[] collections) {
+            this.collectionVersions = collectionVersions;
+            this.collections = collections;
+            this.version = currentVersion();
+        }
+
+        /**
+         * Stamps are never reused, so the most recent stamp of the collections
+         * differs from {@link #version} as soon as any of them has changed.
+         */
+        private long currentVersion() {
+            long current = 0;
+            for (final XmldbURI collection : collections) {
+                current = Math.max(current, collectionVersions.getVersion(collection));
+            }
+            return current;
+        }
+
+        boolean isCurrent() {
+            return currentVersion() == version;
+        }
+    }
+
+    private static class Computation {
+        final Thread thread = Thread.currentThread();
+        final CompletableFuture<Sequence> result = new CompletableFuture<>();
+
+        Sequence await(final XQueryWatchDog watchDog) throws XPathException, InterruptedException {
+            while (true) {
+                try {
+                    return result.get(WAIT_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+                } catch (final TimeoutException e) {
+                    // throws if the query was killed or has timed out
+                    watchDog.proceed(null);
+                } catch (final ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof XPathException) {
+                        throw (XPathException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+        }
+    }
 }
@@ -32,6 +32,7 @@ public class CacheConfig {
 
     private final Optional<Permissions> permissions;
     private final Optional<Long> maximumSize;
+    private final Optional<Long> maximumWeight;
     private final Optional<Long> expireAfterAccess;
 
     /**
@@ -40,8 +41,19 @@ public class CacheConfig {
      * @param expireAfterAccess The time in milliseconds after the entry is last accessed, that it should expire
      */
     public CacheConfig(final Optional<Permissions> permissions, final Optional<Long> maximumSize, final Optional<Long> expireAfterAccess) {
+        this(permissions, maximumSize, Optional.empty(), expireAfterAccess);
+    }
+
+    /**
+     * @param permissions Any restrictions on cache operations
+     * @param maximumSize The maximimum number of entries in the cache
+     * @param maximumWeight The maximum estimated size in bytes of the values in the cache, may not be combined with maximumSize
+     * @param expireAfterAccess The time in milliseconds after the entry is last accessed, that it should expire
+     */
+    public CacheConfig(final Optional<Permissions> permissions, final Optional<Long> maximumSize, final Optional<Long> maximumWeight, final Optional<Long> expireAfterAccess) {
         this.permissions = permissions;
         this.maximumSize = maximumSize;
+        this.maximumWeight = maximumWeight;
         this.expireAfterAccess = expireAfterAccess;
     }
 
@@ -53,6 +65,10 @@ public class CacheConfig {
         return maximumSize;
     }
 
+    public Optional<Long> getMaximumWeight() {
+        return maximumWeight;
+    }
+
     public Optional<Long> getExpireAfterAccess() {
         return expireAfterAccess;
     }
@@ -22,6 +22,8 @@
 package org.exist.xquery.modules.cache;
 
 import org.exist.storage.serializers.Serializer;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.AnalyzeContextInfo;
 import org.exist.xquery.BasicFunction;
 import org.exist.xquery.FunctionSignature;
 import org.exist.xquery.XPathException;
@@ -33,6 +35,7 @@ import org.xml.sax.SAXException;
 
 import javax.xml.transform.OutputKeys;
 
+import java.net.URISyntaxException;
 import java.util.Collection;
 import java.util.Optional;
 import java.util.Properties;
@@ -62,7 +65,7 @@ public class CacheFunctions extends BasicFunction {
             "Explicitly create a cache with a specific configuration",
             returns(Type.BOOLEAN, "true if the cache was created, false if the cache already exists"),
             FS_PARAM_CACHE_NAME,
-            param("config", Type.MAP, "A map with configuration for the cache. At present cache LRU and permission groups may be specified, for operations on the cache. `maximumSize` is optional and specifies the maximum number of entries. `expireAfterAccess` is optional and specifies the expiry period for infrequently accessed entries (in milliseconds). If a permission group is not specified for an operation, then permissions are not checked for that operation. Should have the format: map { \"maximumSize\": 1000, \"expireAfterAccess\": 120000, \"permissions\": map { \"put-group\": \"group1\", \"get-group\": \"group2\", \"remove-group\": \"group3\", \"clear-group\": \"group4\"} }")
+            param("config", Type.MAP, "A map with configuration for the cache. At present cache LRU and permission groups may be specified, for operations on the cache. `maximumSize` is optional and specifies the maximum number of entries. `maximumWeight` is optional and specifies the maximum estimated size of the values in the cache (in bytes), it may not be combined with `maximumSize`. `expireAfterAccess` is optional and specifies the expiry period for infrequently accessed entries (in milliseconds). If a permission group is not specified for an operation, then permissions are not checked for that operation. Should have the format: map { \"maximumSize\": 1000, \"expireAfterAccess\": 120000, \"permissions\": map { \"put-group\": \"group1\", \"get-group\": \"group2\", \"remove-group\": \"group3\", \"clear-group\": \"group4\"} }")
     );
 
     private static final String FS_NAMES_NAME = "names";
@@ -108,6 +111,27 @@ public class CacheFunctions extends BasicFunction {
             FS_PARAM_KEY
     );
 
+    private static final String FS_GET_OR_COMPUTE_NAME = "get-or-compute";
+    private static final FunctionParameterSequenceType FS_PARAM_COMPUTE = param("compute", Type.FUNCTION_REFERENCE, "A function of no arguments which computes the value");
+    static final FunctionSignature[] FS_GET_OR_COMPUTE = functionSignatures(
+            FS_GET_OR_COMPUTE_NAME,
+            "Get data from the identified cache by key, or if there is none, compute the data by calling the function, store it in the cache with the key, and return it. Whilst the data for a key is being computed, any other calls for the same key wait for it, rather than also computing it. Requires both 'get' and 'put' permissions.",
+            returnsOptMany(Type.ITEM, "The value associated with the key"),
+            arities(
+                    arity(
+                            FS_PARAM_CACHE_NAME,
+                            FS_PARAM_KEY,
+                            FS_PARAM_COMPUTE
+                    ),
+                    arity(
+                            FS_PARAM_CACHE_NAME,
+                            FS_PARAM_KEY,
+                            FS_PARAM_COMPUTE,
+                            optManyParam("collections", Type.STRING, "The paths of the collections which the value depends upon. The value is removed from the cache when a document in any of those collections, or their sub-collections, is stored, updated, or removed, or when any of those collections, or their ancestors, is removed or moved.")
+                    )
+            )
+    );
+
     private static final String FS_REMOVE_NAME = "remove";
     static final FunctionSignature FS_REMOVE = functionSignature(
             FS_REMOVE_NAME,
@@ -202,6 +226,15 @@ public class CacheFunctions extends BasicFunction {
                 final String getKey = toMapKey(args[1]);
                 return get(cacheName, getKey);
 
+            case FS_GET_OR_COMPUTE_NAME:
+                // lazy create cache if it doesn't exist
+                if(!CacheModule.caches.containsKey(cacheName)) {
+                    lazilyCreateCache(cacheName);
+                }
+                final String computeKey = toMapKey(args[1]);
+                final XmldbURI[] dependencies = args.length > 3 ? toCollectionUris(args[3]) : new XmldbURI[0];
+                return getOrCompute(cacheName, computeKey, (FunctionReference) args[2].itemAt(0), dependencies);
+
             case FS_REMOVE_NAME:
                 // lazy create cache if it doesn't exist
                 if(!CacheModule.caches.containsKey(cacheName)) {
@@ -268,6 +301,18 @@ public class CacheFunctions extends BasicFunction {
             maximumSize = Optional.empty();
         }
 
+        final Sequence maximumWeightSeq = configMap.get(new StringValue("maximumWeight"));
+        final Optional<Long> maximumWeight;
+        if(maximumWeightSeq != null && maximumWeightSeq.getItemCount() == 1) {
+            if (maximumSize.isPresent()) {
+                throw new XPathException(this, INVALID_CONFIGURATION, "maximumSize and maximumWeight may not both be specified");
+            }
+            final long l = maximumWeightSeq.itemAt(0).toJavaObject(Long.class);
+            maximumWeight = Optional.of(l);
+        } else {
+            maximumWeight = Optional.empty();
+        }
+
         final Sequence expireAfterAccessSeq = configMap.get(new StringValue("expireAfterAccess"));
         final Optional<Long> expireAfterAccess;
         if(expireAfterAccessSeq != null && expireAfterAccessSeq.getItemCount() == 1) {
@@ -277,7 +322,7 @@ public class CacheFunctions extends BasicFunction {
             expireAfterAccess = Optional.empty();
         }
 
-        return new CacheConfig(permissions, maximumSize, expireAfterAccess);
+        return new CacheConfig(permissions, maximumSize, maximumWeight, expireAfterAccess);
     }
 
     private Optional<String> getStringValue(final String key, final AbstractMapType map) {
@@ -375,6 +420,33 @@ public class CacheFunctions extends BasicFunction {
         return cache.get(key);
     }
 
+    private Sequence getOrCompute(final String cacheName, final String key, final FunctionReference compute, final XmldbURI[] dependencies) throws XPathException {
+        final Cache cache = CacheModule.caches.get(cacheName);
+
+        // check permissions
+        if(!context.getEffectiveUser().hasDbaRole()) {
+            final Optional<String> getGroup = cache.getConfig().getPermissions().flatMap(CacheConfig.Permissions::getGetGroup);
+            final Optional<String> putGroup = cache.getConfig().getPermissions().flatMap(CacheConfig.Permissions::getPutGroup);
+            if ((getGroup.isPresent() && !context.getEffectiveUser().hasGroup(getGroup.get()))
+                    || (putGroup.isPresent() && !context.getEffectiveUser().hasGroup(putGroup.get()))) {
+                throw new XPathException(this, INSUFFICIENT_PERMISSIONS, "User does not have the appropriate permissions to get and put data in this cache");
+            }
+        }
+
+        // waiting for ourselves would never finish
+        if (cache.isComputing(key)) {
+            throw new XPathException(this, RECURSIVE_COMPUTATION, "The value for the key: " + key + " is already being computed by this query");
+        }
+
+        try (final FunctionReference ref = compute) {
+            ref.analyze(new AnalyzeContextInfo(this, 0));
+            return cache.getOrCompute(key, context.getBroker().getBrokerPool().getCollectionVersions(), dependencies, context.getWatchDog(), () -> ref.evalFunction(null, null, new Sequence[0]));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XPathException(this, "Interrupted whilst waiting for the value of the key: " + key + " to be computed", e);
+        }
+    }
+
     private Sequence remove(final String cacheName, final String key) throws XPathException {
         final Cache cache = CacheModule.caches.get(cacheName);
 
@@ -454,6 +526,27 @@ public class CacheFunctions extends BasicFunction {
         return serializeKey(key);
     }
 
+    private XmldbURI[] toCollectionUris(final Sequence collections) throws XPathException {
+        final XmldbURI[] uris = new XmldbURI[collections.getItemCount()];
+        int i = 0;
+        for (final SequenceIterator it = collections.iterate(); it.hasNext(); ) {
+            final String collection = it.nextItem().getStringValue();
+            try {
+                String path = XmldbURI.xmldbUriFor(collection).toCollectionPathURI().getCollectionPath();
+                if (path.length() > 1 && path.endsWith("/")) {
+                    path = path.substring(0, path.length() - 1);
+                }
+                if (!path.startsWith("/")) {
+                    throw new XPathException(this, INVALID_COLLECTION_PATH, "The collection path must be absolute: " + collection);
+                }
+                uris[i++] = XmldbURI.create(path);
+            } catch (final URISyntaxException e) {
+                throw new XPathException(this, INVALID_COLLECTION_PATH, "Invalid collection path: " + collection, null, e);
+            }
+        }
+        return uris;
+    }
+
     private String[] toMapKeys(final Sequence keys) throws XPathException {
         final String[] mapKeys = new String[keys.getItemCount()];
 
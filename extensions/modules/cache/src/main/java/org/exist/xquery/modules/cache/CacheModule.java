@@ -62,6 +62,8 @@ public class CacheModule extends AbstractInternalModule {
             CacheFunctions.FS_LIST,
             CacheFunctions.FS_KEYS,
             CacheFunctions.FS_GET,
+            CacheFunctions.FS_GET_OR_COMPUTE[0],
+            CacheFunctions.FS_GET_OR_COMPUTE[1],
             CacheFunctions.FS_REMOVE,
             CacheFunctions.FS_CLEAR[0],
             CacheFunctions.FS_CLEAR[1],
@@ -70,6 +72,7 @@ public class CacheModule extends AbstractInternalModule {
 
     private static final String PARAM_NAME_ENABLE_LAZY_CREATION = "enableLazyCreation";
     private static final String PARAM_NAME_LAZY_MAXIMUM_SIZE = "lazy.maximumSize";
+    private static final String PARAM_NAME_LAZY_MAXIMUM_WEIGHT = "lazy.maximumWeight";
     private static final String PARAM_NAME_LAZY_EXPIRE_AFTER_ACCESS = "lazy.expireAfterAccess";
     private static final String PARAM_NAME_LAZY_PUT_GROUP = "lazy.putGroup";
     private static final String PARAM_NAME_LAZY_GET_GROUP = "lazy.getGroup";
@@ -126,6 +129,9 @@ public class CacheModule extends AbstractInternalModule {
 
     static final ErrorCodes.ErrorCode INSUFFICIENT_PERMISSIONS = new CacheModuleErrorCode("insufficient-permissions", "The calling user does not have sufficient permissions to operate on the cache.");
     static final ErrorCodes.ErrorCode KEY_SERIALIZATION = new CacheModuleErrorCode("key-serialization", "Unable to serialize the provided key.");
+    static final ErrorCodes.ErrorCode INVALID_CONFIGURATION = new CacheModuleErrorCode("invalid-configuration", "The configuration of the cache is invalid.");
+    static final ErrorCodes.ErrorCode INVALID_COLLECTION_PATH = new CacheModuleErrorCode("invalid-collection-path", "The collection path which the value depends upon is invalid.");
+    static final ErrorCodes.ErrorCode RECURSIVE_COMPUTATION = new CacheModuleErrorCode("recursive-computation", "The value for the key is already being computed by the calling query, or by a query which is waiting for the calling query.");
     static final ErrorCodes.ErrorCode LAZY_CREATION_DISABLED = new CacheModuleErrorCode("lazy-creation-disabled", "There is no such named cache, and lazy creation of the cache has been disabled.");
 
     private static Optional<CacheConfig> parseParameters(final Map<String, List<?>> parameters) {
@@ -157,6 +163,19 @@ public class CacheModule extends AbstractInternalModule {
                     }
                 });
 
+        final Optional<Long> maximumWeight = getFirstString(parameters, PARAM_NAME_LAZY_MAXIMUM_WEIGHT)
+                .map(s -> {
+                    try {
+                        return Long.parseLong(s);
+                    } catch (final NumberFormatException e) {
+                        LOG.warn("Unable to set {} to: {}. Ignoring.", PARAM_NAME_LAZY_MAXIMUM_WEIGHT, s);
+                        return null;
+                    }
+                });
+        if (maximumSize.isPresent() && maximumWeight.isPresent()) {
+            LOG.warn("{} may not be combined with {}. Ignoring {}.", PARAM_NAME_LAZY_MAXIMUM_WEIGHT, PARAM_NAME_LAZY_MAXIMUM_SIZE, PARAM_NAME_LAZY_MAXIMUM_WEIGHT);
+        }
+
         final Optional<Long> expireAfterAccess = getFirstString(parameters, PARAM_NAME_LAZY_EXPIRE_AFTER_ACCESS)
                 .map(s -> {
                     try {
@@ -168,7 +187,7 @@ public class CacheModule extends AbstractInternalModule {
                 });
 
 
-        return Optional.of(new CacheConfig(permissions, maximumSize, expireAfterAccess));
+        return Optional.of(new CacheConfig(permissions, maximumSize, maximumWeight.filter(w -> !maximumSize.isPresent()), expireAfterAccess));
     }
 
     private static Optional<String> getFirstString(final Map<String, List<?>> parameters, final String paramName) {
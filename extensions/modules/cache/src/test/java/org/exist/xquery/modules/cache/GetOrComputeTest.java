@@ -0,0 +1,303 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.modules.cache;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.lock.Lock;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.TerminatedException;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.XQueryWatchDog;
+import org.exist.xquery.value.Sequence;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static org.junit.Assert.*;
+
+public class GetOrComputeTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @Test
+    public void concurrentCallersShareComputation() throws Exception {
+        final String query = "cache:get-or-compute('single-flight', 'key', function() { util:wait(1000), util:uuid() })";
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final Future<String>[] results = new Future[4];
+            for (int i = 0; i < results.length; i++) {
+                results[i] = executor.submit(() -> executeQuery(query).getStringValue());
+            }
+
+            final String first = results[0].get();
+            for (int i = 1; i < results.length; i++) {
+                assertEquals(first, results[i].get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void recursiveComputation() throws EXistException, PermissionDeniedException {
+        try {
+            executeQuery("cache:get-or-compute('recursive', 'key', function() { cache:get-or-compute('recursive', 'key', function() { 1 }) })");
+            fail("Should not be able to compute a value for a key whilst computing it");
+        } catch (final XPathException e) {
+            assertEquals(CacheModule.RECURSIVE_COMPUTATION, e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void invalidatedByStore() throws Exception {
+        final XmldbURI collectionUri = XmldbURI.ROOT_COLLECTION_URI.append("get-or-compute");
+        final XmldbURI otherCollectionUri = XmldbURI.ROOT_COLLECTION_URI.append("get-or-compute-other");
+
+        final String query = "cache:get-or-compute('dependencies', 'key', function() { util:uuid() }, '" + collectionUri + "')";
+        final String computed = executeQuery(query).getStringValue();
+        assertEquals(computed, executeQuery(query).getStringValue());
+
+        // a change in an unrelated collection
+        storeDocument(otherCollectionUri, "other.xml");
+        assertEquals(computed, executeQuery(query).getStringValue());
+
+        // a change in a sub-collection of the dependency
+        storeDocument(collectionUri.append("sub"), "doc.xml");
+        assertTrue(executeQuery("cache:get('dependencies', 'key')").isEmpty());
+        assertNotEquals(computed, executeQuery(query).getStringValue());
+    }
+
+    @Test
+    public void mutuallyDependentComputations() throws Exception {
+        final String queryA = "cache:get-or-compute('mutual', 'a', function() { util:wait(1000), cache:get-or-compute('mutual', 'b', function() { 1 }) })";
+        final String queryB = "cache:get-or-compute('mutual', 'b', function() { util:wait(1000), cache:get-or-compute('mutual', 'a', function() { 2 }) })";
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<Sequence> resultA = executor.submit(() -> executeQuery(queryA));
+            final Future<Sequence> resultB = executor.submit(() -> executeQuery(queryB));
+
+            // whichever waits last closes the cycle and fails, which also fails the other
+            assertRecursiveComputation(resultA);
+            assertRecursiveComputation(resultB);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void errorIsPassedToWaitingCallers() throws Exception {
+        final Cache cache = new Cache(new CacheConfig(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()));
+        final XQueryWatchDog watchDog = new XQueryContext(existEmbeddedServer.getBrokerPool()).getWatchDog();
+        final CountDownLatch computing = new CountDownLatch(1);
+        final CountDownLatch fail = new CountDownLatch(1);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<Sequence> computed = executor.submit(() -> cache.getOrCompute("key", null, new XmldbURI[0], watchDog, () -> {
+                computing.countDown();
+                try {
+                    fail.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new StackOverflowError();
+            }));
+            computing.await();
+            final Future<Sequence> waited = executor.submit(() -> cache.getOrCompute("key", null, new XmldbURI[0], watchDog, () -> {
+                throw new AssertionError("Should have waited for the computation in progress");
+            }));
+            Thread.sleep(200);
+            fail.countDown();
+
+            assertStackOverflow(computed);
+            assertStackOverflow(waited);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void waitingEndsWithQueryTimeout() throws Exception {
+        final String slowQuery = "cache:get-or-compute('slow', 'key', function() { util:wait(5000), 1 })";
+        final String timedQuery = "declare option exist:timeout '500';\n" +
+                "cache:get-or-compute('slow', 'key', function() { 2 })";
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<Sequence> slow = executor.submit(() -> executeQuery(slowQuery));
+            Thread.sleep(500);
+
+            final long start = System.currentTimeMillis();
+            try {
+                executeQuery(timedQuery);
+                fail("Should have stopped waiting once the query timed out");
+            } catch (final TerminatedException e) {
+                assertTrue(System.currentTimeMillis() - start < 4000);
+            }
+
+            assertEquals(1, (int) slow.get(30, TimeUnit.SECONDS).toJavaObject(Integer.class));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void invalidatedByBinaryStore() throws Exception {
+        final XmldbURI collectionUri = XmldbURI.ROOT_COLLECTION_URI.append("get-or-compute-binary");
+        storeDocument(collectionUri, "doc.xml");
+
+        final String query = "cache:get-or-compute('binary-dependencies', 'key', function() { util:uuid() }, '" + collectionUri + "')";
+        final String computed = executeQuery(query).getStringValue();
+        assertEquals(computed, executeQuery(query).getStringValue());
+
+        storeBinaryDocument(collectionUri, "doc.bin");
+        assertTrue(executeQuery("cache:get('binary-dependencies', 'key')").isEmpty());
+        assertNotEquals(computed, executeQuery(query).getStringValue());
+    }
+
+    @Test
+    public void invalidatedByCollectionRemoval() throws Exception {
+        final XmldbURI collectionUri = XmldbURI.ROOT_COLLECTION_URI.append("get-or-compute-removed");
+        storeDocument(collectionUri, "doc.xml");
+
+        // depends upon a sub-collection which was never changed
+        final String query = "cache:get-or-compute('removal-dependencies', 'key', function() { util:uuid() }, '" + collectionUri.append("sub") + "')";
+        final String computed = executeQuery(query).getStringValue();
+        assertEquals(computed, executeQuery(query).getStringValue());
+
+        removeCollection(collectionUri);
+        assertTrue(executeQuery("cache:get('removal-dependencies', 'key')").isEmpty());
+        assertNotEquals(computed, executeQuery(query).getStringValue());
+    }
+
+    @Test
+    public void maximumWeight() throws EXistException, PermissionDeniedException, XPathException {
+        final Sequence result = executeQuery(
+                "cache:create('weighed', map { 'maximumWeight': 1000 }),\n" +
+                "(1 to 100) ! cache:put('weighed', 'key' || ., string-join((1 to 10) ! 'value')),\n" +
+                "cache:cleanup('weighed'),\n" +
+                "count(cache:keys('weighed'))");
+        final int count = result.itemAt(result.getItemCount() - 1).toJavaObject(Integer.class);
+        assertTrue(count > 0);
+        assertTrue(count < 100);
+    }
+
+    @Test
+    public void maximumSizeAndWeight() throws EXistException, PermissionDeniedException {
+        try {
+            executeQuery("cache:create('sized-and-weighed', map { 'maximumSize': 10, 'maximumWeight': 1000 })");
+            fail("Should not be able to configure both maximumSize and maximumWeight");
+        } catch (final XPathException e) {
+            assertEquals(CacheModule.INVALID_CONFIGURATION, e.getErrorCode());
+        }
+    }
+
+    private static void storeDocument(final XmldbURI collectionUri, final String docName) throws Exception {
+        final BrokerPool brokerPool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = brokerPool.get(Optional.of(brokerPool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = brokerPool.getTransactionManager().beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, collectionUri);
+            broker.saveCollection(transaction, collection);
+            final String xml = "<doc/>";
+            final IndexInfo info = collection.validateXMLResource(transaction, broker, XmldbURI.create(docName), xml);
+            collection.store(transaction, broker, info, xml);
+            transaction.commit();
+        }
+    }
+
+    private static void storeBinaryDocument(final XmldbURI collectionUri, final String docName) throws Exception {
+        final BrokerPool brokerPool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = brokerPool.get(Optional.of(brokerPool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = brokerPool.getTransactionManager().beginTransaction();
+             final Collection collection = broker.openCollection(collectionUri, Lock.LockMode.WRITE_LOCK)) {
+            final byte[] data = "binary".getBytes(UTF_8);
+            try (final ByteArrayInputStream is = new ByteArrayInputStream(data)) {
+                collection.addBinaryResource(transaction, broker, XmldbURI.create(docName), is, "application/octet-stream", data.length);
+            }
+            transaction.commit();
+        }
+    }
+
+    private static void removeCollection(final XmldbURI collectionUri) throws Exception {
+        final BrokerPool brokerPool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = brokerPool.get(Optional.of(brokerPool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = brokerPool.getTransactionManager().beginTransaction();
+             final Collection collection = broker.openCollection(collectionUri, Lock.LockMode.WRITE_LOCK)) {
+            broker.removeCollection(transaction, collection);
+            transaction.commit();
+        }
+    }
+
+    private static void assertRecursiveComputation(final Future<Sequence> result) throws InterruptedException, TimeoutException {
+        try {
+            result.get(30, TimeUnit.SECONDS);
+            fail("Should not be able to compute values which depend upon each other");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof XPathException);
+            assertEquals(CacheModule.RECURSIVE_COMPUTATION, ((XPathException) e.getCause()).getErrorCode());
+        }
+    }
+
+    private static void assertStackOverflow(final Future<Sequence> result) throws InterruptedException, TimeoutException {
+        try {
+            result.get(30, TimeUnit.SECONDS);
+            fail("Should have failed with the error of the computation");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof StackOverflowError);
+        }
+    }
+
+    private static Sequence executeQuery(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool brokerPool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = brokerPool.getBroker();
+             final Txn transaction = brokerPool.getTransactionManager().beginTransaction()) {
+
+            final Sequence result = brokerPool.getXQueryService().execute(broker, query, null);
+
+            transaction.commit();
+
+            return result;
+        }
+    }
+}
@@ -24,14 +24,16 @@ package org.exist.xquery.modules.counter;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Hashtable;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -41,7 +43,26 @@ import org.exist.backup.RawDataBackup;
 import org.exist.indexing.RawBackupSupport;
 import org.exist.util.FileUtils;
 
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
 /**
+ * Persistent named counters.
+ *
+ * The values of the counters are held in memory and incremented atomically.
+ * Rather than writing the counter store file on every increment, a block of
+ * {@link #RESERVATION_SIZE} values is reserved for a counter by persisting
+ * the highest value of the block; values are then handed out from the block
+ * without touching the file. Should the database stop, whether cleanly or not,
+ * the counters continue from the end of their last reserved block, so a value
+ * is never handed out twice, but the unused values of the block are skipped.
+ *
+ * The counter store file is replaced atomically, so a crash whilst writing it
+ * leaves the previous reservations intact.
+ *
  * @author <a href="mailto:jasper.linthorst@gmail.com">Jasper Linthorst</a>
  */
 public class Counters implements RawBackupSupport {
@@ -53,10 +74,15 @@ public class Counters implements RawBackupSupport {
     public final static String COUNTERSTORE = "counters";
     public final static String DELIMITER = ";";
 
+    /**
+     * The number of values reserved for a counter each time the counter store file is written.
+     */
+    public final static long RESERVATION_SIZE = 1000;
+
     private Path store = null;
-    private Map<String, Long> counters = new Hashtable<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
 
-    private Counters(final Optional<Path> dataDir) throws EXistException {
+    Counters(final Optional<Path> dataDir) throws EXistException {
         this.store = FileUtils.resolve(dataDir, COUNTERSTORE);
         loadStore();
     }
@@ -76,7 +102,8 @@ public class Counters implements RawBackupSupport {
                         final String[] tokens = line.split(DELIMITER);
 
                         try {
-                            counters.put(tokens[0], Long.parseLong(tokens[1]));
+                            // continue after the values which were reserved
+                            counters.put(tokens[0], new Counter(Long.parseLong(tokens[1])));
                         } catch (final NumberFormatException e) {
                             throw new EXistException("Corrupt counter store file: " + store.toAbsolutePath().toString());
                         }
@@ -97,7 +124,7 @@ public class Counters implements RawBackupSupport {
      *
      * @throws EXistException if an error occurs
      */
-    public static Counters getInstance(final Path dataDir) throws EXistException {
+    public static synchronized Counters getInstance(final Path dataDir) throws EXistException {
         if (instance == null) {
             LOG.debug("Initializing counters.");
             instance = new Counters(Optional.ofNullable(dataDir));
@@ -134,18 +161,20 @@ public class Counters implements RawBackupSupport {
      * @throws EXistException if an error occurs
      */
     public synchronized long createCounter(final String counterName, final long initValue) throws EXistException {
-        if (counters.containsKey(counterName)) {
-            return counters.get(counterName);
+        final Counter existing = counters.get(counterName);
+        if (existing != null) {
+            return existing.value.get();
         } else {
-            counters.put(counterName, initValue);
+            counters.put(counterName, new Counter(initValue));
 
             try {
                 serializeTable();
             } catch (final IOException e) {
+                counters.remove(counterName);
                 throw new EXistException("Unable to save to counter store file.", e);
             }
 
-            return counters.get(counterName);
+            return initValue;
         }
     }
 
@@ -159,8 +188,7 @@ public class Counters implements RawBackupSupport {
      * @throws EXistException if an error occurs
      */
     public synchronized boolean destroyCounter(final String counterName) throws EXistException {
-        if (counters.containsKey(counterName)) {
-            counters.remove(counterName);
+        if (counters.remove(counterName) != null) {
 
             try {
                 serializeTable();
@@ -183,23 +211,42 @@ public class Counters implements RawBackupSupport {
      *
      * @throws EXistException if an error occurs
      */
-    public synchronized long nextValue(final String counterName) throws EXistException {
-        if (!counters.containsKey(counterName)) {
+    public long nextValue(final String counterName) throws EXistException {
+        final Counter counter = counters.get(counterName);
+        if (counter == null) {
             return -1;
         }
 
-        long c = counters.get(counterName);
-        c++;
+        final long c = counter.value.incrementAndGet();
+        if (c > counter.reserved) {
+            reserve(counter, c);
+        }
+        return c;
+    }
 
-        counters.put(counterName, c);
+    /**
+     * Reserves the next block of values for a counter,
+     * unless another thread has already done so.
+     *
+     * @param counter the counter
+     * @param value the value which must be reserved before it can be handed out
+     *
+     * @throws EXistException if the reservation could not be persisted
+     */
+    private synchronized void reserve(final Counter counter, final long value) throws EXistException {
+        if (value <= counter.reserved) {
+            return;
+        }
 
+        // publish the new reservation only once it is persisted, until then
+        // other callers which need it wait for the lock and then check again
+        final long reserved = value + RESERVATION_SIZE - 1;
         try {
-            serializeTable();
+            serializeTable(counter, reserved);
         } catch (final IOException e) {
             throw new EXistException("Unable to save to counter store file.", e);
         }
-
-        return c;
+        counter.reserved = reserved;
     }
 
     /**
@@ -212,16 +259,42 @@ public class Counters implements RawBackupSupport {
     }
 
     /**
-     * Serializes the Map with counters to the filesystem.
+     * Serializes the reserved values of the counters to the filesystem.
+     *
+     * The table is written to a temporary file which is synced
+     * and then moved over the counter store file.
      * 
      * @throws IOException
      */
     private synchronized void serializeTable() throws IOException {
-        try(final PrintWriter pw = new PrintWriter(Files.newBufferedWriter(store, StandardCharsets.UTF_8))) {
-            for(final Map.Entry<String, Long> counter : counters.entrySet()) {
-                pw.println(counter.getKey() + DELIMITER + counter.getValue().toString());
+        serializeTable(null, 0);
+    }
+
+    /**
+     * Serializes the reserved values of the counters to the filesystem,
+     * with a new reserved value for one of the counters.
+     *
+     * @param pending the counter whose reservation is being extended, or null
+     * @param pendingReserved the new reserved value of the pending counter
+     *
+     * @throws IOException if the counter store file could not be written
+     */
+    private synchronized void serializeTable(final Counter pending, final long pendingReserved) throws IOException {
+        final StringBuilder table = new StringBuilder();
+        for(final Map.Entry<String, Counter> counter : counters.entrySet()) {
+            final long reserved = counter.getValue() == pending ? pendingReserved : counter.getValue().reserved;
+            table.append(counter.getKey()).append(DELIMITER).append(reserved).append(System.lineSeparator());
+        }
+
+        final Path tmp = store.resolveSibling(FileUtils.fileName(store) + ".tmp");
+        try (final FileChannel channel = FileChannel.open(tmp, CREATE, TRUNCATE_EXISTING, WRITE)) {
+            final ByteBuffer buf = ByteBuffer.wrap(table.toString().getBytes(StandardCharsets.UTF_8));
+            while (buf.hasRemaining()) {
+                channel.write(buf);
             }
+            channel.force(true);
         }
+        Files.move(tmp, store, ATOMIC_MOVE, REPLACE_EXISTING);
     }
 
     @Override
@@ -239,4 +312,19 @@ public class Counters implements RawBackupSupport {
             backup.closeEntry();
         }
     }
+
+    private static class Counter {
+        final AtomicLong value;
+
+        /**
+         * The highest value which has been persisted, only raised
+         * once the counter store file has been written.
+         */
+        volatile long reserved;
+
+        Counter(final long value) {
+            this.value = new AtomicLong(value);
+            this.reserved = value;
+        }
+    }
 }
@@ -0,0 +1,160 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.modules.counter;
+
+import org.exist.EXistException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class CountersTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void reservesBlocks() throws Exception {
+        final Path dataDir = temporaryFolder.getRoot().toPath();
+        final Counters counters = new Counters(Optional.of(dataDir));
+        assertEquals(0, counters.createCounter("c"));
+
+        assertEquals(1, counters.nextValue("c"));
+        assertEquals("c" + Counters.DELIMITER + Counters.RESERVATION_SIZE, readStore(dataDir));
+
+        for (long i = 2; i <= Counters.RESERVATION_SIZE; i++) {
+            assertEquals(i, counters.nextValue("c"));
+        }
+        assertEquals("c" + Counters.DELIMITER + Counters.RESERVATION_SIZE, readStore(dataDir));
+
+        assertEquals(Counters.RESERVATION_SIZE + 1, counters.nextValue("c"));
+        assertEquals("c" + Counters.DELIMITER + (2 * Counters.RESERVATION_SIZE), readStore(dataDir));
+    }
+
+    @Test
+    public void continuesAfterReservedBlock() throws EXistException {
+        final Path dataDir = temporaryFolder.getRoot().toPath();
+        Counters counters = new Counters(Optional.of(dataDir));
+        counters.createCounter("c", 10);
+        assertEquals(11, counters.nextValue("c"));
+        assertEquals(12, counters.nextValue("c"));
+
+        // as if the database had crashed
+        counters = new Counters(Optional.of(dataDir));
+        assertEquals(10 + Counters.RESERVATION_SIZE + 1, counters.nextValue("c"));
+        assertEquals(-1, counters.nextValue("other"));
+    }
+
+    @Test
+    public void concurrentValuesAreUnique() throws Exception {
+        final Counters counters = new Counters(Optional.of(temporaryFolder.getRoot().toPath()));
+        counters.createCounter("c");
+
+        final int threads = 8;
+        final int valuesPerThread = 5000;
+        final Set<Long> values = ConcurrentHashMap.newKeySet();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final Future<?>[] futures = new Future[threads];
+            for (int i = 0; i < threads; i++) {
+                futures[i] = executor.submit(() -> {
+                    for (int j = 0; j < valuesPerThread; j++) {
+                        assertTrue(values.add(counters.nextValue("c")));
+                    }
+                    return null;
+                });
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(threads * valuesPerThread, values.size());
+        assertEquals(threads * valuesPerThread + 1, counters.nextValue("c"));
+    }
+
+    @Test
+    public void failedReservationHandsOutNoUnpersistedValues() throws Exception {
+        final Path dataDir = temporaryFolder.getRoot().toPath();
+        final Counters counters = new Counters(Optional.of(dataDir));
+        counters.createCounter("c");
+        for (long i = 1; i <= Counters.RESERVATION_SIZE; i++) {
+            assertEquals(i, counters.nextValue("c"));
+        }
+        assertEquals("c" + Counters.DELIMITER + Counters.RESERVATION_SIZE, readStore(dataDir));
+
+        // the temporary counter store file cannot be written whilst a non-empty directory is in its place
+        final Path tmp = dataDir.resolve(Counters.COUNTERSTORE + ".tmp");
+        Files.createDirectory(tmp);
+        Files.createFile(tmp.resolve("blocker"));
+
+        final int threads = 8;
+        final Set<Long> values = ConcurrentHashMap.newKeySet();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final Future<?>[] futures = new Future[threads];
+            for (int i = 0; i < threads; i++) {
+                futures[i] = executor.submit(() -> {
+                    for (int j = 0; j < 100; j++) {
+                        try {
+                            values.add(counters.nextValue("c"));
+                        } catch (final EXistException e) {
+                            // expected, the reservation could not be persisted
+                        }
+                    }
+                    return null;
+                });
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue("Values above the persisted reservation were handed out: " + values, values.isEmpty());
+        assertEquals("c" + Counters.DELIMITER + Counters.RESERVATION_SIZE, readStore(dataDir));
+
+        Files.delete(tmp.resolve("blocker"));
+        Files.delete(tmp);
+        final long next = counters.nextValue("c");
+        assertTrue(next > Counters.RESERVATION_SIZE);
+        assertTrue(Long.parseLong(readStore(dataDir).split(Counters.DELIMITER)[1]) >= next);
+    }
+
+    private static String readStore(final Path dataDir) throws Exception {
+        return new String(Files.readAllBytes(dataDir.resolve(Counters.COUNTERSTORE)), StandardCharsets.UTF_8).trim();
+    }
+}
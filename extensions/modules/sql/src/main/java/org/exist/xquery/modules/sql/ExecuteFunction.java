@@ -67,6 +67,11 @@ import static org.exist.xquery.modules.sql.SQLModule.PREFIX;
  *
  * Execute a SQL statement against a SQL capable Database
  *
+ * sql:execute returns all of the rows of the results in a single in-memory document.
+ * sql:execute-each instead passes each row to a function as soon as it is read,
+ * so that the rows need not all be held in memory at once. sql:execute-batch
+ * executes a PreparedStatement for many sets of parameters using JDBC batching.
+ *
  * @author <a href="mailto:adam@exist-db.org">Adam Retter</a>
  * @version 1.2.0
  */
@@ -105,6 +110,58 @@ public class ExecuteFunction extends BasicFunction {
             )
     );
 
+    private static final String FS_EXECUTE_EACH_NAME = "execute-each";
+
+    private static final FunctionParameterSequenceType FS_PARAM_FETCH_SIZE = param(
+            "fetch-size",
+            Type.INTEGER,
+            "The number of rows that the JDBC driver should fetch from the database at a time, or 0 to use the driver's default." +
+                    " Note that some drivers only honour this when the connection is not in auto-commit mode");
+    private static final FunctionParameterSequenceType FS_PARAM_ROW_FUNCTION = param(
+            "row-function",
+            Type.FUNCTION_REFERENCE,
+            "A function which is called with each row of the results, as an sql:row element in its own document");
+
+    static final FunctionSignature[] FS_EXECUTE_EACH = functionSignatures(
+            FS_EXECUTE_EACH_NAME,
+            "Executes a SQL statement against a SQL db, and calls a function with each row of the results as it is read." +
+                    " Unlike sql:execute, the rows are not all held in memory at once, and the first row is available" +
+                    " before the last has been read.",
+            returnsOptMany(Type.ITEM, "the concatenated results of calling the row-function for each row," +
+                    " followed by an sql:exception element if an error occurred"),
+            arities(
+                    arity(
+                            FS_PARAM_CONNECTION_HANDLE,
+                            param("sql-statement", Type.STRING, "The SQL statement"),
+                            FS_PARAM_MAKE_NODE_FROM_COLUMN_NAME,
+                            FS_PARAM_FETCH_SIZE,
+                            FS_PARAM_ROW_FUNCTION
+                    ),
+                    arity(
+                            FS_PARAM_CONNECTION_HANDLE,
+                            param("statement-handle", Type.LONG, "The prepared statement handle"),
+                            optParam("parameters", Type.ELEMENT, "Parameters for the prepared statement. e.g. <sql:parameters><sql:param sql:type=\"long\">1234</sql:param><sql:param sql:type=\"varchar\"><sql:null/></sql:param></sql:parameters>"),
+                            FS_PARAM_MAKE_NODE_FROM_COLUMN_NAME,
+                            FS_PARAM_FETCH_SIZE,
+                            FS_PARAM_ROW_FUNCTION
+                    )
+            )
+    );
+
+    private static final String FS_EXECUTE_BATCH_NAME = "execute-batch";
+
+    static final FunctionSignature FS_EXECUTE_BATCH = functionSignature(
+            FS_EXECUTE_BATCH_NAME,
+            "Executes a prepared SQL statement against a SQL db once for each set of parameters," +
+                    " sending all of the executions to the db together as a JDBC batch.",
+            returnsOpt(Type.ELEMENT, "an sql:result element, with an sql:update-count element for each set of parameters" +
+                    " in the order they were given, or an sql:exception element. An update count of -2 indicates that" +
+                    " the execution succeeded but the number of affected rows is unknown"),
+            FS_PARAM_CONNECTION_HANDLE,
+            param("statement-handle", Type.LONG, "The prepared statement handle"),
+            optManyParam("parameters", Type.ELEMENT, "A set of parameters for each execution of the prepared statement. e.g. <sql:parameters><sql:param sql:type=\"long\">1234</sql:param></sql:parameters>")
+    );
+
     private final static String PARAMETERS_ELEMENT_NAME = "parameters";
     private final static String PARAM_ELEMENT_NAME = "param";
     private final static String TYPE_ATTRIBUTE_NAME = "type";
@@ -131,13 +188,14 @@ public class ExecuteFunction extends BasicFunction {
      */
     @Override
     public Sequence eval(final Sequence[] args, final Sequence contextSequence) throws XPathException {
+        if (isCalledAs(FS_EXECUTE_EACH_NAME)) {
+            return executeEach(args);
+        } else if (isCalledAs(FS_EXECUTE_BATCH_NAME)) {
+            return executeBatch(args);
+        }
 
         // get the Connection
-        final long connectionUID = ((IntegerValue) args[0].itemAt(0)).getLong();
-        final Connection con = SQLModule.retrieveConnection(context, connectionUID);
-        if (con == null) {
-            throw new XPathException(this, "No such SQL Connection");
-        }
+        final Connection con = retrieveConnection(args[0]);
 
         Element parametersElement = null;
 
@@ -162,15 +220,10 @@ public class ExecuteFunction extends BasicFunction {
 
             } else if (args.length == 4) {
                 //get the prepared statement
-                final long statementUID = ((IntegerValue) args[1].itemAt(0)).getLong();
-                final PreparedStatementWithSQL stmtWithSQL = SQLModule.retrievePreparedStatement(context, statementUID);
+                final PreparedStatementWithSQL stmtWithSQL = retrievePreparedStatement(args[1], con);
                 sql = stmtWithSQL.getSql();
                 stmt = stmtWithSQL.getStmt();
 
-                if (stmt.getConnection() != con) {
-                    throw new XPathException(this, "SQL Connection does not match that used for creating the PreparedStatement");
-                }
-
                 makeNodeFromColumnName = ((BooleanValue) args[3].itemAt(0)).effectiveBooleanValue();
 
                 if (!args[2].isEmpty()) {
@@ -205,6 +258,147 @@ public class ExecuteFunction extends BasicFunction {
         }
     }
 
+    /**
+     * Executes a SQL statement and calls a function with each row of the results.
+     *
+     * @param args arguments from the execute-each() function call
+     *
+     * @return the results of the function calls, followed by an sql:exception element if an error occurred
+     *
+     * @throws XPathException if an error occurs whilst executing the query
+     */
+    private Sequence executeEach(final Sequence[] args) throws XPathException {
+        final Connection con = retrieveConnection(args[0]);
+        final int fetchSize = ((IntegerValue) args[args.length - 2].itemAt(0)).getInt();
+
+        final ValueSequence result = new ValueSequence();
+        Element parametersElement = null;
+        String sql = null;
+        Statement stmt = null;
+
+        try (final FunctionReference rowFunction = (FunctionReference) args[args.length - 1].itemAt(0)) {
+            rowFunction.analyze(new AnalyzeContextInfo(this, 0));
+
+            final boolean makeNodeFromColumnName;
+            final boolean executeResult;
+
+            // Static SQL or PreparedStatement?
+            if (args.length == 5) {
+                sql = args[1].getStringValue();
+                stmt = con.createStatement();
+                makeNodeFromColumnName = ((BooleanValue) args[2].itemAt(0)).effectiveBooleanValue();
+
+                stmt.setFetchSize(fetchSize);
+                executeResult = stmt.execute(sql);
+
+            } else {
+                final PreparedStatementWithSQL stmtWithSQL = retrievePreparedStatement(args[1], con);
+                sql = stmtWithSQL.getSql();
+                stmt = stmtWithSQL.getStmt();
+                makeNodeFromColumnName = ((BooleanValue) args[3].itemAt(0)).effectiveBooleanValue();
+
+                if (!args[2].isEmpty()) {
+                    parametersElement = (Element) args[2].itemAt(0);
+                    setParametersOnPreparedStatement(stmt, parametersElement);
+                }
+
+                stmt.setFetchSize(fetchSize);
+                executeResult = ((PreparedStatement) stmt).execute();
+            }
+
+            if (executeResult) {
+                try (final ResultSet rs = stmt.getResultSet()) {
+                    final ResultSetMetaData rsmd = rs.getMetaData();
+                    final Sequence[] rowArgs = new Sequence[1];
+                    while (rs.next()) {
+                        rowArgs[0] = rowAsElement(makeNodeFromColumnName, rs, rsmd);
+                        result.addAll(rowFunction.evalFunction(null, null, rowArgs));
+                    }
+                }
+            }
+
+            return result;
+
+        } catch (final SQLException sqle) {
+            LOG.error("sql:execute-each() Caught SQLException \"{}\" for SQL: \"{}\"", sqle.getMessage(), sql, sqle);
+            result.add(sqlExceptionAsElement(sqle, sql, parametersElement));
+            return result;
+
+        } finally {
+            // if it's not a prepared statement then close it
+            if (stmt != null && !(stmt instanceof PreparedStatement)) {
+                try {
+                    stmt.close();
+                } catch (final SQLException se) {
+                    LOG.warn("Unable to close JDBC Statement: {}", se.getMessage(), se);
+                }
+            }
+        }
+    }
+
+    /**
+     * Executes a PreparedStatement once for each set of parameters, as a JDBC batch.
+     *
+     * @param args arguments from the execute-batch() function call
+     *
+     * @return An element representing the update counts, or the SQL exception
+     *
+     * @throws XPathException if an error occurs whilst executing the query
+     */
+    private Sequence executeBatch(final Sequence[] args) throws XPathException {
+        final Connection con = retrieveConnection(args[0]);
+        final PreparedStatementWithSQL stmtWithSQL = retrievePreparedStatement(args[1], con);
+        final PreparedStatement stmt = stmtWithSQL.getStmt();
+
+        Element parametersElement = null;
+        try {
+            for (final SequenceIterator i = args[2].iterate(); i.hasNext(); ) {
+                parametersElement = (Element) i.nextItem();
+                setParametersOnPreparedStatement(stmt, parametersElement);
+                stmt.addBatch();
+            }
+            parametersElement = null;
+
+            final int[] updateCounts = stmt.executeBatch();
+            return batchResultAsElement(updateCounts);
+
+        } catch (final SQLException sqle) {
+            LOG.error("sql:execute-batch() Caught SQLException \"{}\" for SQL: \"{}\"", sqle.getMessage(), stmtWithSQL.getSql(), sqle);
+            try {
+                stmt.clearBatch();
+            } catch (final SQLException se) {
+                LOG.warn("Unable to clear JDBC PreparedStatement batch: {}", se.getMessage(), se);
+            }
+            return sqlExceptionAsElement(sqle, stmtWithSQL.getSql(), parametersElement);
+        }
+    }
+
+    private Connection retrieveConnection(final Sequence connectionHandle) throws XPathException {
+        final long connectionUID = ((IntegerValue) connectionHandle.itemAt(0)).getLong();
+        final Connection con = SQLModule.retrieveConnection(context, connectionUID);
+        if (con == null) {
+            throw new XPathException(this, "No such SQL Connection");
+        }
+        return con;
+    }
+
+    private PreparedStatementWithSQL retrievePreparedStatement(final Sequence statementHandle, final Connection con) throws XPathException {
+        final long statementUID = ((IntegerValue) statementHandle.itemAt(0)).getLong();
+        final PreparedStatementWithSQL stmtWithSQL = SQLModule.retrievePreparedStatement(context, statementUID);
+        if (stmtWithSQL == null) {
+            throw new XPathException(this, "No such SQL PreparedStatement");
+        }
+
+        try {
+            if (stmtWithSQL.getStmt().getConnection() != con) {
+                throw new XPathException(this, "SQL Connection does not match that used for creating the PreparedStatement");
+            }
+        } catch (final SQLException e) {
+            throw new XPathException(this, e.getMessage(), e);
+        }
+        return stmtWithSQL;
+    }
+
     private void setParametersOnPreparedStatement(final Statement stmt, final Element parametersElement) throws SQLException, XPathException {
         final String ns = parametersElement.getNamespaceURI();
         if (ns != null && ns.equals(NAMESPACE_URI) && parametersElement.getLocalName().equals(PARAMETERS_ELEMENT_NAME)) {
@@ -301,93 +495,7 @@ public class ExecuteFunction extends BasicFunction {
                     final int iColumns = rsmd.getColumnCount();
 
                     while (rs.next()) {
-                        builder.startElement(new QName("row", NAMESPACE_URI, PREFIX), null);
-                        builder.addAttribute(new QName("index", null, null), String.valueOf(rs.getRow()));
-
-                        // get each tuple in the row
-                        for (int i = 0; i < iColumns; i++) {
-                            final String columnName = rsmd.getColumnLabel(i + 1);
-
-                            if (columnName != null) {
-
-                                String colElement = "field";
-
-                                if (makeNodeFromColumnName && !columnName.isEmpty()) {
-                                    // use column names as the XML node
-
-                                    /*
-                                     * Spaces in column names are replaced with
-                                     * underscore's
-                                     */
-                                    colElement = SQLUtils.escapeXmlAttr(columnName.replace(' ', '_'));
-                                }
-
-                                builder.startElement(new QName(colElement, NAMESPACE_URI, PREFIX), null);
-
-                                if (!makeNodeFromColumnName || columnName.length() <= 0) {
-                                    final String name;
-                                    if (!columnName.isEmpty()) {
-                                        name = SQLUtils.escapeXmlAttr(columnName);
-                                    } else {
-                                        name = "Column: " + (i + 1);
-                                    }
-
-                                    builder.addAttribute(new QName("name", null, null), name);
-                                }
-
-                                builder.addAttribute(new QName(TYPE_ATTRIBUTE_NAME, NAMESPACE_URI, PREFIX), rsmd.getColumnTypeName(i + 1));
-                                builder.addAttribute(new QName(TYPE_ATTRIBUTE_NAME, Namespaces.SCHEMA_NS, "xs"), Type.getTypeName(SQLUtils.sqlTypeToXMLType(rsmd.getColumnType(i + 1))));
-
-                                //get the content
-                                if (rsmd.getColumnType(i + 1) == Types.SQLXML) {
-                                    //parse sqlxml value
-                                    try {
-                                        final SQLXML sqlXml = rs.getSQLXML(i + 1);
-
-                                        if (rs.wasNull()) {
-                                            // Add a null indicator attribute if the value was SQL Null
-                                            builder.addAttribute(new QName("null", NAMESPACE_URI, PREFIX), "true");
-                                        } else {
-                                            try (final Reader charStream = sqlXml.getCharacterStream()) {
-                                                final InputSource src = new InputSource(charStream);
-                                                final XMLReaderPool parserPool = context.getBroker().getBrokerPool().getParserPool();
-                                                XMLReader reader = null;
-                                                try {
-                                                    reader = parserPool.borrowXMLReader();
-
-                                                    final SAXAdapter adapter = new AppendingSAXAdapter(builder);
-                                                    reader.setContentHandler(adapter);
-                                                    reader.setProperty(Namespaces.SAX_LEXICAL_HANDLER, adapter);
-                                                    reader.parse(src);
-                                                } finally {
-                                                    if (reader != null) {
-                                                        parserPool.returnXMLReader(reader);
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    } catch (final Exception e) {
-                                        throw new XPathException("Could not parse column of type SQLXML: " + e.getMessage(), e);
-                                    }
-                                } else {
-                                    //otherwise assume string value
-                                    final String colValue = rs.getString(i + 1);
-
-                                    if (rs.wasNull()) {
-                                        // Add a null indicator attribute if the value was SQL Null
-                                        builder.addAttribute(new QName("null", NAMESPACE_URI, PREFIX), "true");
-                                    } else {
-                                        if (colValue != null) {
-                                            builder.characters(colValue);
-                                        }
-                                    }
-                                }
-
-                                builder.endElement();
-                            }
-                        }
-
-                        builder.endElement();
+                        buildRow(builder, makeNodeFromColumnName, rs, rsmd, iColumns);
                         rowCount++;
                     }
                 }
@@ -420,6 +528,150 @@ public class ExecuteFunction extends BasicFunction {
         }
     }
 
+    /**
+     * Builds an sql:row element from the current row of a ResultSet.
+     */
+    private void buildRow(final MemTreeBuilder builder, final boolean makeNodeFromColumnName,
+            final ResultSet rs, final ResultSetMetaData rsmd, final int iColumns) throws SQLException, XPathException {
+        builder.startElement(new QName("row", NAMESPACE_URI, PREFIX), null);
+        builder.addAttribute(new QName("index", null, null), String.valueOf(rs.getRow()));
+
+        // get each tuple in the row
+        for (int i = 0; i < iColumns; i++) {
+            final String columnName = rsmd.getColumnLabel(i + 1);
+
+            if (columnName != null) {
+
+                String colElement = "field";
+
+                if (makeNodeFromColumnName && !columnName.isEmpty()) {
+                    // use column names as the XML node
+
+                    /*
+                     * Spaces in column names are replaced with
+                     * underscore's
+                     */
+                    colElement = SQLUtils.escapeXmlAttr(columnName.replace(' ', '_'));
+                }
+
+                builder.startElement(new QName(colElement, NAMESPACE_URI, PREFIX), null);
+
+                if (!makeNodeFromColumnName || columnName.length() <= 0) {
+                    final String name;
+                    if (!columnName.isEmpty()) {
+                        name = SQLUtils.escapeXmlAttr(columnName);
+                    } else {
+                        name = "Column: " + (i + 1);
+                    }
+
+                    builder.addAttribute(new QName("name", null, null), name);
+                }
+
+                builder.addAttribute(new QName(TYPE_ATTRIBUTE_NAME, NAMESPACE_URI, PREFIX), rsmd.getColumnTypeName(i + 1));
+                builder.addAttribute(new QName(TYPE_ATTRIBUTE_NAME, Namespaces.SCHEMA_NS, "xs"), Type.getTypeName(SQLUtils.sqlTypeToXMLType(rsmd.getColumnType(i + 1))));
+
+                //get the content
+                if (rsmd.getColumnType(i + 1) == Types.SQLXML) {
+                    //parse sqlxml value
+                    try {
+                        final SQLXML sqlXml = rs.getSQLXML(i + 1);
+
+                        if (rs.wasNull()) {
+                            // Add a null indicator attribute if the value was SQL Null
+                            builder.addAttribute(new QName("null", NAMESPACE_URI, PREFIX), "true");
+                        } else {
+                            try (final Reader charStream = sqlXml.getCharacterStream()) {
+                                final InputSource src = new InputSource(charStream);
+                                final XMLReaderPool parserPool = context.getBroker().getBrokerPool().getParserPool();
+                                XMLReader reader = null;
+                                try {
+                                    reader = parserPool.borrowXMLReader();
+
+                                    final SAXAdapter adapter = new AppendingSAXAdapter(builder);
+                                    reader.setContentHandler(adapter);
+                                    reader.setProperty(Namespaces.SAX_LEXICAL_HANDLER, adapter);
+                                    reader.parse(src);
+                                } finally {
+                                    if (reader != null) {
+                                        parserPool.returnXMLReader(reader);
+                                    }
+                                }
+                            }
+                        }
+                    } catch (final Exception e) {
+                        throw new XPathException("Could not parse column of type SQLXML: " + e.getMessage(), e);
+                    }
+                } else {
+                    //otherwise assume string value
+                    final String colValue = rs.getString(i + 1);
+
+                    if (rs.wasNull()) {
+                        // Add a null indicator attribute if the value was SQL Null
+                        builder.addAttribute(new QName("null", NAMESPACE_URI, PREFIX), "true");
+                    } else {
+                        if (colValue != null) {
+                            builder.characters(colValue);
+                        }
+                    }
+                }
+
+                builder.endElement();
+            }
+        }
+
+        builder.endElement();
+    }
+
+    /**
+     * Builds an sql:row element in its own document from the current row of a ResultSet.
+     */
+    private ElementImpl rowAsElement(final boolean makeNodeFromColumnName, final ResultSet rs,
+            final ResultSetMetaData rsmd) throws SQLException, XPathException {
+        context.pushDocumentContext();
+        try {
+            final MemTreeBuilder builder = context.getDocumentBuilder();
+            builder.startDocument();
+            buildRow(builder, makeNodeFromColumnName, rs, rsmd, rsmd.getColumnCount());
+            builder.endDocument();
+            return (ElementImpl) builder.getDocument().getDocumentElement();
+        } finally {
+            context.popDocumentContext();
+        }
+    }
+
+    private ElementImpl batchResultAsElement(final int[] updateCounts) {
+        context.pushDocumentContext();
+        try {
+            final MemTreeBuilder builder = context.getDocumentBuilder();
+
+            long totalUpdateCount = 0;
+            for (final int updateCount : updateCounts) {
+                if (updateCount > 0) {
+                    totalUpdateCount += updateCount;
+                }
+            }
+
+            builder.startDocument();
+            builder.startElement(new QName("result", NAMESPACE_URI, PREFIX), null);
+            builder.addAttribute(new QName("count", null, null), String.valueOf(updateCounts.length));
+            builder.addAttribute(new QName("updateCount", null, null), String.valueOf(totalUpdateCount));
+
+            for (int i = 0; i < updateCounts.length; i++) {
+                builder.startElement(new QName("update-count", NAMESPACE_URI, PREFIX), null);
+                builder.addAttribute(new QName("index", null, null), String.valueOf(i + 1));
+                builder.characters(String.valueOf(updateCounts[i]));
+                builder.endElement();
+            }
+
+            builder.endElement();
+            builder.endDocument();
+
+            return (ElementImpl) builder.getDocument().getDocumentElement();
+        } finally {
+            context.popDocumentContext();
+        }
+    }
+
     private ElementImpl sqlExceptionAsElement(final SQLException sqle, final String sql,
             @Nullable final Element parametersElement) {
         context.pushDocumentContext();
@@ -494,6 +746,10 @@ public class ExecuteFunction extends BasicFunction {
         }
     }
 
+    private static FunctionSignature functionSignature(final String name, final String description, final FunctionReturnSequenceType returnType, final FunctionParameterSequenceType... paramTypes) {
+        return FunctionDSL.functionSignature(new QName(name, NAMESPACE_URI, PREFIX), description, returnType, paramTypes);
+    }
+
     private static FunctionSignature[] functionSignatures(final String name, final String description, final FunctionReturnSequenceType returnType, final FunctionParameterSequenceType[][] variableParamTypes) {
         return FunctionDSL.functionSignatures(new QName(name, NAMESPACE_URI, PREFIX), description, returnType, variableParamTypes);
     }
@@ -79,6 +79,8 @@ public class SQLModule extends AbstractInternalModule {
             functionDefs(CloseConnectionFunction.class, CloseConnectionFunction.FS_CLOSE_CONNECTION),
             functionDefs(GetJNDIConnectionFunction.class, GetJNDIConnectionFunction.signatures),
             functionDefs(ExecuteFunction.class, ExecuteFunction.FS_EXECUTE),
+            functionDefs(ExecuteFunction.class, ExecuteFunction.FS_EXECUTE_EACH),
+            functionDefs(ExecuteFunction.class, ExecuteFunction.FS_EXECUTE_BATCH),
             functionDefs(PrepareFunction.class, PrepareFunction.signatures)
     );
 
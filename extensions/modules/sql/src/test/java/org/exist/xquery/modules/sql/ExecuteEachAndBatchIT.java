@@ -0,0 +1,128 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.modules.sql;
+
+import org.exist.EXistException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.source.Source;
+import org.exist.source.StringSource;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.value.Sequence;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.exist.xquery.modules.sql.Util.executeQuery;
+import static org.exist.xquery.modules.sql.Util.withCompiledQuery;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Integration Tests for sql:execute-each and sql:execute-batch.
+ */
+public class ExecuteEachAndBatchIT {
+
+    @Rule
+    public ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @Rule
+    public H2DatabaseResource h2Database = new H2DatabaseResource();
+
+    private String connect() {
+        return "import module namespace sql = \"http://exist-db.org/xquery/sql\";\n" +
+                "let $conn := sql:get-connection(\"" + h2Database.getDriverClass().getName() + "\", \"" + h2Database.getUrl() + "\", \"" + h2Database.getUser() + "\", \"" + h2Database.getPassword() + "\")\n" +
+                "let $create := sql:execute($conn, \"CREATE TABLE items(id INT PRIMARY KEY, name VARCHAR(20))\", false())\n" +
+                "let $insert := sql:prepare($conn, \"INSERT INTO items(id, name) VALUES(?, ?)\")\n" +
+                "let $batch := sql:execute-batch($conn, $insert,\n" +
+                "    for $i in 1 to 100\n" +
+                "    return\n" +
+                "        <sql:parameters>\n" +
+                "            <sql:param sql:type=\"integer\">{$i}</sql:param>\n" +
+                "            <sql:param sql:type=\"varchar\">item {$i}</sql:param>\n" +
+                "        </sql:parameters>\n" +
+                ")\n";
+    }
+
+    @Test
+    public void executeBatch() throws EXistException, XPathException, PermissionDeniedException, IOException {
+        final Sequence result = execute(connect() +
+                "return (\n" +
+                "    $batch/@count/string(),\n" +
+                "    $batch/@updateCount/string(),\n" +
+                "    count($batch/sql:update-count[. = '1']),\n" +
+                "    sql:execute($conn, \"SELECT COUNT(*) AS c FROM items\", true())//sql:C/string()\n" +
+                ")");
+        assertEquals(4, result.getItemCount());
+        assertEquals("100", result.itemAt(0).getStringValue());
+        assertEquals("100", result.itemAt(1).getStringValue());
+        assertEquals("100", result.itemAt(2).getStringValue());
+        assertEquals("100", result.itemAt(3).getStringValue());
+    }
+
+    @Test
+    public void executeBatchException() throws EXistException, XPathException, PermissionDeniedException, IOException {
+        final Sequence result = execute(connect() +
+                "return\n" +
+                "    local-name(sql:execute-batch($conn, $insert,\n" +
+                "        <sql:parameters><sql:param sql:type=\"integer\">1</sql:param><sql:param sql:type=\"varchar\">duplicate</sql:param></sql:parameters>\n" +
+                "    ))");
+        assertEquals("exception", result.getStringValue());
+    }
+
+    @Test
+    public void executeEach() throws EXistException, XPathException, PermissionDeniedException, IOException {
+        final Sequence result = execute(connect() +
+                "return\n" +
+                "    string-join(\n" +
+                "        sql:execute-each($conn, \"SELECT id, name FROM items WHERE id <= 3 ORDER BY id\", true(), 2, function($row) {\n" +
+                "            $row/sql:ID || ':' || $row/sql:NAME || ':' || $row/@index\n" +
+                "        }),\n" +
+                "    ',')");
+        assertEquals("1:item 1:1,2:item 2:2,3:item 3:3", result.getStringValue());
+    }
+
+    @Test
+    public void executeEachPrepared() throws EXistException, XPathException, PermissionDeniedException, IOException {
+        final Sequence result = execute(connect() +
+                "let $select := sql:prepare($conn, \"SELECT name FROM items WHERE id > ? ORDER BY id\")\n" +
+                "return\n" +
+                "    count(sql:execute-each($conn, $select, <sql:parameters><sql:param sql:type=\"integer\">90</sql:param></sql:parameters>, false(), 0, function($row) {\n" +
+                "        $row/sql:field[@name = 'NAME']\n" +
+                "    }))");
+        assertEquals("10", result.getStringValue());
+    }
+
+    private Sequence execute(final String query) throws EXistException, XPathException, PermissionDeniedException, IOException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final Source source = new StringSource(query);
+        try (final DBBroker broker = pool.getBroker();
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final Sequence result = withCompiledQuery(broker, source, compiledXQuery -> executeQuery(broker, compiledXQuery));
+            transaction.commit();
+            return result;
+        }
+    }
+}